@@ -295,6 +295,7 @@ public class ComparisonScript
 	{
 		DERBY_LOCAL("pgdb","idmapper-pgdb:/home/martijn/PathVisio-Data/gene databases/Hs_Derby_20090509.pgdb"),
 		DERBY_REMOTE("pgdbclient","idmapper-derbyclient:Homo sapiens"),
+		HSQLDB_LOCAL("hsqldb","idmapper-hsqldb:/home/martijn/PathVisio-Data/gene databases/Hs_Hsqldb_20090509"),
 		
 		// PICR can only be used to map proteins
 		PICR ("picr", "idmapper-picr:"),
@@ -0,0 +1,92 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.bridgedb.bio.DataSourceTxt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataSource lookups and Xref creation, which every mapper does for each result,
+ * with all bio DataSources registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DataSourceBenchmark
+{
+	private static final int XREFS = 1000;
+
+	private Set<Xref> xrefs;
+	private int call = 0;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		DataSourceTxt.init();
+		xrefs = new HashSet<Xref>();
+		for (int i = 0; i < XREFS; i++) xrefs.add(new Xref(Fixtures.sourceId(i), Fixtures.SOURCE));
+	}
+
+	@Benchmark
+	public DataSource getBySystemCode()
+	{
+		return DataSource.getExistingBySystemCode("En");
+	}
+
+	@Benchmark
+	public DataSource getByFullName()
+	{
+		return DataSource.getExistingByFullName("Ensembl");
+	}
+
+	@Benchmark
+	public DataSource registerExisting()
+	{
+		return DataSource.register("En", "Ensembl").asDataSource();
+	}
+
+	@Benchmark
+	public Xref newXref()
+	{
+		return new Xref(Fixtures.sourceId(call++ % XREFS), Fixtures.SOURCE);
+	}
+
+	@Benchmark
+	public boolean xrefLookup()
+	{
+		return xrefs.contains(new Xref(Fixtures.sourceId(call++ % XREFS), Fixtures.SOURCE));
+	}
+}
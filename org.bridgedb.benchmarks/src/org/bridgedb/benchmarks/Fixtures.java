@@ -0,0 +1,183 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.rdb.SimpleGdb;
+import org.bridgedb.rdb.SimpleGdbFactory;
+import org.bridgedb.rdb.construct.DBConnector;
+import org.bridgedb.rdb.construct.DataDerby;
+import org.bridgedb.rdb.construct.DataHsqldb;
+import org.bridgedb.rdb.construct.GdbConstruct;
+import org.bridgedb.rdb.construct.GdbConstructImpl3;
+
+/**
+ * Generated data for the benchmarks, so they run without network access or shared databases.
+ * <p>
+ * Gene i has an id in each of three DataSources, SOURCE links to MIDDLE and MIDDLE links to TARGET,
+ * so mapping from SOURCE to TARGET needs a transitive step when the links come from two mappers.
+ * The ids in SOURCE also have a Symbol attribute.
+ * The same size always gives the same data.
+ */
+final class Fixtures
+{
+	static final DataSource SOURCE = DataSource.register("BenA", "Benchmark source").asDataSource();
+	static final DataSource MIDDLE = DataSource.register("BenB", "Benchmark middle").asDataSource();
+	static final DataSource TARGET = DataSource.register("BenC", "Benchmark target").asDataSource();
+
+	static final String SYMBOL = "Symbol";
+
+	static final String DERBY = "derby";
+	static final String HSQLDB = "hsqldb";
+
+	private Fixtures() {}
+
+	static String sourceId(int i)
+	{
+		return "A" + i;
+	}
+
+	static String middleId(int i)
+	{
+		return "" + (1000000 + i);
+	}
+
+	static String targetId(int i)
+	{
+		return "C" + i;
+	}
+
+	static String symbol(int i)
+	{
+		return "GENE" + i;
+	}
+
+	/**
+	 * Picks ids spread over the whole fixture in a fixed order,
+	 * so consecutive calls don't hit the same database pages.
+	 */
+	static int spread(int call, int size)
+	{
+		return (int)((call * 7919L) % size);
+	}
+
+	static File createTempDir(String prefix) throws IOException
+	{
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdir()) throw new IOException("Could not create directory " + dir);
+		return dir;
+	}
+
+	static void delete(File f)
+	{
+		if (f.isDirectory())
+		{
+			for (File child : f.listFiles()) delete(child);
+		}
+		f.delete();
+	}
+
+	/**
+	 * Creates a gdb in a new temporary directory,
+	 * either a zipped Derby one (DERBY) or an HSQLDB one (HSQLDB).
+	 * Each gene links its SOURCE id to itself, and to its MIDDLE and TARGET ids.
+	 * @return the .bridge file for Derby, the .properties file for HSQLDB
+	 */
+	static File createGdb(int size, String engine) throws IDMapperException, IOException
+	{
+		File dir = createTempDir("bridgedb-bench");
+		String dbName = new File(dir, "benchmark").getAbsolutePath();
+		DBConnector connector = HSQLDB.equals(engine) ? new DataHsqldb() : new DataDerby();
+		GdbConstruct gdb = GdbConstructImpl3.createInstance(dbName, connector, DBConnector.PROP_RECREATE);
+		if (gdb instanceof GdbConstructImpl3) ((GdbConstructImpl3)gdb).setBatchSize(1000);
+		gdb.createGdbTables();
+		gdb.preInsert();
+		gdb.setInfo("DATASOURCENAME", "Benchmark");
+		gdb.setInfo("DATASOURCEVERSION", "" + size);
+		gdb.setInfo("BUILDDATE", "20000101");
+		gdb.setInfo("SERIES", "benchmark");
+		gdb.setInfo("DATATYPE", "GeneProduct");
+		for (int i = 0; i < size; i++)
+		{
+			Xref source = new Xref(sourceId(i), SOURCE);
+			Xref middle = new Xref(middleId(i), MIDDLE);
+			Xref target = new Xref(targetId(i), TARGET);
+			gdb.addGene(source);
+			gdb.addGene(middle);
+			gdb.addGene(target);
+			gdb.addLink(source, source);
+			gdb.addLink(source, middle);
+			gdb.addLink(source, target);
+			gdb.addAttribute(source, SYMBOL, symbol(i));
+		}
+		gdb.commit();
+		gdb.finalize();
+		return new File(dbName + "." + (HSQLDB.equals(engine) ? "properties" : DataDerby.DB_FILE_EXT_GDB));
+	}
+
+	/**
+	 * Opens a gdb made by createGdb, with the same urls the idmapper-pgdb
+	 * and idmapper-hsqldb drivers use.
+	 */
+	static SimpleGdb openGdb(File gdb, String engine) throws IDMapperException
+	{
+		if (HSQLDB.equals(engine))
+		{
+			String path = gdb.getAbsolutePath();
+			String dbName = path.substring(0, path.length() - ".properties".length());
+			return SimpleGdbFactory.createInstance(gdb.getName(),
+					"jdbc:hsqldb:file:" + dbName + ";ifexists=true;readonly=true;user=sa;password=");
+		}
+		return SimpleGdbFactory.createInstance(gdb.getName(), "jdbc:derby:jar:(" + gdb + ")database");
+	}
+
+	/**
+	 * Writes a tab delimited mapping file as read by IDMapperText,
+	 * with the full names of the DataSources as header.
+	 * @param targetIsTarget if false the file maps SOURCE to MIDDLE, otherwise MIDDLE to TARGET.
+	 */
+	static File createText(File dir, int size, boolean targetIsTarget) throws IOException
+	{
+		File f = new File(dir, targetIsTarget ? "middle-target.txt" : "source-middle.txt");
+		PrintWriter writer = new PrintWriter(new FileWriter(f));
+		try
+		{
+			if (targetIsTarget)
+			{
+				writer.println(MIDDLE.getFullName() + "\t" + TARGET.getFullName());
+				for (int i = 0; i < size; i++) writer.println(middleId(i) + "\t" + targetId(i));
+			}
+			else
+			{
+				writer.println(SOURCE.getFullName() + "\t" + MIDDLE.getFullName());
+				for (int i = 0; i < size; i++) writer.println(sourceId(i) + "\t" + middleId(i));
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		return f;
+	}
+}
@@ -0,0 +1,138 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.rdb.SimpleGdb;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries on a generated Derby or HSQLDB gdb, through SimpleGdbImpl3.
+ * Run a larger gdb with <code>-p size=1000000</code>, or one engine with
+ * <code>-p engine=hsqldb</code>.
+ * <p>
+ * On 100000 xrefs (3 x 2s measurements, so the error margins are wide) HSQLDB took
+ * 70 against 97 us for mapID, 0.9 against 4.7 ms for mapIDBatch and 23 against
+ * 45544 us for getAttributes, but 583 against 135 ms for freeSearch and
+ * 197 against 173 ms for freeAttributeSearch. Derby stays the default: HSQLDB only
+ * wins on lookups, loses the LIKE scans that search boxes depend on, and every
+ * released gdb is a Derby file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GdbBenchmark
+{
+	private static final int BATCH_SIZE = 100;
+
+	@Param({"10000", "100000"})
+	public int size;
+
+	@Param({Fixtures.DERBY, Fixtures.HSQLDB})
+	public String engine;
+
+	private File bridge;
+	private SimpleGdb gdb;
+	private List<Xref> batch;
+	private int call = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		bridge = Fixtures.createGdb(size, engine);
+		gdb = Fixtures.openGdb(bridge, engine);
+		batch = new ArrayList<Xref>();
+		for (int i = 0; i < BATCH_SIZE; i++)
+		{
+			batch.add(new Xref(Fixtures.sourceId(Fixtures.spread(i, size)), Fixtures.SOURCE));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IDMapperException
+	{
+		gdb.close();
+		Fixtures.delete(bridge.getParentFile());
+	}
+
+	private Xref nextXref()
+	{
+		return new Xref(Fixtures.sourceId(Fixtures.spread(call++, size)), Fixtures.SOURCE);
+	}
+
+	@Benchmark
+	public Set<Xref> mapID() throws IDMapperException
+	{
+		return gdb.mapID(nextXref(), Fixtures.TARGET);
+	}
+
+	@Benchmark
+	public Set<Xref> mapIDAllTargets() throws IDMapperException
+	{
+		return gdb.mapID(nextXref());
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Map<Xref, Set<Xref>> mapIDBatch() throws IDMapperException
+	{
+		return gdb.mapID(batch, Fixtures.TARGET);
+	}
+
+	@Benchmark
+	public Set<String> getAttributes() throws IDMapperException
+	{
+		return gdb.getAttributes(nextXref(), Fixtures.SYMBOL);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Set<Xref> freeSearch() throws IDMapperException
+	{
+		return gdb.freeSearch(Fixtures.sourceId(Fixtures.spread(call++, size)), 10);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Map<Xref, String> freeAttributeSearch() throws IDMapperException
+	{
+		return gdb.freeAttributeSearch(Fixtures.symbol(Fixtures.spread(call++, size)), Fixtures.SYMBOL, 10);
+	}
+}
@@ -0,0 +1,150 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.rdf.UriPattern;
+import org.bridgedb.rdf.UriPatternType;
+import org.bridgedb.sql.SQLUriMapper;
+import org.bridgedb.sql.SqlFactory;
+import org.bridgedb.uri.api.Mapping;
+import org.bridgedb.uri.lens.Lens;
+import org.bridgedb.uri.tools.RegexUriPattern;
+import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * SQLIdMapper.mapID and SQLUriMapper.mapFull on generated linksets.
+ * <p>
+ * The SQL mappers only run on MySQL, so this connects as the test user from the configuration,
+ * but to its own database, BenchmarkSqlDatabase (default imsbenchmark), and recreates the tables there.
+ * Create that database and grant the test user access to it as for the test database,
+ * or exclude this benchmark with <code>-e SqlBenchmark</code>.
+ * <p>
+ * SOURCE links to MIDDLE and MIDDLE to TARGET in the default lens.
+ * A second SOURCE to MIDDLE linkset is only in the test lens, so the All lens has more paths to follow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SqlBenchmark
+{
+	private static final String PREDICATE = "http://www.w3.org/2004/02/skos/core#exactMatch";
+	private static final String URI_SPACE = "http://benchmark.bridgedb.org/";
+	private static final String BENCHMARK_SQL_DATABASE_PROPERTY = "BenchmarkSqlDatabase";
+
+	@Param({"10000"})
+	public int size;
+
+	@Param({Lens.DEFAULT_LENS_NAME, Lens.ALL_LENS_NAME})
+	public String lens;
+
+	private SQLUriMapper mapper;
+	private Collection<DataSource> targets;
+	private int call = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws BridgeDBException
+	{
+		ConfigReader.useTest();
+		// The benchmark runs in its own forked JVM, so the test settings can be pointed elsewhere
+		Properties properties = ConfigReader.getProperties();
+		String database = properties.getProperty(BENCHMARK_SQL_DATABASE_PROPERTY, "imsbenchmark").trim();
+		if (database.equals(properties.getProperty(SqlFactory.TEST_SQL_DATABASE_PROPERTY, "imstest").trim()))
+		{
+			throw new BridgeDBException(BENCHMARK_SQL_DATABASE_PROPERTY + " must not be the test database " + database);
+		}
+		properties.setProperty(SqlFactory.TEST_SQL_DATABASE_PROPERTY, database);
+		RegexUriPattern source = register("source/$id", Fixtures.SOURCE);
+		RegexUriPattern middle = register("middle/$id", Fixtures.MIDDLE);
+		RegexUriPattern target = register("target/$id", Fixtures.TARGET);
+		mapper = SQLUriMapper.createNew();
+
+		int sourceMiddle = mapper.registerMappingSet(source, PREDICATE, Lens.getDefaultJustifictaionString(),
+				Lens.getDefaultJustifictaionString(), middle, new URIImpl(URI_SPACE + "sourceMiddle"));
+		int middleTarget = mapper.registerMappingSet(middle, PREDICATE, Lens.getDefaultJustifictaionString(),
+				Lens.getDefaultJustifictaionString(), target, new URIImpl(URI_SPACE + "middleTarget"));
+		int lensed = mapper.registerMappingSet(source, PREDICATE, Lens.getTestJustifictaion(),
+				Lens.getTestJustifictaion(), middle, new URIImpl(URI_SPACE + "sourceMiddleLensed"));
+		for (int i = 0; i < size; i++)
+		{
+			String middleUri = URI_SPACE + "middle/" + Fixtures.middleId(i);
+			mapper.insertUriMapping(URI_SPACE + "source/" + Fixtures.sourceId(i), middleUri, sourceMiddle, true);
+			mapper.insertUriMapping(middleUri, URI_SPACE + "target/" + Fixtures.targetId(i), middleTarget, true);
+			// the lensed linkset maps each source id to the middle id of the next gene
+			mapper.insertUriMapping(URI_SPACE + "source/" + Fixtures.sourceId(i),
+					URI_SPACE + "middle/" + Fixtures.middleId((i + 1) % size), lensed, true);
+		}
+		mapper.closeInput();
+		targets = Collections.singleton(Fixtures.TARGET);
+	}
+
+	private static RegexUriPattern register(String pattern, DataSource ds) throws BridgeDBException
+	{
+		UriPattern uriPattern = UriPattern.register(URI_SPACE + pattern, ds.getSystemCode(), UriPatternType.dataSourceUriPattern);
+		return RegexUriPattern.factory(uriPattern, ds.getSystemCode());
+	}
+
+	private Xref nextXref()
+	{
+		return new Xref(Fixtures.sourceId(Fixtures.spread(call++, size)), Fixtures.SOURCE);
+	}
+
+	/** The id based mapping of SQLIdMapper, which ignores lenses */
+	@Benchmark
+	public Set<Xref> mapID() throws IDMapperException
+	{
+		return ((IDMapper)mapper).mapID(nextXref(), Fixtures.MIDDLE);
+	}
+
+	@Benchmark
+	public Set<Mapping> mapFull() throws BridgeDBException
+	{
+		return mapper.mapFull(nextXref(), lens, Boolean.FALSE, targets);
+	}
+
+	@Benchmark
+	public Set<Mapping> mapFullWithUris() throws BridgeDBException
+	{
+		return mapper.mapFull(nextXref(), lens, Boolean.TRUE, targets);
+	}
+}
@@ -0,0 +1,102 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.benchmarks;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bridgedb.IDMapperException;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.Xref;
+import org.bridgedb.file.IDMapperText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of generated IDMapperText files,
+ * and transitive mapping through an IDMapperStack of two of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextBenchmark
+{
+	@Param({"10000", "100000"})
+	public int size;
+
+	private File dir;
+	private File sourceMiddle;
+	private File middleTarget;
+	private IDMapperStack stack;
+	private int call = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception
+	{
+		dir = Fixtures.createTempDir("bridgedb-bench");
+		sourceMiddle = Fixtures.createText(dir, size, false);
+		middleTarget = Fixtures.createText(dir, size, true);
+		stack = new IDMapperStack();
+		stack.addIDMapper(load(sourceMiddle));
+		stack.addIDMapper(load(middleTarget));
+		stack.setTransitive(true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IDMapperException
+	{
+		stack.close();
+		Fixtures.delete(dir);
+	}
+
+	private IDMapperText load(File f) throws Exception
+	{
+		IDMapperText mapper = new IDMapperText(f.toURI().toURL());
+		// the file is only read on the first query
+		mapper.mapID(new Xref(Fixtures.sourceId(0), Fixtures.SOURCE));
+		return mapper;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public IDMapperText loadText() throws Exception
+	{
+		return load(sourceMiddle);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Set<Xref> transitiveMapID() throws IDMapperException
+	{
+		Xref ref = new Xref(Fixtures.sourceId(Fixtures.spread(call++, size)), Fixtures.SOURCE);
+		return stack.mapID(ref, Fixtures.TARGET);
+	}
+}
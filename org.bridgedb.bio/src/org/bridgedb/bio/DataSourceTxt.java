@@ -56,12 +56,14 @@ public class DataSourceTxt
 	protected void loadAnInputStream(InputStream is) throws IOException {
 		BufferedReader reader = new BufferedReader (
 				new InputStreamReader (is));
+		StringBuilder txt = new StringBuilder(datasourcesTxt);
 		String line;
    		while ((line = reader.readLine()) != null) {
-			datasourcesTxt = datasourcesTxt + line + "\n";
+			txt.append(line).append("\n");
             		String[] fields = line.split ("\\t");
             		loadLine(fields);
         	}		
+		datasourcesTxt = txt.toString();
 	}
 
 	protected void loadLine(String[] fields) throws IOException 
@@ -16,7 +16,10 @@
 //
 package org.bridgedb.bio;
 
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 import org.bridgedb.DataSource;
 import org.bridgedb.DataSourcePatterns;
 import org.bridgedb.Xref;
@@ -113,6 +116,28 @@ public class BioDataSourceTest
 		assertTrue (DataSourcePatterns.getDataSourceMatches("CHEBI:17925").contains(BioDataSource.CHEBI));
 	}
 
+	@Test
+	public void testMatchesAllPatterns()
+	{
+		// the index of patterns by first character finds the same DataSources as trying every pattern
+		Set<String> ids = new HashSet<String>();
+		for (DataSource ds : DataSource.getDataSources())
+		{
+			if (ds.getExample().getId() != null) ids.add(ds.getExample().getId());
+		}
+		ids.add("");
+		ids.add("\u00e9t\u00e9");
+		for (String id : ids)
+		{
+			Set<DataSource> expected = new HashSet<DataSource>();
+			for (Map.Entry<DataSource, Pattern> entry : DataSourcePatterns.getPatterns().entrySet())
+			{
+				if (entry.getValue().matcher(id).matches()) expected.add(entry.getKey());
+			}
+			assertEquals(id, expected, DataSourcePatterns.getDataSourceMatches(id));
+		}
+	}
+
 	@Test
 	public void testNewHMDBIDs()
 	{
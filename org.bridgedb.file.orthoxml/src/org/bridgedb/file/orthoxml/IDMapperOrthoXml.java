@@ -1,12 +1,14 @@
 package org.bridgedb.file.orthoxml;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -14,7 +16,6 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import javax.management.modelmbean.XMLParseException;
 import javax.xml.stream.XMLStreamException;
 
 import org.bridgedb.BridgeDb;
@@ -26,12 +27,15 @@ import org.bridgedb.Xref;
 import org.bridgedb.bio.BioDataSource;
 import org.bridgedb.impl.InternalUtils;
 
-import sbc.orthoxml.Database;
-import sbc.orthoxml.Gene;
-import sbc.orthoxml.Group;
-import sbc.orthoxml.Species;
-import sbc.orthoxml.io.OrthoXMLReader;
-
+/**
+ * IDMapper for the ortholog groups of an OrthoXML file. Each identifier maps to the
+ * gene and protein identifiers of all genes in its top-level group.
+ * <p>
+ * Connection strings are the url of the file, optionally followed by ?index=&lt;file&gt;.
+ * The groups are then kept in the index file, which is read instead of the OrthoXML file
+ * on the next connect, unless the OrthoXML file is a local file that changed since.
+ * An index file that can not be read, for example one written by another version, is replaced.
+ */
 public class IDMapperOrthoXml implements IDMapper
 {
 	static
@@ -45,26 +49,31 @@ public class IDMapperOrthoXml implements IDMapper
 		@Override
 		public IDMapper connect(String locationString) throws IDMapperException
 		{
-			Reader reader;
+			File index = null;
+			if (locationString.indexOf('?') > -1)
+			{
+				Map<String, String> args = InternalUtils.parseLocation(locationString, "index");
+				locationString = args.containsKey("BASE") ? args.get("BASE") : "";
+				if (args.containsKey("index")) index = new File(args.get("index"));
+			}
 			try
 			{
-				reader = getReader (new URL(locationString));
+				return new IDMapperOrthoXml(new URL(locationString), index);
 			}
 			catch (MalformedURLException e)
 			{
 				throw new IDMapperException(e);
 			}
-			return new IDMapperOrthoXml(reader);
 		}
 	}
 	
-	private Map<Xref, Set<Xref>> allIds = new HashMap <Xref, Set<Xref>>();
-	private Set<DataSource> dataSources = new HashSet<DataSource>();
+	private final OrthoXmlIndex index;
+	private final Set<DataSource> dataSources;
 	
     private static Reader getReader(URL url) throws IDMapperException {
         try {
             InputStream inputStream = InternalUtils.getInputStream(url);
-            return new InputStreamReader(inputStream);
+            return new InputStreamReader(inputStream, "UTF-8");
         } catch(IOException e) {
             throw new IDMapperException(e);
         }
@@ -79,61 +88,101 @@ public class IDMapperOrthoXml implements IDMapper
     	aliases.put ("Ensembl", BioDataSource.ENSEMBL_HUMAN); //TODO: change to regular Ensembl
     }
     
-	private void readMappings(Reader in) throws FileNotFoundException, XMLStreamException, XMLParseException
+	/**
+	 * @param name name of an OrthoXML database element
+	 * @return the DataSource for it
+	 */
+	static DataSource getDataSource(String name)
 	{
-		//open the orthoXML for reading
-		OrthoXMLReader reader = new OrthoXMLReader(in);
-		
-		// get species from reader
-		for (Species species : reader.getSpecies())
-		{
-			System.out.printf(species.getName() + "\t");
-			System.out.printf(species.getNcbiTaxId() + "\t");
-		}
-		System.out.printf("#");
-		//read the group iteratively
-		Group group;
-		
-		while ((group = reader.next()) != null)
-		{		
-			Set<Xref> groupRefs = new HashSet<Xref>();
-			
-			for(Gene gene : group.getNestedGenes())
+		DataSource ds = aliases.get(name);
+		return ds == null ? DataSource.getByFullName(name) : ds;
+	}
+
+	private static OrthoXmlIndex readIndex(Reader reader) throws IDMapperException
+	{
+		try
+		{
+			return OrthoXmlIndex.read(reader);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new IDMapperException(e);
+		}
+		finally
+		{
+			try
 			{
-				Database database = gene.getDatabase();
-				
-				DataSource ds = aliases.get(database.getName());
-				if (ds == null) ds = DataSource.getByFullName(database.getName());
-				
-				dataSources.add(ds);
-				groupRefs.add (new Xref(gene.getGeneIdentifier(), ds));
-				groupRefs.add (new Xref(gene.getProteinIdentifier(), ds));		
+				reader.close();
 			}
-			
-			for (Xref ref : groupRefs)
+			catch (IOException e)
 			{
-				allIds.put (ref, groupRefs);
-			}			
+				// the groups have been read, or the parse error is thrown
+			}
 		}
 	}
-	
+
 	public IDMapperOrthoXml(Reader reader) throws IDMapperException
 	{
-		try
+		index = readIndex(reader);
+		dataSources = index.getDataSources();
+	}
+
+	/**
+	 * @param url OrthoXML file
+	 * @param indexFile file to keep the groups in between runs, or null to read the OrthoXML file every time
+	 * @throws IDMapperException if the OrthoXML file could not be read,
+	 * 	or the index file could not be written
+	 */
+	public IDMapperOrthoXml(URL url, File indexFile) throws IDMapperException
+	{
+		OrthoXmlIndex cached = null;
+		if (indexFile != null && indexFile.isFile() && isCurrent(url, indexFile))
+		{
+			try
+			{
+				cached = OrthoXmlIndex.read(indexFile);
+			}
+			catch (IOException e)
+			{
+				// stale or truncated index, so it is treated as missing and written again
+			}
+		}
+		if (cached == null)
 		{
-			readMappings(reader);
+			cached = readIndex(getReader(url));
+			if (indexFile != null)
+			{
+				try
+				{
+					cached.write(indexFile);
+				}
+				catch (IOException e)
+				{
+					throw new IDMapperException("Could not write OrthoXML index " + indexFile, e);
+				}
+			}
 		}
-		catch (IOException e)
+		index = cached;
+		dataSources = index.getDataSources();
+	}
+
+	/**
+	 * @return false if url is a local file that was modified after indexFile
+	 */
+	private static boolean isCurrent(URL url, File indexFile)
+	{
+		if (!"file".equals(url.getProtocol())) return true;
+		try
 		{
-			throw new IDMapperException(e);
+			return new File(url.toURI()).lastModified() <= indexFile.lastModified();
 		}
-		catch (XMLStreamException e)
+		catch (URISyntaxException e)
 		{
-			throw new IDMapperException(e);
+			return true;
 		}
-		catch (XMLParseException e)
+		catch (IllegalArgumentException e)
 		{
-			throw new IDMapperException(e);
+			return true;
 		}
 	}
 	
@@ -149,33 +198,18 @@ public class IDMapperOrthoXml implements IDMapper
 	@Override
 	public Set<Xref> mapID(Xref ref, DataSource... tgtDataSources) throws IDMapperException
 	{
-		
-		Set<Xref> result = new HashSet<Xref>();
-		if (tgtDataSources.length == 0)
-		{
-			Set<Xref> toAdd = allIds.get(ref);
-			if (toAdd != null) result.addAll (toAdd);
-		}
-		else
+		Set<DataSource> filter = null;
+		if (tgtDataSources.length > 0)
 		{
-			Set<DataSource> filter = new HashSet<DataSource>();
-			for (DataSource ds : tgtDataSources) filter.add(ds);
-			if (allIds.containsKey(ref))
-			{
-				for (Xref dest : allIds.get(ref))
-				{
-					if (filter.contains(dest.getDataSource()))
-						result.add(dest);
-				}
-			}
+			filter = new HashSet<DataSource>(Arrays.asList(tgtDataSources));
 		}
-		return result;
+		return index.mapID(ref, filter);
 	}
 
 	@Override
 	public boolean xrefExists(Xref xref) throws IDMapperException
 	{
-		return allIds.containsKey(xref);
+		return index.contains(xref);
 	}
 
 	@Override
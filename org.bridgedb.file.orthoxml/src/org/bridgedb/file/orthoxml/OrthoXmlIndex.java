@@ -0,0 +1,448 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.file.orthoxml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+
+/**
+ * Ortholog groups of an OrthoXML document, in a few arrays instead of a Set of Xrefs per identifier.
+ * <p>
+ * Genes are numbered in document order, and each has its gene and protein identifier
+ * and the number of its database.
+ * The genes of a group are a range of one array of gene numbers, including those of nested groups.
+ * A gene can be in several top-level groups, which are a range of a second array of group numbers.
+ * Identifiers are found through an open addressing hash table of gene numbers.
+ * <p>
+ * The index can be written to a file and read back, which is much faster than parsing the document again.
+ */
+final class OrthoXmlIndex
+{
+	private static final int MAGIC = 0x4f58494e; // "OXIN"
+	private static final int VERSION = 2;
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+	static
+	{
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final String[] databases;
+	private final DataSource[] dataSources;
+	private final String[] geneIds;
+	private final String[] protIds;
+	private final int[] geneDatabase;
+	/** genes of group i are groupMembers[groupStart[i]] up to groupMembers[groupStart[i + 1]] */
+	private final int[] groupStart;
+	private final int[] groupMembers;
+	/** top-level groups of gene i are geneGroups[geneGroupStart[i]] up to geneGroups[geneGroupStart[i + 1]] */
+	private final int[] geneGroupStart;
+	private final int[] geneGroups;
+	/** entries are 2 * gene + 1 for the gene identifier and 2 * gene + 2 for the protein identifier, 0 if empty */
+	private final int[] table;
+
+	private OrthoXmlIndex(String[] databases, String[] geneIds, String[] protIds, int[] geneDatabase,
+			int[] groupStart, int[] groupMembers)
+	{
+		this.databases = databases;
+		this.geneIds = geneIds;
+		this.protIds = protIds;
+		this.geneDatabase = geneDatabase;
+		this.groupStart = groupStart;
+		this.groupMembers = groupMembers;
+
+		// invert the group members, counting each gene once per group even if nested groups repeat it
+		int groups = groupStart.length - 1;
+		int[] lastGroup = new int[geneIds.length];
+		Arrays.fill(lastGroup, -1);
+		geneGroupStart = new int[geneIds.length + 1];
+		for (int group = 0; group < groups; group++)
+		{
+			for (int i = groupStart[group]; i < groupStart[group + 1]; i++)
+			{
+				int gene = groupMembers[i];
+				if (lastGroup[gene] == group) continue;
+				lastGroup[gene] = group;
+				geneGroupStart[gene + 1]++;
+			}
+		}
+		for (int gene = 0; gene < geneIds.length; gene++)
+		{
+			geneGroupStart[gene + 1] += geneGroupStart[gene];
+		}
+		geneGroups = new int[geneGroupStart[geneIds.length]];
+		int[] next = Arrays.copyOf(geneGroupStart, geneIds.length);
+		Arrays.fill(lastGroup, -1);
+		for (int group = 0; group < groups; group++)
+		{
+			for (int i = groupStart[group]; i < groupStart[group + 1]; i++)
+			{
+				int gene = groupMembers[i];
+				if (lastGroup[gene] == group) continue;
+				lastGroup[gene] = group;
+				geneGroups[next[gene]++] = group;
+			}
+		}
+
+		dataSources = new DataSource[databases.length];
+		for (int i = 0; i < databases.length; i++)
+		{
+			dataSources[i] = IDMapperOrthoXml.getDataSource(databases[i]);
+		}
+
+		int size = Integer.highestOneBit(Math.max(geneIds.length, 1) * 4 - 1) << 1;
+		table = new int[size];
+		for (int gene = 0; gene < geneIds.length; gene++)
+		{
+			if (!inGroup(gene)) continue;
+			if (geneIds[gene] != null) put(geneIds[gene], 2 * gene + 1);
+			if (protIds[gene] != null) put(protIds[gene], 2 * gene + 2);
+		}
+	}
+
+	private void put(String id, int entry)
+	{
+		int mask = table.length - 1;
+		int slot = id.hashCode() & mask;
+		while (table[slot] != 0) slot = (slot + 1) & mask;
+		table[slot] = entry;
+	}
+
+	private boolean inGroup(int gene)
+	{
+		return geneGroupStart[gene + 1] > geneGroupStart[gene];
+	}
+
+	private String idOf(int entry)
+	{
+		int gene = (entry - 1) / 2;
+		return (entry & 1) == 1 ? geneIds[gene] : protIds[gene];
+	}
+
+	/**
+	 * @return the groups of the genes with ref as gene or protein identifier
+	 */
+	private Set<Integer> groupsOf(Xref ref)
+	{
+		Set<Integer> result = new HashSet<Integer>();
+		String id = ref.getId();
+		if (id == null) return result;
+		int mask = table.length - 1;
+		for (int slot = id.hashCode() & mask; table[slot] != 0; slot = (slot + 1) & mask)
+		{
+			int gene = (table[slot] - 1) / 2;
+			if (id.equals(idOf(table[slot])) && dataSources[geneDatabase[gene]].equals(ref.getDataSource()))
+			{
+				for (int i = geneGroupStart[gene]; i < geneGroupStart[gene + 1]; i++)
+				{
+					result.add(geneGroups[i]);
+				}
+			}
+		}
+		return result;
+	}
+
+	boolean contains(Xref ref)
+	{
+		return !groupsOf(ref).isEmpty();
+	}
+
+	/**
+	 * @param ref identifier to look up
+	 * @param filter data sources to return, or null for all
+	 * @return the gene and protein identifiers of all genes in the groups of ref, including ref itself
+	 */
+	Set<Xref> mapID(Xref ref, Set<DataSource> filter)
+	{
+		Set<Xref> result = new HashSet<Xref>();
+		for (int group : groupsOf(ref))
+		{
+			for (int i = groupStart[group]; i < groupStart[group + 1]; i++)
+			{
+				int gene = groupMembers[i];
+				DataSource ds = dataSources[geneDatabase[gene]];
+				if (filter != null && !filter.contains(ds)) continue;
+				if (geneIds[gene] != null) result.add(new Xref(geneIds[gene], ds));
+				if (protIds[gene] != null) result.add(new Xref(protIds[gene], ds));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the data sources of the genes that are in a group
+	 */
+	Set<DataSource> getDataSources()
+	{
+		boolean[] used = new boolean[databases.length];
+		for (int gene = 0; gene < geneIds.length; gene++)
+		{
+			if (inGroup(gene)) used[geneDatabase[gene]] = true;
+		}
+		Set<DataSource> result = new HashSet<DataSource>();
+		for (int i = 0; i < used.length; i++)
+		{
+			if (used[i]) result.add(dataSources[i]);
+		}
+		return result;
+	}
+
+	/** A growable int array, to avoid boxing while reading the document */
+	private static final class IntList
+	{
+		private int[] data = new int[1024];
+		private int size = 0;
+
+		void add(int value)
+		{
+			if (size == data.length) data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	private static String emptyToNull(String value)
+	{
+		return value == null || value.length() == 0 ? null : value;
+	}
+
+	/**
+	 * Reads an OrthoXML document as a stream. Each orthologGroup or paralogGroup directly
+	 * under groups is a group, with the genes of all groups nested in it.
+	 * A gene referenced from several groups maps to the genes of all of them.
+	 * @param in OrthoXML document
+	 * @return index of the groups
+	 * @throws XMLStreamException if the document could not be parsed
+	 */
+	static OrthoXmlIndex read(Reader in) throws XMLStreamException
+	{
+		List<String> databases = new ArrayList<String>();
+		Map<String, Integer> databaseNumbers = new HashMap<String, Integer>();
+		List<String> geneIds = new ArrayList<String>();
+		List<String> protIds = new ArrayList<String>();
+		IntList geneDatabase = new IntList();
+		IntList groupStart = new IntList();
+		IntList groupMembers = new IntList();
+		// only needed while reading, to resolve geneRef elements
+		Map<String, Integer> genes = new HashMap<String, Integer>();
+
+		XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+		try
+		{
+			int database = -1;
+			int groupDepth = 0;
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					String name = reader.getLocalName();
+					if ("database".equals(name))
+					{
+						String dbName = reader.getAttributeValue(null, "name");
+						Integer number = databaseNumbers.get(dbName);
+						if (number == null)
+						{
+							number = databases.size();
+							databases.add(dbName);
+							databaseNumbers.put(dbName, number);
+						}
+						database = number;
+					}
+					else if ("gene".equals(name))
+					{
+						if (database < 0) throw new XMLStreamException("gene outside of a database", reader.getLocation());
+						genes.put(reader.getAttributeValue(null, "id"), geneIds.size());
+						geneIds.add(emptyToNull(reader.getAttributeValue(null, "geneId")));
+						protIds.add(emptyToNull(reader.getAttributeValue(null, "protId")));
+						geneDatabase.add(database);
+					}
+					else if ("orthologGroup".equals(name) || "paralogGroup".equals(name))
+					{
+						if (groupDepth == 0) groupStart.add(groupMembers.size);
+						groupDepth++;
+					}
+					else if ("geneRef".equals(name) && groupDepth > 0)
+					{
+						Integer gene = genes.get(reader.getAttributeValue(null, "id"));
+						if (gene != null) groupMembers.add(gene);
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					String name = reader.getLocalName();
+					if ("orthologGroup".equals(name) || "paralogGroup".equals(name)) groupDepth--;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		groupStart.add(groupMembers.size);
+
+		return new OrthoXmlIndex(databases.toArray(new String[databases.size()]),
+				geneIds.toArray(new String[geneIds.size()]),
+				protIds.toArray(new String[protIds.size()]),
+				geneDatabase.toArray(), groupStart.toArray(), groupMembers.toArray());
+	}
+
+	/**
+	 * Writes the index to a file, to be read back with {@link #read(File)}.
+	 * The index is written to a temporary file in the same directory that is then renamed,
+	 * so that a connect running at the same time never reads half an index.
+	 * @param f file to write
+	 * @throws IOException if the file could not be written
+	 */
+	void write(File f) throws IOException
+	{
+		File tmp = File.createTempFile(f.getName(), ".tmp", f.getAbsoluteFile().getParentFile());
+		boolean written = false;
+		try
+		{
+			writeTo(tmp);
+			if (!tmp.renameTo(f))
+			{
+				//Windows does not rename over an existing file
+				f.delete();
+				if (!tmp.renameTo(f)) throw new IOException("Could not rename " + tmp + " to " + f);
+			}
+			written = true;
+		}
+		finally
+		{
+			if (!written) tmp.delete();
+		}
+	}
+
+	private void writeTo(File f) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(databases.length);
+			for (String database : databases) out.writeUTF(database == null ? "" : database);
+			out.writeInt(geneIds.length);
+			for (int gene = 0; gene < geneIds.length; gene++)
+			{
+				out.writeUTF(geneIds[gene] == null ? "" : geneIds[gene]);
+				out.writeUTF(protIds[gene] == null ? "" : protIds[gene]);
+				out.writeInt(geneDatabase[gene]);
+			}
+			writeInts(out, groupStart);
+			writeInts(out, groupMembers);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * @param f file written by {@link #write(File)}
+	 * @return the index in the file
+	 * @throws IOException if the file could not be read, is truncated or is not an index of this version
+	 */
+	static OrthoXmlIndex read(File f) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException(f + " is not an OrthoXML index of version " + VERSION);
+			}
+			String[] databases = new String[in.readInt()];
+			for (int i = 0; i < databases.length; i++) databases[i] = emptyToNull(in.readUTF());
+			int count = in.readInt();
+			String[] geneIds = new String[count];
+			String[] protIds = new String[count];
+			int[] geneDatabase = new int[count];
+			for (int gene = 0; gene < count; gene++)
+			{
+				geneIds[gene] = emptyToNull(in.readUTF());
+				protIds[gene] = emptyToNull(in.readUTF());
+				geneDatabase[gene] = checkRange(f, in.readInt(), databases.length);
+			}
+			int[] groupStart = readInts(in);
+			int[] groupMembers = readInts(in);
+			if (groupStart.length == 0 || groupStart[0] != 0 || groupStart[groupStart.length - 1] != groupMembers.length)
+			{
+				throw new IOException(f + " has inconsistent groups");
+			}
+			for (int i = 1; i < groupStart.length; i++)
+			{
+				if (groupStart[i] < groupStart[i - 1]) throw new IOException(f + " has inconsistent groups");
+			}
+			for (int gene : groupMembers) checkRange(f, gene, count);
+			if (in.read() != -1) throw new IOException(f + " has data after the end of the index");
+			return new OrthoXmlIndex(databases, geneIds, protIds, geneDatabase, groupStart, groupMembers);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static int checkRange(File f, int value, int size) throws IOException
+	{
+		if (value < 0 || value >= size) throw new IOException(f + " has an entry " + value + " out of range");
+		return value;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (int value : values) out.writeInt(value);
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException
+	{
+		int[] result = new int[in.readInt()];
+		for (int i = 0; i < result.length; i++) result[i] = in.readInt();
+		return result;
+	}
+}
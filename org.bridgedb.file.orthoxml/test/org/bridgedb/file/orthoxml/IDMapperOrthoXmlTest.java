@@ -0,0 +1,154 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.file.orthoxml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Set;
+
+import org.bridgedb.BridgeDb;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.bio.BioDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IDMapperOrthoXmlTest
+{
+	private static final Xref ENSG01 = new Xref("ENSG01", BioDataSource.ENSEMBL_HUMAN);
+	private static final Xref FBPP02 = new Xref("FBpp02", BioDataSource.FLYBASE);
+
+	private File index;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Class.forName("org.bridgedb.file.orthoxml.IDMapperOrthoXml");
+		index = File.createTempFile("orthoxml", ".index");
+		index.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		index.delete();
+	}
+
+	private String location()
+	{
+		return "idmapper-orthoxml:" + getClass().getClassLoader().getResource("sample.orthoxml");
+	}
+
+	private static void checkGroups(IDMapper mapper) throws IDMapperException
+	{
+		Set<Xref> result = mapper.mapID(ENSG01);
+		// gene and protein ids of the group, including those of the nested paralogGroup
+		Assert.assertEquals(6, result.size());
+		Assert.assertTrue(result.contains(FBPP02));
+
+		result = mapper.mapID(FBPP02, BioDataSource.ENSEMBL_HUMAN);
+		Assert.assertEquals(2, result.size());
+		Assert.assertTrue(result.contains(ENSG01));
+
+		Assert.assertTrue(mapper.xrefExists(new Xref("ENSP02", BioDataSource.ENSEMBL_HUMAN)));
+		// not in a group
+		Assert.assertFalse(mapper.xrefExists(new Xref("ENSG03", BioDataSource.ENSEMBL_HUMAN)));
+		Assert.assertFalse(mapper.xrefExists(new Xref("ENSG01", BioDataSource.FLYBASE)));
+		Assert.assertTrue(mapper.getCapabilities().isMappingSupported(BioDataSource.FLYBASE, BioDataSource.ENSEMBL_HUMAN));
+	}
+
+	@Test
+	public void testMapping() throws IDMapperException
+	{
+		checkGroups(BridgeDb.connect(location()));
+	}
+
+	@Test
+	public void testIndex() throws IDMapperException, IOException
+	{
+		checkGroups(BridgeDb.connect(location() + "?index=" + index.getPath()));
+		Assert.assertTrue(index.isFile());
+		checkGroups(new IDMapperOrthoXml(new File("does-not-exist.orthoxml").toURI().toURL(), index));
+	}
+
+	private void connectWithIndex() throws IDMapperException
+	{
+		checkGroups(BridgeDb.connect(location() + "?index=" + index.getPath()));
+	}
+
+	@Test
+	public void testStaleIndex() throws IDMapperException, IOException
+	{
+		OutputStream out = new FileOutputStream(index);
+		try
+		{
+			// right magic number, but an older version
+			out.write(new byte[] { 0x4f, 0x58, 0x49, 0x4e, 0, 0, 0, 1 });
+		}
+		finally
+		{
+			out.close();
+		}
+		connectWithIndex();
+		// the index was written again, so it can now be used without the OrthoXML file
+		checkGroups(new IDMapperOrthoXml(new File("does-not-exist.orthoxml").toURI().toURL(), index));
+	}
+
+	@Test
+	public void testTruncatedIndex() throws IDMapperException, IOException
+	{
+		connectWithIndex();
+		RandomAccessFile file = new RandomAccessFile(index, "rw");
+		try
+		{
+			file.setLength(file.length() - 5);
+		}
+		finally
+		{
+			file.close();
+		}
+		connectWithIndex();
+		checkGroups(new IDMapperOrthoXml(new File("does-not-exist.orthoxml").toURI().toURL(), index));
+	}
+
+	@Test
+	public void testGeneInSeveralGroups() throws IDMapperException, IOException
+	{
+		String location = "idmapper-orthoxml:" + getClass().getClassLoader().getResource("multigroup.orthoxml");
+		IDMapper mapper = BridgeDb.connect(location + "?index=" + index.getPath());
+		for (int i = 0; i < 2; i++)
+		{
+			// ENSG01 is in the first two groups, and twice in the first
+			Set<Xref> result = mapper.mapID(new Xref("ENSG01", BioDataSource.ENSEMBL_HUMAN));
+			Assert.assertEquals(3, result.size());
+			Assert.assertTrue(result.contains(new Xref("FBgn01", BioDataSource.FLYBASE)));
+			Assert.assertTrue(result.contains(new Xref("FBgn02", BioDataSource.FLYBASE)));
+			Assert.assertFalse(result.contains(new Xref("ENSG02", BioDataSource.ENSEMBL_HUMAN)));
+
+			result = mapper.mapID(new Xref("FBgn02", BioDataSource.FLYBASE));
+			Assert.assertEquals(2, result.size());
+			// again from the index
+			mapper = new IDMapperOrthoXml(new File("does-not-exist.orthoxml").toURI().toURL(), index);
+		}
+	}
+}
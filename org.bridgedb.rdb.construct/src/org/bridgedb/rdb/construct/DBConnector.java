@@ -116,6 +116,17 @@ public abstract class DBConnector
 	{
 		//May be implemented by subclasses
 	}
+
+	/**
+	 * This method may be implemented to create indices tuned for the database engine,
+	 * on top of the ones every gdb gets. It is called after all data is added to the database.
+	 * @param con A connection to the database
+	 * @throws SQLException when there was a database error
+	 */
+	public void createExtraIndices(Connection con) throws SQLException
+	{
+		//May be implemented by subclasses
+	}
 	
 
 }
@@ -32,7 +32,8 @@ import org.bridgedb.IDMapperException;
 //import org.pathvisio.debug.StopWatch;
 
 /**
-   DBConnector implementation using the hsqldb driver
+   DBConnector implementation using the hsqldb driver.
+   Gdbs made with this can be read with the idmapper-hsqldb driver.
 */
 public class DataHsqldb extends DBConnector
 {
@@ -77,6 +78,25 @@ public class DataHsqldb extends DBConnector
 		return con;
 	}
 
+	/**
+	 * Adds two column indices for both sides of the link table and one for getAttributes,
+	 * as HSQLDB only uses one index per table in a query. 
+	 */
+	public void createExtraIndices(Connection con) throws SQLException
+	{
+		Statement sh = con.createStatement();
+		try
+		{
+			sh.execute("CREATE INDEX i_left ON link(idLeft, codeLeft)");
+			sh.execute("CREATE INDEX i_right ON link(idRight, codeRight)");
+			sh.execute("CREATE INDEX i_attribute ON attribute(id, code)");
+		}
+		finally
+		{
+			sh.close();
+		}
+	}
+
 	public void closeConnection(Connection con) throws IDMapperException 
 	{	
 		closeConnection(con, PROP_NONE);
@@ -117,7 +137,7 @@ public class DataHsqldb extends DBConnector
 	void setPropertyReadOnly(String dbName, boolean readonly) {
     	Properties prop = new Properties();
 		try {
-			File propertyFile = dbName2File(dbName);
+			File propertyFile = dbName2File(file2DbName(dbName));
 			prop.load(new FileInputStream(propertyFile));
 			prop.setProperty("hsqldb.files_readonly", Boolean.toString(readonly));
 			prop.store(new FileOutputStream(propertyFile), "HSQL Database Engine");
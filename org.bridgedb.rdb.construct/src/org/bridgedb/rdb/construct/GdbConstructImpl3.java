@@ -1,9 +1,14 @@
 package org.bridgedb.rdb.construct;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.bridgedb.IDMapperException;
 import org.bridgedb.Xref;
@@ -16,6 +21,9 @@ public class GdbConstructImpl3 implements GdbConstruct
 	private final DBConnector dbConnector; //TODO
 	private String dbName; //TODO
 	private Exception recentException = null;
+
+	/** Number of rows sent to the database at once, or 0 to insert each row as it is added */
+	private int batchSize = 0;
 	
 	public GdbConstructImpl3(String dbName, DBConnector dbConnector, int props) throws IDMapperException
 	{
@@ -30,6 +38,7 @@ public class GdbConstructImpl3 implements GdbConstruct
 	 */
 	final public void compact() throws IDMapperException
 	{
+		flush();
 		dbConnector.compact(con);
 	}
 	
@@ -39,6 +48,7 @@ public class GdbConstructImpl3 implements GdbConstruct
 	 */
 	final public void finalize() throws IDMapperException
 	{
+		flush();
 		dbConnector.compact(con);
 		createGdbIndices();
 		dbConnector.closeConnection(con, DBConnector.PROP_FINALIZE);
@@ -51,12 +61,44 @@ public class GdbConstructImpl3 implements GdbConstruct
     private PreparedStatement pstLink = null;
     private PreparedStatement pstAttr = null;
 
+    private final List<String[]> pendingGenes = new ArrayList<String[]>();
+    private final List<String[]> pendingLinks = new ArrayList<String[]>();
+    private final List<String[]> pendingAttrs = new ArrayList<String[]>();
+    private final Set<String> geneKeys = new HashSet<String>();
+    private final Set<String> pendingLinkKeys = new HashSet<String>();
+
+	/**
+	 * Switches to batched inserts.
+	 * <p>
+	 * Rows given to addGene, addLink and addAttribute are then collected and sent to the database
+	 * batchSize at a time, which is much faster than a round trip per row.
+	 * Duplicate genes are dropped before they are sent, which takes memory for the key of every gene.
+	 * Duplicate links are only dropped within a batch, as there are far more of them.
+	 * A duplicate of a link from an earlier batch is refused by the database and skipped.
+	 * <p>
+	 * As errors are only found when a batch is sent, addGene, addLink and addAttribute
+	 * report them for the call that filled the batch.
+	 * Pending rows are sent by {@link #commit()} and {@link #finalize()}.
+	 * @param batchSize number of rows per batch, or 0 (the default) to insert each row as it is added.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize < 0) throw new IllegalArgumentException("batchSize must not be negative");
+		this.batchSize = batchSize;
+	}
+
 	/** {@inheritDoc} */
 	public int addGene(Xref ref)
 	{
 		recentException = null;
 		//TODO: bpText is unused
     	if (pstGene == null) throw new NullPointerException();
+		if (batchSize > 0)
+		{
+			String[] row = new String[] { ref.getId(), ref.getDataSource().getSystemCode() };
+			if (geneKeys.add(row[0] + "\t" + row[1])) pendingGenes.add(row);
+			return flushIfFull(pendingGenes);
+		}
 		try 
 		{
 			pstGene.setString(1, ref.getId());
@@ -75,6 +117,11 @@ public class GdbConstructImpl3 implements GdbConstruct
     public int addAttribute(Xref ref, String attr, String val)
     {
     	recentException = null;
+		if (batchSize > 0)
+		{
+			pendingAttrs.add(new String[] { attr, val, ref.getId(), ref.getDataSource().getSystemCode() });
+			return flushIfFull(pendingAttrs);
+		}
     	try {
     		pstAttr.setString(1, attr);
 			pstAttr.setString(2, val);
@@ -93,6 +140,13 @@ public class GdbConstructImpl3 implements GdbConstruct
     {
     	if (pstLink == null) throw new NullPointerException();
     	recentException = null;
+		if (batchSize > 0)
+		{
+			String[] row = new String[] { left.getId(), left.getDataSource().getSystemCode(),
+					right.getId(), right.getDataSource().getSystemCode() };
+			if (pendingLinkKeys.add(row[0] + "\t" + row[1] + "\t" + row[2] + "\t" + row[3])) pendingLinks.add(row);
+			return flushIfFull(pendingLinks);
+		}
     	try 
     	{
 			pstLink.setString(1, left.getId());
@@ -109,6 +163,85 @@ public class GdbConstructImpl3 implements GdbConstruct
 		return 0;
 	}
 
+	private int flushIfFull(List<String[]> pending)
+	{
+		if (pending.size() < batchSize) return 0;
+		try
+		{
+			flush();
+		}
+		catch (IDMapperException e)
+		{
+			recentException = e;
+			return 1;
+		}
+		return recentException == null ? 0 : 1;
+	}
+
+	/**
+	 * Sends all rows waiting in the batches to the database.
+	 * Does nothing if batching is off.
+	 * @throws IDMapperException on failure
+	 */
+	public void flush() throws IDMapperException
+	{
+		try
+		{
+			executeBatch(pstGene, pendingGenes);
+			executeBatch(pstLink, pendingLinks);
+			pendingLinkKeys.clear();
+			executeBatch(pstAttr, pendingAttrs);
+		}
+		catch (SQLException e)
+		{
+			throw new IDMapperException (e);
+		}
+	}
+
+	private void executeBatch(PreparedStatement pst, List<String[]> rows) throws SQLException
+	{
+		int start = 0;
+		try
+		{
+			while (start < rows.size())
+			{
+				for (int r = start; r < rows.size(); r++)
+				{
+					String[] row = rows.get(r);
+					for (int i = 0; i < row.length; i++) pst.setString(i + 1, row[i]);
+					pst.addBatch();
+				}
+				try
+				{
+					pst.executeBatch();
+					return;
+				}
+				catch (BatchUpdateException e)
+				{
+					pst.clearBatch();
+					//Derby stops at the failed row, so carry on with the rows after it
+					int done = e.getUpdateCounts() == null ? 0 : e.getUpdateCounts().length;
+					SQLException cause = e.getNextException() == null ? e : e.getNextException();
+					if (!isConstraintViolation(e) && !isConstraintViolation(cause)) throw e;
+					recentException = cause;
+					//Drivers that carry on after a failed row report a count for every row
+					if (start + done >= rows.size()) return;
+					start += done + 1;
+				}
+			}
+		}
+		finally
+		{
+			rows.clear();
+		}
+	}
+
+	/** SQL state class 23 is an integrity constraint violation, such as a duplicate primary key */
+	private static boolean isConstraintViolation(SQLException e)
+	{
+		return e.getSQLState() != null && e.getSQLState().startsWith("23");
+	}
+
 	/**
 	   prepare for inserting genes and/or links.
 	   @throws IDMapperException on failure
@@ -196,6 +329,8 @@ public class GdbConstructImpl3 implements GdbConstruct
 					"CREATE INDEX i_code" +
 					" ON " + "datanode" + "(code)"
 			);
+			sh.close();
+			dbConnector.createExtraIndices(con);
 		}
 		catch (SQLException e)
 		{
@@ -275,6 +410,7 @@ public class GdbConstructImpl3 implements GdbConstruct
 	 */
 	final public void commit() throws IDMapperException
 	{
+		flush();
 		try
 		{
 			con.commit();
@@ -0,0 +1,282 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb.construct;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+
+/**
+ * GdbConstruct that lets several threads add genes, links and attributes at once.
+ * <p>
+ * A JDBC connection can only be used by one thread, so the rows are put on a bounded queue
+ * and written by a single writer thread, while the producers go on parsing their input.
+ * Combine with {@link GdbConstructImpl3#setBatchSize(int)} so the writer also sends the rows in batches.
+ * <p>
+ * addGene, addLink and addAttribute return as soon as the row is queued,
+ * so they return 1 only if the producer was interrupted.
+ * Errors from writing the rows are counted in {@link #getErrorCount()}
+ * and the last one is returned by {@link #recentException()}.
+ * All other methods first wait until the queue is written.
+ */
+public class QueuedGdbConstruct implements GdbConstruct
+{
+	private static final int GENE = 0;
+	private static final int LINK = 1;
+	private static final int ATTRIBUTE = 2;
+	private static final int STOP = 3;
+
+	private static final class Row
+	{
+		final int type;
+		final Xref left;
+		final Xref right;
+		final String attr;
+		final String val;
+
+		Row (int type, Xref left, Xref right, String attr, String val)
+		{
+			this.type = type;
+			this.left = left;
+			this.right = right;
+			this.attr = attr;
+			this.val = val;
+		}
+	}
+
+	private final GdbConstruct delegate;
+	private final BlockingQueue<Row> queue;
+	private final Object lock = new Object();
+	private long queued = 0;
+	private long written = 0;
+	private long errors = 0;
+	private volatile Exception recentException = null;
+	private Thread writer = null;
+	private boolean finalized = false;
+
+	/**
+	 * @param delegate GdbConstruct the rows are written to, only used by one thread at a time.
+	 * @param capacity maximum number of rows waiting to be written, after which producers block.
+	 */
+	public QueuedGdbConstruct(GdbConstruct delegate, int capacity)
+	{
+		this.delegate = delegate;
+		queue = new ArrayBlockingQueue<Row>(capacity);
+	}
+
+	/** {@inheritDoc} */
+	public int addGene(Xref ref)
+	{
+		return submit (new Row (GENE, ref, null, null, null));
+	}
+
+	/** {@inheritDoc} */
+	public int addAttribute(Xref ref, String attr, String val)
+	{
+		return submit (new Row (ATTRIBUTE, ref, null, attr, val));
+	}
+
+	/** {@inheritDoc} */
+	public int addLink(Xref left, Xref right)
+	{
+		return submit (new Row (LINK, left, right, null, null));
+	}
+
+	private int submit(Row row)
+	{
+		synchronized (lock)
+		{
+			if (writer == null)
+			{
+				writer = new Thread (new Runnable()
+				{
+					public void run()
+					{
+						write();
+					}
+				}, "GdbConstruct writer");
+				writer.setDaemon(true);
+				writer.start();
+			}
+			queued++;
+		}
+		try
+		{
+			queue.put(row);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			synchronized (lock)
+			{
+				queued--;
+				lock.notifyAll();
+			}
+			return 1;
+		}
+		return 0;
+	}
+
+	private void write()
+	{
+		while (true)
+		{
+			Row row;
+			try
+			{
+				row = queue.take();
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			if (row.type == STOP) return;
+			int result;
+			try
+			{
+				switch (row.type)
+				{
+				case GENE: result = delegate.addGene(row.left); break;
+				case LINK: result = delegate.addLink(row.left, row.right); break;
+				default: result = delegate.addAttribute(row.left, row.attr, row.val); break;
+				}
+				if (result != 0 && delegate.recentException() != null)
+					recentException = delegate.recentException();
+			}
+			catch (RuntimeException e)
+			{
+				result = 1;
+				recentException = e;
+			}
+			synchronized (lock)
+			{
+				if (result != 0) errors++;
+				written++;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all queued rows are given to the delegate.
+	 * @throws IDMapperException if interrupted while waiting
+	 */
+	public void waitForQueue() throws IDMapperException
+	{
+		synchronized (lock)
+		{
+			while (written < queued)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IDMapperException ("Interrupted while waiting for rows to be written", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of rows that failed to be written so far.
+	 */
+	public long getErrorCount()
+	{
+		synchronized (lock)
+		{
+			return errors;
+		}
+	}
+
+	/** {@inheritDoc} */
+	public Exception recentException()
+	{
+		return recentException;
+	}
+
+	/** {@inheritDoc} */
+	public void setInfo(String key, String value) throws IDMapperException
+	{
+		waitForQueue();
+		delegate.setInfo(key, value);
+	}
+
+	/** {@inheritDoc} */
+	public void createGdbIndices() throws IDMapperException
+	{
+		waitForQueue();
+		delegate.createGdbIndices();
+	}
+
+	/** {@inheritDoc} */
+	public void preInsert() throws IDMapperException
+	{
+		waitForQueue();
+		delegate.preInsert();
+	}
+
+	/** {@inheritDoc} */
+	public void createGdbTables() throws IDMapperException
+	{
+		waitForQueue();
+		delegate.createGdbTables();
+	}
+
+	/** {@inheritDoc} */
+	public void commit() throws IDMapperException
+	{
+		waitForQueue();
+		delegate.commit();
+	}
+
+	/**
+	 * Waits for the queue, stops the writer thread and finalizes the delegate.
+	 * Only the first call has any effect, as this is also called by the garbage collector.
+	 */
+	public void finalize() throws IDMapperException
+	{
+		waitForQueue();
+		Thread stopping;
+		synchronized (lock)
+		{
+			if (finalized) return;
+			finalized = true;
+			stopping = writer;
+			writer = null;
+		}
+		// the writer takes the lock after each row, so it is stopped and joined outside the lock
+		if (stopping != null)
+		{
+			try
+			{
+				queue.put(new Row (STOP, null, null, null, null));
+				stopping.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IDMapperException ("Interrupted while stopping the writer", e);
+			}
+		}
+		delegate.finalize();
+	}
+}
@@ -0,0 +1,107 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb.construct;
+
+import java.io.File;
+import java.util.Set;
+
+import org.bridgedb.BridgeDb;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Builds a small gdb with DataHsqldb and reads it back through the idmapper-hsqldb driver.
+ */
+public class DataHsqldbTest
+{
+	private static final DataSource LEFT = DataSource.register("Hl", "DataHsqldbTest left").asDataSource();
+	private static final DataSource RIGHT = DataSource.register("Hr", "DataHsqldbTest right").asDataSource();
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Class.forName("org.bridgedb.rdb.IDMapperRdb");
+		dir = File.createTempFile("hsqldbtest", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (File f : dir.listFiles()) f.delete();
+		dir.delete();
+	}
+
+	private String build() throws IDMapperException
+	{
+		String dbName = new File(dir, "test").getAbsolutePath();
+		GdbConstruct construct = GdbConstructImpl3.createInstance(dbName, new DataHsqldb(), DBConnector.PROP_RECREATE);
+		construct.createGdbTables();
+		construct.preInsert();
+		Xref left = new Xref("L1", LEFT);
+		construct.addGene(left);
+		construct.addGene(new Xref("R1", RIGHT));
+		construct.addGene(new Xref("R2", RIGHT));
+		construct.addLink(left, left);
+		construct.addLink(left, new Xref("R1", RIGHT));
+		construct.addLink(left, new Xref("R2", RIGHT));
+		construct.addAttribute(left, "Symbol", "LEFT1");
+		construct.setInfo("DATASOURCENAME", "DataHsqldbTest");
+		construct.setInfo("SERIES", "test");
+		construct.setInfo("DATATYPE", "GeneProduct");
+		construct.setInfo("DATASOURCEVERSION", "1");
+		construct.setInfo("BUILDDATE", "20240101");
+		construct.commit();
+		construct.finalize();
+		return dbName;
+	}
+
+	@Test
+	public void testBuildAndOpen() throws IDMapperException
+	{
+		String dbName = build();
+		Assert.assertTrue(new File(dbName + ".properties").isFile());
+		IDMapper mapper = BridgeDb.connect("idmapper-hsqldb:" + dbName + ".properties");
+		try
+		{
+			Set<Xref> result = mapper.mapID(new Xref("L1", LEFT), RIGHT);
+			Assert.assertEquals(2, result.size());
+			Assert.assertTrue(result.contains(new Xref("R2", RIGHT)));
+			Assert.assertTrue(mapper.xrefExists(new Xref("R1", RIGHT)));
+			Assert.assertFalse(mapper.xrefExists(new Xref("R3", RIGHT)));
+		}
+		finally
+		{
+			mapper.close();
+		}
+	}
+
+	@Test(expected = IDMapperException.class)
+	public void testMissingDatabase() throws IDMapperException
+	{
+		BridgeDb.connect("idmapper-hsqldb:" + new File(dir, "missing").getAbsolutePath());
+	}
+}
@@ -0,0 +1,153 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb.construct;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests batched inserts into an in memory Derby database,
+ * including the fall back that skips rows already in the database.
+ */
+public class GdbConstructBatchTest
+{
+	private static final DataSource DS = DataSource.register("Bt", "GdbConstructBatchTest").asDataSource();
+
+	private static int count = 0;
+	private String url;
+	private Connection con;
+	private GdbConstructImpl3 construct;
+
+	private class MemoryConnector extends DBConnector
+	{
+		public Connection createConnection(String dbName, int props) throws IDMapperException
+		{
+			try
+			{
+				con = DriverManager.getConnection(url + ";create=true");
+				return con;
+			}
+			catch (SQLException e)
+			{
+				throw new IDMapperException (e);
+			}
+		}
+
+		public String finalizeNewDatabase(String dbName)
+		{
+			return dbName;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		url = "jdbc:derby:memory:batchtest" + (count++);
+		construct = new GdbConstructImpl3("batchtest", new MemoryConnector(), DBConnector.PROP_RECREATE);
+		construct.createGdbTables();
+		construct.preInsert();
+		construct.setBatchSize(3);
+	}
+
+	@After
+	public void tearDown() throws SQLException
+	{
+		con.rollback();
+		con.close();
+		try
+		{
+			DriverManager.getConnection(url + ";drop=true");
+		}
+		catch (SQLException expected) {}
+	}
+
+	private int rows(String table) throws SQLException
+	{
+		Statement st = con.createStatement();
+		ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table);
+		rs.next();
+		int result = rs.getInt(1);
+		st.close();
+		return result;
+	}
+
+	private static Xref xref(String id)
+	{
+		return new Xref(id, DS);
+	}
+
+	@Test
+	public void testBatches() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			Assert.assertEquals(0, construct.addGene(xref("g" + i)));
+			//Duplicate genes are dropped before they are sent
+			Assert.assertEquals(0, construct.addGene(xref("g" + i)));
+			construct.addAttribute(xref("g" + i), "Symbol", "s" + i);
+		}
+		construct.commit();
+		Assert.assertEquals(10, rows("datanode"));
+		Assert.assertEquals(10, rows("attribute"));
+	}
+
+	@Test
+	public void testDuplicateLinksSkipped() throws Exception
+	{
+		construct.addLink(xref("a"), xref("b"));
+		construct.addLink(xref("a"), xref("c"));
+		construct.addLink(xref("a"), xref("d"));
+		//The next batch repeats a link already in the database, in the middle
+		construct.addLink(xref("a"), xref("e"));
+		construct.addLink(xref("a"), xref("b"));
+		Assert.assertEquals(1, construct.addLink(xref("a"), xref("f")));
+		Assert.assertNotNull(construct.recentException());
+		construct.commit();
+		Assert.assertEquals(5, rows("link"));
+	}
+
+	@Test
+	public void testOtherErrorsReported() throws Exception
+	{
+		StringBuilder tooLong = new StringBuilder();
+		for (int i = 0; i < 60; i++) tooLong.append('x');
+		construct.addGene(xref("g1"));
+		construct.addGene(xref("g2"));
+		//Not a duplicate so it must not be skipped quietly
+		Assert.assertEquals(1, construct.addGene(xref(tooLong.toString())));
+		Assert.assertTrue(construct.recentException() instanceof IDMapperException);
+		try
+		{
+			construct.addGene(xref(tooLong.toString() + "y"));
+			construct.commit();
+			Assert.fail("Value too long for the column was not reported");
+		}
+		catch (IDMapperException expected) {}
+	}
+}
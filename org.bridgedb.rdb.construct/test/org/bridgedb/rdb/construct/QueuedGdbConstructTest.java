@@ -0,0 +1,113 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb.construct;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the rows from several producer threads all reach the delegate and the writer stops cleanly.
+ */
+public class QueuedGdbConstructTest
+{
+	private static final DataSource DS = DataSource.register("Qt", "QueuedGdbConstructTest").asDataSource();
+
+	/** Records the rows it is given, slowly, and refuses genes with the id "bad" */
+	private static class RecordingConstruct implements GdbConstruct
+	{
+		final List<String> rows = new ArrayList<String>();
+		boolean finalized = false;
+
+		private int record(String row)
+		{
+			Thread.yield();
+			synchronized (rows)
+			{
+				rows.add(row);
+			}
+			return row.startsWith("gene bad") ? 1 : 0;
+		}
+
+		public Exception recentException() { return null; }
+		public int addGene(Xref ref) { return record("gene " + ref.getId()); }
+		public int addAttribute(Xref ref, String attr, String val) { return record("attr " + ref.getId()); }
+		public int addLink(Xref left, Xref right) { return record("link " + left.getId()); }
+		public void setInfo(String key, String value) {}
+		public void createGdbIndices() {}
+		public void preInsert() {}
+		public void createGdbTables() {}
+		public void commit() {}
+		public void finalize() { finalized = true; }
+	}
+
+	@Test(timeout = 20000)
+	public void testProducers() throws Exception
+	{
+		final RecordingConstruct delegate = new RecordingConstruct();
+		//A tiny queue so the producers keep blocking on the writer
+		final QueuedGdbConstruct queued = new QueuedGdbConstruct(delegate, 2);
+		Thread[] producers = new Thread[4];
+		for (int t = 0; t < producers.length; t++)
+		{
+			final int thread = t;
+			producers[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for (int i = 0; i < 250; i++)
+					{
+						Xref ref = new Xref(thread + "_" + i, DS);
+						queued.addGene(ref);
+						queued.addLink(ref, ref);
+					}
+				}
+			});
+			producers[t].start();
+		}
+		for (Thread producer : producers) producer.join();
+		queued.addGene(new Xref("bad", DS));
+		queued.commit();
+		Assert.assertEquals(2001, delegate.rows.size());
+		Assert.assertEquals(1, queued.getErrorCount());
+		queued.finalize();
+		Assert.assertTrue(delegate.finalized);
+		//Only the first call has an effect
+		delegate.finalized = false;
+		queued.finalize();
+		Assert.assertFalse(delegate.finalized);
+	}
+
+	@Test(timeout = 20000)
+	public void testFinalizeWithFullQueue() throws IDMapperException
+	{
+		RecordingConstruct delegate = new RecordingConstruct();
+		QueuedGdbConstruct queued = new QueuedGdbConstruct(delegate, 1);
+		for (int i = 0; i < 100; i++)
+		{
+			queued.addGene(new Xref("" + i, DS));
+		}
+		queued.finalize();
+		Assert.assertEquals(100, delegate.rows.size());
+		Assert.assertTrue(delegate.finalized);
+	}
+}
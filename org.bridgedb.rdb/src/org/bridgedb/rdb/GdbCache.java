@@ -0,0 +1,276 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.bridgedb.IDMapperException;
+
+/**
+ * Extracts zipped Derby gdbs (.bridge files) into a local cache directory,
+ * so they can be opened as a normal Derby directory database.
+ * <p>
+ * Derby reading pages out of a zip is much slower for random lookups than reading them from a directory.
+ * Each gdb is extracted once into a directory named after the SHA-1 checksum of the file,
+ * so a changed file is extracted again while an unchanged one is reused at every start.
+ * The checksum is remembered along with the size and modification time of the file
+ * so an unchanged file is not read again to check it.
+ * <p>
+ * The extracted copy is set to read only access.
+ * As Derby locks a directory database, a cache directory can not be used by two running processes at once.
+ */
+final class GdbCache
+{
+	/** Changed whenever the layout of the cache changes, so old caches are ignored */
+	static final String CACHE_VERSION = "v1";
+
+	/** Name of the directory inside the .bridge file, and the cache, holding the Derby database */
+	static final String DATABASE_DIR = "database";
+
+	private static final String SOURCE_FILE = "source.properties";
+	private static final String PROP_PATH = "path";
+	private static final String PROP_SIZE = "size";
+	private static final String PROP_MODIFIED = "modified";
+	private static final String PROP_CHECKSUM = "checksum";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File root;
+
+	/**
+	 * @param cacheDir Directory to hold the extracted gdbs. Created if needed.
+	 */
+	GdbCache(File cacheDir)
+	{
+		root = new File (cacheDir, CACHE_VERSION);
+	}
+
+	/**
+	 * Gets the extracted copy of a gdb, extracting it first if needed.
+	 * @param gdb zipped Derby database
+	 * @return the Derby database directory of the extracted copy
+	 * @throws IDMapperException if the gdb could not be read or extracted
+	 */
+	synchronized File getDatabase(File gdb) throws IDMapperException
+	{
+		try
+		{
+			String checksum = checksum(gdb);
+			File dir = new File (root, checksum);
+			File database = new File (dir, DATABASE_DIR);
+			if (database.isDirectory()) return database;
+
+			if (!root.isDirectory() && !root.mkdirs())
+				throw new IDMapperException ("Unable to create gdb cache directory " + root);
+			//Extract to a temporary directory first, so a failed or concurrent extraction is never used
+			File temp = new File (root, checksum + ".tmp" + System.nanoTime());
+			try
+			{
+				extract (gdb, temp);
+				setReadOnly (new File (temp, DATABASE_DIR));
+				if (!temp.renameTo(dir) && !database.isDirectory())
+					throw new IDMapperException ("Unable to move extracted gdb to " + dir);
+			}
+			finally
+			{
+				delete (temp);
+			}
+			return database;
+		}
+		catch (IOException e)
+		{
+			throw new IDMapperException ("Unable to extract gdb " + gdb, e);
+		}
+	}
+
+	/**
+	 * Gets the checksum of a file, reusing the remembered one if the file looks unchanged.
+	 */
+	private String checksum(File gdb) throws IOException
+	{
+		Properties sources = new Properties();
+		File sourceFile = new File (root, SOURCE_FILE);
+		if (sourceFile.exists())
+		{
+			InputStream in = new FileInputStream (sourceFile);
+			try { sources.load(in); } finally { in.close(); }
+		}
+		String key = gdb.getCanonicalPath();
+		String size = Long.toString(gdb.length());
+		String modified = Long.toString(gdb.lastModified());
+		if (size.equals(sources.getProperty(key + "." + PROP_SIZE)) &&
+				modified.equals(sources.getProperty(key + "." + PROP_MODIFIED)))
+		{
+			String checksum = sources.getProperty(key + "." + PROP_CHECKSUM);
+			if (checksum != null) return checksum;
+		}
+
+		String checksum = sha1(gdb);
+		sources.setProperty(key + "." + PROP_PATH, key);
+		sources.setProperty(key + "." + PROP_SIZE, size);
+		sources.setProperty(key + "." + PROP_MODIFIED, modified);
+		sources.setProperty(key + "." + PROP_CHECKSUM, checksum);
+		if (root.isDirectory() || root.mkdirs())
+		{
+			OutputStream out = new FileOutputStream (sourceFile);
+			try { sources.store(out, "Checksums of extracted gdbs"); } finally { out.close(); }
+		}
+		return checksum;
+	}
+
+	static String sha1(File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException ("SHA-1 not supported", e);
+		}
+		InputStream in = new BufferedInputStream (new FileInputStream (file), BUFFER_SIZE);
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			result.append(String.format("%02x", b & 0xff));
+		}
+		return result.toString();
+	}
+
+	private static void extract(File gdb, File target) throws IOException, IDMapperException
+	{
+		ZipFile zip = new ZipFile (gdb);
+		try
+		{
+			String targetPath = target.getCanonicalPath() + File.separator;
+			boolean found = false;
+			byte[] buffer = new byte[BUFFER_SIZE];
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements())
+			{
+				ZipEntry entry = entries.nextElement();
+				File file = new File (target, entry.getName());
+				if (!file.getCanonicalPath().startsWith(targetPath))
+					throw new IDMapperException ("Illegal entry " + entry.getName() + " in " + gdb);
+				if (entry.isDirectory())
+				{
+					file.mkdirs();
+					continue;
+				}
+				if (entry.getName().startsWith(DATABASE_DIR + "/")) found = true;
+				file.getParentFile().mkdirs();
+				InputStream in = zip.getInputStream(entry);
+				OutputStream out = new BufferedOutputStream (new FileOutputStream (file), BUFFER_SIZE);
+				try
+				{
+					int read;
+					while ((read = in.read(buffer)) != -1)
+					{
+						out.write(buffer, 0, read);
+					}
+				}
+				finally
+				{
+					out.close();
+					in.close();
+				}
+			}
+			if (!found)
+				throw new IDMapperException (gdb + " does not contain a " + DATABASE_DIR + " directory");
+		}
+		finally
+		{
+			zip.close();
+		}
+	}
+
+	/**
+	 * Boots the extracted database once to make all later connections read only,
+	 * then shuts it down so it can be moved into place.
+	 */
+	private static void setReadOnly(File database) throws IDMapperException
+	{
+		String url = "jdbc:derby:" + database.getAbsolutePath();
+		Connection con = null;
+		try
+		{
+			con = DriverManager.getConnection(url);
+			Statement st = con.createStatement();
+			st.execute("CALL SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+					"'derby.database.defaultConnectionMode', 'readOnlyAccess')");
+			st.close();
+		}
+		catch (SQLException e)
+		{
+			throw new IDMapperException ("Unable to set extracted gdb " + database + " to read only", e);
+		}
+		finally
+		{
+			if (con != null) try { con.close(); } catch (SQLException ignore) {}
+		}
+		try
+		{
+			DriverManager.getConnection(url + ";shutdown=true");
+		}
+		catch (SQLException expected)
+		{
+			//Derby always reports a successful shutdown as an exception
+		}
+	}
+
+	private static void delete(File file)
+	{
+		if (!file.exists()) return;
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children) delete(child);
+		}
+		file.delete();
+	}
+}
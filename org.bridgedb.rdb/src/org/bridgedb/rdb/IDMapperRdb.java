@@ -19,6 +19,7 @@ package org.bridgedb.rdb;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -43,18 +44,79 @@ public abstract class IDMapperRdb implements IDMapper, AttributeMapper, XrefIter
 		BridgeDb.register ("idmapper-pgdb", new DriverPgdb());
 		BridgeDb.register ("idmapper-derbyclient", new DriverClient());
 		BridgeDb.register ("idmapper-jdbc", new DriverJdbc());
+		BridgeDb.register ("idmapper-hsqldb", new DriverHsqldb());
 	}
 	
+	/**
+	 * Driver for zipped Derby gdbs (.bridge files).
+	 * <p>
+	 * By default Derby reads the database straight out of the zip file.
+	 * Adding <code>?extract=true</code> to the connection string, or setting the system property
+	 * <code>bridgedb.pgdb.extract</code> to true, instead extracts it once into a local cache
+	 * (see GdbCache) and opens that as a read only directory database, which is much faster for lookups.
+	 * The optional <code>cacheDir</code> parameter (system property <code>bridgedb.pgdb.cachedir</code>)
+	 * sets the cache directory and <code>pageCacheSize</code> (system property derby.storage.pageCacheSize)
+	 * the number of pages Derby keeps in memory.
+	 * <p>
+	 * Derby only has a system wide page cache size, so <code>pageCacheSize</code> is not a setting of
+	 * this connection: it sets the derby.storage.pageCacheSize system property for the whole JVM.
+	 * Every Derby database booted after that uses it, including those opened through other drivers,
+	 * while databases that are already booted keep their size.
+	 */
 	private static final class DriverPgdb implements org.bridgedb.Driver
 	{
+		static final String PAR_EXTRACT = "extract";
+		static final String PAR_CACHE_DIR = "cacheDir";
+		/** Sets {@link #PROP_PAGE_CACHE_SIZE} for the whole JVM, not just this connection */
+		static final String PAR_PAGE_CACHE_SIZE = "pageCacheSize";
+
+		static final String PROP_EXTRACT = "bridgedb.pgdb.extract";
+		static final String PROP_CACHE_DIR = "bridgedb.pgdb.cachedir";
+		static final String PROP_PAGE_CACHE_SIZE = "derby.storage.pageCacheSize";
+
+		/**
+		 * Derby's own default is 1000 pages, which is too small to keep a large gdb's link index warm.
+		 * Only set if the system property is not, so it also applies to Derby databases booted later.
+		 */
+		static final String DEFAULT_PAGE_CACHE_SIZE = "10000";
+
 		/** private constructor to prevent instantiation. */
 		private DriverPgdb() { } 
 		
 		/** {@inheritDoc} */
 		public IDMapper connect(String location) throws IDMapperException 
 		{
-			String url = "jdbc:derby:jar:(" + location + ")database";
-			return SimpleGdbFactory.createInstance(location, url);
+			Map<String, String> args = new HashMap<String, String>();
+			String file = location;
+			//A file name could contain a ?, so only treat it as parameters if the file does not exist. 
+			if (location.indexOf('?') > -1 && !new File(location).exists())
+			{
+				args = InternalUtils.parseLocation(location, PAR_EXTRACT, PAR_CACHE_DIR, PAR_PAGE_CACHE_SIZE);
+				file = args.get("BASE");
+				if (file == null)
+					throw new IllegalArgumentException("Expected file name in connection string: " + location);
+			}
+			String extract = args.containsKey(PAR_EXTRACT) ? 
+					args.get(PAR_EXTRACT) : System.getProperty(PROP_EXTRACT);
+			if (!Boolean.parseBoolean(extract))
+			{
+				String url = "jdbc:derby:jar:(" + file + ")database";
+				return SimpleGdbFactory.createInstance(file, url);
+			}
+
+			String cacheDir = args.containsKey(PAR_CACHE_DIR) ? 
+					args.get(PAR_CACHE_DIR) : System.getProperty(PROP_CACHE_DIR);
+			if (cacheDir == null)
+				cacheDir = System.getProperty("user.home") + File.separator + ".bridgedb" + File.separator + "gdbcache";
+			//Derby only reads the page cache size as a database boots, and only as a system wide property
+			if (args.containsKey(PAR_PAGE_CACHE_SIZE))
+				System.setProperty(PROP_PAGE_CACHE_SIZE, args.get(PAR_PAGE_CACHE_SIZE));
+			else if (System.getProperty(PROP_PAGE_CACHE_SIZE) == null)
+				System.setProperty(PROP_PAGE_CACHE_SIZE, DEFAULT_PAGE_CACHE_SIZE);
+
+			File database = new GdbCache(new File(cacheDir)).getDatabase(new File(file));
+			String url = "jdbc:derby:" + database.getAbsolutePath();
+			return SimpleGdbFactory.createInstance(file, url);
 		}
 	}
 
@@ -71,6 +133,37 @@ public abstract class IDMapperRdb implements IDMapper, AttributeMapper, XrefIter
 		}
 	}
 
+	/**
+	 * Driver for gdbs stored as a HSQLDB file database, as made by GdbConstructImpl3 with DataHsqldb.
+	 * The location is the database name, optionally with the .properties extension.
+	 * The HSQLDB jar is not a dependency of BridgeDb and needs to be on the classpath.
+	 */
+	private static final class DriverHsqldb implements org.bridgedb.Driver
+	{
+		static final String EXT = ".properties";
+
+		/** private constructor to prevent instantiation. */
+		private DriverHsqldb() { } 
+		
+		/** {@inheritDoc} */
+		public IDMapper connect(String location) throws IDMapperException 
+		{
+			try
+			{
+				Class.forName("org.hsqldb.jdbcDriver");
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IDMapperException ("HSQLDB driver not found, add the hsqldb jar to the classpath", e);
+			}
+			String dbName = location.endsWith(EXT) ? location.substring(0, location.length() - EXT.length()) : location;
+			if (!new File(dbName + EXT).exists())
+				throw new IDMapperException ("HSQLDB database not found: " + dbName + EXT);
+			String url = "jdbc:hsqldb:file:" + dbName + ";ifexists=true;readonly=true;user=sa;password=";
+			return SimpleGdbFactory.createInstance(location, url);
+		}
+	}
+
 	private static final class DriverClient implements org.bridgedb.Driver
 	{
 		/** private constructor to prevent instantiation. */
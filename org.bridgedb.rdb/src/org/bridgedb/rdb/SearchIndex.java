@@ -0,0 +1,262 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.bridgedb.Xref;
+
+/**
+ * In memory trigram index for case insensitive substring searches,
+ * used instead of a LIKE '%text%' query that has to scan a whole table.
+ * <p>
+ * Each entry is an xref with a text, such as its identifier or the value of one of its attributes.
+ * A query of three or more characters only looks at the entries containing all trigrams of the query.
+ * Shorter queries scan the texts in memory.
+ * <p>
+ * Results are ordered by relevance: exact matches first, then prefix matches, then other substring matches,
+ * with shorter texts before longer ones.
+ */
+final class SearchIndex
+{
+	private static final int GRAM = 3;
+
+	private static final int EXACT = 0;
+	private static final int PREFIX = 1;
+	private static final int SUBSTRING = 2;
+
+	private final Xref[] xrefs;
+	private final String[] texts;
+	private final String[] keys;
+	private final Map<String, int[]> postings;
+
+	/**
+	 * @param xrefs entries to index
+	 * @param texts the text to search for each entry, in the same order as xrefs
+	 */
+	SearchIndex(List<Xref> xrefs, List<String> texts)
+	{
+		if (xrefs.size() != texts.size()) throw new IllegalArgumentException("Number of xrefs and texts differ");
+		this.xrefs = xrefs.toArray(new Xref[xrefs.size()]);
+		this.texts = texts.toArray(new String[texts.size()]);
+		keys = new String[this.texts.length];
+		Map<String, IntList> grams = new HashMap<String, IntList>();
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = this.texts[i] == null ? "" : this.texts[i].toLowerCase();
+			for (int j = 0; j + GRAM <= keys[i].length(); j++)
+			{
+				String gram = keys[i].substring(j, j + GRAM);
+				IntList list = grams.get(gram);
+				if (list == null)
+				{
+					list = new IntList();
+					grams.put(gram, list);
+				}
+				list.addOnce(i);
+			}
+		}
+		postings = new HashMap<String, int[]>(grams.size() * 4 / 3 + 1);
+		for (Map.Entry<String, IntList> e : grams.entrySet())
+		{
+			postings.put(e.getKey(), e.getValue().toArray());
+		}
+	}
+
+	Xref getXref(int entry)
+	{
+		return xrefs[entry];
+	}
+
+	String getText(int entry)
+	{
+		return texts[entry];
+	}
+
+	/**
+	 * Finds the entries whose text contains the query, ignoring case.
+	 * @param query text to look for
+	 * @param limit maximum number of results, or 0 for no limit
+	 * @return the matching entries, most relevant first
+	 */
+	List<Integer> search(String query, int limit)
+	{
+		final String q = query.toLowerCase();
+		Comparator<Integer> relevance = relevance(q);
+
+		int[] candidates = candidates(q);
+		if (limit <= 0)
+		{
+			List<Integer> result = new ArrayList<Integer>();
+			for (int i = 0; i < count(candidates); i++)
+			{
+				int entry = entry(candidates, i);
+				if (keys[entry].contains(q)) result.add(entry);
+			}
+			Collections.sort(result, relevance);
+			return result;
+		}
+
+		//Keep the best limit matches, with the worst of them at the head of the queue
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>(limit + 1, Collections.reverseOrder(relevance));
+		for (int i = 0; i < count(candidates); i++)
+		{
+			int entry = entry(candidates, i);
+			if (!keys[entry].contains(q)) continue;
+			best.add(entry);
+			if (best.size() > limit) best.poll();
+		}
+		List<Integer> result = new ArrayList<Integer>(best);
+		Collections.sort(result, relevance);
+		return result;
+	}
+
+	/**
+	 * As search, but only with the most relevant entry of each xref,
+	 * so that the limit is on the number of different xrefs.
+	 * @param query text to look for
+	 * @param limit maximum number of xrefs, or 0 for no limit
+	 * @return the best matching entry of each xref, most relevant first
+	 */
+	List<Integer> searchXrefs(String query, int limit)
+	{
+		final String q = query.toLowerCase();
+		Comparator<Integer> relevance = relevance(q);
+
+		int[] candidates = candidates(q);
+		Map<Xref, Integer> bestOfXref = new HashMap<Xref, Integer>();
+		for (int i = 0; i < count(candidates); i++)
+		{
+			int entry = entry(candidates, i);
+			if (!keys[entry].contains(q)) continue;
+			Integer known = bestOfXref.get(xrefs[entry]);
+			if (known == null || relevance.compare(entry, known) < 0) bestOfXref.put(xrefs[entry], entry);
+		}
+		List<Integer> result = new ArrayList<Integer>(bestOfXref.values());
+		Collections.sort(result, relevance);
+		if (limit > 0 && result.size() > limit) return new ArrayList<Integer>(result.subList(0, limit));
+		return result;
+	}
+
+	private Comparator<Integer> relevance(final String q)
+	{
+		return new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int result = score(a, q) - score(b, q);
+				if (result == 0) result = keys[a].length() - keys[b].length();
+				if (result == 0) result = keys[a].compareTo(keys[b]);
+				if (result == 0) result = a - b;
+				return result;
+			}
+		};
+	}
+
+	private int score(int entry, String q)
+	{
+		if (keys[entry].equals(q)) return EXACT;
+		if (keys[entry].startsWith(q)) return PREFIX;
+		return SUBSTRING;
+	}
+
+	/**
+	 * @return the entries that contain all trigrams of the query, or null if the query is too short to use them,
+	 * meaning all entries are candidates.
+	 */
+	private int[] candidates(String q)
+	{
+		if (q.length() < GRAM) return null;
+		List<int[]> lists = new ArrayList<int[]>();
+		for (int j = 0; j + GRAM <= q.length(); j++)
+		{
+			int[] list = postings.get(q.substring(j, j + GRAM));
+			if (list == null) return new int[0];
+			lists.add(list);
+		}
+		Collections.sort(lists, new Comparator<int[]>()
+		{
+			public int compare(int[] a, int[] b)
+			{
+				return a.length - b.length;
+			}
+		});
+		int[] result = lists.get(0);
+		for (int k = 1; k < lists.size() && result.length > 0; k++)
+		{
+			result = intersect(result, lists.get(k));
+		}
+		return result;
+	}
+
+	private int count(int[] candidates)
+	{
+		return candidates == null ? keys.length : candidates.length;
+	}
+
+	private static int entry(int[] candidates, int i)
+	{
+		return candidates == null ? i : candidates[i];
+	}
+
+	/** Intersection of two ascending lists */
+	private static int[] intersect(int[] a, int[] b)
+	{
+		int[] result = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length)
+		{
+			if (a[i] < b[j]) i++;
+			else if (a[i] > b[j]) j++;
+			else
+			{
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/** Growable list of ascending ints, to avoid boxing while building */
+	private static final class IntList
+	{
+		private int[] data = new int[2];
+		private int size = 0;
+
+		void addOnce(int value)
+		{
+			if (size > 0 && data[size - 1] == value) return;
+			if (size == data.length) data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf(data, size);
+		}
+	}
+}
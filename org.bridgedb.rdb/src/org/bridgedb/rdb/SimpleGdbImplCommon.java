@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,13 +22,25 @@ import org.bridgedb.impl.InternalUtils;
 
 /**
  * Some methods and constants that are shared between SimpleGdbImpl2 and SimpleGdbImpl3
+ * <p>
+ * If the system property bridgedb.gdb.searchindex is true, freeSearch, freeAttributeSearch and
+ * freeAttributeSearchEx use an in memory {@link SearchIndex} instead of scanning the tables,
+ * and return the most relevant results first.
+ * The index for identifiers, and for each attribute, is built from the database at its first search.
  */
 public abstract class SimpleGdbImplCommon extends SimpleGdb
 {
+	static final String PROP_SEARCH_INDEX = "bridgedb.gdb.searchindex";
+
+	private final boolean useSearchIndex;
+	private SearchIndex idIndex = null;
+	private final Map<String, SearchIndex> attributeIndexes = new HashMap<String, SearchIndex>();
+
 	SimpleGdbImplCommon(String dbName, String connectionString) throws IDMapperException
 	{
 		super(dbName, connectionString);
 		caps = new SimpleGdbCapabilities();
+		useSearchIndex = Boolean.getBoolean(PROP_SEARCH_INDEX);
 	}
 
 	final SimpleGdb.QueryLifeCycle qDatasources = new SimpleGdb.QueryLifeCycle(
@@ -80,6 +94,9 @@ public abstract class SimpleGdbImplCommon extends SimpleGdb
 	final SimpleGdb.QueryLifeCycle qAllXrefs = new SimpleGdb.QueryLifeCycle(
 			"SELECT id, code FROM datanode"
 		);
+	final SimpleGdb.QueryLifeCycle qAttributesByName = new SimpleGdb.QueryLifeCycle(
+			"SELECT id, code, attrvalue FROM attribute WHERE attrname = ?"
+		);
 	final SimpleGdb.QueryLifeCycle qAllXrefsByDatasource = new SimpleGdb.QueryLifeCycle(
 			"SELECT id, code FROM datanode WHERE code = ?"
 		);
@@ -212,6 +229,13 @@ public abstract class SimpleGdbImplCommon extends SimpleGdb
 	/** {@inheritDoc} */
 	public Set<Xref> freeSearch (String text, int limit) throws IDMapperException 
 	{		
+		if (useSearchIndex)
+		{
+			SearchIndex index = getIdIndex();
+			Set<Xref> result = new LinkedHashSet<Xref>();
+			for (int entry : index.search(text, limit)) result.add(index.getXref(entry));
+			return result;
+		}
 		Set<Xref> result = new HashSet<Xref>();
 		final QueryLifeCycle pst = qFreeSearch;
 		synchronized (pst) { 
@@ -308,6 +332,14 @@ public abstract class SimpleGdbImplCommon extends SimpleGdb
 	 */
 	public Map<Xref, String> freeAttributeSearch (String query, String attrType, int limit) throws IDMapperException
 	{
+		if (useSearchIndex && !MATCH_ID.equals (attrType))
+		{
+			SearchIndex index = getAttributeIndex(attrType);
+			Map<Xref, String> result = new LinkedHashMap<Xref, String>();
+			//An xref can have several values, keep its best one and count it once
+			for (int entry : index.searchXrefs(query, limit)) result.put(index.getXref(entry), index.getText(entry));
+			return result;
+		}
 		Map<Xref, String> result = new HashMap<Xref, String>();
 		final QueryLifeCycle pst = (MATCH_ID.equals (attrType)) ? 
 				qIdSearchWithAttributes : qAttributeSearch;
@@ -335,6 +367,14 @@ public abstract class SimpleGdbImplCommon extends SimpleGdb
 	
 	public Map<Xref, Set<String>> freeAttributeSearchEx (String query, String attrType, int limit) throws IDMapperException
 	{
+		if (useSearchIndex && !MATCH_ID.equals (attrType))
+		{
+			SearchIndex index = getAttributeIndex(attrType);
+			Map<Xref, Set<String>> result = new LinkedHashMap<Xref, Set<String>>();
+			for (int entry : index.search(query, limit)) 
+				InternalUtils.multiMapPut(result, index.getXref(entry), index.getText(entry));
+			return result;
+		}
 		Map<Xref, Set<String>> result = new HashMap<Xref, Set<String>>();
 		final QueryLifeCycle pst = (MATCH_ID.equals (attrType)) ? 
 				qIdSearchWithAttributes : qAttributeSearch;
@@ -361,6 +401,49 @@ public abstract class SimpleGdbImplCommon extends SimpleGdb
 		}
 	}
 
+	private synchronized SearchIndex getIdIndex() throws IDMapperException
+	{
+		if (idIndex == null)
+		{
+			List<Xref> xrefs = new ArrayList<Xref>();
+			List<String> ids = new ArrayList<String>();
+			for (Xref xref : getIterator())
+			{
+				xrefs.add(xref);
+				ids.add(xref.getId());
+			}
+			idIndex = new SearchIndex(xrefs, ids);
+		}
+		return idIndex;
+	}
+
+	private synchronized SearchIndex getAttributeIndex(String attrType) throws IDMapperException
+	{
+		SearchIndex index = attributeIndexes.get(attrType);
+		if (index != null) return index;
+		List<Xref> xrefs = new ArrayList<Xref>();
+		List<String> values = new ArrayList<String>();
+		final QueryLifeCycle pst = qAttributesByName;
+		synchronized (pst) {
+			try {
+				pst.init();
+				pst.setString(1, attrType);
+				ResultSet r = pst.executeQuery();
+				while (r.next())
+				{
+					xrefs.add(new Xref (r.getString(1), DataSource.getExistingBySystemCode(r.getString(2))));
+					values.add(r.getString(3));
+				}
+			} catch (SQLException e) {
+				throw new IDMapperException (e);
+			}
+			finally { pst.cleanup(); }
+		}
+		index = new SearchIndex(xrefs, values);
+		attributeIndexes.put(attrType, index);
+		return index;
+	}
+
 	/** {@inheritDoc} */
 	public Set<String> getAttributeSet() throws IDMapperException 
 	{
@@ -0,0 +1,159 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.bridgedb.BridgeDb;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests opening a zipped gdb by extracting it into a cache directory.
+ */
+public class GdbCacheTest
+{
+	private static final File TEST_DIR = new File ("target/gdbcachetest");
+	private static final File GDB = new File (TEST_DIR, "test.bridge");
+
+	@BeforeClass public static void createGdb() throws Exception
+	{
+		Class.forName ("org.bridgedb.rdb.IDMapperRdb");
+		DataSource.register("L", "Entrez Gene");
+		DataSource.register("En", "Ensembl");
+		delete (TEST_DIR);
+		File source = new File (TEST_DIR, "source");
+		File database = new File (source, GdbCache.DATABASE_DIR);
+		String url = "jdbc:derby:" + database.getAbsolutePath();
+		Connection con = DriverManager.getConnection(url + ";create=true");
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE info (schemaversion INTEGER PRIMARY KEY)");
+		st.execute("INSERT INTO info VALUES (3)");
+		st.execute("CREATE TABLE link (idLeft VARCHAR(50) NOT NULL, codeLeft VARCHAR(50) NOT NULL, " +
+				"idRight VARCHAR(50) NOT NULL, codeRight VARCHAR(50) NOT NULL, bridge VARCHAR(50), " +
+				"PRIMARY KEY (idLeft, codeLeft, idRight, codeRight))");
+		st.execute("CREATE TABLE datanode (id VARCHAR(50), code VARCHAR(50), PRIMARY KEY (id, code))");
+		st.execute("CREATE TABLE attribute (id VARCHAR(50), code VARCHAR(50), " +
+				"attrname VARCHAR(50), attrvalue VARCHAR(255))");
+		st.execute("INSERT INTO datanode VALUES ('1234', 'L')");
+		st.execute("INSERT INTO datanode VALUES ('ENSG1', 'En')");
+		//Links go from a primary id on the left to all its xrefs, including itself, on the right
+		st.execute("INSERT INTO link VALUES ('ENSG1', 'En', 'ENSG1', 'En', NULL)");
+		st.execute("INSERT INTO link VALUES ('ENSG1', 'En', '1234', 'L', NULL)");
+		st.close();
+		con.close();
+		try
+		{
+			DriverManager.getConnection(url + ";shutdown=true");
+		}
+		catch (SQLException expected) {}
+
+		ZipOutputStream zip = new ZipOutputStream (new FileOutputStream (GDB));
+		zip(zip, database, GdbCache.DATABASE_DIR);
+		zip.close();
+	}
+
+	@Test public void testExtractOnce() throws Exception
+	{
+		File cacheDir = new File (TEST_DIR, "cache");
+		String connection = "idmapper-pgdb:" + GDB.getPath() + "?extract=true&cacheDir=" + cacheDir.getPath();
+		IDMapper mapper = BridgeDb.connect(connection);
+		Assert.assertTrue (mapper instanceof SimpleGdbImpl3);
+		Set<Xref> result = mapper.mapID(new Xref ("1234", DataSource.getBySystemCode("L")));
+		Assert.assertTrue (result.contains(new Xref ("ENSG1", DataSource.getBySystemCode("En"))));
+		mapper.close();
+
+		File extracted = new File (new File (new File (cacheDir, GdbCache.CACHE_VERSION), GdbCache.sha1(GDB)),
+				GdbCache.DATABASE_DIR);
+		Assert.assertTrue (extracted.isDirectory());
+		File marker = new File (extracted, "marker");
+		Assert.assertTrue (marker.createNewFile());
+
+		//Second connection reuses the extracted copy
+		mapper = BridgeDb.connect(connection);
+		mapper.close();
+		Assert.assertTrue (marker.exists());
+		Assert.assertEquals (extracted, new GdbCache(cacheDir).getDatabase(GDB));
+	}
+
+	@Test public void testReadOnly() throws Exception
+	{
+		File cacheDir = new File (TEST_DIR, "readonly");
+		File extracted = new GdbCache(cacheDir).getDatabase(GDB);
+		Connection con = DriverManager.getConnection("jdbc:derby:" + extracted.getAbsolutePath());
+		try
+		{
+			Statement st = con.createStatement();
+			st.execute("INSERT INTO info VALUES (4)");
+			Assert.fail ("Extracted gdb should be read only");
+		}
+		catch (SQLException expected) {}
+		finally
+		{
+			con.close();
+		}
+	}
+
+	private static void zip(ZipOutputStream zip, File file, String name) throws IOException
+	{
+		if (file.isDirectory())
+		{
+			zip.putNextEntry(new ZipEntry (name + "/"));
+			zip.closeEntry();
+			for (File child : file.listFiles())
+			{
+				zip(zip, child, name + "/" + child.getName());
+			}
+			return;
+		}
+		zip.putNextEntry(new ZipEntry (name));
+		InputStream in = new FileInputStream (file);
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+		{
+			zip.write(buffer, 0, read);
+		}
+		in.close();
+		zip.closeEntry();
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children) delete(child);
+		}
+		file.delete();
+	}
+}
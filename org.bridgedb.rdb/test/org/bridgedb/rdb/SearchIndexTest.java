@@ -0,0 +1,88 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the in memory search index used by freeSearch.
+ */
+public class SearchIndexTest
+{
+	private static final List<String> SYMBOLS = Arrays.asList(
+			"INSR", "INSRR", "BRCA1", "XINSR2", "insr", "IGF1R");
+
+	private SearchIndex createIndex()
+	{
+		DataSource ds = DataSource.register("SiT", "SearchIndexTest").asDataSource();
+		List<Xref> xrefs = new ArrayList<Xref>();
+		for (int i = 0; i < SYMBOLS.size(); i++) xrefs.add(new Xref("" + i, ds));
+		return new SearchIndex(xrefs, SYMBOLS);
+	}
+
+	private List<String> search(SearchIndex index, String query, int limit)
+	{
+		List<String> result = new ArrayList<String>();
+		for (int entry : index.search(query, limit)) result.add(index.getText(entry));
+		return result;
+	}
+
+	@Test public void testRelevance()
+	{
+		SearchIndex index = createIndex();
+		//exact matches, then prefix, then substring
+		Assert.assertEquals(Arrays.asList("INSR", "insr", "INSRR", "XINSR2"), search(index, "Insr", 0));
+		Assert.assertEquals(Arrays.asList("INSR", "insr"), search(index, "insr", 2));
+		Assert.assertEquals(Arrays.asList("BRCA1"), search(index, "rca", 0));
+		Assert.assertTrue(search(index, "insx", 0).isEmpty());
+	}
+
+	@Test public void testShortQuery()
+	{
+		SearchIndex index = createIndex();
+		Assert.assertEquals(Arrays.asList("BRCA1", "IGF1R"), search(index, "1", 0));
+		Assert.assertEquals(SYMBOLS.size(), search(index, "", 0).size());
+	}
+
+	@Test public void testSearchXrefs()
+	{
+		DataSource ds = DataSource.register("SiT", "SearchIndexTest").asDataSource();
+		Xref a = new Xref("a", ds);
+		Xref b = new Xref("b", ds);
+		Xref c = new Xref("c", ds);
+		//a has a substring match and then an exact match, b has two prefix matches
+		SearchIndex index = new SearchIndex(
+				Arrays.asList(a, a, b, b, c),
+				Arrays.asList("XINSR", "INSR", "INSRR", "INSR2", "BRCA1"));
+
+		List<String> result = new ArrayList<String>();
+		for (int entry : index.searchXrefs("insr", 2)) result.add(index.getXref(entry).getId() + "=" + index.getText(entry));
+		Assert.assertEquals(Arrays.asList("a=INSR", "b=INSR2"), result);
+
+		Assert.assertEquals(1, index.searchXrefs("insr", 1).size());
+		Assert.assertEquals(2, index.searchXrefs("insr", 0).size());
+		//the same entries with search counts both values of a
+		Assert.assertEquals(Arrays.asList("INSR", "INSR2"), search(index, "insr", 2));
+	}
+}
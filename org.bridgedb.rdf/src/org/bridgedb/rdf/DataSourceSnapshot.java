@@ -0,0 +1,515 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.CRC32;
+import org.apache.log4j.Logger;
+import org.bridgedb.DataSource;
+import org.bridgedb.DataSourcePatterns;
+import org.bridgedb.bio.DataSourceComparator;
+import org.bridgedb.bio.DataSourceTxt;
+import org.bridgedb.bio.Organism;
+import org.bridgedb.rdf.identifiers.org.IdentifersOrgReader;
+import org.bridgedb.rdf.pairs.RdfBasedCodeMapper;
+import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+import org.bridgedb.utils.Reporter;
+
+/**
+ * Binary snapshot of the DataSources, their regex patterns and the UriPatterns
+ * as they are after UriPattern.refreshUriPatterns().
+ * <p>
+ * Restoring the snapshot replaces reading datasources.txt, DataSource.ttl and the Miriam registry,
+ * which otherwise means parsing two RDF files into memory stores.
+ * RegexUriPatterns are not stored as they are built on request from what is restored.
+ * <p>
+ * The snapshot is made with the main method, which the build runs to package it in the jar,
+ * and found at runtime with the ConfigReader under the name {@link #SNAPSHOT_FILE_NAME}.
+ * It records a checksum of the files it was made from.
+ * If those files have changed, or the snapshot can not be read, it is ignored
+ * and the registry is loaded from the files as before.
+ * Nothing is registered until the whole snapshot has been read,
+ * so a snapshot that fails part way does not leave a half restored registry behind.
+ */
+public class DataSourceSnapshot {
+
+    public static final String SNAPSHOT_FILE_NAME = "DataSource.snapshot";
+    static final String DATASOURCES_TXT = "org/bridgedb/bio/datasources.txt";
+
+    private static final int MAGIC = 0x42444253;
+    private static final int VERSION = 1;
+    private static final String URN_PREFIX = "urn:miriam:";
+
+    private static final Logger logger = Logger.getLogger(DataSourceSnapshot.class);
+
+    private DataSourceSnapshot(){
+    }
+
+    /**
+     * Restores the snapshot if one is found that was made from the current source files.
+     * @return true if the registry was restored, false if it still has to be loaded from the source files.
+     */
+    public static boolean load(){
+        InputStream stream;
+        try {
+            stream = ConfigReader.getInputStream(SNAPSHOT_FILE_NAME);
+        } catch (BridgeDBException ex) {
+            Reporter.println("No " + SNAPSHOT_FILE_NAME + " found so loading DataSources from source files.");
+            return false;
+        }
+        try {
+            byte[] body = readBody(stream, sourceChecksum());
+            if (body == null){
+                return false;
+            }
+            restore(new DataInputStream(new ByteArrayInputStream(body)));
+            BridgeDBRdfHandler.initialized = true;
+            Reporter.println("DataSources restored from " + SNAPSHOT_FILE_NAME);
+            return true;
+        } catch (Exception ex) {
+            logger.warn("Unable to use " + SNAPSHOT_FILE_NAME + " so loading DataSources from source files.", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the current registry to a file.
+     * The registry should have been loaded from the source files, as the checksum is of those files.
+     * @param file snapshot to write
+     * @throws BridgeDBException
+     */
+    public static void write(File file) throws BridgeDBException{
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            throw new BridgeDBException("Error writing DataSource snapshot to " + file.getAbsolutePath(), ex);
+        }
+    }
+
+    static void write(OutputStream out) throws IOException, BridgeDBException{
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        writeBody(body);
+        body.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes.toByteArray());
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        byte[] checksum = sourceChecksum();
+        data.writeInt(checksum.length);
+        data.write(checksum);
+        data.writeLong(crc.getValue());
+        data.writeInt(bodyBytes.size());
+        bodyBytes.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * @return the body of the snapshot, or null if it was made from different source files.
+     */
+    static byte[] readBody(InputStream stream, byte[] checksum) throws IOException{
+        DataInputStream data = new DataInputStream(stream);
+        try {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION){
+                logger.warn(SNAPSHOT_FILE_NAME + " is not a snapshot of this version.");
+                return null;
+            }
+            byte[] recorded = new byte[data.readInt()];
+            data.readFully(recorded);
+            if (!Arrays.equals(recorded, checksum)){
+                Reporter.println(SNAPSHOT_FILE_NAME + " was made from different source files so it is ignored.");
+                return null;
+            }
+            long crcValue = data.readLong();
+            byte[] body = new byte[data.readInt()];
+            data.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != crcValue){
+                logger.warn(SNAPSHOT_FILE_NAME + " is corrupt.");
+                return null;
+            }
+            return body;
+        } finally {
+            data.close();
+        }
+    }
+
+    private static void writeBody(DataOutputStream out) throws IOException, BridgeDBException{
+        writeString(out, DataSourceTxt.datasourcesTxt);
+
+        SortedSet<DataSource> dataSources = new TreeSet<DataSource>(new DataSourceComparator());
+        for (DataSource dataSource:DataSource.getDataSources()){
+            //As in DataSourceTxt DataSources that are not fully registered are ignored
+            if (dataSource.getSystemCode() != null && dataSource.getFullName() != null){
+                dataSources.add(dataSource);
+            }
+        }
+        out.writeInt(dataSources.size());
+        for (DataSource dataSource:dataSources){
+            writeDataSource(out, dataSource);
+        }
+
+        SortedSet<UriPattern> uriPatterns = UriPattern.getUriPatterns();
+        out.writeInt(uriPatterns.size());
+        for (UriPattern uriPattern:uriPatterns){
+            writeString(out, uriPattern.getUriPattern());
+            out.writeByte(uriPattern.getType().ordinal());
+            out.writeInt(uriPattern.getSysCodes().size());
+            for (String sysCode:new TreeSet<String>(uriPattern.getSysCodes())){
+                writeString(out, sysCode);
+            }
+        }
+    }
+
+    private static void writeDataSource(DataOutputStream out, DataSource dataSource) throws IOException, BridgeDBException{
+        String sysCode = dataSource.getSystemCode();
+        writeString(out, sysCode);
+        writeString(out, dataSource.getFullName());
+        writeString(out, dataSource.getMainUrl());
+        writeString(out, dataSource.getKnownUrl("$id"));
+        writeString(out, dataSource.getExample().getId());
+        writeString(out, dataSource.getType());
+        Object organism = dataSource.getOrganism();
+        if (organism == null){
+            writeString(out, null);
+        } else if (organism instanceof Organism){
+            writeString(out, ((Organism)organism).latinName());
+        } else {
+            throw new BridgeDBException("Unable to snapshot DataSource " + dataSource + " with organism " + organism);
+        }
+        out.writeBoolean(dataSource.isPrimary());
+        out.writeBoolean(dataSource.isDeprecated());
+        if (dataSource.isDeprecatedBy() == null){
+            writeString(out, null);
+        } else {
+            writeString(out, dataSource.isDeprecatedBy().getSystemCode());
+        }
+        writeString(out, dataSource.getMiriamURN(""));
+        Pattern regex = DataSourcePatterns.getPatterns().get(dataSource);
+        if (regex == null){
+            writeString(out, null);
+        } else {
+            writeString(out, regex.pattern());
+            out.writeInt(regex.flags());
+        }
+        writeString(out, dataSource.getAlternative());
+        writeString(out, dataSource.getDescription());
+        DataSourceMetaDataProvidor providor;
+        try {
+            providor = DataSourceMetaDataProvidor.getProvider(sysCode);
+        } catch (BridgeDBException ex) {
+            providor = null;
+        }
+        out.writeByte(providor == null ? -1 : providor.ordinal());
+        writeString(out, RdfBasedCodeMapper.getXrefPrefix(sysCode));
+    }
+
+    /**
+     * Decodes the whole body before anything is registered,
+     * so that a snapshot that can not be read leaves the registry as it was.
+     */
+    static void restore(DataInputStream in) throws IOException, BridgeDBException{
+        decode(in).publish();
+    }
+
+    static Contents decode(DataInputStream in) throws IOException, BridgeDBException{
+        Contents contents = new Contents();
+        contents.datasourcesTxt = readString(in);
+
+        int count = in.readInt();
+        Set<String> sysCodes = new HashSet<String>();
+        for (int i = 0; i < count; i++){
+            DataSourceRecord record = readDataSource(in);
+            contents.dataSources.add(record);
+            sysCodes.add(record.sysCode);
+        }
+        for (DataSourceRecord record:contents.dataSources){
+            if (record.replacement != null && !sysCodes.contains(record.replacement)
+                    && !DataSource.systemCodeExists(record.replacement)){
+                throw new BridgeDBException("DataSource " + record.sysCode + " deprecated by unknown " + record.replacement);
+            }
+        }
+
+        UriPatternType[] types = UriPatternType.values();
+        count = in.readInt();
+        for (int i = 0; i < count; i++){
+            UriPatternRecord record = new UriPatternRecord();
+            record.pattern = readString(in);
+            if (record.pattern == null || record.pattern.isEmpty()){
+                throw new BridgeDBException("Empty UriPattern in snapshot");
+            }
+            record.type = types[checkIndex(in.readByte(), types.length)];
+            int codeCount = in.readInt();
+            for (int j = 0; j < codeCount; j++){
+                String code = readString(in);
+                if (code == null || code.isEmpty()){
+                    throw new BridgeDBException("UriPattern " + record.pattern + " has an empty sysCode");
+                }
+                record.codes.add(code);
+            }
+            contents.uriPatterns.add(record);
+        }
+        if (in.read() != -1){
+            throw new BridgeDBException("Unexpected data after the end of the snapshot");
+        }
+        return contents;
+    }
+
+    private static DataSourceRecord readDataSource(DataInputStream in) throws IOException, BridgeDBException{
+        DataSourceRecord record = new DataSourceRecord();
+        record.sysCode = readString(in);
+        record.fullName = readString(in);
+        if (record.sysCode == null || record.sysCode.isEmpty() || record.fullName == null || record.fullName.isEmpty()){
+            throw new BridgeDBException("DataSource without sysCode or fullName in snapshot");
+        }
+        record.mainUrl = readString(in);
+        record.urlPattern = readString(in);
+        if (record.urlPattern != null && !record.urlPattern.isEmpty() && !record.urlPattern.contains("$id")){
+            throw new BridgeDBException("Illegal url pattern " + record.urlPattern + " for " + record.sysCode);
+        }
+        record.idExample = readString(in);
+        record.type = readString(in);
+        String organism = readString(in);
+        if (organism != null){
+            record.organism = Organism.fromLatinName(organism);
+            if (record.organism == null){
+                throw new BridgeDBException("Unknown organism " + organism + " for " + record.sysCode);
+            }
+        }
+        record.primary = in.readBoolean();
+        record.deprecated = in.readBoolean();
+        record.replacement = readString(in);
+        String urn = readString(in);
+        if (urn != null){
+            record.urnBase = urn.substring(0, urn.length() - 1);
+            if (!record.urnBase.startsWith(URN_PREFIX)){
+                throw new BridgeDBException("Illegal urn " + urn + " for " + record.sysCode);
+            }
+        }
+        String regex = readString(in);
+        if (regex != null){
+            try {
+                record.regex = Pattern.compile(regex, in.readInt());
+            } catch (PatternSyntaxException ex) {
+                throw new BridgeDBException("Illegal regex " + regex + " for " + record.sysCode, ex);
+            }
+        }
+        record.alternative = readString(in);
+        record.description = readString(in);
+        byte providor = in.readByte();
+        if (providor >= 0){
+            DataSourceMetaDataProvidor[] providors = DataSourceMetaDataProvidor.values();
+            record.providor = providors[checkIndex(providor, providors.length)];
+        }
+        record.xrefPrefix = readString(in);
+        if (record.xrefPrefix != null && record.xrefPrefix.isEmpty()){
+            throw new BridgeDBException("Empty xref prefix for " + record.sysCode);
+        }
+        return record;
+    }
+
+    private static int checkIndex(int index, int length) throws BridgeDBException{
+        if (index < 0 || index >= length){
+            throw new BridgeDBException("Illegal index " + index + " in snapshot");
+        }
+        return index;
+    }
+
+    /**
+     * The decoded body of a snapshot, held until it can be registered as a whole.
+     */
+    static final class Contents {
+        private String datasourcesTxt;
+        private final List<DataSourceRecord> dataSources = new ArrayList<DataSourceRecord>();
+        private final List<UriPatternRecord> uriPatterns = new ArrayList<UriPatternRecord>();
+
+        private Contents(){
+        }
+
+        int dataSourceCount(){
+            return dataSources.size();
+        }
+
+        int uriPatternCount(){
+            return uriPatterns.size();
+        }
+
+        void publish() throws BridgeDBException{
+            for (DataSourceRecord record:dataSources){
+                record.publish();
+            }
+            for (DataSourceRecord record:dataSources){
+                if (record.replacement != null){
+                    DataSource.register(record.sysCode, record.fullName)
+                            .deprecatedBy(DataSource.getExistingBySystemCode(record.replacement));
+                }
+            }
+            for (UriPatternRecord record:uriPatterns){
+                UriPattern.restore(record.pattern, record.type, record.codes);
+            }
+            DataSourceTxt.datasourcesTxt = datasourcesTxt;
+        }
+    }
+
+    private static final class DataSourceRecord {
+        private String sysCode;
+        private String fullName;
+        private String mainUrl;
+        private String urlPattern;
+        private String idExample;
+        private String type;
+        private Organism organism;
+        private boolean primary;
+        private boolean deprecated;
+        private String replacement;
+        private String urnBase;
+        private Pattern regex;
+        private String alternative;
+        private String description;
+        private DataSourceMetaDataProvidor providor;
+        private String xrefPrefix;
+
+        private void publish() throws BridgeDBException{
+            DataSource.Builder builder = DataSource.register(sysCode, fullName);
+            builder.mainUrl(mainUrl);
+            builder.urlPattern(urlPattern);
+            builder.idExample(idExample);
+            builder.type(type);
+            builder.organism(organism);
+            builder.primary(primary);
+            builder.deprecated(deprecated);
+            builder.urnBase(urnBase);
+            if (regex != null){
+                DataSourcePatterns.registerPattern(builder.asDataSource(), regex);
+            }
+            builder.alternative(alternative);
+            builder.description(description);
+            if (providor != null){
+                DataSourceMetaDataProvidor.setProvidor(sysCode, providor);
+            }
+            if (xrefPrefix != null){
+                RdfBasedCodeMapper.addXrefPrefix(sysCode, xrefPrefix);
+            }
+        }
+    }
+
+    private static final class UriPatternRecord {
+        private String pattern;
+        private UriPatternType type;
+        private final List<String> codes = new ArrayList<String>();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException{
+        if (value == null){
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException{
+        int length = in.readInt();
+        if (length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * @return SHA-1 of the files the registry is loaded from.
+     */
+    static byte[] sourceChecksum() throws IOException{
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("No SHA-1 available", ex);
+        }
+        update(digest, DataSourceTxt.class.getClassLoader().getResourceAsStream(DATASOURCES_TXT));
+        try {
+            update(digest, ConfigReader.getInputStream(BridgeDBRdfHandler.CONFIG_FILE_NAME));
+            update(digest, ConfigReader.getInputStream(IdentifersOrgReader.LOCAL_MIRAM_REGISTRY));
+        } catch (BridgeDBException ex) {
+            throw new IOException("Unable to read DataSource source files", ex);
+        }
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, InputStream stream) throws IOException{
+        if (stream == null){
+            throw new IOException("Unable to find " + DATASOURCES_TXT);
+        }
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) > 0){
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            stream.close();
+        }
+        //Separates the files so that moving bytes from one to the next changes the checksum
+        digest.update((byte)0);
+    }
+
+    /**
+     * Loads the registry from the source files and writes the snapshot.
+     * @param args the snapshot file to write, by default {@link #SNAPSHOT_FILE_NAME}
+     */
+    public static void main(String[] args) throws BridgeDBException {
+        File file = new File(args.length > 0 ? args[0] : SNAPSHOT_FILE_NAME);
+        //An older snapshot may be on the classpath, and would be restored instead of the source files
+        if (file.exists() && !file.delete()){
+            throw new BridgeDBException("Unable to delete old snapshot " + file.getAbsolutePath());
+        }
+        UriPattern.refreshUriPatterns();
+        write(file);
+        Reporter.println("Written DataSource snapshot to " + file.getAbsolutePath());
+    }
+}
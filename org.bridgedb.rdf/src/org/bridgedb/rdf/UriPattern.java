@@ -20,9 +20,12 @@
 package org.bridgedb.rdf;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -57,6 +60,9 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
     
     private static HashMap<String,UriPattern> byPattern = new HashMap<String,UriPattern>();
     private static HashMap<String,Set<UriPattern>> byCode = new HashMap<String,Set<UriPattern>>();
+    //All registered patterns. Reset when a pattern is added and compiled again on first use,
+    //both under the class lock, so it never misses a pattern registered before the lookup.
+    private static volatile UriPatternMatcher<UriPattern> matcher = null;
     static boolean initialized = false;
     
     private static HashSet<URI> expectedPredicates = new HashSet<URI>(Arrays.asList(new URI[] {
@@ -75,6 +81,7 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
         prefix = pattern.substring(0, pos);
         postfix = pattern.substring(pos + 3);
         byPattern.put(pattern, this);
+        matcher = null;
         this.patternType = patternType;
         sysCodes = new HashSet<String>();
         //isGraphDefault = false;
@@ -96,6 +103,10 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
         if (initialized){
             return;
         }
+        if (DataSourceSnapshot.load()){
+            initialized = true;
+            return;
+        }
         DataSourceTxt.init();
         DataSourceMetaDataProvidor.assumeUnknownsAreBio();
         BridgeDBRdfHandler.init();
@@ -123,7 +134,7 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
         return new TreeSet<UriPattern>(byPattern.values());
     }
              
-    public static UriPattern register(String pattern, String sysCode, UriPatternType patternType) throws BridgeDBException{
+    public static synchronized UriPattern register(String pattern, String sysCode, UriPatternType patternType) throws BridgeDBException{
         if (pattern == null || pattern.isEmpty()){
             throw new BridgeDBException ("Illegal empty or null uriPattern: " + pattern);
         }
@@ -161,6 +172,24 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
         return result;
     }
     
+    /**
+     * Puts back a UriPattern exactly as it was written to a snapshot.
+     * Unlike register this does not apply the rules for changing the type, 
+     * as the snapshot holds the outcome of those rules.
+     */
+    static synchronized UriPattern restore(String pattern, UriPatternType patternType, Collection<String> codes) throws BridgeDBException{
+        UriPattern result = byPattern.get(pattern);
+        if (result == null){
+            result = new UriPattern(pattern, patternType);
+        } else {
+            result.patternType = patternType;
+        }
+        for (String sysCode:codes){
+            result.registerSysCode(sysCode);
+        }
+        return result;
+    }
+    
     private void registerSysCode(String sysCode){
         for (String knownCode: sysCodes){
             if (knownCode.equals(sysCode)){
@@ -186,6 +215,46 @@ public class UriPattern extends RdfBase implements Comparable<UriPattern>{
         return byPattern.get(pattern);
     }
 
+    /**
+     * Finds the registered UriPatterns a uri fits, comparing the uri once against all their prefixes.
+     * 
+     * @param uri full uri
+     * @return the patterns whose prefix and postfix the uri has, those with the shortest prefix first
+     */
+    public static List<UriPattern> byUri(String uri){
+        if (uri == null){
+            return new ArrayList<UriPattern>();
+        }
+        return matcher().matches(uri);
+    }
+
+    /**
+     * @param partPrefix start of the prefix, may be empty
+     * @return the registered UriPatterns whose prefix starts with partPrefix
+     */
+    public static List<UriPattern> byPartialPrefix(String partPrefix){
+        return matcher().startingWith(partPrefix);
+    }
+
+    private static UriPatternMatcher<UriPattern> matcher(){
+        UriPatternMatcher<UriPattern> current = matcher;
+        if (current == null){
+            current = compileMatcher();
+        }
+        return current;
+    }
+
+    private static synchronized UriPatternMatcher<UriPattern> compileMatcher(){
+        if (matcher == null){
+            UriPatternMatcher<UriPattern> result = new UriPatternMatcher<UriPattern>();
+            for (UriPattern pattern:byPattern.values()){
+                result.add(pattern.prefix, pattern.postfix, pattern);
+            }
+            matcher = result;
+        }
+        return matcher;
+    }
+
     public static UriPattern existingByPattern(String pattern) throws BridgeDBException {
         UriPattern result = byPattern(pattern);
         if (result == null){
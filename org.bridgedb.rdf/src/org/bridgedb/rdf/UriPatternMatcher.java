@@ -0,0 +1,198 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds which of a set of prefix/postfix patterns a uri fits, in one walk along the uri.
+ * <p>
+ * The prefixes are held in a trie, so a uri is compared once against all prefixes together
+ * rather than once per pattern. Only the patterns whose prefix is found are checked for their postfix.
+ * A uri fits a pattern if it starts with the prefix and ends with the postfix,
+ * without the two overlapping.
+ * <p>
+ * Adding is not thread safe. Once filled a matcher can be shared by many threads.
+ * @param <T> value held for each pattern
+ */
+public class UriPatternMatcher<T> {
+
+    private final Node<T> root = new Node<T>();
+    private int size = 0;
+
+    private static class Node<T>{
+        private char[] keys = new char[0];
+        private Node<T>[] children = newArray(0);
+        private List<Entry<T>> entries = null;
+
+        private Node<T> child(char c){
+            int pos = Arrays.binarySearch(keys, c);
+            return pos < 0 ? null : children[pos];
+        }
+
+        private Node<T> addChild(char c){
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0){
+                return children[pos];
+            }
+            pos = -pos - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node<T>[] newChildren = newArray(keys.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, keys.length - pos);
+            newKeys[pos] = c;
+            newChildren[pos] = new Node<T>();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[pos];
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int length){
+            return new Node[length];
+        }
+    }
+
+    private static class Entry<T>{
+        private final int prefixLength;
+        private final String postfix;
+        private final T value;
+
+        private Entry(int prefixLength, String postfix, T value){
+            this.prefixLength = prefixLength;
+            this.postfix = postfix;
+            this.value = value;
+        }
+
+        private boolean fits(String uri){
+            return uri.length() >= prefixLength + postfix.length() && uri.endsWith(postfix);
+        }
+    }
+
+    /**
+     * @param prefix part of the uri before the id, may be empty
+     * @param postfix part of the uri after the id, or null if there is none
+     * @param value returned for uris that fit this pattern
+     */
+    public void add(String prefix, String postfix, T value){
+        Node<T> node = root;
+        for (int i = 0; i < prefix.length(); i++){
+            node = node.addChild(prefix.charAt(i));
+        }
+        if (node.entries == null){
+            node.entries = new ArrayList<Entry<T>>(1);
+        }
+        node.entries.add(new Entry<T>(prefix.length(), postfix == null ? "" : postfix, value));
+        size++;
+    }
+
+    /**
+     * Adds a pattern written as prefix$idpostfix.
+     * A pattern without $id is taken to be a prefix.
+     */
+    public void add(String pattern, T value){
+        int pos = pattern.indexOf("$id");
+        if (pos == -1){
+            add(pattern, "", value);
+        } else {
+            add(pattern.substring(0, pos), pattern.substring(pos + 3), value);
+        }
+    }
+
+    /**
+     * @return the values of all the patterns the uri fits, those with the shortest prefix first.
+     */
+    public List<T> matches(String uri){
+        List<T> results = new ArrayList<T>(2);
+        Node<T> node = root;
+        int i = 0;
+        while (node != null){
+            if (node.entries != null){
+                for (Entry<T> entry:node.entries){
+                    if (entry.fits(uri)){
+                        results.add(entry.value);
+                    }
+                }
+            }
+            if (i == uri.length()){
+                break;
+            }
+            node = node.child(uri.charAt(i++));
+        }
+        return results;
+    }
+
+    /**
+     * @return true if the uri fits at least one pattern
+     */
+    public boolean matchesAny(String uri){
+        Node<T> node = root;
+        int i = 0;
+        while (node != null){
+            if (node.entries != null){
+                for (Entry<T> entry:node.entries){
+                    if (entry.fits(uri)){
+                        return true;
+                    }
+                }
+            }
+            if (i == uri.length()){
+                return false;
+            }
+            node = node.child(uri.charAt(i++));
+        }
+        return false;
+    }
+
+    /**
+     * @return the values of all patterns whose prefix starts with partPrefix
+     */
+    public List<T> startingWith(String partPrefix){
+        List<T> results = new ArrayList<T>();
+        Node<T> node = root;
+        for (int i = 0; i < partPrefix.length() && node != null; i++){
+            node = node.child(partPrefix.charAt(i));
+        }
+        if (node != null){
+            collect(node, results);
+        }
+        return results;
+    }
+
+    private static <T> void collect(Node<T> node, List<T> results){
+        if (node.entries != null){
+            for (Entry<T> entry:node.entries){
+                results.add(entry.value);
+            }
+        }
+        for (Node<T> child:node.children){
+            collect(child, results);
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+}
@@ -0,0 +1,160 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.bridgedb.utils.Reporter;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DataSourceSnapshotTest {
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        UriPattern.refreshUriPatterns();
+    }
+
+    private static byte[] snapshot() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataSourceSnapshot.write(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Reporter.println("RoundTrip");
+        byte[] first = snapshot();
+        byte[] body = DataSourceSnapshot.readBody(new ByteArrayInputStream(first), DataSourceSnapshot.sourceChecksum());
+        assertNotNull(body);
+        DataSourceSnapshot.restore(new DataInputStream(new ByteArrayInputStream(body)));
+        assertArrayEquals(first, snapshot());
+        assertNotNull(UriPattern.byPattern("http://identifiers.org/mgd/$id"));
+    }
+
+    /**
+     * Loads the registry classes again in their own class loader,
+     * so that the snapshot is restored into registries that start out empty.
+     */
+    private static ClassLoader emptyRegistry() throws Exception {
+        String classPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        List<URL> urls = new ArrayList<URL>();
+        for (String entry:classPath.split(File.pathSeparator)){
+            if (!entry.isEmpty()){
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
+    }
+
+    private static Object invoke(ClassLoader loader, String className, String methodName, Class<?>[] types,
+            Object... args) throws Exception {
+        Method method = loader.loadClass(className).getDeclaredMethod(methodName, types);
+        method.setAccessible(true);
+        //log4j finds its appenders through the context class loader
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            return method.invoke(null, args);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof Exception){
+                throw (Exception)ex.getCause();
+            }
+            throw ex;
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    private static int registered(ClassLoader loader) throws Exception {
+        return ((Collection<?>)invoke(loader, "org.bridgedb.DataSource", "getDataSources", new Class<?>[0])).size()
+                + ((Collection<?>)invoke(loader, "org.bridgedb.rdf.UriPattern", "getUriPatterns", new Class<?>[0])).size();
+    }
+
+    private static void restore(ClassLoader loader, byte[] body) throws Exception {
+        invoke(loader, DataSourceSnapshot.class.getName(), "restore", new Class<?>[]{DataInputStream.class},
+                new DataInputStream(new ByteArrayInputStream(body)));
+    }
+
+    @Test
+    public void testRestoreIntoEmptyRegistry() throws Exception {
+        Reporter.println("RestoreIntoEmptyRegistry");
+        byte[] first = snapshot();
+        byte[] body = DataSourceSnapshot.readBody(new ByteArrayInputStream(first), DataSourceSnapshot.sourceChecksum());
+        ClassLoader loader = emptyRegistry();
+        assertEquals(0, registered(loader));
+        restore(loader, body);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invoke(loader, DataSourceSnapshot.class.getName(), "write", new Class<?>[]{OutputStream.class}, out);
+        assertArrayEquals(first, out.toByteArray());
+    }
+
+    @Test
+    public void testTruncatedLeavesRegistryEmpty() throws Exception {
+        Reporter.println("TruncatedLeavesRegistryEmpty");
+        byte[] body = DataSourceSnapshot.readBody(new ByteArrayInputStream(snapshot()), DataSourceSnapshot.sourceChecksum());
+        ClassLoader loader = emptyRegistry();
+        //Organism registers its taxonomy DataSource when first used, which decoding does
+        invoke(loader, "org.bridgedb.bio.Organism", "fromLatinName", new Class<?>[]{String.class}, "Homo sapiens");
+        int before = registered(loader);
+        try {
+            restore(loader, Arrays.copyOf(body, body.length - 100));
+            fail("Truncated snapshot restored");
+        } catch (java.io.EOFException ex) {
+            //expected
+        }
+        assertEquals(before, registered(loader));
+        assertEquals("", loader.loadClass("org.bridgedb.bio.DataSourceTxt").getField("datasourcesTxt").get(null));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        Reporter.println("Decode");
+        byte[] body = DataSourceSnapshot.readBody(new ByteArrayInputStream(snapshot()), DataSourceSnapshot.sourceChecksum());
+        DataSourceSnapshot.Contents contents = DataSourceSnapshot.decode(new DataInputStream(new ByteArrayInputStream(body)));
+        assertEquals(UriPattern.getUriPatterns().size(), contents.uriPatternCount());
+        assertTrue(contents.dataSourceCount() > 0);
+    }
+
+    @Test
+    public void testChangedSources() throws Exception {
+        Reporter.println("ChangedSources");
+        byte[] other = new byte[DataSourceSnapshot.sourceChecksum().length];
+        assertNull(DataSourceSnapshot.readBody(new ByteArrayInputStream(snapshot()), other));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        Reporter.println("Corrupt");
+        byte[] bytes = snapshot();
+        bytes[bytes.length - 10] ^= 1;
+        assertNull(DataSourceSnapshot.readBody(new ByteArrayInputStream(bytes), DataSourceSnapshot.sourceChecksum()));
+    }
+}
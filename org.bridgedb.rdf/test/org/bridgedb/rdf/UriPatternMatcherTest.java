@@ -0,0 +1,87 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.rdf;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.bridgedb.utils.Reporter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UriPatternMatcherTest {
+
+    @Test
+    public void testMatches() {
+        Reporter.println("Matches");
+        UriPatternMatcher<String> matcher = new UriPatternMatcher<String>();
+        matcher.add("http://www.example.com/$id", "all");
+        matcher.add("http://www.example.com/gene/$id", "gene");
+        matcher.add("http://www.example.com/gene/$id.html", "html");
+        matcher.add("http://www.example.org/", "prefix only");
+        assertEquals(4, matcher.size());
+
+        assertEquals(Arrays.asList("all", "gene"), matcher.matches("http://www.example.com/gene/123"));
+        assertEquals(Arrays.asList("all", "gene", "html"), matcher.matches("http://www.example.com/gene/123.html"));
+        assertEquals(Arrays.asList("prefix only"), matcher.matches("http://www.example.org/123"));
+        assertTrue(matcher.matches("http://www.example.net/123").isEmpty());
+        assertFalse(matcher.matchesAny("http://www.example.co"));
+        assertTrue(matcher.matchesAny("http://www.example.com/"));
+        //prefix and postfix may not overlap
+        UriPatternMatcher<String> overlap = new UriPatternMatcher<String>();
+        overlap.add("http://a/b", "b/c", "overlap");
+        assertFalse(overlap.matchesAny("http://a/b/c"));
+        assertTrue(overlap.matchesAny("http://a/b/b/c"));
+    }
+
+    @Test
+    public void testStartingWith() {
+        Reporter.println("StartingWith");
+        UriPatternMatcher<String> matcher = new UriPatternMatcher<String>();
+        matcher.add("http://www.example.com/gene/$id", "gene");
+        matcher.add("http://www.example.com/protein/$id", "protein");
+        matcher.add("http://www.example.org/$id", "org");
+        assertEquals(new HashSet<String>(Arrays.asList("gene", "protein")), 
+                new HashSet<String>(matcher.startingWith("http://www.example.com/")));
+        assertEquals(3, matcher.startingWith("").size());
+        assertTrue(matcher.startingWith("http://www.example.net").isEmpty());
+    }
+
+    @Test
+    public void testByUri() throws Exception {
+        Reporter.println("ByUri");
+        UriPattern pattern = UriPattern.register("http://www.example.com/UriPatternMatcherTest/$id", 
+                "UriPatternMatcherTest", UriPatternType.dataSourceUriPattern);
+        List<UriPattern> result = UriPattern.byUri("http://www.example.com/UriPatternMatcherTest/1234");
+        assertTrue(result.contains(pattern));
+        //registered after the matcher was compiled
+        UriPattern later = UriPattern.register("http://www.example.com/UriPatternMatcherTest/sub/$id", 
+                "UriPatternMatcherTest", UriPatternType.dataSourceUriPattern);
+        result = UriPattern.byUri("http://www.example.com/UriPatternMatcherTest/sub/1234");
+        assertEquals(later, result.get(result.size() - 1));
+        assertTrue(UriPattern.byUri("http://www.example.com/OtherTest/1234").isEmpty());
+    }
+
+    @Test
+    public void testByPartialPrefix() throws Exception {
+        Reporter.println("ByPartialPrefix");
+        UriPattern pattern = UriPattern.register("http://www.example.com/PartialPrefixTest/$id", 
+                "PartialPrefixTest", UriPatternType.dataSourceUriPattern);
+        assertTrue(UriPattern.byPartialPrefix("http://www.example.com/PartialPrefix").contains(pattern));
+        assertFalse(UriPattern.byPartialPrefix("http://www.example.com/PartialPrefixTest/x").contains(pattern));
+    }
+}
@@ -0,0 +1,93 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.IDMapperException;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.Xref;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Resource that handles the batch attribute queries for a posted list of xrefs.
+ * <p>
+ * Tab delimited results have a line for each attribute value with the identifier, the datasource,
+ * the attribute name and the value. Xrefs without attributes have no lines.
+ */
+public class AttributesBatch extends BatchIDMapperResource {
+	String attrType;
+
+	protected void doInit() throws ResourceException {
+		super.doInit();
+		attrType = (String)getRequest().getAttributes().get(IDMapperService.PAR_TARGET_ATTR_NAME);
+	}
+
+	@Override
+	protected void writeChunk(List<Xref> chunk, Writer writer, boolean json, boolean first)
+			throws IDMapperException, IOException {
+		IDMapperStack mapper = getIDMappers();
+		for(Xref xref : chunk) {
+			Map<String, Set<String>> values;
+			if(attrType != null) {
+				values = new HashMap<String, Set<String>>();
+				values.put(attrType, mapper.getAttributes(xref, attrType));
+			} else {
+				values = mapper.getAttributes(xref);
+			}
+			if(json) {
+				if(!first) writer.write(",");
+				first = false;
+				writeJsonXref(writer, xref);
+				writer.write(",\"attributes\":{");
+				boolean firstAttr = true;
+				for(String attr : values.keySet()) {
+					if(!firstAttr) writer.write(",");
+					firstAttr = false;
+					writeJsonString(writer, attr);
+					writer.write(":[");
+					boolean firstValue = true;
+					for(String v : values.get(attr)) {
+						if(!firstValue) writer.write(",");
+						firstValue = false;
+						writeJsonString(writer, v);
+					}
+					writer.write("]");
+				}
+				writer.write("}}");
+			} else {
+				for(String attr : values.keySet()) {
+					for(String v : values.get(attr)) {
+						writer.write(xref.getId());
+						writer.write("\t");
+						writer.write(fullName(xref.getDataSource()));
+						writer.write("\t");
+						writer.write(attr);
+						writer.write("\t");
+						writer.write(v);
+						writer.write("\n");
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.WriterRepresentation;
+import org.restlet.resource.Post;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Base resource for the batch queries, which take a list of xrefs in the body of a POST.
+ * <p>
+ * The body is either tab delimited text, with an identifier and optionally a datasource on each line,
+ * or a JSON array whose items are an identifier string, an [id, datasource] array
+ * or an object with "id" and "system" fields.
+ * The datasource may be left out when it is given in the url.
+ * <p>
+ * The results are written as the xrefs are processed, a chunk at a time,
+ * in the same format (text or JSON) as the request.
+ * <p>
+ * The xrefs are read before any results are written, so bodies over MAX_BODY_CHARS
+ * are refused with a 413 (Request Entity Too Large).
+ */
+public abstract class BatchIDMapperResource extends IDMapperResource {
+	/** Number of xrefs passed to the IDMapper at once */
+	static final int CHUNK_SIZE = 500;
+	/** Largest body read, about a million xrefs of typical length */
+	static final int MAX_BODY_CHARS = 32 * 1024 * 1024;
+
+	private DataSource defaultDs;
+
+	protected void doInit() throws ResourceException {
+		super.doInit();
+		try {
+			//Optional parameters
+			String dsName = (String)getRequest().getAttributes().get(IDMapperService.PAR_SYSTEM);
+			if(dsName != null) {
+				dsName = urlDecode(dsName);
+				defaultDs = parseDataSource(dsName);
+				if(defaultDs == null) {
+					throw new IllegalArgumentException("Unknown datasource: " + dsName);
+				}
+			}
+		} catch(Exception e) {
+			throw new ResourceException(e);
+		}
+	}
+
+	@Post
+	public Representation postBatch(Representation entity) {
+		if(entity == null) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return new StringRepresentation("No xrefs found in the body of the request.");
+		}
+		final boolean json = isJson(entity);
+		final List<Xref> xrefs;
+		try {
+			xrefs = readXrefs(new LimitedReader(entity.getReader(), MAX_BODY_CHARS), json);
+		} catch(LimitedReader.BodyTooLargeException e) {
+			setStatus(Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE);
+			return new StringRepresentation(e.getMessage());
+		} catch(IllegalArgumentException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return new StringRepresentation(e.getMessage());
+		} catch(IOException e) {
+			e.printStackTrace();
+			setStatus(Status.SERVER_ERROR_INTERNAL);
+			return new StringRepresentation(e.getMessage());
+		}
+		MediaType mediaType = json ? MediaType.APPLICATION_JSON : MediaType.TEXT_PLAIN;
+		return new WriterRepresentation(mediaType) {
+			@Override
+			public void write(Writer writer) throws IOException {
+				try {
+					if(json) writer.write("[");
+					for(int start = 0; start < xrefs.size(); start += CHUNK_SIZE) {
+						List<Xref> chunk = xrefs.subList(start, Math.min(start + CHUNK_SIZE, xrefs.size()));
+						writeChunk(chunk, writer, json, start == 0);
+						writer.flush();
+					}
+					if(json) writer.write("]");
+				} catch(IDMapperException e) {
+					//Too late to change the status as results have already been sent.
+					e.printStackTrace();
+					throw new IOException(e.getMessage());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writes the results for part of the batch.
+	 * @param chunk xrefs to process, at most CHUNK_SIZE
+	 * @param writer to write the results to
+	 * @param json true to write JSON objects, false for tab delimited lines
+	 * @param first true if this is the first chunk, so no separator is needed before the first JSON object
+	 */
+	protected abstract void writeChunk(List<Xref> chunk, Writer writer, boolean json, boolean first)
+		throws IDMapperException, IOException;
+
+	private boolean isJson(Representation entity) {
+		MediaType mediaType = entity.getMediaType();
+		return mediaType != null && MediaType.APPLICATION_JSON.getName().equals(mediaType.getName());
+	}
+
+	List<Xref> readXrefs(Reader reader, boolean json) throws IOException {
+		if(json) {
+			return toXrefs(new JsonXrefReader(reader).read());
+		}
+		List<String[]> items = new ArrayList<String[]>();
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		while((line = lines.readLine()) != null) {
+			if(line.trim().length() == 0) continue;
+			items.add(line.split("\t"));
+		}
+		return toXrefs(items);
+	}
+
+	private List<Xref> toXrefs(List<String[]> items) {
+		List<Xref> result = new ArrayList<Xref>();
+		for(String[] item : items) {
+			String id = item[0].trim();
+			DataSource ds = defaultDs;
+			if(item.length > 1 && item[1].trim().length() > 0) {
+				ds = parseDataSource(item[1].trim());
+				if(ds == null) {
+					throw new IllegalArgumentException("Unknown datasource: " + item[1]);
+				}
+			}
+			if(ds == null) {
+				throw new IllegalArgumentException("No datasource given for: " + id);
+			}
+			result.add(new Xref(id, ds));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the id and datasource of an xref as the start of a JSON object.
+	 */
+	protected static void writeJsonXref(Writer writer, Xref xref) throws IOException {
+		writer.write("{\"id\":");
+		writeJsonString(writer, xref.getId());
+		writer.write(",\"system\":");
+		writeJsonString(writer, fullName(xref.getDataSource()));
+	}
+
+	/**
+	 * @return the full name of the datasource, or the system code for datasources registered without a name.
+	 */
+	protected static String fullName(DataSource ds) {
+		return ds.getFullName() == null ? ds.getSystemCode() : ds.getFullName();
+	}
+
+	/**
+	 * @return the system code of the datasource, or the full name for datasources registered without a code.
+	 */
+	protected static String systemCode(DataSource ds) {
+		return ds.getSystemCode() == null ? ds.getFullName() : ds.getSystemCode();
+	}
+
+	protected static void writeJsonString(Writer writer, String value) throws IOException {
+		if(value == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+				case '"': writer.write("\\\""); break;
+				case '\\': writer.write("\\\\"); break;
+				case '\n': writer.write("\\n"); break;
+				case '\r': writer.write("\\r"); break;
+				case '\t': writer.write("\\t"); break;
+				default:
+					if(c < 0x20) {
+						writer.write(String.format("\\u%04x", (int)c));
+					} else {
+						writer.write(c);
+					}
+			}
+		}
+		writer.write('"');
+	}
+}
@@ -104,6 +104,18 @@ public class IDMapperService extends Application {
 	public static final String URL_XREFS = "/{" + PAR_ORGANISM + "}/xrefs/{" + PAR_SYSTEM + "}/{" + 
 		PAR_ID + "}";
 
+	/**
+	 * URL pattern for mapping a list of xrefs posted as tab delimited text or JSON.
+	 * The datasource of each xref may be given in the body or, for all of them, in the url.<BR>
+	 * <code>
+	 * POST /{organism}/xrefsBatch[/{system}][?dataSource={dsName}]
+	 * </code>
+	 * @see IDMapper#mapID(java.util.Collection, org.bridgedb.DataSource...)
+	 * @see XrefsBatch
+	 */
+	public static final String URL_XREFS_BATCH = "/{" + PAR_ORGANISM + "}/xrefsBatch";
+	public static final String URL_XREFS_BATCH_SYSTEM = URL_XREFS_BATCH + "/{" + PAR_SYSTEM + "}";
+
 	/**
 	 * URL pattern for searching xrefs.<BR>
 	 * <code>
@@ -192,6 +204,17 @@ public class IDMapperService extends Application {
 	 */
 	public static final String URL_ATTRIBUTES = "/{" + PAR_ORGANISM + "}/attributes/{" + PAR_SYSTEM + "}/{" + PAR_ID + "}";
 
+	/**
+	 * URL pattern for getting the attributes of a list of xrefs posted as tab delimited text or JSON.<BR>
+	 * <code>
+	 * POST /{organism}/attributesBatch[/{system}][?attrName={attrName}]
+	 * </code>
+	 * @see AttributeMapper#getAttributes(org.bridgedb.Xref, String)
+	 * @see AttributesBatch
+	 */
+	public static final String URL_ATTRIBUTES_BATCH = "/{" + PAR_ORGANISM + "}/attributesBatch";
+	public static final String URL_ATTRIBUTES_BATCH_SYSTEM = URL_ATTRIBUTES_BATCH + "/{" + PAR_SYSTEM + "}";
+
 	/**
 	 * URL pattern for getting the supported attribute set.<BR>
 	 * <code>
@@ -264,6 +287,12 @@ public class IDMapperService extends Application {
 		//in the attributes
 		xrefsRoute.extractQuery(PAR_TARGET_SYSTEM, PAR_TARGET_SYSTEM, true);
 
+		//Batch routes with the system first so the shorter pattern does not hide it
+		Route xrefsBatchRoute = router.attach(URL_XREFS_BATCH_SYSTEM, XrefsBatch.class);
+		xrefsBatchRoute.extractQuery(PAR_TARGET_SYSTEM, PAR_TARGET_SYSTEM, true);
+		xrefsBatchRoute = router.attach(URL_XREFS_BATCH, XrefsBatch.class);
+		xrefsBatchRoute.extractQuery(PAR_TARGET_SYSTEM, PAR_TARGET_SYSTEM, true);
+
 		Route searchRoute = router.attach( URL_SEARCH, FreeSearch.class );
 		searchRoute.extractQuery( PAR_TARGET_LIMIT, PAR_TARGET_LIMIT, true );
 		
@@ -290,6 +319,11 @@ public class IDMapperService extends Application {
 		
 		Route attributesRoute = router.attach(URL_ATTRIBUTES, Attributes.class );
 		attributesRoute.extractQuery( PAR_TARGET_ATTR_NAME, PAR_TARGET_ATTR_NAME, true );
+
+		Route attributesBatchRoute = router.attach(URL_ATTRIBUTES_BATCH_SYSTEM, AttributesBatch.class );
+		attributesBatchRoute.extractQuery( PAR_TARGET_ATTR_NAME, PAR_TARGET_ATTR_NAME, true );
+		attributesBatchRoute = router.attach(URL_ATTRIBUTES_BATCH, AttributesBatch.class );
+		attributesBatchRoute.extractQuery( PAR_TARGET_ATTR_NAME, PAR_TARGET_ATTR_NAME, true );
 		
 		/* Extra methods */
 		// Register the route for backPageText
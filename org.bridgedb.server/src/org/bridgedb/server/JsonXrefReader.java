@@ -0,0 +1,189 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the JSON list of xrefs posted to the batch resources.
+ * <p>
+ * Only the subset of JSON needed is understood: an array whose items are strings (an identifier),
+ * arrays of strings ([id, datasource]) or objects with string "id" and "system" fields.
+ * Other fields of an object are ignored.
+ */
+class JsonXrefReader {
+	private final PushbackReader reader;
+
+	JsonXrefReader(Reader reader) {
+		this.reader = new PushbackReader(reader);
+	}
+
+	/**
+	 * @return for each item, the identifier optionally followed by the datasource.
+	 * @throws IllegalArgumentException if the input is not in the expected format.
+	 */
+	List<String[]> read() throws IOException {
+		List<String[]> result = new ArrayList<String[]>();
+		expect('[');
+		if(peek() == ']') {
+			reader.read();
+			return result;
+		}
+		while(true) {
+			int c = peek();
+			if(c == '"') {
+				result.add(new String[] { readString() });
+			} else if(c == '[') {
+				result.add(readPair());
+			} else if(c == '{') {
+				result.add(readObject());
+			} else {
+				throw error("Expected a string, array or object");
+			}
+			c = next();
+			if(c == ']') break;
+			if(c != ',') throw error("Expected , or ]");
+		}
+		return result;
+	}
+
+	private String[] readPair() throws IOException {
+		expect('[');
+		List<String> values = new ArrayList<String>();
+		if(peek() != ']') {
+			while(true) {
+				values.add(readString());
+				int c = next();
+				if(c == ']') break;
+				if(c != ',') throw error("Expected , or ]");
+			}
+		} else {
+			reader.read();
+		}
+		if(values.isEmpty()) throw error("Empty xref");
+		return values.toArray(new String[values.size()]);
+	}
+
+	private String[] readObject() throws IOException {
+		expect('{');
+		String id = null;
+		String system = null;
+		if(peek() == '}') {
+			reader.read();
+		} else {
+			while(true) {
+				String key = readString();
+				expect(':');
+				String value = readValue();
+				if("id".equals(key)) {
+					id = value;
+				} else if("system".equals(key)) {
+					system = value;
+				}
+				int c = next();
+				if(c == '}') break;
+				if(c != ',') throw error("Expected , or }");
+			}
+		}
+		if(id == null) throw error("Object without an id");
+		if(system == null) return new String[] { id };
+		return new String[] { id, system };
+	}
+
+	/**
+	 * Reads a string or a simple literal such as a number, true or null.
+	 */
+	private String readValue() throws IOException {
+		if(peek() == '"') return readString();
+		StringBuilder sb = new StringBuilder();
+		int c = reader.read();
+		while(c != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+			sb.append((char)c);
+			c = reader.read();
+		}
+		if(c != -1) reader.unread(c);
+		String literal = sb.toString();
+		if(literal.length() == 0) throw error("Expected a value");
+		return "null".equals(literal) ? null : literal;
+	}
+
+	private String readString() throws IOException {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while(true) {
+			int c = reader.read();
+			if(c == -1) throw error("Unterminated string");
+			if(c == '"') return sb.toString();
+			if(c == '\\') {
+				c = reader.read();
+				switch(c) {
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'u':
+						char[] hex = new char[4];
+						for(int i = 0; i < 4; i++) {
+							int h = reader.read();
+							if(h == -1) throw error("Unterminated string");
+							hex[i] = (char)h;
+						}
+						try {
+							sb.append((char)Integer.parseInt(new String(hex), 16));
+						} catch(NumberFormatException e) {
+							throw error("Illegal escape \\u" + new String(hex));
+						}
+						break;
+					case -1: throw error("Unterminated string");
+					default: sb.append((char)c);
+				}
+			} else {
+				sb.append((char)c);
+			}
+		}
+	}
+
+	/** Next non whitespace character, consumed */
+	private int next() throws IOException {
+		int c = reader.read();
+		while(c != -1 && Character.isWhitespace(c)) {
+			c = reader.read();
+		}
+		return c;
+	}
+
+	/** Next non whitespace character, not consumed */
+	private int peek() throws IOException {
+		int c = next();
+		if(c != -1) reader.unread(c);
+		return c;
+	}
+
+	private void expect(char expected) throws IOException {
+		int c = next();
+		if(c != expected) throw error("Expected " + expected);
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Unable to read JSON xref list. " + message);
+	}
+}
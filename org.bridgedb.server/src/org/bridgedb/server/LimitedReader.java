@@ -0,0 +1,60 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that refuses to read more than a fixed number of characters,
+ * so a request body can not use up the memory of the server.
+ */
+class LimitedReader extends FilterReader {
+	private final int limit;
+	private int count = 0;
+
+	static class BodyTooLargeException extends IOException {
+		BodyTooLargeException(int limit) {
+			super("Request body is over the maximum of " + limit + " characters. Please split it into smaller batches.");
+		}
+	}
+
+	LimitedReader(Reader reader, int limit) {
+		super(reader);
+		this.limit = limit;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int c = super.read();
+		if(c != -1) counted(1);
+		return c;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		int n = super.read(buffer, offset, length);
+		if(n > 0) counted(n);
+		return n;
+	}
+
+	private void counted(int n) throws BodyTooLargeException {
+		count += n;
+		if(count > limit) throw new BodyTooLargeException(limit);
+	}
+}
@@ -0,0 +1,101 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Resource that handles the batch xref queries, mapping a posted list of xrefs
+ * through the collection version of mapID.
+ * <p>
+ * Tab delimited results have a line for each xref posted with the identifier, the datasource
+ * and a comma separated list of system code:identifier mappings, or N/A if there are none.
+ */
+public class XrefsBatch extends BatchIDMapperResource {
+	static final String NO_RESULTS = "N/A";
+
+	DataSource targetDs;
+
+	protected void doInit() throws ResourceException {
+		super.doInit();
+		try {
+			//Optional parameters
+			String targetDsName = (String)getRequest().getAttributes().get(IDMapperService.PAR_TARGET_SYSTEM);
+			if(targetDsName != null) {
+				targetDs = parseDataSource(urlDecode(targetDsName));
+			}
+		} catch(Exception e) {
+			throw new ResourceException(e);
+		}
+	}
+
+	@Override
+	protected void writeChunk(List<Xref> chunk, Writer writer, boolean json, boolean first)
+			throws IDMapperException, IOException {
+		Map<Xref, Set<Xref>> mappings;
+		if(targetDs == null)
+			mappings = getIDMappers().mapID(chunk);
+		else
+			mappings = getIDMappers().mapID(chunk, targetDs);
+		for(Xref xref : chunk) {
+			Set<Xref> xrefs = mappings.get(xref);
+			if(json) {
+				if(!first) writer.write(",");
+				first = false;
+				writeJsonXref(writer, xref);
+				writer.write(",\"xrefs\":[");
+				if(xrefs != null) {
+					boolean firstXref = true;
+					for(Xref x : xrefs) {
+						if(!firstXref) writer.write(",");
+						firstXref = false;
+						writeJsonXref(writer, x);
+						writer.write("}");
+					}
+				}
+				writer.write("]}");
+			} else {
+				writer.write(xref.getId());
+				writer.write("\t");
+				writer.write(fullName(xref.getDataSource()));
+				writer.write("\t");
+				if(xrefs == null || xrefs.isEmpty()) {
+					writer.write(NO_RESULTS);
+				} else {
+					boolean firstXref = true;
+					for(Xref x : xrefs) {
+						if(!firstXref) writer.write(",");
+						firstXref = false;
+						writer.write(systemCode(x.getDataSource()));
+						writer.write(":");
+						writer.write(x.getId());
+					}
+				}
+				writer.write("\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Assert;
+
+public class JsonXrefReaderTest {
+
+	private static List<String[]> read(String json) throws IOException {
+		return new JsonXrefReader(new StringReader(json)).read();
+	}
+
+	@org.junit.Test
+	public void testItems() throws IOException {
+		List<String[]> items = read(" [ \"1234\", [\"ENSG1\", \"En\"], {\"system\":\"L\", \"score\":2, \"id\":\"5678\"} ] ");
+		Assert.assertEquals(3, items.size());
+		Assert.assertArrayEquals(new String[] { "1234" }, items.get(0));
+		Assert.assertArrayEquals(new String[] { "ENSG1", "En" }, items.get(1));
+		Assert.assertArrayEquals(new String[] { "5678", "L" }, items.get(2));
+	}
+
+	@org.junit.Test
+	public void testEmptyAndEscapes() throws IOException {
+		Assert.assertTrue(read("[]").isEmpty());
+		List<String[]> items = read("[\"a\\\"b\\\\c\\u0041\", {\"id\":\"x\", \"system\":null}]");
+		Assert.assertEquals("a\"b\\cA", items.get(0)[0]);
+		Assert.assertArrayEquals(new String[] { "x" }, items.get(1));
+	}
+
+	@org.junit.Test
+	public void testErrors() throws IOException {
+		String[] bad = { "", "{}", "[\"a\"", "[\"a\" \"b\"]", "[{\"system\":\"L\"}]", "[[]]", "[\"unterminated]", "[12]" };
+		for(String json : bad) {
+			try {
+				read(json);
+				Assert.fail("Accepted " + json);
+			} catch(IllegalArgumentException expected) {
+			}
+		}
+	}
+}
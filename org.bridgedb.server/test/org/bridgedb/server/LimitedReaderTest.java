@@ -0,0 +1,41 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+
+public class LimitedReaderTest {
+
+	@org.junit.Test
+	public void testUnderLimit() throws IOException {
+		BufferedReader reader = new BufferedReader(new LimitedReader(new StringReader("1234\tL\n5678\tL\n"), 14));
+		Assert.assertEquals("1234\tL", reader.readLine());
+		Assert.assertEquals("5678\tL", reader.readLine());
+		Assert.assertNull(reader.readLine());
+	}
+
+	@org.junit.Test(expected = LimitedReader.BodyTooLargeException.class)
+	public void testOverLimit() throws IOException {
+		BufferedReader reader = new BufferedReader(new LimitedReader(new StringReader("1234\tL\n5678\tL\n"), 13));
+		while(reader.readLine() != null) {
+		}
+	}
+}
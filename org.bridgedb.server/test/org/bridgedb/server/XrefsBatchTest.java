@@ -0,0 +1,112 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.server;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.AbstractIDMapperCapabilities;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperCapabilities;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+
+/**
+ * Tests reading the posted xrefs and writing the batch results, without a running server.
+ */
+public class XrefsBatchTest {
+	private static final DataSource NAMED = DataSource.register("XbN", "XrefsBatchTest named").asDataSource();
+	//Registered with only a code so it has no full name
+	private static final DataSource CODE_ONLY = DataSource.getBySystemCode("XbC");
+
+	/** Maps every xref, except "none", to one xref of the CODE_ONLY datasource */
+	private static class EchoMapper implements IDMapper {
+		public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources) {
+			Map<Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
+			for(Xref ref : srcXrefs) {
+				result.put(ref, mapID(ref));
+			}
+			return result;
+		}
+		public Set<Xref> mapID(Xref ref, DataSource... tgtDataSources) {
+			if(ref.getId().equals("none")) return Collections.emptySet();
+			Set<Xref> result = new HashSet<Xref>();
+			result.add(new Xref("c" + ref.getId(), CODE_ONLY));
+			return result;
+		}
+		public boolean xrefExists(Xref xref) { return true; }
+		public Set<Xref> freeSearch(String text, int limit) { return Collections.emptySet(); }
+		public IDMapperCapabilities getCapabilities() {
+			return new AbstractIDMapperCapabilities(Collections.<DataSource>emptySet(), false, null) {};
+		}
+		public void close() {}
+		public boolean isConnected() { return true; }
+	}
+
+	private static XrefsBatch resource() {
+		final IDMapperStack stack = new IDMapperStack();
+		stack.addIDMapper(new EchoMapper());
+		return new XrefsBatch() {
+			@Override
+			protected IDMapperStack getIDMappers() {
+				return stack;
+			}
+		};
+	}
+
+	@org.junit.Test
+	public void testReadText() throws IOException {
+		List<Xref> xrefs = resource().readXrefs(new StringReader("1\tXbN\n\n2\tXrefsBatchTest named\n"), false);
+		Assert.assertEquals(2, xrefs.size());
+		Assert.assertEquals(new Xref("1", NAMED), xrefs.get(0));
+		Assert.assertEquals(new Xref("2", NAMED), xrefs.get(1));
+	}
+
+	@org.junit.Test(expected = IllegalArgumentException.class)
+	public void testReadNoDataSource() throws IOException {
+		resource().readXrefs(new StringReader("1\n"), false);
+	}
+
+	@org.junit.Test
+	public void testWriteText() throws IOException, IDMapperException {
+		StringWriter writer = new StringWriter();
+		List<Xref> chunk = resource().readXrefs(new StringReader("1\tXbN\nnone\tXbC\n"), false);
+		resource().writeChunk(chunk, writer, false, true);
+		Assert.assertEquals("1\tXrefsBatchTest named\tXbC:c1\nnone\tXbC\t" + XrefsBatch.NO_RESULTS + "\n",
+				writer.toString());
+	}
+
+	@org.junit.Test
+	public void testWriteJson() throws IOException, IDMapperException {
+		StringWriter writer = new StringWriter();
+		List<Xref> chunk = resource().readXrefs(new StringReader("[[\"1\", \"XbC\"]]"), true);
+		resource().writeChunk(chunk, writer, true, true);
+		Assert.assertEquals("{\"id\":\"1\",\"system\":\"XbC\",\"xrefs\":[{\"id\":\"c1\",\"system\":\"XbC\"}]}",
+				writer.toString());
+	}
+}
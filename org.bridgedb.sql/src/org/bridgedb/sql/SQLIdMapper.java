@@ -36,6 +36,7 @@ import org.bridgedb.impl.InternalUtils;
 import org.bridgedb.pairs.CodeMapper;
 import org.bridgedb.pairs.IdSysCodePair;
 import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.RequestPhases;
 
 /**
  * Builds on the SQLListener to implement the Standard BridgeDB functions of IDMapper and IDMapperCapabilities.
@@ -46,12 +47,12 @@ import org.bridgedb.utils.BridgeDBException;
  */
 public class SQLIdMapper extends SQLListener implements IDMapper, IDMapperCapabilities {
 
-    /** 
-     * FreeSearch has proven to be very slow over large database so for large database we say it is unsupported.
-     */
-    private static final int FREESEARCH_CUTOFF = 100000;      
     //Internal parameters
     protected static final int DEFAULT_LIMIT = 1000;
+    /**
+     * Ending a freeSearch text with this makes it a prefix search.
+     */
+    public static final String PREFIX_WILDCARD = "*";
     /**
      * This identifies version of SQL such as MySQL that use "LIMIT" to restrict the number of tuples returned.
      */
@@ -120,46 +121,51 @@ public class SQLIdMapper extends SQLListener implements IDMapper, IDMapperCapabi
             }
             query.append(")");
         }
-        Statement statement = this.createStatement();
-        ResultSet rs = null;
+        long begin = RequestPhases.begin();
         try {
-            rs = statement.executeQuery(query.toString());
-        } catch (SQLException ex) {
-            close(statement, rs);
-            throw new BridgeDBException("Unable to run query. " + query, ex);
-        }     
-        Set<IdSysCodePair> results = resultSetToIdSysCodePairSet(rs);
-        if (tgtSysCodes.length == 0){
-           results.add(ref); 
-        } else {
-            for (String tgtSysCode: tgtSysCodes){
-                if (ref.getSysCode().equals(tgtSysCode)){
-                    results.add(ref);
+            Statement statement = this.createStatement();
+            ResultSet rs = null;
+            try {
+                rs = statement.executeQuery(query.toString());
+            } catch (SQLException ex) {
+                close(statement, rs);
+                throw new BridgeDBException("Unable to run query. " + query, ex);
+            }     
+            Set<IdSysCodePair> results = resultSetToIdSysCodePairSet(rs);
+            if (tgtSysCodes.length == 0){
+               results.add(ref); 
+            } else {
+                for (String tgtSysCode: tgtSysCodes){
+                    if (ref.getSysCode().equals(tgtSysCode)){
+                        results.add(ref);
+                    }
                 }
             }
-        }
-        if (results.size() <= 1){
-            String targets = "";
-            for (String tgtSysCode: tgtSysCodes){
-                targets+= tgtSysCode + ", ";
-            }
-            if (targets.isEmpty()){
-                targets = "all DataSources";
-            }
-            if (logger.isDebugEnabled()){
-                if (results.isEmpty()){
-                    logger.debug("Unable to map " + ref + " to any results for " + targets);
-                } else {
-                    logger.debug("Only able to map " + ref + " to itself for " + targets);
+            if (results.size() <= 1){
+                String targets = "";
+                for (String tgtSysCode: tgtSysCodes){
+                    targets+= tgtSysCode + ", ";
+                }
+                if (targets.isEmpty()){
+                    targets = "all DataSources";
+                }
+                if (logger.isDebugEnabled()){
+                    if (results.isEmpty()){
+                        logger.debug("Unable to map " + ref + " to any results for " + targets);
+                    } else {
+                        logger.debug("Only able to map " + ref + " to itself for " + targets);
+                    }
+                }
+            } else {
+                if (logger.isDebugEnabled()){
+                    logger.debug("Mapped " + ref + " to " + results.size() + " results");
                 }
             }
-        } else {
-            if (logger.isDebugEnabled()){
-                logger.debug("Mapped " + ref + " to " + results.size() + " results");
-            }
+            close(statement, rs);
+            return results;
+        } finally {
+            RequestPhases.record(RequestPhases.DB_QUERY, begin);
         }
-        close(statement, rs);
-        return results;
     }
 
  	/**
@@ -205,20 +211,25 @@ public class SQLIdMapper extends SQLListener implements IDMapper, IDMapperCapabi
             query.append(tgtSysCode);
             query.append("' ");
 
-        Statement statement = this.createStatement();
-        ResultSet rs = null;
+        long begin = RequestPhases.begin();
         try {
-            rs = statement.executeQuery(query.toString());
-        } catch (SQLException ex) {
+            Statement statement = this.createStatement();
+            ResultSet rs = null;
+            try {
+                rs = statement.executeQuery(query.toString());
+            } catch (SQLException ex) {
+                close(statement, rs);
+                throw new BridgeDBException("Unable to run query. " + query, ex);
+            }    
+            Set<IdSysCodePair> pairs = resultSetToIdSysCodePairSet(rs);
+            if (ref.getSysCode().equals(tgtSysCode)){
+                pairs.add(ref);
+            }
             close(statement, rs);
-            throw new BridgeDBException("Unable to run query. " + query, ex);
-        }    
-        Set<IdSysCodePair> pairs = resultSetToIdSysCodePairSet(rs);
-        if (ref.getSysCode().equals(tgtSysCode)){
-            pairs.add(ref);
+            return pairs;
+        } finally {
+            RequestPhases.record(RequestPhases.DB_QUERY, begin);
         }
-        close(statement, rs);
-        return pairs;
     }
 
     @Override
@@ -245,6 +256,7 @@ public class SQLIdMapper extends SQLListener implements IDMapper, IDMapperCapabi
         query.append(MAPPING_SET_DOT_ID_COLUMN_NAME);
         appendSourceIdSysCodePair(query, ref);
         appendLimitConditions(query,0, 1);
+        long begin = RequestPhases.begin();
         Statement statement = this.createStatement();
         ResultSet rs = null;
         try {
@@ -258,48 +270,69 @@ public class SQLIdMapper extends SQLListener implements IDMapper, IDMapperCapabi
         } catch (SQLException ex) {
             close(statement, rs);
             throw new BridgeDBException("Unable to run query. " + query, ex);
-        }    
+        } finally {
+            RequestPhases.record(RequestPhases.DB_QUERY, begin);
+        }
    }
 
+    /**
+     * Looks up the text as an identifier, ignoring case, in the identifier table filled by the loader.
+     * <p>
+     * A text ending in "*" is a prefix search, returning the identifiers that start with the rest of the text.
+     * Both are index lookups so they stay fast however many mappings the database holds.
+     */
     @Override
     public Set<Xref> freeSearch(String text, int limit) throws BridgeDBException {
+        boolean prefix = text.endsWith(PREFIX_WILDCARD);
+        String searchId = text.toLowerCase();
+        if (prefix){
+            searchId = searchId.substring(0, searchId.length() - PREFIX_WILDCARD.length());
+        }
+        searchId = insertEscpaeCharacters(searchId);
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         appendTopConditions(query, 0, limit); 
-        query.append(SOURCE_ID_COLUMN_NAME);
+        query.append(ID_COLUMN_NAME);
         query.append(" as ");
         query.append(TARGET_ID_COLUMN_NAME);
         query.append(", ");
-        query.append(SOURCE_DATASOURCE_COLUMN_NAME);
+        query.append(SYSCODE_COLUMN_NAME);
         query.append(" as ");
         query.append(TARGET_DATASOURCE_COLUMN_NAME);
         query.append(" FROM ");
-        query.append(MAPPING_TABLE_NAME);
-        query.append(", ");
-        query.append(MAPPING_SET_TABLE_NAME);
+        query.append(IDENTIFIER_TABLE_NAME);
         query.append(" WHERE ");
-        query.append(MAPPING_SET_ID_COLUMN_NAME);
-        query.append(" = ");
-        query.append(MAPPING_SET_DOT_ID_COLUMN_NAME);
-        query.append(" AND ");
-        query.append(SOURCE_ID_COLUMN_NAME);
-        query.append(" = '");
-            query.append(text);
+        query.append(SEARCH_ID_COLUMN_NAME);
+        if (prefix){
+            query.append(" LIKE '");
+            query.append(searchId.replace("%", "\\%").replace("_", "\\_"));
+            query.append("%' ORDER BY ");
+            query.append(SEARCH_ID_COLUMN_NAME);
+        } else {
+            query.append(" = '");
+            query.append(searchId);
             query.append("' ");
+        }
         appendLimitConditions(query,0, limit);
-        Statement statement = this.createStatement();
-        ResultSet rs = null;
+        long begin = RequestPhases.begin();
+        Set<IdSysCodePair> pairs;
         try {
-            rs = statement.executeQuery(query.toString());
-        } catch (SQLException ex) {
+            Statement statement = this.createStatement();
+            ResultSet rs = null;
+            try {
+                rs = statement.executeQuery(query.toString());
+            } catch (SQLException ex) {
+                close(statement, rs);
+                throw new BridgeDBException("Unable to run query. " + query, ex);
+            }    
+            pairs = resultSetToIdSysCodePairSet(rs);
+            if (logger.isDebugEnabled()){
+                logger.debug("Freesearch for " + text + " gave " + pairs.size() + " results");
+            }
             close(statement, rs);
-            throw new BridgeDBException("Unable to run query. " + query, ex);
-        }    
-        Set<IdSysCodePair> pairs = resultSetToIdSysCodePairSet(rs);
-        if (logger.isDebugEnabled()){
-            logger.debug("Freesearch for " + text + " gave " + pairs.size() + " results");
+        } finally {
+            RequestPhases.record(RequestPhases.DB_QUERY, begin);
         }
-        close(statement, rs);
         return toXrefs(pairs);
     }
 
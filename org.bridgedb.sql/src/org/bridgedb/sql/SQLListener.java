@@ -39,7 +39,9 @@ import org.bridgedb.utils.BridgeDBException;
  */
 public class SQLListener extends SQLBase implements MappingListener{
 
-    public static final int SQL_COMPAT_VERSION = 28;
+    public static final int SQL_COMPAT_VERSION = 29;
+    //Version 28 databases only lack the identifier table, which checkVersion adds.
+    private static final int SQL_VERSION_WITHOUT_IDENTIFIER_TABLE = 28;
   
     //Maximumn size in database
     protected static final int SYSCODE_LENGTH = 100;
@@ -57,6 +59,7 @@ public class SQLListener extends SQLBase implements MappingListener{
     
     //static final String DATASOURCE_TABLE_NAME = "DataSource";
     static final String INFO_TABLE_NAME = "info";  //Do not change as used by RDG packages as well
+    static final String IDENTIFIER_TABLE_NAME = "identifier";
     static final String MAPPING_TABLE_NAME = "mapping";
     public static final String MAPPING_SET_TABLE_NAME = "mappingSet";
     static final String PROPERTIES_TABLE_NAME = "properties";
@@ -69,6 +72,7 @@ public class SQLListener extends SQLBase implements MappingListener{
 
     static final String PROPERTY_COLUMN_NAME = "property";
     static final String SCHEMA_VERSION_COLUMN_NAME = "schemaversion"; //Do not change as used by RDG packages as well
+    static final String SEARCH_ID_COLUMN_NAME = "searchId";
     protected static final String SOURCE_DATASOURCE_COLUMN_NAME = "sourceDataSource";
     static final String SOURCE_ID_COLUMN_NAME = "sourceId";
     static final String SYSCODE_COLUMN_NAME = "sysCode";
@@ -77,7 +81,11 @@ public class SQLListener extends SQLBase implements MappingListener{
     static final String TYPE_COLUMN_NAME = "type";
     static final String URL_PATTERN_COLUMN_NAME = "urlPattern";
     static final String URN_BASE_COLUMN_NAME = "urnBase";
-    static final String LAST_UDPATES = "LastUpdates";
+    public static final String LAST_UDPATES = "LastUpdates";
+    /**
+     * Property holding the highest mappingSet id whose source ids are in the identifier table.
+     */
+    static final String IDENTIFIER_INDEXED_SET = "IdentifierIndexedSet";
    
     static final String FULL_NAME_PREFIX = "_";
     
@@ -210,7 +218,10 @@ public class SQLListener extends SQLBase implements MappingListener{
             statement.execute("analyze table mapping");
         } catch (SQLException ex) {
             throw new BridgeDBException ("Error analyze table mapping ", ex);
-        }        
+        } finally {
+            close (statement, null);
+        }
+        updateIdentifierTable();
         insertQuery = null;
         logger.debug("Finished processing linkset");
         if (possibleOpenConnection != null){
@@ -299,6 +310,66 @@ public class SQLListener extends SQLBase implements MappingListener{
         blockCount = 0;
     }
     
+    /**
+     * Adds the distinct source ids of the mappingSets loaded since the last call to the identifier table.
+     * <p>
+     * The identifier table is what freeSearch looks in, 
+     * so a search is an index lookup on one row per id rather than on every mapping of that id.
+     * @throws BridgeDBException 
+     */
+    private void updateIdentifierTable() throws BridgeDBException {
+        int indexed = 0;
+        int newest = 0;
+        Statement statement = createStatement();
+        ResultSet rs = null;
+        String query = "SELECT " + PROPERTY_COLUMN_NAME + " FROM " + PROPERTIES_TABLE_NAME 
+                + " WHERE " + KEY_COLUMN_NAME + " = '" + IDENTIFIER_INDEXED_SET + "'";
+        try {
+            rs = statement.executeQuery(query);
+            if (rs.next()){
+                indexed = Integer.parseInt(rs.getString(1));
+            }
+            rs.close();
+            query = "SELECT MAX(" + ID_COLUMN_NAME + ") FROM " + MAPPING_SET_TABLE_NAME;
+            rs = statement.executeQuery(query);
+            if (rs.next()){
+                newest = rs.getInt(1);
+            }
+            if (newest <= indexed){
+                return;
+            }
+            StringBuilder insert = new StringBuilder();
+            if (SqlFactory.supportsInsertIgnore()){
+                insert.append("INSERT IGNORE INTO ");
+            } else {
+                insert.append("INSERT INTO ");
+            }
+            insert.append(IDENTIFIER_TABLE_NAME)
+                    .append(" (" + ID_COLUMN_NAME + ", " + SYSCODE_COLUMN_NAME + ", " + SEARCH_ID_COLUMN_NAME + ")")
+                    .append(" SELECT DISTINCT " + SOURCE_ID_COLUMN_NAME + ", " + SOURCE_DATASOURCE_COLUMN_NAME) 
+                    .append(", LOWER(" + SOURCE_ID_COLUMN_NAME + ")")
+                    .append(" FROM " + MAPPING_TABLE_NAME + ", " + MAPPING_SET_TABLE_NAME)
+                    .append(" WHERE " + MAPPING_SET_ID_COLUMN_NAME + " = " + MAPPING_SET_DOT_ID_COLUMN_NAME)
+                    .append(" AND " + MAPPING_SET_ID_COLUMN_NAME + " > " + indexed)
+                    .append(" AND " + MAPPING_SET_ID_COLUMN_NAME + " <= " + newest);
+            if (!SqlFactory.supportsInsertIgnore()){
+                //Skip the ids already in the table instead
+                insert.append(" AND NOT EXISTS (SELECT * FROM " + IDENTIFIER_TABLE_NAME + " known")
+                        .append(" WHERE known." + ID_COLUMN_NAME + " = " + SOURCE_ID_COLUMN_NAME)
+                        .append(" AND known." + SYSCODE_COLUMN_NAME + " = " + SOURCE_DATASOURCE_COLUMN_NAME + ")");
+            }
+            query = insert.toString();
+            statement.executeUpdate(query);
+        } catch (SQLException ex) {
+            throw new BridgeDBException ("Error updating the identifier table using " + query, ex);
+        } catch (NumberFormatException ex) {
+            throw new BridgeDBException ("Illegal " + IDENTIFIER_INDEXED_SET + " property ", ex);
+        } finally {
+            close (statement, rs);
+        }
+        putProperty(IDENTIFIER_INDEXED_SET, Integer.toString(newest));
+    }
+
      /**
 	 * Excecutes several SQL statements to drop the tables 
 	 * @throws BridgeDBException 
@@ -306,6 +377,7 @@ public class SQLListener extends SQLBase implements MappingListener{
 	protected void dropSQLTables() throws BridgeDBException
 	{
  		dropTable(INFO_TABLE_NAME);
+ 		dropTable(IDENTIFIER_TABLE_NAME);
  		dropTable(MAPPING_TABLE_NAME);
  		dropTable(MAPPING_SET_TABLE_NAME);
  		dropTable(PROPERTIES_TABLE_NAME);
@@ -355,6 +427,9 @@ public class SQLListener extends SQLBase implements MappingListener{
       *     Currently only used by OPS to draw a different line in the graphviz but could be used by lenses.
       * "mappingCount" is a precomputed value @see countLinks() method.
       * <p>
+      * Table "identifier" holds each distinct source id and sysCode once, with a lowercased copy to search on.
+      * It is filled in by closeInput() and used by freeSearch.
+      * <p>
       * Table "properties" underpins bridgeDB properties methods.
       * "isPublic" field dettermines if the key will be returned by the getKeys() method.
 	  * @throws BridgeDBException 
@@ -380,6 +455,8 @@ public class SQLListener extends SQLBase implements MappingListener{
                     + "INDEX `sourceMappingSetFind` (" + MAPPING_SET_ID_COLUMN_NAME + ", " + SOURCE_ID_COLUMN_NAME + ") "
                     + " ) "  + SqlFactory.engineSetting();
             statement.execute(query);
+            query = createIdentifierTableQuery();
+            statement.execute(query);
             statement.execute ("CREATE TABLE  "
                     + "    " + PROPERTIES_TABLE_NAME
                     + "(   " + KEY_COLUMN_NAME +   "      VARCHAR(" + KEY_LENGTH + ") NOT NULL, "
@@ -395,6 +472,52 @@ public class SQLListener extends SQLBase implements MappingListener{
         createMappingSetTable();
     }
      
+    private String createIdentifierTableQuery(){
+        return "CREATE TABLE " + IDENTIFIER_TABLE_NAME 
+                + "( " + ID_COLUMN_NAME             + " VARCHAR(" + ID_LENGTH + ") NOT NULL, "
+                + "  " + SYSCODE_COLUMN_NAME        + " VARCHAR(" + SYSCODE_LENGTH + ") NOT NULL, " 
+                + "  " + SEARCH_ID_COLUMN_NAME      + " VARCHAR(" + ID_LENGTH + ") NOT NULL, "
+                + "PRIMARY KEY (" + SYSCODE_COLUMN_NAME + ", " + ID_COLUMN_NAME + "), "
+                + "INDEX `searchFind` (" + SEARCH_ID_COLUMN_NAME + ") "
+                + " ) "  + SqlFactory.engineSetting();
+    }
+
+    /**
+     * Brings a version 28 database up to date by adding the identifier table,
+     * filling it from the mappings already loaded, and then updating the schema version.
+     * <p>
+     * The version is only changed once the table is filled, 
+     * so a migration that fails part way is run again from the start.
+     * @throws BridgeDBException 
+     */
+    private void addIdentifierTable() throws BridgeDBException {
+        logger.info("Adding the " + IDENTIFIER_TABLE_NAME + " table to a version " 
+                + SQL_VERSION_WITHOUT_IDENTIFIER_TABLE + " database");
+        dropTable(IDENTIFIER_TABLE_NAME);
+        String query = createIdentifierTableQuery();
+        Statement statement = createStatement();
+        try {
+            statement.execute(query);
+            query = "DELETE FROM " + PROPERTIES_TABLE_NAME 
+                    + " WHERE " + KEY_COLUMN_NAME + " = '" + IDENTIFIER_INDEXED_SET + "'";
+            statement.executeUpdate(query);
+        } catch (SQLException ex) {
+            throw new BridgeDBException ("Error adding the identifier table using " + query, ex);
+        } finally {
+            close (statement, null);
+        }
+        updateIdentifierTable();
+        statement = createStatement();
+        query = "UPDATE " + INFO_TABLE_NAME + " SET " + SCHEMA_VERSION_COLUMN_NAME + " = " + SQL_COMPAT_VERSION;
+        try {
+            statement.executeUpdate(query);
+        } catch (SQLException ex) {
+            throw new BridgeDBException ("Error updating the schema version using " + query, ex);
+        } finally {
+            close (statement, null);
+        }
+    }
+
     protected void createMappingSetTable() throws BridgeDBException {
         //"IF NOT EXISTS " is not supported
         String query = "";
@@ -416,7 +539,7 @@ public class SQLListener extends SQLBase implements MappingListener{
     }
        
     /**
-     * Checks that the schema is for this version.
+     * Checks that the schema is for this version, first adding the identifier table to version 28 databases.
      * 
      * @throws BridgeDBException If the schema version is not the expected one.
      */
@@ -434,6 +557,9 @@ public class SQLListener extends SQLBase implements MappingListener{
         }
         if (version == SQL_COMPAT_VERSION) return;
         switch (version) {
+            case SQL_VERSION_WITHOUT_IDENTIFIER_TABLE:
+                addIdentifierTable();
+                return;
             case 2:
                 throw new BridgeDBException("Please use the SimpleGdbFactory in the org.bridgedb.rdb package");
             case 3:
@@ -222,6 +222,17 @@ public class SqlFactory extends ConfigReader{
         }        
     }
 
+    /**
+     * @return True if rows that would break a unique key can be skipped with INSERT IGNORE.
+     */
+    static boolean supportsInsertIgnore() {
+        if (useMySQL){
+            return true;
+        } else {
+            return false;
+        }        
+    }
+
     static boolean supportsLimit() {
         if (useMySQL){
             return true;
@@ -0,0 +1,144 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.mysql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.bridgedb.pairs.SyscodeBasedCodeMapper;
+import org.bridgedb.sql.SQLIdMapper;
+import org.bridgedb.sql.SQLListener;
+import org.bridgedb.sql.SqlFactory;
+import org.bridgedb.sql.TestSqlFactory;
+import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the loader fills the identifier table and that freeSearch finds ids in it.
+ */
+public class IdentifierTableTest {
+
+    private static final DataSource SOURCE = DataSource.register("ItS", "IdentifierTableTest source").asDataSource();
+    private static final DataSource TARGET = DataSource.register("ItT", "IdentifierTableTest target").asDataSource();
+
+    private static SQLListener listener;
+    private static SQLIdMapper sqlIdMapper;
+
+    @BeforeClass
+    public static void setupIDMapper() throws BridgeDBException{
+        TestSqlFactory.checkSQLAccess();
+        ConfigReader.useTest();
+        listener = new SQLListener(true);
+        int mappingSet = listener.registerMappingSet(SOURCE, TARGET, false);
+        listener.insertLink("ABC1", "t1", mappingSet, false);
+        listener.insertLink("ABC1", "t2", mappingSet, false);
+        listener.insertLink("abc2", "t3", mappingSet, false);
+        listener.insertLink("AB_3", "t4", mappingSet, false);
+        listener.insertLink("XYZ", "t5", mappingSet, false);
+        listener.closeInput();
+        sqlIdMapper = new SQLIdMapper(false, new SyscodeBasedCodeMapper());
+    }
+
+    private static int identifierRows() throws BridgeDBException, SQLException {
+        Connection connection = SqlFactory.createTheSQLAccess().getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM identifier");
+            rs.next();
+            int result = rs.getInt(1);
+            statement.close();
+            return result;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static int execute(String update) throws BridgeDBException, SQLException {
+        Connection connection = SqlFactory.createTheSQLAccess().getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            int result = statement.executeUpdate(update);
+            statement.close();
+            return result;
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testMigrateVersion28() throws Exception {
+        int rows = identifierRows();
+        //A database loaded before the identifier table was added
+        execute("DROP TABLE identifier");
+        execute("DELETE FROM properties WHERE theKey = 'IdentifierIndexedSet'");
+        execute("UPDATE info SET schemaversion = 28");
+
+        SQLIdMapper migrated = new SQLIdMapper(false, new SyscodeBasedCodeMapper());
+        assertEquals(rows, identifierRows());
+        assertTrue(migrated.freeSearch("abc1", 10).contains(new Xref("ABC1", SOURCE)));
+        assertEquals(0, execute("UPDATE info SET schemaversion = " + SQLListener.SQL_COMPAT_VERSION 
+                + " WHERE schemaversion <> " + SQLListener.SQL_COMPAT_VERSION));
+    }
+
+    @Test
+    public void testExactSearch() throws Exception {
+        Set<Xref> results = sqlIdMapper.freeSearch("abc1", 10);
+        assertEquals(1, results.size());
+        assertTrue(results.contains(new Xref("ABC1", SOURCE)));
+        assertTrue(sqlIdMapper.freeSearch("ABC", 10).isEmpty());
+    }
+
+    @Test
+    public void testPrefixSearch() throws Exception {
+        Set<Xref> results = sqlIdMapper.freeSearch("abc" + SQLIdMapper.PREFIX_WILDCARD, 10);
+        assertEquals(2, results.size());
+        assertTrue(results.contains(new Xref("ABC1", SOURCE)));
+        assertTrue(results.contains(new Xref("abc2", SOURCE)));
+        assertEquals(1, sqlIdMapper.freeSearch("abc" + SQLIdMapper.PREFIX_WILDCARD, 1).size());
+        //The underscore is matched literally rather than as a LIKE wildcard
+        results = sqlIdMapper.freeSearch("ab_" + SQLIdMapper.PREFIX_WILDCARD, 10);
+        assertEquals(1, results.size());
+        assertTrue(results.contains(new Xref("AB_3", SOURCE)));
+    }
+
+    /**
+     * Both loads are checked in one test as the second changes the table the first is checked on.
+     */
+    @Test
+    public void testTablePopulated() throws Exception {
+        //Each distinct source id once, however many mappings it has
+        assertEquals(4, identifierRows());
+        assertNotNull(sqlIdMapper.getProperty("IdentifierIndexedSet"));
+
+        //A second load only adds the source ids of its own mapping sets
+        SQLListener more = new SQLListener(false);
+        int mappingSet = more.registerMappingSet(TARGET, SOURCE, false);
+        more.insertLink("t1", "ABC1", mappingSet, false);
+        more.insertLink("t9", "XYZ", mappingSet, false);
+        more.closeInput();
+        assertEquals(6, identifierRows());
+        assertEquals(Integer.toString(mappingSet), sqlIdMapper.getProperty("IdentifierIndexedSet"));
+        assertTrue(sqlIdMapper.freeSearch("t9", 10).contains(new Xref("t9", TARGET)));
+    }
+}
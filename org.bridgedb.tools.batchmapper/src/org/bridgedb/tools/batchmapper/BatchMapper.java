@@ -16,13 +16,16 @@
 //
 package org.bridgedb.tools.batchmapper;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
@@ -30,10 +33,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.bridgedb.BridgeDb;
 import org.bridgedb.IDMapperException;
@@ -56,6 +67,11 @@ public class BatchMapper
 		int verbose = 0; // 0, 1 or 2
 		int mode = 0; // 0 or 1
 		int multiMap = 0; // 0 or 1
+		int threads = 1;
+		int chunkSize = Mapper.DEFAULT_CHUNK_SIZE;
+		File fMissing = null;
+		File fAmbiguous = null;
+		int sampleSize = Mapper.DEFAULT_SAMPLE_SIZE;
 	}
 	
 	public static void main(String[] args)
@@ -93,9 +109,15 @@ public class BatchMapper
 				"		[-o <output file>] \n" +
 				"		[-c <input column, 0-based>]\n" +
 				"		[-r <report file>] \n" +
+				"		[-j <number of threads>] \n" +
+				"		[-b <lines per batch>] \n" +
+				"		[-rm <missing id file>] \n" +
+				"		[-ra <ambiguous id file>] \n" +
+				"		[-s <number of id's listed in report>] \n" +
 				"\n" +
 				"You should specify at least one -g or -t option.\n" +
-				"Multiple -g or -t options will be combined transitively.\n");
+				"Multiple -g or -t options will be combined transitively.\n" +
+				"Input and output files ending with .gz are read and written gzip compressed.\n");
 	}
 	
 	private DataSource dsFromArg(String arg)
@@ -199,6 +221,43 @@ public class BatchMapper
 			{
 				settings.multiMap = 1;
 			}
+			else if (args[pos].equals("-rm"))
+			{
+				pos++;
+				if (pos >= args.length) return "File expected after -rm";
+				settings.fMissing = new File (args[pos]);
+			}
+			else if (args[pos].equals("-ra"))
+			{
+				pos++;
+				if (pos >= args.length) return "File expected after -ra";
+				settings.fAmbiguous = new File (args[pos]);
+			}
+			else if (args[pos].equals("-j") || args[pos].equals("-b") || args[pos].equals("-s"))
+			{
+				String option = args[pos];
+				pos++;
+				if (pos >= args.length) return "Number expected after " + option;
+				int value;
+				try
+				{
+					value = Integer.parseInt (args[pos]);
+				}
+				catch (NumberFormatException ex)
+				{
+					return ex.getMessage();
+				}
+				if (option.equals("-s"))
+				{
+					if (value < 0) return "Number after -s can't be negative";
+					settings.sampleSize = value;
+				}
+				else
+				{
+					if (value < 1) return "Number after " + option + " must be at least 1";
+					if (option.equals("-j")) settings.threads = value; else settings.chunkSize = value;
+				}
+			}
 			else
 			{
 				return "Unrecognized option " + args[pos];
@@ -214,9 +273,14 @@ public class BatchMapper
 				settings.fOutput != null ||
 				settings.inputColumn != 0 ||
 				settings.multiMap != 0 ||
-				settings.fReport != null)
+				settings.fReport != null ||
+				settings.threads != 1 ||
+				settings.chunkSize != Mapper.DEFAULT_CHUNK_SIZE ||
+				settings.fMissing != null ||
+				settings.fAmbiguous != null ||
+				settings.sampleSize != Mapper.DEFAULT_SAMPLE_SIZE)
 			{
-				return "-ls option can't be combined with -g, -t, -i, -is, -os, -o, -mm or -r options";
+				return "-ls option can't be combined with -g, -t, -i, -is, -os, -o, -mm, -r, -j, -b, -rm, -ra or -s options";
 			}
 		}
 		else
@@ -229,8 +293,21 @@ public class BatchMapper
 	}
 	
 	
+	/**
+	 * Maps the identifiers of an input file.
+	 * <p>
+	 * Lines are read in batches of chunkSize, and each batch is mapped with a single mapID call.
+	 * With more than one thread, batches are mapped in parallel while the input is still being read.
+	 * Output is always written in the order of the input,
+	 * and at most two batches per thread are held in memory, so stdin can be streamed.
+	 * Missing and ambiguous id's are counted, and can be written to list files while mapping;
+	 * only a sample of them is kept for the report.
+	 */
 	public static class Mapper
 	{
+		static final int DEFAULT_CHUNK_SIZE = 1000;
+		static final int DEFAULT_SAMPLE_SIZE = 1000;
+
 		private List<String> connections = null;
 		private File fInput = null;
 		private File fOutput = null;
@@ -240,16 +317,32 @@ public class BatchMapper
 		private int inputColumn = 0; 
 		private int verbose = 0; // 0, 1 or 2
 		private int multiMap = 0; // 0 or 1
+		private int threads = 1;
+		private int chunkSize = DEFAULT_CHUNK_SIZE;
 
 		PrintStream report = System.out;
-		private IDMapperStack gdb;
+		IDMapperStack gdb;
 		
+		private File fMissing = null;
+		private File fAmbiguous = null;
+		private int sampleSize = DEFAULT_SAMPLE_SIZE;
+		private PrintWriter missingWriter = null;
+		private PrintWriter ambiguousWriter = null;
+
+		// only the first sampleSize id's are kept for the report, the rest is counted
 		private List<Xref> missing = new ArrayList<Xref>();
 		private List<Xref> ambiguous = new ArrayList<Xref>();
+		int missingCount = 0;
+		int ambiguousCount = 0;
 		int totalLines = 0;
 		int okLines = 0;
 
 		public Mapper(List<String> connections, File fInput, File fOutput, File fReport, DataSource is, DataSource os, int inputColumn, int verbose, int multiMap)
+		{
+			this(connections, fInput, fOutput, fReport, is, os, inputColumn, verbose, multiMap, 1, DEFAULT_CHUNK_SIZE);
+		}
+		
+		public Mapper(List<String> connections, File fInput, File fOutput, File fReport, DataSource is, DataSource os, int inputColumn, int verbose, int multiMap, int threads, int chunkSize)
 		{
 			this.connections = connections;
 			this.fInput = fInput;
@@ -260,8 +353,46 @@ public class BatchMapper
 			this.inputColumn = inputColumn;
 			this.verbose = verbose;
 			this.multiMap = multiMap;
+			this.threads = threads;
+			this.chunkSize = chunkSize;
 		}
-		
+
+		/**
+		 * Write every missing and ambiguous id to a file as soon as it is found,
+		 * one per line as id, system code and number of mappings separated by tabs.
+		 * @param fMissing file for missing id's, or null
+		 * @param fAmbiguous file for ambiguous id's, or null
+		 */
+		public void setListFiles(File fMissing, File fAmbiguous)
+		{
+			this.fMissing = fMissing;
+			this.fAmbiguous = fAmbiguous;
+		}
+
+		/**
+		 * @param sampleSize maximum number of missing and ambiguous id's listed in the verbose report
+		 */
+		public void setSampleSize(int sampleSize)
+		{
+			this.sampleSize = sampleSize;
+		}
+
+		/** Opens a file for reading, decompressing it if the name ends with .gz */
+		static LineNumberReader openReader(File f) throws IOException
+		{
+			InputStream in = new FileInputStream(f);
+			if (f.getName().endsWith(".gz")) in = new GZIPInputStream(in);
+			return new LineNumberReader(new InputStreamReader(in));
+		}
+
+		/** Opens a file for writing, compressing it if the name ends with .gz */
+		static PrintWriter openWriter(File f) throws IOException
+		{
+			OutputStream out = new FileOutputStream(f);
+			if (f.getName().endsWith(".gz")) out = new GZIPOutputStream(out);
+			return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+		}
+
 		private void connectGdb() throws IDMapperException
 		{
 			gdb = new IDMapperStack();
@@ -272,13 +403,43 @@ public class BatchMapper
 			gdb.setTransitive(true);
 		}
 		
+		/** A batch of input lines, mapped with one call */
+		private class Chunk implements Callable<Chunk>
+		{
+			final List<String> lines = new ArrayList<String>();
+			final List<Xref> srcRefs = new ArrayList<Xref>();
+			Map<Xref, Set<Xref>> mapresult;
+
+			void add(String line)
+			{
+				lines.add(line);
+				String[] fields = line.split("\t");
+				if (fields.length > inputColumn && fields[inputColumn] != null)
+				{
+					srcRefs.add(new Xref(fields[inputColumn], is));
+				}
+				else
+				{
+					srcRefs.add(null);
+				}
+			}
+
+			public Chunk call() throws IDMapperException
+			{
+				Set<Xref> srcSet = new HashSet<Xref>(srcRefs);
+				srcSet.remove(null);
+				mapresult = gdb.mapID(srcSet, os);
+				return this;
+			}
+		}
+
 		public void writeMapping() throws IOException, IDMapperException
 		{
 			LineNumberReader reader;
 			PrintWriter writer;
 			if (fInput != null)
 			{
-				reader = new LineNumberReader(new FileReader (fInput));
+				reader = openReader (fInput);
 			}
 			else
 			{
@@ -287,29 +448,89 @@ public class BatchMapper
 			String line;
 			if (fOutput != null)
 			{
-				writer = new PrintWriter (new FileWriter (fOutput));
+				writer = openWriter (fOutput);
 			}
 			else
 			{
 				writer = new PrintWriter (System.out);
 			}
-			while ((line = reader.readLine()) != null)
+			if (fMissing != null) missingWriter = openWriter (fMissing);
+			if (fAmbiguous != null) ambiguousWriter = openWriter (fAmbiguous);
+			ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+			LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+			try
 			{
-				String[] fields = line.split("\t");
-				if (fields.length > inputColumn && fields[inputColumn] != null)
+				Chunk chunk = new Chunk();
+				do
+				{
+					line = reader.readLine();
+					if (line != null) chunk.add(line);
+					if (chunk.lines.size() == 0 || (line != null && chunk.lines.size() < chunkSize)) continue;
+					if (executor == null)
+					{
+						writeChunk(chunk.call(), writer);
+					}
+					else
+					{
+						//Bound the number of chunks in memory by waiting for the oldest one
+						if (pending.size() >= threads * 2) writeChunk(getChunk(pending.removeFirst()), writer);
+						pending.add(executor.submit(chunk));
+					}
+					chunk = new Chunk();
+				}
+				while (line != null);
+				while (!pending.isEmpty())
+				{
+					writeChunk(getChunk(pending.removeFirst()), writer);
+				}
+			}
+			finally
+			{
+				if (executor != null) executor.shutdownNow();
+				reader.close();
+				writer.close();
+				if (missingWriter != null) missingWriter.close();
+				if (ambiguousWriter != null) ambiguousWriter.close();
+			}
+		}
+
+		private Chunk getChunk(Future<Chunk> future) throws IDMapperException
+		{
+			try
+			{
+				return future.get();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IDMapperException(ex);
+			}
+			catch (ExecutionException ex)
+			{
+				if (ex.getCause() instanceof IDMapperException) throw (IDMapperException)ex.getCause();
+				throw new IDMapperException(ex.getCause());
+			}
+		}
+
+		private void writeChunk(Chunk chunk, PrintWriter writer)
+		{
+			for (int i = 0; i < chunk.lines.size(); i++)
+			{
+				Xref srcRef = chunk.srcRefs.get(i);
+				if (srcRef != null)
 				{
-					Xref srcRef = new Xref(fields[inputColumn], is);
-					Set<Xref> srcSet = new HashSet<Xref>();
-					srcSet.add(srcRef);
-					Map<Xref, Set<Xref>> mapresult = gdb.mapID(srcSet, os);
-					Set<Xref> destRefs = mapresult.get (srcRef);
+					Set<Xref> destRefs = chunk.mapresult.get (srcRef);
 					if (destRefs == null || destRefs.size() == 0)
 					{
-						missing.add (srcRef);
+						missingCount++;
+						if (missing.size() < sampleSize) missing.add (srcRef);
+						if (missingWriter != null) writeListEntry (missingWriter, srcRef, 0);
 					}
 					else if (destRefs.size() >= 2)
 					{
-						ambiguous.add (srcRef);
+						ambiguousCount++;
+						if (ambiguous.size() < sampleSize) ambiguous.add (srcRef);
+						if (ambiguousWriter != null) writeListEntry (ambiguousWriter, srcRef, destRefs.size());
 					}
 					
 					if (destRefs != null && destRefs.size() > 0)
@@ -341,16 +562,21 @@ public class BatchMapper
 					}
 					totalLines++;
 				}
-				writer.println("\t" + line);
+				writer.println("\t" + chunk.lines.get(i));
 			}
-			reader.close();
-			writer.close();
 		}
 		
+		private void writeListEntry(PrintWriter listWriter, Xref ref, int mappings)
+		{
+			listWriter.println(ref.getId() + "\t" +
+					(ref.getDataSource() == null ? "" : ref.getDataSource().getSystemCode()) +
+					"\t" + mappings);
+		}
+
 		public void reportMapping()
 		{
-			report.println ("Missing   : " + missing.size());
-			report.println ("Ambiguous : " + ambiguous.size());
+			report.println ("Missing   : " + missingCount);
+			report.println ("Ambiguous : " + ambiguousCount);
 			report.println ("Ok        : " + okLines);
 			report.println ("           _______ +");
 			report.println ("Total     : " + totalLines);
@@ -365,6 +591,7 @@ public class BatchMapper
 					if (i < missing.size()-1) report.print (", ");
 					if (i % 5 == 4) report.println();
 				}
+				if (missingCount > missing.size()) report.print (" ... and " + (missingCount - missing.size()) + " more");
 				report.println();
 
 				// ambiguous id's
@@ -375,6 +602,7 @@ public class BatchMapper
 					if (i < ambiguous.size()-1) report.print (", ");
 					if (i % 5 == 4) report.println();
 				}
+				if (ambiguousCount > ambiguous.size()) report.print (" ... and " + (ambiguousCount - ambiguous.size()) + " more");
 				report.println();
 			}
 		}
@@ -450,7 +678,10 @@ public class BatchMapper
 					settings.connectStrings, 
 					settings.fInput, settings.fOutput, settings.fReport, 
 					settings.is, settings.os, settings.inputColumn, 
-					settings.verbose, settings.multiMap);
+					settings.verbose, settings.multiMap,
+					settings.threads, settings.chunkSize);
+			mapper.setListFiles(settings.fMissing, settings.fAmbiguous);
+			mapper.setSampleSize(settings.sampleSize);
 			mapper.run();
 		}
 		else
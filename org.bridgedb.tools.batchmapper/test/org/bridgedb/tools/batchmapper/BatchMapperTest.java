@@ -0,0 +1,369 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.tools.batchmapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.Xref;
+import org.bridgedb.file.IDMapperText;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs BatchMapper.Mapper against a small text mapping, where every fifth id is missing
+ * and every fifth id is ambiguous.
+ */
+public class BatchMapperTest
+{
+	private static final DataSource SOURCE = DataSource.register("BmA", "BatchMapper source").asDataSource();
+	private static final DataSource TARGET = DataSource.register("BmB", "BatchMapper target").asDataSource();
+
+	private static final int MAPPED_IDS = 100;
+
+	/** Records the number of ids in each mapID call, and holds back the first call if asked to. */
+	private static class RecordingMapper extends IDMapperText
+	{
+		final List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+		long firstDelay = 0;
+
+		RecordingMapper(URL url) throws IDMapperException
+		{
+			super(url);
+		}
+
+		@Override
+		public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources)
+				throws IDMapperException
+		{
+			boolean first;
+			synchronized (batches)
+			{
+				first = batches.isEmpty();
+				batches.add(srcXrefs.size());
+			}
+			if (first && firstDelay > 0)
+			{
+				try
+				{
+					Thread.sleep(firstDelay);
+				}
+				catch (InterruptedException ex)
+				{
+					throw new IDMapperException(ex);
+				}
+			}
+			return super.mapID(srcXrefs, tgtDataSources);
+		}
+	}
+
+	private File dir;
+	private RecordingMapper recorder;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = File.createTempFile("batchmappertest", "");
+		dir.delete();
+		dir.mkdirs();
+		File mapping = new File(dir, "mapping.txt");
+		PrintWriter writer = new PrintWriter(new FileWriter(mapping));
+		writer.println(SOURCE.getFullName() + "\t" + TARGET.getFullName());
+		for (int i = 0; i < MAPPED_IDS; i++)
+		{
+			if (isMissing(i)) continue;
+			if (isAmbiguous(i))
+			{
+				writer.println("A" + i + "\tB" + i + "a");
+				writer.println("A" + i + "\tB" + i + "b");
+			}
+			else
+			{
+				writer.println("A" + i + "\tB" + i);
+			}
+		}
+		writer.close();
+		recorder = new RecordingMapper(mapping.toURI().toURL());
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		File[] children = f.listFiles();
+		if (children != null) for (File child : children) delete(child);
+		f.delete();
+	}
+
+	private static boolean isMissing(int i)
+	{
+		return i % 5 == 3;
+	}
+
+	private static boolean isAmbiguous(int i)
+	{
+		return i % 5 == 4;
+	}
+
+	private File input(String name, int lines) throws IOException
+	{
+		File f = new File(dir, name);
+		PrintWriter writer = BatchMapper.Mapper.openWriter(f);
+		for (int i = 0; i < lines; i++) writer.println("A" + i + "\tline " + i);
+		writer.close();
+		return f;
+	}
+
+	private static List<String> lines(File f) throws IOException
+	{
+		List<String> result = new ArrayList<String>();
+		LineNumberReader reader = BatchMapper.Mapper.openReader(f);
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null) result.add(line);
+		}
+		finally
+		{
+			reader.close();
+		}
+		return result;
+	}
+
+	private BatchMapper.Mapper mapper(File in, File out, int threads, int chunkSize)
+	{
+		return mapper(in, out, 0, threads, chunkSize);
+	}
+
+	private BatchMapper.Mapper mapper(File in, File out, int verbose, int threads, int chunkSize)
+	{
+		BatchMapper.Mapper mapper = new BatchMapper.Mapper(
+				null, in, out, null, SOURCE, TARGET, 0, verbose, 0, threads, chunkSize);
+		IDMapperStack stack = new IDMapperStack();
+		stack.addIDMapper(recorder);
+		mapper.gdb = stack;
+		return mapper;
+	}
+
+	@Test
+	public void testOutputOrder() throws Exception
+	{
+		File in = input("in.txt", 40);
+		File out = new File(dir, "out.txt");
+		//The first chunk finishes last, so the writer has to wait for it
+		recorder.firstDelay = 300;
+		mapper(in, out, 4, 3).writeMapping();
+
+		List<String> output = lines(out);
+		Assert.assertEquals(40, output.size());
+		for (int i = 0; i < 40; i++)
+		{
+			String line = output.get(i);
+			Assert.assertEquals("A" + i + "\tline " + i, line.substring(line.indexOf('\t') + 1));
+			String mapped = line.substring(0, line.indexOf('\t'));
+			if (isMissing(i)) Assert.assertEquals("", mapped);
+			else if (isAmbiguous(i)) Assert.assertTrue(mapped, mapped.startsWith("B" + i));
+			else Assert.assertEquals("B" + i, mapped);
+		}
+	}
+
+	@Test
+	public void testChunkBoundaries() throws Exception
+	{
+		File out = new File(dir, "out.txt");
+
+		mapper(input("ten.txt", 10), out, 1, 4).writeMapping();
+		Assert.assertEquals(Arrays.asList(4, 4, 2), recorder.batches);
+		Assert.assertEquals(10, lines(out).size());
+
+		//no empty chunk after an exact multiple
+		recorder.batches.clear();
+		mapper(input("eight.txt", 8), out, 1, 4).writeMapping();
+		Assert.assertEquals(Arrays.asList(4, 4), recorder.batches);
+		Assert.assertEquals(8, lines(out).size());
+
+		recorder.batches.clear();
+		mapper(input("short.txt", 10), out, 1, 1000).writeMapping();
+		Assert.assertEquals(Arrays.asList(10), recorder.batches);
+
+		recorder.batches.clear();
+		mapper(input("empty.txt", 0), out, 1, 4).writeMapping();
+		Assert.assertEquals(Collections.<Integer>emptyList(), recorder.batches);
+		Assert.assertEquals(0, lines(out).size());
+	}
+
+	@Test
+	public void testChunkBoundariesThreaded() throws Exception
+	{
+		mapper(input("in.txt", 10), new File(dir, "out.txt"), 3, 4).writeMapping();
+		List<Integer> batches = new ArrayList<Integer>(recorder.batches);
+		Collections.sort(batches);
+		Assert.assertEquals(Arrays.asList(2, 4, 4), batches);
+	}
+
+	@Test
+	public void testThreadsGiveSameOutput() throws Exception
+	{
+		File in = input("in.txt", 57);
+		for (int chunkSize : new int[] { 1, 3, 10, 100 })
+		{
+			File single = new File(dir, "single.txt");
+			BatchMapper.Mapper expected = mapper(in, single, 1, chunkSize);
+			expected.writeMapping();
+			for (int threads : new int[] { 2, 3, 8 })
+			{
+				File parallel = new File(dir, "parallel.txt");
+				BatchMapper.Mapper actual = mapper(in, parallel, threads, chunkSize);
+				actual.writeMapping();
+				String message = threads + " threads, chunks of " + chunkSize;
+				Assert.assertEquals(message, lines(single), lines(parallel));
+				Assert.assertEquals(message, expected.missingCount, actual.missingCount);
+				Assert.assertEquals(message, expected.ambiguousCount, actual.ambiguousCount);
+				Assert.assertEquals(message, expected.okLines, actual.okLines);
+				Assert.assertEquals(message, expected.totalLines, actual.totalLines);
+			}
+		}
+	}
+
+	@Test
+	public void testListFiles() throws Exception
+	{
+		File missing = new File(dir, "missing.txt");
+		File ambiguous = new File(dir, "ambiguous.txt");
+		BatchMapper.Mapper mapper = mapper(input("in.txt", 20), new File(dir, "out.txt"), 2, 3);
+		mapper.setListFiles(missing, ambiguous);
+		mapper.writeMapping();
+
+		Assert.assertEquals(Arrays.asList("A3\tBmA\t0", "A8\tBmA\t0", "A13\tBmA\t0", "A18\tBmA\t0"),
+				lines(missing));
+		Assert.assertEquals(Arrays.asList("A4\tBmA\t2", "A9\tBmA\t2", "A14\tBmA\t2", "A19\tBmA\t2"),
+				lines(ambiguous));
+		Assert.assertEquals(4, mapper.missingCount);
+		Assert.assertEquals(4, mapper.ambiguousCount);
+	}
+
+	private static int count(String text, String part)
+	{
+		int result = 0;
+		for (int pos = text.indexOf(part); pos >= 0; pos = text.indexOf(part, pos + 1)) result++;
+		return result;
+	}
+
+	@Test
+	public void testSampleCap() throws Exception
+	{
+		File missing = new File(dir, "missing.txt");
+		BatchMapper.Mapper mapper = mapper(input("in.txt", 50), new File(dir, "out.txt"), 1, 1, 7);
+		mapper.setListFiles(missing, null);
+		mapper.setSampleSize(3);
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		mapper.report = new PrintStream(report);
+		mapper.writeMapping();
+		mapper.reportMapping();
+		mapper.report.flush();
+
+		String text = report.toString();
+		Assert.assertTrue(text, text.contains("Missing   : 10"));
+		Assert.assertTrue(text, text.contains("Ambiguous : 10"));
+		Assert.assertTrue(text, text.contains("A3"));
+		Assert.assertTrue(text, text.contains("A13"));
+		Assert.assertFalse(text, text.contains("A18"));
+		Assert.assertTrue(text, text.contains("A14"));
+		Assert.assertFalse(text, text.contains("A19"));
+		Assert.assertEquals(2, count(text, " ... and 7 more"));
+		//the list file is not capped
+		Assert.assertEquals(10, lines(missing).size());
+	}
+
+	@Test
+	public void testSampleCapZero() throws Exception
+	{
+		BatchMapper.Mapper mapper = mapper(input("in.txt", 10), new File(dir, "out.txt"), 1, 1, 4);
+		mapper.setSampleSize(0);
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		mapper.report = new PrintStream(report);
+		mapper.writeMapping();
+		mapper.reportMapping();
+		mapper.report.flush();
+
+		String text = report.toString();
+		Assert.assertFalse(text, text.contains("A3"));
+		Assert.assertEquals(2, count(text, " ... and 2 more"));
+	}
+
+	private static boolean isGzip(File f) throws IOException
+	{
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			return in.read() == 0x1f && in.read() == 0x8b;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	@Test
+	public void testGzip() throws Exception
+	{
+		File plainOut = new File(dir, "out.txt");
+		File plainMissing = new File(dir, "missing.txt");
+		BatchMapper.Mapper plain = mapper(input("in.txt", 30), plainOut, 1, 4);
+		plain.setListFiles(plainMissing, null);
+		plain.writeMapping();
+
+		File gzipIn = input("in.txt.gz", 30);
+		File gzipOut = new File(dir, "out.txt.gz");
+		File gzipMissing = new File(dir, "missing.txt.gz");
+		Assert.assertTrue(isGzip(gzipIn));
+		BatchMapper.Mapper gzip = mapper(gzipIn, gzipOut, 2, 4);
+		gzip.setListFiles(gzipMissing, null);
+		gzip.writeMapping();
+
+		Assert.assertTrue(isGzip(gzipOut));
+		Assert.assertTrue(isGzip(gzipMissing));
+		Assert.assertFalse(isGzip(plainOut));
+		Assert.assertEquals(lines(plainOut), lines(gzipOut));
+		Assert.assertEquals(lines(plainMissing), lines(gzipMissing));
+		Assert.assertEquals(30, lines(gzipOut).size());
+	}
+}
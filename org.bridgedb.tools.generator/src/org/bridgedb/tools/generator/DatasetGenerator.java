@@ -0,0 +1,511 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.tools.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.rdb.construct.DBConnector;
+import org.bridgedb.rdb.construct.DataDerby;
+import org.bridgedb.rdb.construct.GdbConstruct;
+import org.bridgedb.rdb.construct.GdbConstructImpl3;
+
+/**
+ * Generates synthetic mapping data of a configurable size and shape, for load tests and benchmarks.
+ * <p>
+ * The data consists of a number of genes, each with ids in a number of generated DataSources.
+ * DataSource d is linked from its parent: the previous DataSource up to the chain depth,
+ * so mapping along the chain needs that many transitive steps, and DataSource 0 after that.
+ * Each link set maps the first id of a gene in the parent to one or more ids of that gene in the child,
+ * as drawn from the fan-out distribution, and writes a fraction of the links twice.
+ * <p>
+ * The same settings always give the same data, in each of the output formats.
+ * The Turtle and text output are written one gene at a time, so their size is only limited by disk space.
+ * The gdb output keeps the keys of each GdbConstruct batch in memory, see {@link #writeGdb(String)}.
+ */
+public class DatasetGenerator
+{
+	public static final String PREDICATE = "http://www.w3.org/2004/02/skos/core#exactMatch";
+	public static final String JUSTIFICATION = "http://semanticscience.org/resource/CHEMINF_000059";
+	static final String URI_BASE = "http://generated.bridgedb.org/";
+	static final int MAX_URI_PATTERNS = 3;
+
+	private int genes = 1000;
+	private int dataSourceCount = 3;
+	private int chainDepth = -1;
+	private double duplicateRate = 0.0;
+	private int uriPatterns = 1;
+	private long seed = 0;
+	private int minFanOut = 1;
+	private int maxFanOut = 1;
+	private boolean zipf = false;
+	private double[] zipfCumulative = null;
+	private List<DataSource> dataSources = null;
+
+	/** @param genes number of genes, each linked in every link set */
+	public void setGenes(int genes)
+	{
+		this.genes = genes;
+	}
+
+	/** @param dataSourceCount number of DataSources, at least 2 */
+	public void setDataSources(int dataSourceCount)
+	{
+		if (dataSourceCount < 2) throw new IllegalArgumentException("At least 2 DataSources needed");
+		this.dataSourceCount = dataSourceCount;
+		dataSources = null;
+	}
+
+	/**
+	 * @param chainDepth number of link sets chained one after another,
+	 * the other DataSources are linked directly from the first. Defaults to one chain through all DataSources.
+	 */
+	public void setChainDepth(int chainDepth)
+	{
+		if (chainDepth < 1) throw new IllegalArgumentException("Chain depth must be at least 1");
+		this.chainDepth = chainDepth;
+	}
+
+	/** @param duplicateRate fraction of links that is written twice */
+	public void setDuplicateRate(double duplicateRate)
+	{
+		if (duplicateRate < 0 || duplicateRate > 1) throw new IllegalArgumentException("Duplicate rate must be between 0 and 1");
+		this.duplicateRate = duplicateRate;
+	}
+
+	/** @param uriPatterns number of URI patterns used for each DataSource in the Turtle output, 1 to 3 */
+	public void setUriPatterns(int uriPatterns)
+	{
+		if (uriPatterns < 1 || uriPatterns > MAX_URI_PATTERNS)
+			throw new IllegalArgumentException("Number of URI patterns must be between 1 and " + MAX_URI_PATTERNS);
+		this.uriPatterns = uriPatterns;
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the number of ids each id is linked to.
+	 * @param spec either a number, a range such as "1-5" for a uniform distribution,
+	 * or "zipf:10" for a Zipf distribution from 1 to 10, where 1 is the most common.
+	 */
+	public void setFanOut(String spec)
+	{
+		zipf = spec.startsWith("zipf:");
+		String range = zipf ? spec.substring("zipf:".length()) : spec;
+		int dash = range.indexOf('-');
+		try
+		{
+			if (zipf)
+			{
+				minFanOut = 1;
+				maxFanOut = Integer.parseInt(range);
+			}
+			else if (dash > 0)
+			{
+				minFanOut = Integer.parseInt(range.substring(0, dash));
+				maxFanOut = Integer.parseInt(range.substring(dash + 1));
+			}
+			else
+			{
+				minFanOut = maxFanOut = Integer.parseInt(range);
+			}
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new IllegalArgumentException("Invalid fan out " + spec, ex);
+		}
+		if (minFanOut < 1 || maxFanOut < minFanOut) throw new IllegalArgumentException("Invalid fan out " + spec);
+		zipfCumulative = null;
+		if (zipf)
+		{
+			zipfCumulative = new double[maxFanOut];
+			double total = 0;
+			for (int k = 1; k <= maxFanOut; k++)
+			{
+				total += 1.0 / k;
+				zipfCumulative[k - 1] = total;
+			}
+			for (int k = 0; k < maxFanOut; k++) zipfCumulative[k] /= total;
+		}
+	}
+
+	/**
+	 * Readers of a generated gdb should call this first,
+	 * as the gdb only stores the system codes.
+	 * @return the generated DataSources, registered with system codes Gen0, Gen1, ...
+	 */
+	public List<DataSource> getDataSources()
+	{
+		if (dataSources == null)
+		{
+			dataSources = new ArrayList<DataSource>();
+			for (int d = 0; d < dataSourceCount; d++)
+			{
+				dataSources.add(DataSource.register("Gen" + d, "Generated " + d)
+						.urlPattern(uriPattern(d, 0)).asDataSource());
+			}
+		}
+		return dataSources;
+	}
+
+	/** @return index of the DataSource that link set d maps from, for d from 1 */
+	int parent(int d)
+	{
+		int depth = chainDepth < 0 ? dataSourceCount - 1 : chainDepth;
+		return d <= depth ? d - 1 : 0;
+	}
+
+	/** @return the id of gene in a DataSource; the first one is the one linked on down the chain */
+	static String id(int gene, int index)
+	{
+		return index == 0 ? "" + gene : gene + "_" + index;
+	}
+
+	/** @return URI pattern with $id, as described in the DataSource.ttl output */
+	String uriPattern(int d, int variant)
+	{
+		String code = "Gen" + d;
+		switch (variant)
+		{
+		case 0: return URI_BASE + code + "/$id";
+		case 1: return "http://alt.generated.bridgedb.org/" + code + "/$id";
+		default: return URI_BASE + code + "/entry/$id.html";
+		}
+	}
+
+	/**
+	 * The links of one gene in one link set, drawn in the same order for every output format.
+	 */
+	private final class Links
+	{
+		private final Random random;
+		final int count;
+		/** for each link, how often it is written */
+		final int[] copies;
+		/** for each link, the URI pattern used for the subject and the object */
+		final int[] subjectVariant;
+		final int[] objectVariant;
+
+		Links(int gene, int linkset)
+		{
+			random = new Random(seed ^ (gene * 0x9E3779B97F4A7C15L + linkset * 0xC2B2AE3D27D4EB4FL));
+			count = fanOut();
+			copies = new int[count];
+			subjectVariant = new int[count];
+			objectVariant = new int[count];
+			for (int j = 0; j < count; j++)
+			{
+				copies[j] = duplicateRate > 0 && random.nextDouble() < duplicateRate ? 2 : 1;
+				subjectVariant[j] = random.nextInt(uriPatterns);
+				objectVariant[j] = random.nextInt(uriPatterns);
+			}
+		}
+
+		private int fanOut()
+		{
+			if (zipf)
+			{
+				double r = random.nextDouble();
+				for (int k = 0; k < zipfCumulative.length; k++)
+				{
+					if (r < zipfCumulative[k]) return k + 1;
+				}
+				return maxFanOut;
+			}
+			return minFanOut + random.nextInt(maxFanOut - minFanOut + 1);
+		}
+	}
+
+	/**
+	 * Writes each link set as a Turtle file, as loaded by RdfParser and LinksetHandler,
+	 * and DataSource.ttl with the generated DataSources and their URI patterns.
+	 * @return number of links written
+	 */
+	public long writeTurtle(File dir) throws IOException
+	{
+		dir.mkdirs();
+		writeDataSourceTtl(new File(dir, "DataSource.ttl"));
+		long links = 0;
+		for (int d = 1; d < dataSourceCount; d++)
+		{
+			int p = parent(d);
+			PrintWriter writer = open(new File(dir, "Gen" + p + "-Gen" + d + ".ttl"));
+			try
+			{
+				writeVoidHeader(writer, p, d);
+				for (int gene = 0; gene < genes; gene++)
+				{
+					Links l = new Links(gene, d);
+					for (int j = 0; j < l.count; j++)
+					{
+						String subject = uriPattern(p, l.subjectVariant[j]).replace("$id", id(gene, 0));
+						String object = uriPattern(d, l.objectVariant[j]).replace("$id", id(gene, j));
+						for (int c = l.copies[j]; c > 0; c--)
+						{
+							writer.println("<" + subject + "> <" + PREDICATE + "> <" + object + "> .");
+							links++;
+						}
+					}
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		return links;
+	}
+
+	private void writeVoidHeader(PrintWriter writer, int p, int d)
+	{
+		writer.println("@prefix : <#> .");
+		writer.println("@prefix void: <http://rdfs.org/ns/void#> .");
+		writer.println("@prefix dcterms: <http://purl.org/dc/terms/> .");
+		writer.println("@prefix dul: <http://www.ontologydesignpatterns.org/ont/dul/DUL.owl#> .");
+		writer.println();
+		writer.println(":Gen" + p + " a void:Dataset ;");
+		writer.println("\tdcterms:title \"Generated " + p + "\" .");
+		writer.println(":Gen" + d + " a void:Dataset ;");
+		writer.println("\tdcterms:title \"Generated " + d + "\" .");
+		writer.println(":Linkset a void:Linkset ;");
+		writer.println("\tdcterms:title \"Generated links from Gen" + p + " to Gen" + d + "\" ;");
+		writer.println("\tvoid:subjectsTarget :Gen" + p + " ;");
+		writer.println("\tvoid:objectsTarget :Gen" + d + " ;");
+		writer.println("\tvoid:linkPredicate <" + PREDICATE + "> ;");
+		writer.println("\tdul:expresses <" + JUSTIFICATION + "> .");
+		writer.println();
+	}
+
+	private void writeDataSourceTtl(File f) throws IOException
+	{
+		PrintWriter writer = open(f);
+		try
+		{
+			writer.println("@prefix bridgeDB: <http://vocabularies.bridgedb.org/ops#> .");
+			for (int d = 0; d < dataSourceCount; d++)
+			{
+				writer.println();
+				writer.println("bridgeDB:DataSource_Gen" + d + " a bridgeDB:DataSource ;");
+				writer.println("\tbridgeDB:fullName \"Generated " + d + "\" ;");
+				writer.println("\tbridgeDB:systemCode \"Gen" + d + "\" ;");
+				writer.println("\tbridgeDB:idExample \"1\" ;");
+				writer.print("\tbridgeDB:hasPrimaryUriPattern <" + uriPattern(d, 0) + ">");
+				for (int v = 1; v < uriPatterns; v++)
+				{
+					writer.print(" ;\n\tbridgeDB:hasUriPattern <" + uriPattern(d, v) + ">");
+				}
+				writer.println(" .");
+				for (int v = 0; v < uriPatterns; v++)
+				{
+					String pattern = uriPattern(d, v);
+					int pos = pattern.indexOf("$id");
+					writer.println();
+					writer.println("<" + pattern + "> a bridgeDB:uriPattern ;");
+					writer.print("\tbridgeDB:hasPrefix \"" + pattern.substring(0, pos) + "\"");
+					if (pos + 3 < pattern.length())
+					{
+						writer.print(" ;\n\tbridgeDB:hasPostfix \"" + pattern.substring(pos + 3) + "\"");
+					}
+					writer.println(" ;\n\tbridgeDB:isUriPatternOf bridgeDB:DataSource_Gen" + d + " .");
+				}
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Writes each link set as a tab delimited file as read by IDMapperText,
+	 * with the full names of both DataSources as header and the ids of the child separated by commas.
+	 * Read them with <code>new IDMapperText(url, new char[] {'\t'}, new char[] {','})</code>,
+	 * and combine them in a transitive IDMapperStack to follow the chain.
+	 * @return number of links written
+	 */
+	public long writeText(File dir) throws IOException
+	{
+		dir.mkdirs();
+		List<DataSource> ds = getDataSources();
+		long links = 0;
+		for (int d = 1; d < dataSourceCount; d++)
+		{
+			int p = parent(d);
+			PrintWriter writer = open(new File(dir, "Gen" + p + "-Gen" + d + ".txt"));
+			try
+			{
+				writer.println(ds.get(p).getFullName() + "\t" + ds.get(d).getFullName());
+				for (int gene = 0; gene < genes; gene++)
+				{
+					Links l = new Links(gene, d);
+					StringBuilder targets = new StringBuilder();
+					for (int j = 0; j < l.count; j++)
+					{
+						for (int c = l.copies[j]; c > 0; c--)
+						{
+							if (targets.length() > 0) targets.append(',');
+							targets.append(id(gene, j));
+							links++;
+						}
+					}
+					writer.println(id(gene, 0) + "\t" + targets);
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Writes a Derby gdb with GdbConstruct. As a gdb links every id of a gene directly to its primary id,
+	 * the id in DataSource 0, the link sets are flattened. Duplicate links are passed on to the GdbConstruct,
+	 * which drops them within a batch and reports the others as errors.
+	 * The batches keep a key for every id in memory, so use the text or Turtle output for the largest sizes.
+	 * @param dbName name of the gdb, .bridge is added if missing
+	 * @return number of errors reported by the GdbConstruct
+	 */
+	public long writeGdb(String dbName) throws IDMapperException
+	{
+		List<DataSource> ds = getDataSources();
+		GdbConstruct gdb = GdbConstructImpl3.createInstance(dbName, new DataDerby(), DBConnector.PROP_RECREATE);
+		if (gdb instanceof GdbConstructImpl3) ((GdbConstructImpl3)gdb).setBatchSize(10000);
+		gdb.createGdbTables();
+		gdb.preInsert();
+		gdb.setInfo("DATASOURCENAME", "Generated");
+		gdb.setInfo("DATASOURCEVERSION", "seed " + seed);
+		gdb.setInfo("SERIES", "generated");
+		gdb.setInfo("DATATYPE", "GeneProduct");
+		long errors = 0;
+		for (int gene = 0; gene < genes; gene++)
+		{
+			Xref primary = new Xref(id(gene, 0), ds.get(0));
+			gdb.addGene(primary);
+			errors += gdb.addLink(primary, primary);
+			for (int d = 1; d < dataSourceCount; d++)
+			{
+				Links l = new Links(gene, d);
+				for (int j = 0; j < l.count; j++)
+				{
+					Xref ref = new Xref(id(gene, j), ds.get(d));
+					gdb.addGene(ref);
+					for (int c = l.copies[j]; c > 0; c--)
+					{
+						errors += gdb.addLink(primary, ref);
+					}
+				}
+			}
+		}
+		gdb.commit();
+		gdb.finalize();
+		return errors;
+	}
+
+	private static PrintWriter open(File f) throws IOException
+	{
+		return new PrintWriter(new BufferedWriter(new FileWriter(f), 1 << 16));
+	}
+
+	public static void printUsage()
+	{
+		System.out.print (
+				"DatasetGenerator generates synthetic mapping data for load tests.\n" +
+				"Usage:\n" +
+				"	generator -o <output directory> \n" +
+				"		[-f turtle|text|gdb] (may be repeated, default all) \n" +
+				"		[-n <number of genes>] \n" +
+				"		[-d <number of DataSources>] \n" +
+				"		[-c <transitive chain depth>] \n" +
+				"		[-fo <fan out: n, min-max or zipf:max>] \n" +
+				"		[-dup <duplicate rate, 0 to 1>] \n" +
+				"		[-p <URI patterns per DataSource, 1 to 3>] \n" +
+				"		[-s <seed>] \n");
+	}
+
+	public static void main(String[] args) throws IOException, IDMapperException
+	{
+		DatasetGenerator generator = new DatasetGenerator();
+		File out = null;
+		List<String> formats = new ArrayList<String>();
+		try
+		{
+			for (int pos = 0; pos < args.length; pos++)
+			{
+				String option = args[pos];
+				if (pos + 1 >= args.length) throw new IllegalArgumentException("Value expected after " + option);
+				String value = args[++pos];
+				if (option.equals("-o")) out = new File(value);
+				else if (option.equals("-f")) formats.add(value);
+				else if (option.equals("-n")) generator.setGenes(Integer.parseInt(value));
+				else if (option.equals("-d")) generator.setDataSources(Integer.parseInt(value));
+				else if (option.equals("-c")) generator.setChainDepth(Integer.parseInt(value));
+				else if (option.equals("-fo")) generator.setFanOut(value);
+				else if (option.equals("-dup")) generator.setDuplicateRate(Double.parseDouble(value));
+				else if (option.equals("-p")) generator.setUriPatterns(Integer.parseInt(value));
+				else if (option.equals("-s")) generator.setSeed(Long.parseLong(value));
+				else throw new IllegalArgumentException("Unrecognized option " + option);
+			}
+			if (out == null) throw new IllegalArgumentException("Missing -o option");
+		}
+		catch (IllegalArgumentException ex)
+		{
+			System.err.println ("Error: " + ex.getMessage());
+			printUsage();
+			System.exit(1);
+		}
+		if (formats.isEmpty())
+		{
+			formats.add("turtle");
+			formats.add("text");
+			formats.add("gdb");
+		}
+		out.mkdirs();
+		for (String format : formats)
+		{
+			if (format.equals("turtle"))
+			{
+				System.out.println ("Turtle links written: " + generator.writeTurtle(new File(out, "turtle")));
+			}
+			else if (format.equals("text"))
+			{
+				System.out.println ("Text links written: " + generator.writeText(new File(out, "text")));
+			}
+			else if (format.equals("gdb"))
+			{
+				System.out.println ("Gdb links not added: " + generator.writeGdb(new File(out, "generated").getAbsolutePath()));
+			}
+			else
+			{
+				System.err.println ("Unknown format " + format);
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.tools.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bridgedb.BridgeDb;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the generated data depends only on the settings, and that every output format has the same links.
+ */
+public class DatasetGeneratorTest
+{
+	private static final Pattern TURTLE_LINK = Pattern.compile(
+			"<[^>]*/(Gen\\d+)/(?:entry/)?([^/>]+?)(?:\\.html)?> <[^>]*> <[^>]*/(Gen\\d+)/(?:entry/)?([^/>]+?)(?:\\.html)?> \\.");
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Class.forName("org.bridgedb.rdb.IDMapperRdb");
+		dir = File.createTempFile("generatortest", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		File[] children = f.listFiles();
+		if (children != null) for (File child : children) delete(child);
+		f.delete();
+	}
+
+	private static DatasetGenerator generator(long seed)
+	{
+		DatasetGenerator generator = new DatasetGenerator();
+		generator.setGenes(50);
+		generator.setDataSources(4);
+		generator.setChainDepth(2);
+		generator.setFanOut("zipf:4");
+		generator.setDuplicateRate(0.2);
+		generator.setUriPatterns(3);
+		generator.setSeed(seed);
+		return generator;
+	}
+
+	private static List<String> lines(File f) throws IOException
+	{
+		List<String> result = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null) result.add(line);
+		}
+		finally
+		{
+			reader.close();
+		}
+		return result;
+	}
+
+	private static Map<String, List<String>> contents(File dir) throws IOException
+	{
+		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		for (File f : dir.listFiles()) result.put(f.getName(), lines(f));
+		return result;
+	}
+
+	@Test
+	public void testSameSeedSameOutput() throws IOException
+	{
+		File first = new File(dir, "first");
+		File second = new File(dir, "second");
+		File other = new File(dir, "other");
+		long links = generator(42).writeTurtle(new File(first, "turtle"));
+		Assert.assertEquals(links, generator(42).writeTurtle(new File(second, "turtle")));
+		generator(43).writeTurtle(new File(other, "turtle"));
+		generator(42).writeText(new File(first, "text"));
+		generator(42).writeText(new File(second, "text"));
+		generator(43).writeText(new File(other, "text"));
+
+		Assert.assertEquals(contents(new File(first, "turtle")), contents(new File(second, "turtle")));
+		Assert.assertEquals(contents(new File(first, "text")), contents(new File(second, "text")));
+		Assert.assertFalse(contents(new File(first, "turtle")).equals(contents(new File(other, "turtle"))));
+		Assert.assertFalse(contents(new File(first, "text")).equals(contents(new File(other, "text"))));
+	}
+
+	/** @return for each gene, the xrefs linked to it, read from the Turtle link sets */
+	private static Map<String, Set<String>> readTurtle(File dir, long[] count) throws IOException
+	{
+		Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+		for (File f : dir.listFiles())
+		{
+			if (f.getName().equals("DataSource.ttl")) continue;
+			for (String line : lines(f))
+			{
+				if (!line.startsWith("<")) continue;
+				Matcher m = TURTLE_LINK.matcher(line);
+				Assert.assertTrue(line, m.matches());
+				add(result, gene(m.group(1), m.group(2)), m.group(3) + ":" + m.group(4));
+				count[0]++;
+			}
+		}
+		return result;
+	}
+
+	/** @return for each gene, the xrefs linked to it, read from the text link sets */
+	private static Map<String, Set<String>> readText(File dir, long[] count) throws IOException
+	{
+		Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+		for (File f : dir.listFiles())
+		{
+			String[] codes = f.getName().replace(".txt", "").split("-");
+			List<String> lines = lines(f);
+			for (String line : lines.subList(1, lines.size()))
+			{
+				String[] fields = line.split("\t");
+				for (String id : fields[1].split(","))
+				{
+					add(result, gene(codes[0], fields[0]), codes[1] + ":" + id);
+					count[0]++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Links from a chained DataSource start at the first id of the gene, which is the gene number. */
+	private static String gene(String code, String id)
+	{
+		Assert.assertTrue(code + ":" + id, id.matches("\\d+"));
+		return id;
+	}
+
+	private static void add(Map<String, Set<String>> result, String gene, String xref)
+	{
+		Set<String> xrefs = result.get(gene);
+		if (xrefs == null)
+		{
+			xrefs = new HashSet<String>();
+			result.put(gene, xrefs);
+		}
+		xrefs.add(xref);
+	}
+
+	@Test
+	public void testFormatsHaveSameLinks() throws IOException, IDMapperException
+	{
+		DatasetGenerator generator = generator(7);
+		File turtleDir = new File(dir, "turtle");
+		File textDir = new File(dir, "text");
+		long turtleLinks = generator.writeTurtle(turtleDir);
+		long textLinks = generator.writeText(textDir);
+		Assert.assertEquals(turtleLinks, textLinks);
+
+		long[] turtleCount = new long[1];
+		long[] textCount = new long[1];
+		Map<String, Set<String>> turtle = readTurtle(turtleDir, turtleCount);
+		Map<String, Set<String>> text = readText(textDir, textCount);
+		Assert.assertEquals(turtleLinks, turtleCount[0]);
+		Assert.assertEquals(textLinks, textCount[0]);
+		Assert.assertEquals(50, turtle.size());
+		Assert.assertEquals(turtle, text);
+
+		String dbName = new File(dir, "generated.bridge").getAbsolutePath();
+		generator.writeGdb(dbName);
+		List<DataSource> dataSources = generator.getDataSources();
+		IDMapper mapper = BridgeDb.connect("idmapper-pgdb:" + dbName);
+		try
+		{
+			Map<String, Set<String>> gdb = new HashMap<String, Set<String>>();
+			for (String gene : turtle.keySet())
+			{
+				Xref primary = new Xref(gene, dataSources.get(0));
+				for (Xref ref : mapper.mapID(primary))
+				{
+					if (ref.equals(primary)) continue;
+					add(gdb, gene, ref.getDataSource().getSystemCode() + ":" + ref.getId());
+				}
+			}
+			Assert.assertEquals(turtle, gdb);
+		}
+		finally
+		{
+			mapper.close();
+		}
+	}
+}
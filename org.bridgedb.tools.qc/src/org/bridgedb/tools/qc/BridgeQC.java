@@ -1,16 +1,30 @@
 package org.bridgedb.tools.qc;
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bridgedb.DataSource;
 import org.bridgedb.IDMapperException;
@@ -30,13 +44,35 @@ import org.bridgedb.rdb.SimpleGdbFactory;
  * are strictly informative, whereas lines starting with "WARNING" are
  * problems worth investigating further. Ideally there are no "WARNING" lines
  * in the report. 
+ * <p>
+ * The following system properties change what is compared:
+ * <ul>
+ * <li>qcThreads: number of connections opened to each database, to compare DataSources in parallel.
+ *   Defaults to the number of processors.
+ * <li>linkSampleSize: compare the mappings of this many randomly chosen ids per DataSource,
+ *   and report the fraction that changed with a 95% confidence interval.
+ *   0 compares the mappings of all ids. By default mappings are not compared.
+ * <li>linkSampleSeed: seed for choosing the ids, so a comparison can be repeated.
+ * <li>diffReport: file to write the results to in a tab delimited format, see {@link DiffReport}.
+ * <li>showRemovedIDs: if true, lists the ids that were removed.
+ * </ul>
  */
 public class BridgeQC
 {
+	/** z value for a 95% confidence interval */
+	private static final double Z95 = 1.96;
+	private static final int LINK_BATCH_SIZE = 1000;
+
 	private final File oldDb;
 	private final File newDb;
 	private SimpleGdb oldGdb;
 	private SimpleGdb newGdb;
+	private final int threads = Integer.getInteger("qcThreads", Runtime.getRuntime().availableProcessors());
+	private final List<SimpleGdb> opened = new ArrayList<SimpleGdb>();
+	private BlockingQueue<SimpleGdb> oldPool;
+	private BlockingQueue<SimpleGdb> newPool;
+	private ExecutorService executor;
+	private final DiffReport diffReport = new DiffReport();
 
 	public BridgeQC(File f1, File f2) throws IDMapperException
 	{
@@ -53,33 +89,138 @@ public class BridgeQC
 		oldGdb = SimpleGdbFactory.createInstance("old", url1);
 		String url2 = "jdbc:derby:jar:(" + newDb + ")database";
 		newGdb = SimpleGdbFactory.createInstance("new", url2);
+
+		// each SimpleGdb uses a single connection, so open one per thread
+		int poolSize = Math.max(1, threads);
+		oldPool = new ArrayBlockingQueue<SimpleGdb>(poolSize);
+		newPool = new ArrayBlockingQueue<SimpleGdb>(poolSize);
+		oldPool.add(oldGdb);
+		newPool.add(newGdb);
+		for (int i = 1; i < poolSize; i++)
+		{
+			SimpleGdb gdb = SimpleGdbFactory.createInstance("old" + i, url1);
+			opened.add(gdb);
+			oldPool.add(gdb);
+			gdb = SimpleGdbFactory.createInstance("new" + i, url2);
+			opened.add(gdb);
+			newPool.add(gdb);
+		}
+		executor = Executors.newFixedThreadPool(poolSize);
 	}
-	
-	public void compareDataSources() throws IDMapperException
+
+	/** Task that runs on a database taken from one of the pools */
+	private abstract static class GdbTask<T> implements Callable<T>
 	{
-		for (DataSource ds : oldGdb.getCapabilities().getSupportedSrcDataSources())
+		private final BlockingQueue<SimpleGdb> pool;
+
+		GdbTask(BlockingQueue<SimpleGdb> pool)
 		{
-			int oldGenes = oldGdb.getGeneCount(ds);
-			oldSet.put (ds, oldGenes);
+			this.pool = pool;
 		}
-		
-		for (DataSource ds : newGdb.getCapabilities().getSupportedSrcDataSources())
+
+		public T call() throws Exception
 		{
-			int newGenes = newGdb.getGeneCount(ds);
-			newSet.put (ds, newGenes);
+			SimpleGdb gdb = pool.take();
+			try
+			{
+				return run(gdb);
+			}
+			finally
+			{
+				pool.add(gdb);
+			}
 		}
 
+		abstract T run(SimpleGdb gdb) throws Exception;
+	}
+
+	private <T> T get(Future<T> future) throws IDMapperException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IDMapperException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IDMapperException) throw (IDMapperException)ex.getCause();
+			throw new IDMapperException(ex.getCause());
+		}
+	}
+
+	private Map<DataSource, Future<Integer>> submitGeneCounts(BlockingQueue<SimpleGdb> pool, Collection<DataSource> dataSources)
+	{
+		Map<DataSource, Future<Integer>> result = new HashMap<DataSource, Future<Integer>>();
+		for (final DataSource ds : dataSources)
+		{
+			result.put(ds, executor.submit(new GdbTask<Integer>(pool)
+			{
+				Integer run(SimpleGdb gdb) throws IDMapperException
+				{
+					return gdb.getGeneCount(ds);
+				}
+			}));
+		}
+		return result;
+	}
+
+	private Future<Set<String>> submitIds(BlockingQueue<SimpleGdb> pool, final DataSource ds)
+	{
+		return executor.submit(new GdbTask<Set<String>>(pool)
+		{
+			Set<String> run(SimpleGdb gdb) throws IDMapperException
+			{
+				Set<String> ids = new HashSet<String>();
+				for (Xref xref : gdb.getIterator(ds)) ids.add(xref.getId());
+				return ids;
+			}
+		});
+	}
+
+	/** DataSources sorted by system code, so the report is in the same order each run */
+	private static List<DataSource> sorted(Collection<DataSource> dataSources)
+	{
+		List<DataSource> result = new ArrayList<DataSource>(dataSources);
+		Collections.sort(result, new Comparator<DataSource>()
+		{
+			public int compare(DataSource a, DataSource b)
+			{
+				return ("" + a.getSystemCode()).compareTo("" + b.getSystemCode());
+			}
+		});
+		return result;
+	}
+
+	private static String label(DataSource ds)
+	{
+		return ds.getSystemCode() + ((ds.getFullName() != null && ds.getFullName().length() > 0) ?
+				" (" + ds.getFullName() + ")" : "");
+	}
+
+	public void compareDataSources() throws IDMapperException
+	{
+		Map<DataSource, Future<Integer>> oldCounts = submitGeneCounts(oldPool, oldGdb.getCapabilities().getSupportedSrcDataSources());
+		Map<DataSource, Future<Integer>> newCounts = submitGeneCounts(newPool, newGdb.getCapabilities().getSupportedSrcDataSources());
+		for (DataSource ds : oldCounts.keySet()) oldSet.put (ds, get(oldCounts.get(ds)));
+		for (DataSource ds : newCounts.keySet()) newSet.put (ds, get(newCounts.get(ds)));
+
 		// not in new
-		for (DataSource ds : oldSet.keySet())
+		for (DataSource ds : sorted(oldSet.keySet()))
 		{
 			if (!newSet.containsKey(ds))
 			{
 				System.out.println ("WARNING: " + ds.getSystemCode() + " is only in old database");
+				diffReport.add("ids", ds, "old", oldSet.get(ds));
+				diffReport.add("ids", ds, "new", 0);
 			}
 		}
 
 		// not in old
-		for (DataSource ds : newSet.keySet())
+		for (DataSource ds : sorted(newSet.keySet()))
 		{
 			int newGenes = newSet.get(ds);
 			if (newGenes == 0)
@@ -91,13 +232,17 @@ public class BridgeQC
 			{
 				System.out.println ("INFO: " + ds.getSystemCode() + " is only in new database"); 
 				System.out.printf ("INFO: Number of ids in %s: %d\n", ds.getSystemCode(), newGenes); 
+				diffReport.add("ids", ds, "old", 0);
+				diffReport.add("ids", ds, "new", newGenes);
 			}
 			else
 			{
-				Set<String> oldIDs = new HashSet<String>();
-				for (Xref oldXref : oldGdb.getIterator(ds)) oldIDs.add(oldXref.getId());
-				Set<String> newIDs = new HashSet<String>();
-				for (Xref newXref : newGdb.getIterator(ds)) newIDs.add(newXref.getId());
+				// read the ids from both databases in parallel, one DataSource at a time
+				// so only the id sets of a single DataSource are held in memory
+				Future<Set<String>> oldIdSet = submitIds(oldPool, ds);
+				Future<Set<String>> newIdSet = submitIds(newPool, ds);
+				Set<String> oldIDs = get(oldIdSet);
+				Set<String> newIDs = get(newIdSet);
 
 				// determine all new IDs
 				Set<String> newGenesAdded = new HashSet<String>();
@@ -105,26 +250,25 @@ public class BridgeQC
 				newGenesAdded.removeAll(oldIDs);
 				
 				// determine all no longer existing (removed) IDs
-				Set<String> genesRemoved = new HashSet<String>();
-				genesRemoved.addAll(oldIDs);
-				genesRemoved.removeAll(newIDs);
+				oldIDs.removeAll(newIDs);
+				Set<String> genesRemoved = oldIDs;
 				
 				int oldGenes = oldSet.get(ds);
+				diffReport.add("ids", ds, "old", oldGenes);
+				diffReport.add("ids", ds, "new", newGenes);
+				diffReport.add("ids", ds, "added", newGenesAdded.size());
+				diffReport.add("ids", ds, "removed", genesRemoved.size());
 				double delta = (double)(newGenes - oldGenes) / (double)oldGenes;
 				if (newGenesAdded.size() + genesRemoved.size() == 0)
 					System.out.printf(
-						"INFO: Number of ids in %s%s: %d (unchanged)\n",
-						ds.getSystemCode(),
-						(ds.getFullName() != null && ds.getFullName().length() > 0) ?
-							" (" + ds.getFullName() + ")" : "",
+						"INFO: Number of ids in %s: %d (unchanged)\n",
+						label(ds),
 						newGenes
 					);
 				else
 					System.out.printf(
-						"INFO: Number of ids in %s%s: %d (%d added, %d removed -> overall changed %+3.1f%%)\n",
-						ds.getSystemCode(),
-						(ds.getFullName() != null && ds.getFullName().length() > 0) ?
-							" (" + ds.getFullName() + ")" : "",
+						"INFO: Number of ids in %s: %d (%d added, %d removed -> overall changed %+3.1f%%)\n",
+						label(ds),
 						newGenes,
 						newGenesAdded.size(),
 						genesRemoved.size(),
@@ -132,10 +276,8 @@ public class BridgeQC
 					);
 				if (genesRemoved.size() > 0 && "true".equals(System.getProperty("showRemovedIDs", "false")))
 					System.out.printf(
-						"INFO: The ids removed from %s%s: %s\n",
-							ds.getSystemCode(),
-							(ds.getFullName() != null && ds.getFullName().length() > 0) ?
-								" (" + ds.getFullName() + ")" : "",
+						"INFO: The ids removed from %s: %s\n",
+							label(ds),
 							"" + genesRemoved
 						);
 
@@ -144,37 +286,177 @@ public class BridgeQC
 			}
 		}
 	}
-	
-	public void compareLinks() throws SQLException
+
+	/**
+	 * Compares the mappings of the ids in both databases, if the linkSampleSize property is set.
+	 * With a sample, the fraction of ids with changed mappings is reported with a 95% Wilson score interval.
+	 */
+	public void compareLinks() throws IDMapperException
 	{
-		Connection con = oldGdb.getConnection();
-		//TODO ... do something to compare cross-link consistency ...
+		String sampleProperty = System.getProperty("linkSampleSize");
+		if (sampleProperty == null) return;
+		final int sampleSize = Integer.parseInt(sampleProperty);
+		long seed = Long.getLong("linkSampleSeed", 42);
+
+		Map<DataSource, Future<int[]>> results = new HashMap<DataSource, Future<int[]>>();
+		List<DataSource> common = new ArrayList<DataSource>();
+		for (DataSource ds : sorted(oldSet.keySet()))
+		{
+			if (!newSet.containsKey(ds)) continue;
+			common.add(ds);
+			final DataSource fds = ds;
+			// DataSource has no hashCode of its own, so the code is used to get the same sample each run
+			final Random random = new Random(seed + String.valueOf(ds.getSystemCode()).hashCode());
+			results.put(ds, executor.submit(new GdbTask<int[]>(oldPool)
+			{
+				int[] run(SimpleGdb gdb) throws IDMapperException
+				{
+					List<Xref> sample = sample(gdb.getIterator(fds), sampleSize, random);
+					return new int[] { sample.size(), countChangedMappings(gdb, sample) };
+				}
+			}));
+		}
+
+		for (DataSource ds : common)
+		{
+			int[] result = get(results.get(ds));
+			int n = result[0];
+			int changed = result[1];
+			if (n == 0) continue;
+			double p = (double)changed / n;
+			diffReport.add("links", ds, "compared", n);
+			diffReport.add("links", ds, "changed", changed);
+			if (sampleSize > 0 && n == sampleSize)
+			{
+				double[] interval = wilsonInterval(changed, n);
+				diffReport.add("links", ds, "lower95", interval[0]);
+				diffReport.add("links", ds, "upper95", interval[1]);
+				System.out.printf (
+						"INFO: Mappings of %s changed for %d of %d sampled ids (%3.1f%%, 95%% interval %3.1f%% - %3.1f%%)\n",
+						label(ds), changed, n, p * 100, interval[0] * 100, interval[1] * 100);
+				if (interval[0] > 0.1)
+					System.out.println ("WARNING: Mappings of more than 10% of the ids in " + ds.getSystemCode() + " have changed");
+			}
+			else
+			{
+				System.out.printf ("INFO: Mappings of %s changed for %d of %d ids (%3.1f%%)\n",
+						label(ds), changed, n, p * 100);
+				if (p > 0.1)
+					System.out.println ("WARNING: Mappings of more than 10% of the ids in " + ds.getSystemCode() + " have changed");
+			}
+		}
+	}
+
+	/**
+	 * Reservoir sample, so the ids of a DataSource are read only once.
+	 * @param size size of the sample, or 0 for all ids
+	 */
+	static List<Xref> sample(Iterable<Xref> xrefs, int size, Random random)
+	{
+		List<Xref> result = new ArrayList<Xref>();
+		int seen = 0;
+		for (Xref xref : xrefs)
+		{
+			seen++;
+			if (size <= 0 || result.size() < size)
+			{
+				result.add(xref);
+			}
+			else
+			{
+				int pos = random.nextInt(seen);
+				if (pos < size) result.set(pos, xref);
+			}
+		}
+		return result;
+	}
+
+	/** Maps the ids in both databases, in batches, and counts the ids whose mappings differ */
+	private int countChangedMappings(SimpleGdb old, List<Xref> xrefs) throws IDMapperException
+	{
+		SimpleGdb current = null;
+		try
+		{
+			current = newPool.take();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IDMapperException(ex);
+		}
+		try
+		{
+			int changed = 0;
+			for (int start = 0; start < xrefs.size(); start += LINK_BATCH_SIZE)
+			{
+				List<Xref> batch = xrefs.subList(start, Math.min(xrefs.size(), start + LINK_BATCH_SIZE));
+				Map<Xref, Set<Xref>> oldMappings = old.mapID(batch);
+				Map<Xref, Set<Xref>> newMappings = current.mapID(batch);
+				for (Xref xref : batch)
+				{
+					Set<Xref> oldRefs = oldMappings.get(xref);
+					Set<Xref> newRefs = newMappings.get(xref);
+					if (oldRefs == null) oldRefs = Collections.emptySet();
+					if (newRefs == null) newRefs = Collections.emptySet();
+					if (!oldRefs.equals(newRefs)) changed++;
+				}
+			}
+			return changed;
+		}
+		finally
+		{
+			newPool.add(current);
+		}
+	}
+
+	/** @return lower and upper bound of the 95% Wilson score interval for a proportion */
+	static double[] wilsonInterval(int successes, int n)
+	{
+		double p = (double)successes / n;
+		double z2 = Z95 * Z95;
+		double center = (p + z2 / (2 * n)) / (1 + z2 / n);
+		double halfWidth = Z95 * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n)) / (1 + z2 / n);
+		return new double[] { Math.max(0, center - halfWidth), Math.min(1, center + halfWidth) };
 	}
 	
 	public void checkDatabaseSanity() throws SQLException
 	{
-		Connection con = newGdb.getConnection();
+		for (String line : findUnknownLinkIds(newGdb)) System.out.println (line);
+	}
+
+	/** check for ids that occur in the link table but not in datanode table. We expect zero results */
+	private List<String> findUnknownLinkIds(SimpleGdb gdb) throws SQLException
+	{
+		List<String> report = new ArrayList<String>();
+		Connection con = gdb.getConnection();
 		Statement st = con.createStatement();
-		/** check for ids that occur in the link table but not in datanode table. We expect zero results */
-		String sql = "select coderight, idright from link left outer join datanode on link.idright = datanode.id and link.coderight = datanode.code where datanode.code IS NULL";
-		ResultSet rs = st.executeQuery(sql);
-		
-		if (rs.next())
+		try
 		{
-			System.out.println ("ERROR: 'link' table contains ids that do not occur in 'datanode' table.");
-			System.out.print ("ERROR: A few examples: ");
-			String sep = "";
-			int i = 0;
-			do 
+			String sql = "select coderight, idright from link left outer join datanode on link.idright = datanode.id and link.coderight = datanode.code where datanode.code IS NULL";
+			ResultSet rs = st.executeQuery(sql);
+			
+			if (rs.next())
 			{
-				System.out.print (sep + rs.getString(1) + ":" + rs.getString(2));
-				sep = ", ";
+				report.add ("ERROR: 'link' table contains ids that do not occur in 'datanode' table.");
+				StringBuilder examples = new StringBuilder ("ERROR: A few examples: ");
+				String sep = "";
+				int i = 0;
+				do 
+				{
+					examples.append (sep + rs.getString(1) + ":" + rs.getString(2));
+					sep = ", ";
+				}
+				while (rs.next() && ++i < 8);
+				report.add (examples.toString());
+				report.add ("ERROR: These ids will not map properly.");
 			}
-			while (rs.next() && ++i < 8);
-			System.out.println();
-			System.out.println ("ERROR: These ids will not map properly.");
+			diffReport.add("sanity", null, "unknownLinkIds", !report.isEmpty());
 		}
-		
+		finally
+		{
+			st.close();
+		}
+		return report;
 	}
 
 	public void compareFileSizes() throws SQLException
@@ -307,22 +589,64 @@ public class BridgeQC
 	public void run() throws IDMapperException, SQLException
 	{
 		initDatabases();
-		checkDatabaseSanity();
-		compareInfo();
-		compareDataSources();
+		try
+		{
+			// the sanity check scans the whole link table, so it runs while the DataSources are compared
+			Future<List<String>> sanity = executor.submit(new GdbTask<List<String>>(newPool)
+			{
+				List<String> run(SimpleGdb gdb) throws SQLException
+				{
+					return findUnknownLinkIds(gdb);
+				}
+			});
+			compareInfo();
+			compareDataSources();
+			for (String line : get(sanity)) System.out.println (line);
 
-		compareLinks();
-		
-		compareAttributes();
-		compareFileSizes();
+			compareLinks();
+			
+			compareAttributes();
+			compareFileSizes();
 
-		summarizeOverallStats();
+			summarizeOverallStats();
+			writeDiffReport();
+		}
+		finally
+		{
+			close();
+		}
 	}
 	
 	private void summarizeOverallStats() throws IDMapperException
 	{
-		System.out.println("INFO: total number of identifiers is " + newGdb.getGeneCount());
-		System.out.println("INFO: total number of mappings is " + newGdb.getLinkCount());
+		int genes = newGdb.getGeneCount();
+		int links = newGdb.getLinkCount();
+		diffReport.add("total", null, "ids", genes);
+		diffReport.add("total", null, "links", links);
+		System.out.println("INFO: total number of identifiers is " + genes);
+		System.out.println("INFO: total number of mappings is " + links);
+	}
+
+	private void writeDiffReport() throws IDMapperException
+	{
+		String fileName = System.getProperty("diffReport");
+		if (fileName == null) return;
+		try
+		{
+			diffReport.write(new File(fileName));
+		}
+		catch (IOException ex)
+		{
+			throw new IDMapperException("Could not write diff report " + fileName, ex);
+		}
+	}
+
+	/** Stops the worker threads and closes the extra connections opened for them */
+	public void close() throws IDMapperException
+	{
+		if (executor != null) executor.shutdownNow();
+		for (SimpleGdb gdb : opened) gdb.close();
+		opened.clear();
 	}
 
 	public static void printUsage()
@@ -0,0 +1,57 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.tools.qc;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bridgedb.DataSource;
+
+/**
+ * Machine readable version of the BridgeQC report.
+ * <p>
+ * Written as a tab delimited file with the columns check, datasource, metric and value,
+ * for example <code>ids	L	removed	12</code>.
+ * The datasource column is empty for checks on the whole database.
+ */
+class DiffReport
+{
+	private final List<String> rows = new ArrayList<String>();
+
+	synchronized void add(String check, DataSource ds, String metric, Object value)
+	{
+		rows.add(check + "\t" + (ds == null ? "" : ds.getSystemCode()) + "\t" + metric + "\t" + value);
+	}
+
+	synchronized void write(File f) throws IOException
+	{
+		PrintWriter writer = new PrintWriter(new FileWriter(f));
+		try
+		{
+			writer.println("check\tdatasource\tmetric\tvalue");
+			for (String row : rows) writer.println(row);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
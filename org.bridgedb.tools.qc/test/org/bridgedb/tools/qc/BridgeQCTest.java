@@ -0,0 +1,71 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.tools.qc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BridgeQCTest
+{
+	private static final DataSource DS = DataSource.register("Qc", "BridgeQCTest").asDataSource();
+
+	private static List<Xref> xrefs(int count)
+	{
+		List<Xref> result = new ArrayList<Xref>();
+		for (int i = 0; i < count; i++) result.add(new Xref("" + i, DS));
+		return result;
+	}
+
+	@Test
+	public void testWilsonInterval()
+	{
+		double[] none = BridgeQC.wilsonInterval(0, 10);
+		Assert.assertEquals(0, none[0], 1e-9);
+		Assert.assertEquals(0.2775, none[1], 1e-4);
+
+		double[] half = BridgeQC.wilsonInterval(5, 10);
+		Assert.assertEquals(0.2366, half[0], 1e-4);
+		Assert.assertEquals(0.7634, half[1], 1e-4);
+
+		double[] all = BridgeQC.wilsonInterval(100, 100);
+		Assert.assertEquals(0.9630, all[0], 1e-4);
+		Assert.assertEquals(1, all[1], 1e-9);
+	}
+
+	@Test
+	public void testSample()
+	{
+		List<Xref> xrefs = xrefs(1000);
+		Assert.assertEquals(xrefs, BridgeQC.sample(xrefs, 0, new Random(1)));
+		Assert.assertEquals(xrefs.subList(0, 5), BridgeQC.sample(xrefs.subList(0, 5), 10, new Random(1)));
+
+		List<Xref> sample = BridgeQC.sample(xrefs, 50, new Random(42));
+		Assert.assertEquals(50, sample.size());
+		Assert.assertEquals(50, new HashSet<Xref>(sample).size());
+		Assert.assertTrue(xrefs.containsAll(sample));
+		//The same seed gives the same sample
+		Assert.assertEquals(sample, BridgeQC.sample(xrefs, 50, new Random(42)));
+		Assert.assertFalse(sample.equals(xrefs.subList(0, 50)));
+	}
+}
@@ -32,6 +32,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
@@ -59,12 +60,16 @@ import org.bridgedb.statistics.SourceTargetInfo;
 import org.bridgedb.uri.api.Mapping;
 import org.bridgedb.uri.api.MappingsBySet;
 import org.bridgedb.uri.api.UriMapper;
+import org.bridgedb.uri.lens.CompiledLens;
 import org.bridgedb.uri.lens.Lens;
 import org.bridgedb.uri.lens.LensTools;
 import org.bridgedb.uri.tools.GraphResolver;
 import org.bridgedb.uri.tools.RegexUriPattern;
+import org.bridgedb.uri.tools.RegexUriPatternFilter;
 import org.bridgedb.uri.tools.UriListener;
 import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+import org.bridgedb.utils.RequestPhases;
 import org.openrdf.model.Resource;
 
 /**
@@ -112,7 +117,23 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
     private static SQLUriMapper mapper = null;
 
     //Queuries as String saved for speed
-    private final HashMap<String, String> directMappingQueries = new HashMap<String, String>();
+    private final Map<String, String> directMappingQueries = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Lenses resolved to the ids of the mapping sets they allow, by lens id.
+     * 
+     * Cleared whenever a mapping set is registered as the ids then no longer cover all mapping sets.
+     * Lenses are compiled and cleared holding the lock on this map,
+     * so a lens compiled before a clear is never put back after it.
+     */
+    private final Map<String, CompiledLens> compiledLenses = new ConcurrentHashMap<String, CompiledLens>();
+    private volatile Map<Integer, String> mappingSetJustifications = null;
+    private final long lensRefreshInterval = readLensRefreshInterval();
+    private volatile long lensesChecked = 0;
+    private String lensesVersion = null;
+
+    static final String LENS_REFRESH = "lens.compiled.refresh";
+    static final long DEFAULT_LENS_REFRESH = 60000;
     private final String uriToIdSysCodePairQuery = "SELECT * FROM " + URI_TABLE_NAME + " WHERE ? LIKE CONCAT(" 
             + PREFIX_COLUMN_NAME + ",'%'," + POSTFIX_COLUMN_NAME + ")";
 
@@ -134,6 +155,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
      * Not used during the map functions.
      */
     protected final HashMap<Integer, RegexUriPattern> targetUriPatterns;
+
     private boolean processingRawLinkset = true;
 
     //Currently there is only one of each of these but could be lens dependent
@@ -276,32 +298,20 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
                 //No graph and no pattern so mapto Self
                 return true;
             } else {
-                for (String tgtUriPattern : tgtUriPatterns) {
-                    if (patternMatch(sourceUri, tgtUriPattern)) {
+                //As in findRegexPatternsWithNulls an unknown target pattern matches nothing
+                for (UriPattern pattern : UriPattern.byUri(sourceUri)) {
+                    if (tgtUriPatterns.contains(pattern.getUriPattern())) {
+                        return true;
+                    }
+                    if (!pattern.hasPostfix() && tgtUriPatterns.contains(pattern.getPrefix())) {
                         return true;
                     }
                 }
-                //No match found
                 return false;
             }
         }
     }
 
-    protected final boolean patternMatch(String uri, String pattern) {
-        if (pattern.contains("$id")) {
-            if (pattern.endsWith("$id")) {
-                pattern = pattern.substring(0, pattern.length() - 3);
-            } else {
-                String postfix = pattern.substring(pattern.indexOf("$id") + 3);
-                if (!uri.endsWith(postfix)) {
-                    return false;
-                }
-                pattern = pattern.substring(0, pattern.indexOf("$id"));
-            }
-        }
-        return uri.startsWith(pattern);
-    }
-
     /**
      * Adds the WHERE clause conditions for ensuring that the returned mappings
      * are from active linksets.
@@ -311,25 +321,101 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
      * @throws BridgeDbSqlException if the lens does not exist
      */
     private void appendLensClause(StringBuilder query, String lensId, boolean whereAdded) throws BridgeDBException {
-        if (lensId == null) {
+        compiledLens(lensId).appendExactClause(query, ID_COLUMN_NAME, whereAdded);
+    }
+
+    /**
+     * Finds the lens with the ids of the mapping sets it allows, compiling it on first use.
+     *
+     * @param lensId Id or Uri of the lens, null or empty for the default lens
+     * @throws BridgeDBException if the lens does not exist or has no justifications
+     */
+    public CompiledLens compiledLens(String lensId) throws BridgeDBException {
+        if (lensId == null || lensId.isEmpty()) {
             lensId = Lens.DEFAULT_LENS_NAME;
         }
-        if (!LensTools.isAllLens(lensId)) {
-            List<String> justifications = LensTools.getJustificationsbyId(lensId);
-            if (justifications.isEmpty()) {
-                throw new BridgeDBException("No  justifications found for Lens " + lensId);
+        checkLastUpdates();
+        CompiledLens result = compiledLenses.get(lensId);
+        if (result != null) {
+            return result;
+        }
+        synchronized (compiledLenses) {
+            result = compiledLenses.get(lensId);
+            if (result == null) {
+                Lens lens = LensTools.byId(lensId);
+                result = CompiledLens.compile(lens, LensTools.isAllLens(lensId), getMappingSetJustifications());
+                compiledLenses.put(lensId, result);
             }
-            if (whereAdded) {
-                query.append(" AND ");
-            } else {
-                query.append(" WHERE ");
+            return result;
+        }
+    }
+
+    private Map<Integer, String> getMappingSetJustifications() throws BridgeDBException {
+        Map<Integer, String> result = mappingSetJustifications;
+        if (result != null) {
+            return result;
+        }
+        result = new HashMap<Integer, String>();
+        String query = "SELECT " + ID_COLUMN_NAME + ", " + JUSTIFICATION_COLUMN_NAME
+                + " FROM " + MAPPING_SET_TABLE_NAME;
+        Statement statement = this.createStatement();
+        ResultSet rs = null;
+        try {
+            rs = statement.executeQuery(query);
+            while (rs.next()) {
+                result.put(rs.getInt(ID_COLUMN_NAME), rs.getString(JUSTIFICATION_COLUMN_NAME));
             }
-            query.append(JUSTIFICATION_COLUMN_NAME);
-            query.append(" IN (");
-            for (int i = 0; i < justifications.size() - 1; i++) {
-                query.append("'").append(justifications.get(i)).append("', ");
+        } catch (SQLException ex) {
+            throw new BridgeDBException("Error retrieving mappingSet justifications ", ex);
+        } finally {
+            close(statement, rs);
+        }
+        mappingSetJustifications = result;
+        return result;
+    }
+
+    private static long readLensRefreshInterval() throws BridgeDBException {
+        String property = ConfigReader.getProperty(LENS_REFRESH);
+        if (property == null || property.trim().isEmpty()){
+            return DEFAULT_LENS_REFRESH;
+        }
+        try {
+            return Long.parseLong(property.trim()) * 1000;
+        } catch (NumberFormatException ex) {
+            throw new BridgeDBException("Property " + LENS_REFRESH + " should be a number of seconds not " + property, ex);
+        }
+    }
+
+    /**
+     * Mapping sets may be loaded by another process, 
+     * so the LastUpdates property is checked once the refresh interval has passed.
+     */
+    private void checkLastUpdates() {
+        long now = System.currentTimeMillis();
+        if (now - lensesChecked < lensRefreshInterval) {
+            return;
+        }
+        synchronized (compiledLenses) {
+            if (now - lensesChecked < lensRefreshInterval) {
+                return;
+            }
+            lensesChecked = now;
+            String lastUpdates = getProperty(LAST_UDPATES);
+            if (lastUpdates != null && !lastUpdates.equals(lensesVersion)) {
+                if (lensesVersion != null) {
+                    logger.info("Recompiling lenses as " + LAST_UDPATES + " changed to " + lastUpdates);
+                    clearCompiledLenses();
+                }
+                lensesVersion = lastUpdates;
             }
-            query.append("'").append(justifications.get(justifications.size() - 1)).append("')");
+        }
+    }
+
+    private void clearCompiledLenses() {
+        synchronized (compiledLenses) {
+            mappingSetJustifications = null;
+            compiledLenses.clear();
+            directMappingQueries.clear();
         }
     }
 
@@ -400,6 +486,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             return null;
         }
 
+        long begin = RequestPhases.begin();
         PreparedStatement statement = this.createPreparedStatement(uriToIdSysCodePairQuery);
         ResultSet rs = null;
         try {
@@ -473,6 +560,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             throw new BridgeDBException("Error getting IdSysCodePair using. " + statement, ex);
         } finally {
             close(statement, rs);
+            RequestPhases.record(RequestPhases.URI_RESOLUTION, begin);
         }
     }
 
@@ -481,6 +569,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         if (uri == null || uri.isEmpty()) {
             return null;
         }
+        long begin = RequestPhases.begin();
         PreparedStatement statement = this.createPreparedStatement(uriToIdSysCodePairQuery);
         ResultSet rs = null;
         try {
@@ -525,6 +614,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             throw new BridgeDBException("Unable to get uriSpace. " + statement, ex);
         } finally {
             close(statement, rs);
+            RequestPhases.record(RequestPhases.URI_RESOLUTION, begin);
         }
     }
 
@@ -533,7 +623,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         String query = "SELECT * FROM " + MAPPING_TABLE_NAME + ", " + MAPPING_SET_TABLE_NAME 
             + " WHERE " + MAPPING_TABLE_NAME + "." + MAPPING_SET_ID_COLUMN_NAME 
             + " = " + MAPPING_SET_TABLE_NAME + ". " + ID_COLUMN_NAME 
-            +  lensClause(Lens.DEFAULT_LENS_NAME)
+            +  exactLensClause(compiledLens(Lens.DEFAULT_LENS_NAME))
             + " LIMIT 10";
         Statement statement = this.createStatement();
        
@@ -901,6 +991,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             statement.setInt(6, symmetric);
             statement.executeUpdate();
             int autoinc = getAutoInc();
+            clearCompiledLenses();
             logger.info("Registered new Mapping " + autoinc + " from " + getDataSourceKey(source) + " to " + getDataSourceKey(target));
             return autoinc;
         } catch (SQLException ex) {
@@ -1243,6 +1334,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         query.append(" = '");
         query.append(ref.getSysCode());
         query.append("' ");
+        long begin = RequestPhases.begin();
         Statement statement = this.createStatement();
         ResultSet rs = null;
         try {
@@ -1263,6 +1355,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             throw new BridgeDBException("Unable to parse results.", ex);
         } finally {
             close(statement, rs);
+            RequestPhases.record(RequestPhases.URI_RESOLUTION, begin);
         }
         return results;
     }
@@ -1524,53 +1617,48 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         throw new BridgeDBException("Illegal call with both graph and tgtUriPatterns parameters");
     }
 
-    private List<RegexUriPattern> getRegexByPartialPrefix(String partPrefix) throws BridgeDBException {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT * FROM ");
-        query.append(URI_TABLE_NAME);
-        query.append(" WHERE ");
-        query.append(PREFIX_COLUMN_NAME);
-        query.append(" LIKE CONCAT(?, '%')");
-        PreparedStatement statement = null;
-        ResultSet rs = null;
-        try {
-            statement = this.createPreparedStatement(query.toString());
-            statement.setString(1, partPrefix);
-            rs = statement.executeQuery();
-        } catch (SQLException ex) {
-            System.err.println(statement.toString());
-            close(statement, rs);
-            statement.toString();
-            throw new BridgeDBException("Unable to run query. " + query + " with " + partPrefix, ex);
+    /**
+     * As findRegexPatternsWithNulls but prepared for filtering.
+     * A graph's filter is compiled once and reused.
+     */
+    private RegexUriPatternFilter findTargetFilter(String graph, Collection<String> tgtUriPatterns) throws BridgeDBException {
+        if (tgtUriPatterns == null || tgtUriPatterns.isEmpty()) {
+            return GraphResolver.getFilterForGraph(graph);
         }
-        try {
-            ArrayList<RegexUriPattern> results = new ArrayList<RegexUriPattern>();
-            while (rs.next()) {
-                String prefix = rs.getString(PREFIX_COLUMN_NAME);
-                String postfix = rs.getString(POSTFIX_COLUMN_NAME);
-                String regex = rs.getString(REGEX_COLUMN_NAME);
-                String sysCode = rs.getString(DATASOURCE_COLUMN_NAME);
-                results.add(RegexUriPattern.factory(prefix, postfix, sysCode));
-            }
-            if (results.isEmpty()){
-                //Nothimg found so block it from considering no filter
-                results.add(null);
+        return new RegexUriPatternFilter(findRegexPatternsWithNulls(graph, tgtUriPatterns));
+    }
+
+    private List<RegexUriPattern> getRegexByPartialPrefix(String partPrefix) throws BridgeDBException {
+        ArrayList<RegexUriPattern> results = new ArrayList<RegexUriPattern>();
+        for (UriPattern pattern : UriPattern.byPartialPrefix(partPrefix)) {
+            for (String sysCode : pattern.getSysCodes()) {
+                results.add(RegexUriPattern.factory(pattern.getPrefix(), pattern.getPostfix(), sysCode));
             }
-            return results;
-        } catch (SQLException ex) {
-            throw new BridgeDBException("Error getting prefixr using. " + query, ex);
-        } finally {
-            close(statement, rs);
         }
+        if (results.isEmpty()){
+            //Nothimg found so block it from considering no filter
+            results.add(null);
+        }
+        return results;
     }
 
     //***************
     
-    private Set<DirectMapping> getDirectMappings(IdSysCodePair sourceRef, PreparedStatement statement, String lensId) 
-            throws BridgeDBException {
+    /**
+     * Runs the direct query for the lens.
+     * 
+     * Rows are also checked against the lens in memory,
+     * as the query has no lens clause when the lens allowed every mapping set at the time it was compiled.
+     */
+    private Set<DirectMapping> getDirectMappings(IdSysCodePair sourceRef, PreparedStatement statement, 
+            CompiledLens lens, String lensId) throws BridgeDBException {
 //        if (sourceRef == null){
 //            return new HashSet<DirectMapping>();
 //        }
+        if (lens.allowsNone()){
+            return new HashSet<DirectMapping>();
+        }
+        long begin = RequestPhases.begin();
         ResultSet rs = null;
         try {
             Set<DirectMapping> results = new HashSet<DirectMapping>();
@@ -1583,6 +1671,9 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
                 IdSysCodePair targetRef = new IdSysCodePair(id, sysCode);
                 //stem.out.println(" = " + targetRef);
                 Integer mappingSetId = rs.getInt(MAPPING_SET_ID_COLUMN_NAME);
+                if (!lens.allows(mappingSetId)){
+                    continue;
+                }
                 Integer symmetric = rs.getInt(SYMMETRIC_COLUMN_NAME);
                 String predicate = rs.getString(PREDICATE_COLUMN_NAME);
                 String justification = rs.getString(JUSTIFICATION_COLUMN_NAME);
@@ -1599,6 +1690,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             throw new BridgeDBException("Error running query " + statement, ex);
         } finally {
             close(null, rs);
+            RequestPhases.record(RequestPhases.DB_QUERY, begin);
         }
     }
 
@@ -1617,32 +1709,28 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             + " AND " + SOURCE_ID_COLUMN_NAME + " = ? "
             + " AND " + SOURCE_DATASOURCE_COLUMN_NAME + " = ?";
 
-    private String lensClause(String lensId) throws BridgeDBException {
+    private String lensClause(CompiledLens lens) {
         StringBuilder query = new StringBuilder();
-        if (lensId == null) {
-            lensId = Lens.DEFAULT_LENS_NAME;
-        }
-        if (!LensTools.isAllLens(lensId)) {
-            List<String> justifications = LensTools.getJustificationsbyId(lensId);
-            if (justifications.isEmpty()) {
-                throw new BridgeDBException("No  justifications found for Lens " + lensId);
-            }
-            query.append(" AND ");
-            query.append(JUSTIFICATION_COLUMN_NAME);
-            query.append(" IN (");
-            for (int i = 0; i < justifications.size() - 1; i++) {
-                query.append("'").append(justifications.get(i)).append("', ");
-            }
-            query.append("'").append(justifications.get(justifications.size() - 1)).append("')");
-        }
+        lens.appendClause(query, MAPPING_TABLE_NAME + "." + MAPPING_SET_ID_COLUMN_NAME, true);
+        return query.toString();
+    }
+
+    private String exactLensClause(CompiledLens lens) {
+        StringBuilder query = new StringBuilder();
+        lens.appendExactClause(query, MAPPING_TABLE_NAME + "." + MAPPING_SET_ID_COLUMN_NAME, true);
         return query.toString();
     }
 
-    private String directQuery(String lensId) throws BridgeDBException {
-        String result = directMappingQueries.get(lensId);
+    private String directQuery(CompiledLens lens) {
+        String result = directMappingQueries.get(lens.getId());
         if (result == null) {
-            result = DIRECT_MAPPING_QUERY + lensClause(lensId);
-            directMappingQueries.put(lensId, result);
+            result = DIRECT_MAPPING_QUERY + lensClause(lens);
+            synchronized (compiledLenses) {
+                //Only cached while the lens is current, otherwise a query from before a clear would be kept
+                if (compiledLenses.get(lens.getId()) == lens) {
+                    directMappingQueries.put(lens.getId(), result);
+                }
+            }
         }
         return result;
     }
@@ -1650,8 +1738,9 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
     public Set<DirectMapping> getDirectMappings(IdSysCodePair sourceRef, String lensId) throws BridgeDBException {
         PreparedStatement statement = null;
         try {
-            statement = createPreparedStatement(directQuery(lensId));
-            Set<DirectMapping> results = getDirectMappings(sourceRef, statement, lensId);
+            CompiledLens lens = compiledLens(lensId);
+            statement = createPreparedStatement(directQuery(lens));
+            Set<DirectMapping> results = getDirectMappings(sourceRef, statement, lens, lensId);
             return results;
         } catch (BridgeDBException ex) {
             throw ex;
@@ -1661,20 +1750,24 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
     }
 
     public Set<ClaimedMapping> getTransitiveMappings(IdSysCodePair sourceRef, String lensId) throws BridgeDBException {
+        long begin = RequestPhases.begin();
         PreparedStatement statement = null;
         try {
             if (lensId == null || lensId.isEmpty()){
                 lensId = Lens.DEFAULT_LENS_NAME;
             }
-            Lens lens = LensTools.byId(lensId);
-            statement = createPreparedStatement(directQuery(lensId));
+            CompiledLens lens = compiledLens(lensId);
             MappingsHandlers mappingsHandler = new MappingsHandlers(sourceRef, predicateMaker, justificationMaker);
-            Set<DirectMapping> direct = getDirectMappings(sourceRef, statement, lensId);
+            if (lens.allowsNone()){
+                return mappingsHandler.getMappings();
+            }
+            statement = createPreparedStatement(directQuery(lens));
+            Set<DirectMapping> direct = getDirectMappings(sourceRef, statement, lens, lensId);
             mappingsHandler.addMappings(direct);
             while (mappingsHandler.moreToCheck()) {
                 ClaimedMapping toCheck = mappingsHandler.nextToCheck();
-                if (lens.getAllowedMiddleSysCodes().contains(toCheck.getTargetSysCode())){
-                    Set<DirectMapping> transitives = getDirectMappings(toCheck.getTargetPair(), statement, lensId);
+                if (lens.allowsMiddle(toCheck.getTargetSysCode())){
+                    Set<DirectMapping> transitives = getDirectMappings(toCheck.getTargetPair(), statement, lens, lensId);
                     mappingsHandler.addMappings(toCheck, transitives);
                 }
             }
@@ -1683,6 +1776,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             throw ex;
         } finally {
             close(statement, null);
+            RequestPhases.record(RequestPhases.TRANSITIVE_EXPANSION, begin);
         }
     }
 
@@ -1744,24 +1838,20 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
      * This is because only a single TargetUri is normally added rather than all the possible Uris
      */
 
-    private Set<String> filterAndExtractTargetUris(Set<ClaimedMapping> mappings, IdSysCodePair sourceRef, Set<RegexUriPattern> targetUriPatterns) throws BridgeDBException {
-        if (targetUriPatterns == null || targetUriPatterns.isEmpty()){
+    private Set<String> filterAndExtractTargetUris(Set<ClaimedMapping> mappings, IdSysCodePair sourceRef, RegexUriPatternFilter targetUriPatterns) throws BridgeDBException {
+        if (targetUriPatterns.isEmpty()){
             mappings.add(new SelfMapping(sourceRef));
             return convertToTargetUris(mappings);
         }
         HashSet<String> results = new HashSet<String>();
-        for (RegexUriPattern targetUriPattern : targetUriPatterns) {
-            if (targetUriPattern != null){
-                for (ClaimedMapping mapping : mappings) {
-                    if (mapping.getTargetSysCode().equals(targetUriPattern.getSysCode())) {
-                        results.add(targetUriPattern.getUri(mapping.getTargetId()));
-                    }
-                }
-                if (targetUriPattern.getSysCode().equals(sourceRef.getSysCode())) {
-                    results.add(targetUriPattern.getUri(sourceRef.getId()));
-                }
+        for (ClaimedMapping mapping : mappings) {
+            for (RegexUriPattern targetUriPattern : targetUriPatterns.bySysCode(mapping.getTargetSysCode())) {
+                results.add(targetUriPattern.getUri(mapping.getTargetId()));
             }
         }
+        for (RegexUriPattern targetUriPattern : targetUriPatterns.bySysCode(sourceRef.getSysCode())) {
+            results.add(targetUriPattern.getUri(sourceRef.getId()));
+        }
         return results;
     }
     
@@ -1775,30 +1865,26 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
      * @throws BridgeDBException 
      */
     private Set<ClaimedMapping> filterAndAddUris(Set<ClaimedMapping> mappings, String sourceUri, IdSysCodePair sourceRef, 
-            Set<RegexUriPattern> targetUriPatterns) throws BridgeDBException {
-        if (targetUriPatterns == null || targetUriPatterns.isEmpty()){
+            RegexUriPatternFilter targetUriPatterns) throws BridgeDBException {
+        if (targetUriPatterns.isEmpty()){
             mappings.add(new SelfMapping(sourceUri, sourceRef));
             this.addSourceUri(mappings, sourceUri);
             this.addTargetURIs(mappings);
             return mappings;
         }
         HashSet<ClaimedMapping> results = new HashSet<ClaimedMapping>();
-        for (RegexUriPattern targetUriPattern : targetUriPatterns) {
-            if (targetUriPattern != null){
-                for (ClaimedMapping mapping : mappings) {
-                    if (mapping.getTargetSysCode().equals(targetUriPattern.getSysCode())) {
-                        mapping.addSourceUri(sourceUri);
-                        mapping.addTargetUri(targetUriPattern.getUri(mapping.getTargetId()));
-                        results.add(mapping);
-                    }
-                }
-                if (targetUriPattern.getSysCode().equals(sourceRef.getSysCode())) {
-                    SelfMapping mapping = new SelfMapping(sourceUri, sourceRef);
-                    mapping.addTargetUri(targetUriPattern.getUri(sourceRef.getId()));
-                    results.add(mapping);
-                }
+        for (ClaimedMapping mapping : mappings) {
+            for (RegexUriPattern targetUriPattern : targetUriPatterns.bySysCode(mapping.getTargetSysCode())) {
+                mapping.addSourceUri(sourceUri);
+                mapping.addTargetUri(targetUriPattern.getUri(mapping.getTargetId()));
+                results.add(mapping);
             }
         }
+        for (RegexUriPattern targetUriPattern : targetUriPatterns.bySysCode(sourceRef.getSysCode())) {
+            SelfMapping mapping = new SelfMapping(sourceUri, sourceRef);
+            mapping.addTargetUri(targetUriPattern.getUri(sourceRef.getId()));
+            results.add(mapping);
+        }
         return results;
     }
 
@@ -1881,7 +1967,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         if (sourceRef == null) {
             return mapUnkownUri(sourceUri, graph, tgtUriPatterns);
         }
-        Set<RegexUriPattern> targetUriPatterns = findRegexPatternsWithNulls(graph, tgtUriPatterns);
+        RegexUriPatternFilter targetUriPatterns = findTargetFilter(graph, tgtUriPatterns);
         Set<ClaimedMapping> mappings = getTransitiveMappings(sourceRef, lensUri);
         return filterAndExtractTargetUris(mappings, sourceRef, targetUriPatterns);
     }
@@ -1903,7 +1989,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         if (sourceRef == null) {
             return new HashSet<String>();
         }
-        Set<RegexUriPattern> targetUriPatterns = findRegexPatternsWithNulls(graph, tgtUriPatterns);
+        RegexUriPatternFilter targetUriPatterns = findTargetFilter(graph, tgtUriPatterns);
         Set<ClaimedMapping> mappings = getTransitiveMappings(sourceRef, lensId);
         return this.filterAndExtractTargetUris(mappings, sourceRef, targetUriPatterns);
     }
@@ -1966,7 +2052,7 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             return new HashSet<Mapping>();
         }
         Set<ClaimedMapping> mappings = getTransitiveMappings(sourceRef, lensId);
-        Set<RegexUriPattern> targetUriPatterns = findRegexPatternsWithNulls(graph, tgtUriPatterns);
+        RegexUriPatternFilter targetUriPatterns = findTargetFilter(graph, tgtUriPatterns);
         Set<ClaimedMapping> filteredMappings = filterAndAddUris(mappings, null, sourceRef, targetUriPatterns);
         addXrefs(filteredMappings);
         return toSuperSet(filteredMappings);
@@ -1976,9 +2062,16 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
             Boolean includeXrefResults, //Boolean allRoutes, Boolean showVias, 
             String graph, Collection<String> tgtUriPatterns) throws BridgeDBException {
         Set<ClaimedMapping> results = new HashSet<ClaimedMapping>();
+        RegexUriPatternFilter targetUriPatterns = null;
         for (String sourceUri:sourceUris){
-            results.addAll(mapFullInner(sourceUri, lensId, includeXrefResults,  
-                    graph, tgtUriPatterns));
+            IdSysCodePair sourceRef = toIdSysCodePair(sourceUri);
+            if (sourceRef != null) {
+                if (targetUriPatterns == null) {
+                    //Worked out once for all the sourceUris
+                    targetUriPatterns = findTargetFilter(graph, tgtUriPatterns);
+                }
+                results.addAll(mapFullInner(sourceUri, sourceRef, lensId, includeXrefResults, targetUriPatterns));
+            }
         }
         return results;
     }
@@ -2001,7 +2094,11 @@ public class SQLUriMapper extends SQLIdMapper implements UriMapper, UriListener
         if (sourceRef == null) {
             return new HashSet<ClaimedMapping>();
         }
-        Set<RegexUriPattern> targetUriPatterns = findRegexPatternsWithNulls(graph, tgtUriPatterns);
+        return mapFullInner(sourceUri, sourceRef, lensId, includeXrefResults, findTargetFilter(graph, tgtUriPatterns));
+    }
+
+    private Set<ClaimedMapping> mapFullInner(String sourceUri, IdSysCodePair sourceRef, String lensId, 
+            Boolean includeXrefResults, RegexUriPatternFilter targetUriPatterns) throws BridgeDBException {
         Set<ClaimedMapping> mappings = getTransitiveMappings(sourceRef, lensId);
         Set<ClaimedMapping> filteredMappings = filterAndAddUris(mappings, sourceUri, sourceRef, targetUriPatterns);
         if (includeXrefResults != null && includeXrefResults){
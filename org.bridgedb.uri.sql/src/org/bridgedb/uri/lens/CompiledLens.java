@@ -0,0 +1,185 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.uri.lens;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.bridgedb.utils.BridgeDBException;
+
+/**
+ * A Lens resolved against the mapping sets currently loaded.
+ * <p>
+ * The justifications of the lens are looked up once to give the ids of the mapping sets the lens allows.
+ * Queries can then filter on the integer mappingSetId,
+ * and mappings already retrieved can be checked with a single bit lookup.
+ * <p>
+ * A compiled lens is only valid for the mapping sets it was compiled against,
+ * so it should be compiled again once new mapping sets are registered.
+ */
+public class CompiledLens {
+
+    private final String id;
+    private final BitSet mappingSetIds;
+    private final boolean allowsAll;
+    private final boolean coversAll;
+    private final Set<String> allowedMiddleSysCodes;
+
+    private CompiledLens(String id, BitSet mappingSetIds, boolean allowsAll, boolean coversAll,
+            Set<String> allowedMiddleSysCodes){
+        this.id = id;
+        this.mappingSetIds = mappingSetIds;
+        this.allowsAll = allowsAll;
+        this.coversAll = coversAll;
+        this.allowedMiddleSysCodes = allowedMiddleSysCodes;
+    }
+
+    /**
+     * @param lens Lens to compile
+     * @param allLens True if the lens is the All lens, which allows every mapping set including any added later.
+     * @param justifications The justification of each known mapping set by its id.
+     * @return the compiled lens
+     * @throws BridgeDBException if the lens has no justifications
+     */
+    public static CompiledLens compile(Lens lens, boolean allLens, Map<Integer, String> justifications)
+            throws BridgeDBException{
+        Set<String> middles = Collections.unmodifiableSet(new HashSet<String>(lens.getAllowedMiddleSysCodes()));
+        BitSet ids = new BitSet();
+        if (allLens){
+            for (Integer mappingSetId:justifications.keySet()){
+                ids.set(mappingSetId);
+            }
+            return new CompiledLens(lens.getId(), ids, true, true, middles);
+        }
+        if (lens.getJustifications().isEmpty()) {
+            throw new BridgeDBException("No  justifications found for Lens " + lens.getId());
+        }
+        Set<String> allowed = new HashSet<String>(lens.getJustifications());
+        for (Map.Entry<Integer, String> entry:justifications.entrySet()){
+            if (allowed.contains(entry.getValue())){
+                ids.set(entry.getKey());
+            }
+        }
+        return new CompiledLens(lens.getId(), ids, false, ids.cardinality() == justifications.size(), middles);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return True if mappings from this mapping set are allowed by the lens.
+     */
+    public boolean allows(int mappingSetId){
+        if (allowsAll){
+            return true;
+        }
+        return mappingSetId >= 0 && mappingSetIds.get(mappingSetId);
+    }
+
+    /**
+     * @return True if transitive mappings may pass through this system code.
+     */
+    public boolean allowsMiddle(String sysCode){
+        return allowedMiddleSysCodes.contains(sysCode);
+    }
+
+    /**
+     * @return True if none of the known mapping sets are allowed, so no query needs to be run.
+     */
+    public boolean allowsNone(){
+        return !allowsAll && mappingSetIds.isEmpty();
+    }
+
+    /**
+     * @return True if every known mapping set is allowed, so queries need no lens clause.
+     *    Mapping sets added since compiling are then caught by {@link #allows(int)}.
+     */
+    public boolean coversAll(){
+        return coversAll;
+    }
+
+    /**
+     * @return a copy of the ids of the allowed mapping sets.
+     */
+    public BitSet getMappingSetIds(){
+        return (BitSet)mappingSetIds.clone();
+    }
+
+    /**
+     * Appends a clause limiting the column to the allowed mapping set ids.
+     * Nothing is added if the lens allows all the known mapping sets,
+     * so the rows returned must still be checked with {@link #allows(int)}.
+     *
+     * @param query Query to add to
+     * @param column Column holding the mapping set id
+     * @param whereAdded True if the query already has a WHERE clause
+     * @return True if the query has a WHERE clause after this call
+     */
+    public boolean appendClause(StringBuilder query, String column, boolean whereAdded){
+        if (coversAll){
+            return whereAdded;
+        }
+        return appendIds(query, column, whereAdded);
+    }
+
+    /**
+     * Appends a clause limiting the column to the allowed mapping set ids,
+     * for queries such as counts whose rows can not be checked afterwards.
+     * Only the All lens adds nothing, so mapping sets registered since compiling are left out.
+     *
+     * @param query Query to add to
+     * @param column Column holding the mapping set id
+     * @param whereAdded True if the query already has a WHERE clause
+     * @return True if the query has a WHERE clause after this call
+     */
+    public boolean appendExactClause(StringBuilder query, String column, boolean whereAdded){
+        if (allowsAll){
+            return whereAdded;
+        }
+        return appendIds(query, column, whereAdded);
+    }
+
+    private boolean appendIds(StringBuilder query, String column, boolean whereAdded){
+        if (whereAdded) {
+            query.append(" AND ");
+        } else {
+            query.append(" WHERE ");
+        }
+        if (mappingSetIds.isEmpty()){
+            query.append("1 = 0");
+            return true;
+        }
+        query.append(column);
+        query.append(" IN (");
+        for (int i = mappingSetIds.nextSetBit(0); i >= 0; i = mappingSetIds.nextSetBit(i + 1)) {
+            if (query.charAt(query.length() - 1) != '('){
+                query.append(", ");
+            }
+            query.append(i);
+        }
+        query.append(")");
+        return true;
+    }
+
+    @Override
+    public String toString(){
+        return "CompiledLens " + id + " mappingSets: " + (allowsAll ? "all" : mappingSetIds.toString());
+    }
+}
@@ -35,6 +35,8 @@ import org.bridgedb.utils.ConfigReader;
 public class GraphResolver {
 
    private HashMap<String,Set<RegexUriPattern>> allowedUriPattern;
+   //Compiled on first use so each mapping request does not have to
+   private final HashMap<String,RegexUriPatternFilter> filters = new HashMap<String,RegexUriPatternFilter>();
     
     private final static String PROPERTIES_FILE = "graph.properties";
     private final static String PROPERTY_PREFIX = "context.";
@@ -90,6 +92,9 @@ public class GraphResolver {
         }
         patterns.addAll(uriPatterns);
         allowedUriPattern.put(graph, patterns);
+        synchronized (filters){
+            filters.remove(graph);
+        }
     }
 
     private void addPattern(String graph, RegexUriPattern uriPattern) throws BridgeDBException{
@@ -99,6 +104,9 @@ public class GraphResolver {
         }
         patterns.add(uriPattern);
         allowedUriPattern.put(graph, patterns);
+        synchronized (filters){
+            filters.remove(graph);
+        }
     }
 
     public static Set<String> knownGraphs() throws BridgeDBException{
@@ -117,6 +125,28 @@ public class GraphResolver {
         return results;
     }
 
+    /**
+     * The patterns of a graph compiled for filtering mapping results.
+     * 
+     * @param graph graph name, or null or empty for no filtering
+     * @return filter with the graph's patterns, empty if no graph was given
+     * @throws BridgeDBException if the graph is unknown
+     */
+    public static RegexUriPatternFilter getFilterForGraph(String graph) throws BridgeDBException {
+        if (graph == null || graph.isEmpty()){
+            return new RegexUriPatternFilter(new HashSet<RegexUriPattern>());
+        }
+        GraphResolver resolver = getInstance();
+        synchronized (resolver.filters){
+            RegexUriPatternFilter result = resolver.filters.get(graph);
+            if (result == null){
+                result = new RegexUriPatternFilter(getUriPatternsForGraph(graph));
+                resolver.filters.put(graph, result);
+            }
+            return result;
+        }
+    }
+
     public static void addMapping(String graph, String pattern) throws BridgeDBException{
         GraphResolver gr = getInstance();
         gr.addPatterns(graph, pattern); 
@@ -0,0 +1,75 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.uri.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of target RegexUriPatterns prepared for filtering mapping results.
+ * <p>
+ * The patterns are grouped by system code, so each mapping is checked with a single lookup
+ * rather than against every pattern.
+ * <p>
+ * As in SQLUriMapper a null in the patterns means a requested pattern is unknown.
+ * It matches nothing, but still makes the filter non empty, so not everything is returned.
+ */
+public class RegexUriPatternFilter {
+
+    private final Set<RegexUriPattern> patterns;
+    private final Map<String, List<RegexUriPattern>> bySysCode = new HashMap<String, List<RegexUriPattern>>();
+
+    private static final List<RegexUriPattern> NONE = Collections.emptyList();
+
+    public RegexUriPatternFilter(Set<RegexUriPattern> patterns) {
+        this.patterns = Collections.unmodifiableSet(new HashSet<RegexUriPattern>(patterns));
+        for (RegexUriPattern pattern : patterns) {
+            if (pattern != null) {
+                List<RegexUriPattern> list = bySysCode.get(pattern.getSysCode());
+                if (list == null) {
+                    list = new ArrayList<RegexUriPattern>(1);
+                    bySysCode.put(pattern.getSysCode(), list);
+                }
+                list.add(pattern);
+            }
+        }
+    }
+
+    /**
+     * @return True if there is no filter, so all results are allowed.
+     */
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * @return the patterns for this system code, or an empty list if there are none.
+     */
+    public List<RegexUriPattern> bySysCode(String sysCode) {
+        List<RegexUriPattern> result = bySysCode.get(sysCode);
+        return result == null ? NONE : result;
+    }
+
+    public Set<RegexUriPattern> getPatterns() {
+        return patterns;
+    }
+}
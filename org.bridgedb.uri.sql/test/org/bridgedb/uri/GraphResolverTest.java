@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.Set;
 import org.bridgedb.uri.tools.GraphResolver;
 import org.bridgedb.uri.tools.RegexUriPattern;
+import org.bridgedb.uri.tools.RegexUriPatternFilter;
 import org.bridgedb.utils.BridgeDBException;
 import org.bridgedb.utils.Reporter;
 import org.junit.After;
@@ -66,6 +67,23 @@ public class GraphResolverTest {
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of getFilterForGraph method, of class GraphResolver.
+     */
+    @Test
+    public void testGetFilterForGraph() throws Exception {
+        Reporter.println("getFilterForGraph");
+        GraphResolver.addTestMappings();
+        RegexUriPatternFilter result = GraphResolver.getFilterForGraph("http://www.conceptwiki.org");
+        assertFalse(result.isEmpty());
+        assertEquals(GraphResolver.getUriPatternsForGraph("http://www.conceptwiki.org"), result.getPatterns());
+        for (RegexUriPattern pattern:result.getPatterns()){
+            assertTrue(result.bySysCode(pattern.getSysCode()).contains(pattern));
+        }
+        assertTrue(result.bySysCode("GraphResolverTest unknown code").isEmpty());
+        assertTrue(GraphResolver.getFilterForGraph(null).isEmpty());
+    }
+
     /**
      * Test of getAllowedUriPatterns method, of class GraphResolver.
      */
@@ -0,0 +1,103 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.uri.lens;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.bridgedb.DataSource;
+import org.bridgedb.utils.BridgeDBException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompiledLensTest {
+
+    private static Map<Integer, String> justifications(){
+        Map<Integer, String> justifications = new HashMap<Integer, String>();
+        justifications.put(1, "j1");
+        justifications.put(2, "j2");
+        justifications.put(3, "j1");
+        justifications.put(4, "j3");
+        return justifications;
+    }
+
+    private static Lens lens(String... justifications) throws BridgeDBException{
+        Lens lens = new Lens("test", "test");
+        for (String justification:justifications){
+            lens.addJustification(justification);
+        }
+        lens.addAllowedMiddleSource(DataSource.register("CompiledLensTest", "CompiledLensTest").asDataSource());
+        return lens;
+    }
+
+    @Test
+    public void testCompile() throws BridgeDBException {
+        CompiledLens compiled = CompiledLens.compile(lens("j1", "j3", "unused"), false, justifications());
+        assertTrue(compiled.allows(1));
+        assertFalse(compiled.allows(2));
+        assertTrue(compiled.allows(3));
+        assertTrue(compiled.allows(4));
+        //Mapping sets registered later are not allowed until the lens is compiled again
+        assertFalse(compiled.allows(5));
+        assertFalse(compiled.coversAll());
+        assertFalse(compiled.allowsNone());
+        assertTrue(compiled.allowsMiddle("CompiledLensTest"));
+        assertFalse(compiled.allowsMiddle("other"));
+
+        StringBuilder query = new StringBuilder("SELECT * FROM mappingSet");
+        assertTrue(compiled.appendClause(query, "id", false));
+        assertEquals("SELECT * FROM mappingSet WHERE id IN (1, 3, 4)", query.toString());
+    }
+
+    @Test
+    public void testAllAndNone() throws BridgeDBException {
+        CompiledLens all = CompiledLens.compile(lens(), true, justifications());
+        assertTrue(all.coversAll());
+        assertTrue(all.allows(5));
+        StringBuilder query = new StringBuilder("SELECT * FROM mappingSet");
+        assertFalse(all.appendClause(query, "id", false));
+        assertEquals("SELECT * FROM mappingSet", query.toString());
+
+        CompiledLens none = CompiledLens.compile(lens("other"), false, justifications());
+        assertTrue(none.allowsNone());
+        assertFalse(none.allows(1));
+        query = new StringBuilder();
+        none.appendClause(query, "id", true);
+        assertEquals(" AND 1 = 0", query.toString());
+    }
+
+    @Test
+    public void testExactClause() throws BridgeDBException {
+        //Covers every known mapping set, so only the exact clause still lists them
+        CompiledLens covering = CompiledLens.compile(lens("j1", "j2", "j3"), false, justifications());
+        assertTrue(covering.coversAll());
+        assertFalse(covering.allows(5));
+        StringBuilder query = new StringBuilder("SELECT * FROM mappingSet");
+        assertFalse(covering.appendClause(query, "id", false));
+        assertTrue(covering.appendExactClause(query, "id", false));
+        assertEquals("SELECT * FROM mappingSet WHERE id IN (1, 2, 3, 4)", query.toString());
+
+        CompiledLens all = CompiledLens.compile(lens(), true, justifications());
+        query = new StringBuilder("SELECT * FROM mappingSet");
+        assertFalse(all.appendExactClause(query, "id", false));
+        assertEquals("SELECT * FROM mappingSet", query.toString());
+    }
+
+    @Test(expected = BridgeDBException.class)
+    public void testNoJustifications() throws BridgeDBException {
+        CompiledLens.compile(lens(), false, justifications());
+    }
+}
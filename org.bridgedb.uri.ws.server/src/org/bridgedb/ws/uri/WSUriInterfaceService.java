@@ -71,6 +71,9 @@ import org.bridgedb.uri.ws.bean.UriExistsBean;
 import org.bridgedb.uri.ws.bean.UriMappings;
 import org.bridgedb.uri.ws.bean.UriSearchBean;
 import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+import org.bridgedb.ws.AdmissionControl;
+import org.bridgedb.ws.ResponseCache;
 import org.bridgedb.ws.WSCoreService;
 import org.bridgedb.ws.WsConstants;
 import org.bridgedb.ws.bean.XrefBean;
@@ -90,12 +93,25 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public final String NO_RESULT = null;
     
     protected final NumberFormat formatter;
+    
+    static final String RESPONSE_CACHE_SIZE = "http.response.cache.size";
+    protected final ResponseCache responseCache;
+    protected final AdmissionControl admissionControl;
+    
     static final Logger logger = Logger.getLogger(WSUriInterfaceService.class);
 
     public WSUriInterfaceService(UriMapper uriMapper) throws BridgeDBException {
         super(uriMapper);
         this.uriMapper = uriMapper;
        formatter = configFormatter();
+        String property = ConfigReader.getProperty(RESPONSE_CACHE_SIZE);
+        if (property == null || property.trim().isEmpty()){
+            responseCache = new ResponseCache(0, dataVersion);
+        } else {
+            responseCache = new ResponseCache(Integer.parseInt(property.trim()), dataVersion);
+            logger.info("Caching up to " + responseCache.getMaxSize() + " responses");
+        }
+        admissionControl = AdmissionControl.getInstance();
         logger.info("WS Service running using supplied uriMapper");
     }
 
@@ -113,6 +129,21 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     private MappingsBean mapFull(String id, String scrCode, String uri, String lensUri, 
             Boolean includeXrefResults, Boolean includeUriResults,
             List<String> targetCodes, String graph, List<String> targetUriPatterns) throws BridgeDBException {
+        String key = ResponseCache.key(WsUriConstants.MAP, id, scrCode, uri, lensUri, includeXrefResults, 
+                includeUriResults, targetCodes, graph, targetUriPatterns);
+        MappingsBean result = (MappingsBean)responseCache.get(key);
+        if (result == null){
+            String version = responseCache.getVersion();
+            result = mapFullInner(id, scrCode, uri, lensUri, includeXrefResults, includeUriResults, 
+                    targetCodes, graph, targetUriPatterns);
+            responseCache.put(key, version, result);
+        }
+        return result;
+    }
+    
+    private MappingsBean mapFullInner(String id, String scrCode, String uri, String lensUri, 
+            Boolean includeXrefResults, Boolean includeUriResults,
+            List<String> targetCodes, String graph, List<String> targetUriPatterns) throws BridgeDBException {
         if (logger.isDebugEnabled()){
             logger.debug("map called! ");
             if (id != null){
@@ -170,13 +201,17 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             @QueryParam(WsConstants.TARGET_DATASOURCE_SYSTEM_CODE) List<String> targetCodes,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBean result = mapFull(id, scrCode, uri, lensUri, 
                 includeXrefResults, includeUriResults, 
                 targetCodes, graph, targetUriPatterns);
         if (noContentOnEmpty & result.asMappings().isEmpty()){
-            return Response.status(Response.Status.NO_CONTENT).build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
     
     @GET
@@ -192,13 +227,17 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             @QueryParam(WsConstants.TARGET_DATASOURCE_SYSTEM_CODE) List<String> targetCodes,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBean result = mapFull(id, scrCode, uri, lensUri, 
                  includeXrefResults, includeUriResults, 
                 targetCodes, graph, targetUriPatterns);
         if (noContentOnEmpty & result.asMappings().isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
  
     @GET
@@ -215,13 +254,17 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBean result = mapFull (id, scrCode, uri, lensUri, 
                 includeXrefResults, includeUriResults, 
                 targetCodes, graph, targetUriPatterns);
         if (noContentOnEmpty & result.asMappings().isEmpty()){
             return noContentWrapper(httpServletRequest);
         } 
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.TEXT_HTML_TYPE);
     }
     
     private UriMappings mapUriInner(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns) 
@@ -234,11 +277,20 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
                 logger.debug("   targetUriPatterns = " + targetUriPatterns);
             }
        }
+       admissionControl.checkBatch(uris, targetUriPatterns);
+       String key = ResponseCache.key(WsUriConstants.MAP_URI, uris, lensUri, graph, targetUriPatterns);
+       UriMappings cached = (UriMappings)responseCache.get(key);
+       if (cached != null){
+           return cached;
+       }
+       String version = responseCache.getVersion();
        Set<String> results = new HashSet<String>();
        for(String single:uris){
            results.addAll(uriMapper.mapUri(single, lensUri, graph, targetUriPatterns));
        }
-       return UriMappings.asBean(results);
+       UriMappings result = UriMappings.asBean(results);
+       responseCache.put(key, version, result);
+       return result;
     }
 
     private MappingsBySysCodeId mapUriBySysCodeId(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns) 
@@ -252,6 +304,7 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
                 logger.debug("   targetUriPatterns = " + targetUriPatterns);
             }
        }
+       admissionControl.checkBatch(uris, targetUriPatterns);
        return uriMapper.mapUriBySysCodeId(lensUri, lensUri, graph, targetUriPatterns);
     }
 
@@ -264,11 +317,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriMappings result = mapUriInner(uris, lensUri, graph, targetUriPatterns);
         if (noContentOnEmpty & result.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -279,11 +336,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriMappings result = mapUriInner(uris, lensUri, graph, targetUriPatterns);
         if (noContentOnEmpty & result.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
 
     @GET
@@ -296,6 +357,18 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns,
             @QueryParam(WsUriConstants.FORMAT) String format,
             @Context HttpServletRequest httpServletRequest) {
+        //Also covers mapUriHtmlPost, whose form may hold many uris
+        admissionControl.checkBatch(uris, targetUriPatterns);
+        String bodyKey = null;
+        if (format == null || format.isEmpty() || format.equals(MediaType.TEXT_HTML)){
+            bodyKey = ResponseCache.key(WsUriConstants.MAP_URI, MediaType.TEXT_HTML, uris, lensUri, graph, 
+                    targetUriPatterns, httpServletRequest.getContextPath());
+            String mainBody = (String)responseCache.get(bodyKey);
+            if (mainBody != null){
+                return mapUriHtmlPage(mainBody, httpServletRequest);
+            }
+        }
+        String version = responseCache.getVersion();
         Set<Mapping> mappings = new HashSet<Mapping>();
         try {
             if (uris == null || uris.isEmpty()){
@@ -325,11 +398,26 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             } 
             return Response.ok(UriMappings.toBean(mappings), MediaType.APPLICATION_JSON_TYPE).build();
         }
-        return  mapUriHtmlResult(uris, lensUri, graph, targetUriPatterns, format, httpServletRequest, mappings, null);
+        String mainBody = mapUriHtmlBody(uris, lensUri, graph, targetUriPatterns, httpServletRequest, mappings, null);
+        if (bodyKey != null){
+            responseCache.put(bodyKey, version, mainBody);
+        }
+        return mapUriHtmlPage(mainBody, httpServletRequest);
     }
 
     private Response mapUriHtmlResult(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns,
             String format, HttpServletRequest httpServletRequest, Collection<Mapping> mappingSet, BridgeDBException exception) {
+        String mainBody = mapUriHtmlBody(uris, lensUri, graph, targetUriPatterns, httpServletRequest, mappingSet, exception);
+        return mapUriHtmlPage(mainBody, httpServletRequest);
+    }
+
+    private Response mapUriHtmlPage(String mainBody, HttpServletRequest httpServletRequest) {
+        String fullPage = this.createHtmlPage("Identity Mapping Service", mainBody, httpServletRequest);
+        return Response.ok(fullPage, MediaType.TEXT_HTML).build();
+    }
+
+    private String mapUriHtmlBody(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns,
+            HttpServletRequest httpServletRequest, Collection<Mapping> mappingSet, BridgeDBException exception) {
         uris.remove("");
         targetUriPatterns.remove("");
         VelocityContext velocityContext = new VelocityContext();
@@ -351,9 +439,7 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             velocityContext.put("mappings",new ArrayList<Mapping>());            
             velocityContext.put("exception", exception.getMessage());
         }
-        String mainBody = WebTemplates.getForm(velocityContext, WebTemplates.MAP_URI_RESULTS); 
-        String fullPage = this.createHtmlPage("Identity Mapping Service", mainBody, httpServletRequest);
-        return Response.ok(fullPage, MediaType.TEXT_HTML).build();
+        return WebTemplates.getForm(velocityContext, WebTemplates.MAP_URI_RESULTS); 
     }
 
     @POST
@@ -370,8 +456,16 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     }
 
     protected final MappingsBySet mapBySetInner(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns) throws BridgeDBException {
-        HashSet<String> uriSet = new HashSet<String>(uris);
-        return uriMapper.mapBySet(uriSet, lensUri, graph, targetUriPatterns);
+        admissionControl.checkBatch(uris, targetUriPatterns);
+        String key = ResponseCache.key(WsUriConstants.MAP_BY_SET, uris, lensUri, graph, targetUriPatterns);
+        MappingsBySet result = (MappingsBySet)responseCache.get(key);
+        if (result == null){
+            String version = responseCache.getVersion();
+            HashSet<String> uriSet = new HashSet<String>(uris);
+            result = uriMapper.mapBySet(uriSet, lensUri, graph, targetUriPatterns);
+            responseCache.put(key, version, result);
+        }
+        return result;
     }
 
     @GET
@@ -381,12 +475,16 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBySet mappingsBySet = mapBySetInner(uris, lensUri, graph, targetUriPatterns);
         if (noContentOnEmpty & mappingsBySet.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
         MappingsBySetBean result = new MappingsBySetBean(mappingsBySet);
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -396,12 +494,16 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri,
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBySet mappingsBySet = mapBySetInner(uris, lensUri, graph, targetUriPatterns);
         if (noContentOnEmpty & mappingsBySet.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
         MappingsBySetBean result = new MappingsBySetBean(mappingsBySet);
-        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
 
     @GET
@@ -412,12 +514,16 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             @QueryParam(WsUriConstants.GRAPH) String graph,
             @QueryParam(WsUriConstants.TARGET_URI_PATTERN) List<String> targetUriPatterns,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingsBySet mappingsBySet = mapBySetInner(uris, lensUri, graph, targetUriPatterns);
         if (noContentOnEmpty & mappingsBySet.isEmpty()){
             return noContentWrapper(httpServletRequest);
         } 
         MappingsBySetBean result = new MappingsBySetBean(mappingsBySet);
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.TEXT_HTML_TYPE);
     }
  
     @GET
@@ -427,9 +533,13 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public Response UriExists(@QueryParam(WsUriConstants.URI) String URI) throws BridgeDBException {
         if (URI == null) throw new BridgeDBException(WsUriConstants.URI + " parameter missing.");
         if (URI.isEmpty()) throw new BridgeDBException(WsUriConstants.URI + " parameter may not be null.");
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         boolean exists = uriMapper.uriExists(URI);
         UriExistsBean bean = new UriExistsBean(URI, exists);
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -438,9 +548,13 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public Response UriExistsJson(@QueryParam(WsUriConstants.URI) String URI) throws BridgeDBException {
         if (URI == null) throw new BridgeDBException(WsUriConstants.URI + " parameter missing.");
         if (URI.isEmpty()) throw new BridgeDBException(WsUriConstants.URI + " parameter may not be null.");
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         boolean exists = uriMapper.uriExists(URI);
         UriExistsBean bean = new UriExistsBean(URI, exists);
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     }
     //No html as never no context
 
@@ -464,11 +578,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Override
     public Response UriSearch(@QueryParam(WsUriConstants.TEXT) String text,
             @QueryParam(WsUriConstants.LIMIT) String limitString) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriSearchBean bean = UriSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -476,11 +594,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.URI_SEARCH)
     public Response UriSearchJson(@QueryParam(WsUriConstants.TEXT) String text,
             @QueryParam(WsUriConstants.LIMIT) String limitString) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriSearchBean bean = UriSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     }
 
     @GET
@@ -489,11 +611,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public Response UriSearchHtml(@QueryParam(WsUriConstants.TEXT) String text,
             @QueryParam(WsUriConstants.LIMIT) String limitString,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriSearchBean bean = UriSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
             return noContentWrapper(httpServletRequest);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.TEXT_HTML_TYPE);
     }
 
     public XrefBean toXrefInner(String URI) throws BridgeDBException {
@@ -508,11 +634,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.TO_XREF)
     @Override
     public Response toXref(@QueryParam(WsUriConstants.URI) String URI) throws BridgeDBException {     
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefBean bean = toXrefInner(URI);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     }
     
     @GET
@@ -521,11 +651,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Override
     public Response toUris(@QueryParam(WsConstants.ID) String id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) String scrCode) throws BridgeDBException{
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriMappings result = toUrisInner(id, scrCode);
         if (noContentOnEmpty & result.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -533,11 +667,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.TO_URIS)
     public Response toUrisJSon(@QueryParam(WsConstants.ID) String id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) String scrCode) throws BridgeDBException{
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         UriMappings result = toUrisInner(id, scrCode);
         if (noContentOnEmpty & result.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(result, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(result, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     }
 
     @GET
@@ -580,11 +718,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Produces({MediaType.APPLICATION_JSON})
     @Path("/" + WsUriConstants.TO_XREF)
     public Response toXrefJson(@QueryParam(WsUriConstants.URI) String URI) throws BridgeDBException {     
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefBean bean = toXrefInner(URI);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     }
 
     @GET
@@ -592,11 +734,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.TO_XREF)
     public Response toXrefHtml(@QueryParam(WsUriConstants.URI) String URI,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {     
+        Response notModified = notModified(null, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefBean bean = toXrefInner(URI);
         if (noContentOnEmpty & bean.isEmpty()){
             return noContentWrapper(httpServletRequest);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.TEXT_HTML_TYPE);
     }
 
     @GET
@@ -605,9 +751,13 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Override
     public Response getOverallStatistics(@QueryParam(WsUriConstants.LENS_URI) String lensUri) 
             throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         OverallStatistics overallStatistics = uriMapper.getOverallStatistics(lensUri);
         OverallStatisticsBean bean = OverallStatisticsBean.asBean(overallStatistics);
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
     
     @GET
@@ -615,9 +765,13 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.GET_OVERALL_STATISTICS) 
     public Response getOverallStatisticsJson(@QueryParam(WsUriConstants.LENS_URI) String lensUri) 
             throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         OverallStatistics overallStatistics = uriMapper.getOverallStatistics(lensUri);
         OverallStatisticsBean bean = OverallStatisticsBean.asBean(overallStatistics);
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
     
     @Override
@@ -625,22 +779,30 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Produces({MediaType.APPLICATION_XML})
     @Path("/" + WsUriConstants.SOURCE_INFOS) 
     public Response getSourceInfos(@QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         SourceInfosBean bean = getSourceInfosInner(lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
     @Produces({MediaType.APPLICATION_JSON})
     @Path("/" + WsUriConstants.SOURCE_INFOS) 
     public Response getSourceInfosJson(@QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         SourceInfosBean bean = getSourceInfosInner(lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
 
     private SourceInfosBean getSourceInfosInner(String lensUri) throws BridgeDBException {
@@ -658,11 +820,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.SOURCE_TARGET_INFOS) 
     public Response getSourceTargetInfos(@QueryParam(WsUriConstants.SOURCE_DATASOURCE_SYSTEM_CODE) String scrCode,
             @QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         SourceTargetInfosBean bean = getSourceTargetInfosInner(scrCode, lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -670,11 +836,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     @Path("/" + WsUriConstants.SOURCE_TARGET_INFOS) 
     public Response getSourceTargetInfosJson(@QueryParam(WsUriConstants.SOURCE_DATASOURCE_SYSTEM_CODE) String scrCode,
             @QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         SourceTargetInfosBean bean = getSourceTargetInfosInner(scrCode, lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
 
     private SourceTargetInfosBean getSourceTargetInfosInner(String scrCode, String lensUri) throws BridgeDBException {
@@ -711,11 +881,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public Response getMappingSetInfos(@QueryParam(WsUriConstants.SOURCE_DATASOURCE_SYSTEM_CODE) String scrCode,
             @QueryParam(WsUriConstants.TARGET_DATASOURCE_SYSTEM_CODE) String targetCode,
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingSetInfosBean bean = getMappingSetInfosInner(scrCode, targetCode, lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_XML_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), lensUri, MediaType.APPLICATION_XML_TYPE);
     }
 
     @GET
@@ -724,11 +898,15 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
     public Response getMappingSetInfosJson(@QueryParam(WsUriConstants.SOURCE_DATASOURCE_SYSTEM_CODE) String scrCode,
             @QueryParam(WsUriConstants.TARGET_DATASOURCE_SYSTEM_CODE) String targetCode,
      		@QueryParam(WsUriConstants.LENS_URI) String lensUri) throws BridgeDBException {
+        Response notModified = notModified(lensUri, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         MappingSetInfosBean bean = getMappingSetInfosInner(scrCode, targetCode, lensUri);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), lensUri, MediaType.APPLICATION_JSON_TYPE);
         } 
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), lensUri, MediaType.APPLICATION_JSON_TYPE);
     }
 
 	private LensBean getLensInner(String id) throws BridgeDBException {
@@ -1138,7 +1316,13 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             //addSideBarItem(sb, "getMappingInfo", formatter.format(statistics.getNumberOfPredicates()) + " Predicates", httpServletRequest);
             //addSideBarItem(sb, "getSupportedTgtDataSources", formatter.format(statistics.getNumberOfTargetDataSources()) 
              //       + " Target Data Sources ", httpServletRequest);
-            statistics = uriMapper.getOverallStatistics(Lens.ALL_LENS_NAME);
+            String key = ResponseCache.key(WsUriConstants.GET_OVERALL_STATISTICS, Lens.ALL_LENS_NAME);
+            statistics = (OverallStatistics)responseCache.get(key);
+            if (statistics == null){
+                String version = responseCache.getVersion();
+                statistics = uriMapper.getOverallStatistics(Lens.ALL_LENS_NAME);
+                responseCache.put(key, version, statistics);
+            }
             //sb.append("\n<div class=\"menugroup\">All Statistics</div>");
             sb.append("\n<div class=\"menugroup\">Statistics</div>");
             addSideBarItem(sb, WsUriConstants.MAPPING_SET, formatter.format(statistics.getNumberOfMappings()) + " Mappings", httpServletRequest);
@@ -1154,6 +1338,29 @@ public class WSUriInterfaceService extends WSCoreService implements WSUriInterfa
             sb.append("\nStatistics currenlty unavailable.");
             logger.error("Error getting statistics.", ex);
         }
+        addSideBarResponseCache(sb);
+    }
+    
+    /**
+     * Adds the response cache metrics to the side bar if the cache is enabled.
+     */
+    protected void addSideBarResponseCache(StringBuilder sb) {
+        if (!responseCache.isEnabled()){
+            return;
+        }
+        sb.append("\n<div class=\"menugroup\">Response Cache</div>");
+        addSideBarText(sb, formatter.format(responseCache.size()) + " of " 
+                + formatter.format(responseCache.getMaxSize()) + " Cached");
+        addSideBarText(sb, formatter.format(responseCache.getHits()) + " Hits");
+        addSideBarText(sb, formatter.format(responseCache.getMisses()) + " Misses");
+        addSideBarText(sb, formatter.format(responseCache.getEvictions()) + " Evictions");
+        addSideBarText(sb, formatter.format(responseCache.getInvalidations()) + " Data Reloads");
+    }
+    
+    private void addSideBarText(StringBuilder sb, String text) {
+        sb.append("\n<div class=\"texthotlink\">");
+        sb.append(text);
+        sb.append("</div>");
     }
     
     /**
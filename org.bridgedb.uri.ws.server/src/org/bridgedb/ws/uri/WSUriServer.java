@@ -532,6 +532,7 @@ public class WSUriServer extends WSAPI {
     private Set<Statement> mapUriRdfInner(List<String> uris, String lensUri, String graph, List<String> targetUriPatterns, 
             String baseUri, String formatName,
             Boolean linksetInfo, String overridePredicateURI, HttpServletRequest httpServletRequest) throws BridgeDBException{ 
+        admissionControl.checkBatch(uris, targetUriPatterns);
         boolean addLinks;
         if (linksetInfo == null){
             addLinks = false;
@@ -0,0 +1,90 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects how long the current thread spends in each phase of a request.
+ * <p>
+ * Nothing is recorded unless start() has been called on the thread,
+ * so code outside a web service request only pays for a ThreadLocal lookup.
+ * <p>
+ * Phases may nest. For example the time in TRANSITIVE_EXPANSION includes the DB_QUERY time it caused.
+ */
+public class RequestPhases {
+
+    public static final String URI_RESOLUTION = "uri_resolution";
+    public static final String DB_QUERY = "db_query";
+    public static final String TRANSITIVE_EXPANSION = "transitive_expansion";
+    public static final String SERIALIZATION = "serialization";
+
+    private static final ThreadLocal<Map<String, Long>> phases = new ThreadLocal<Map<String, Long>>();
+
+    /**
+     * Starts collecting phase times for this thread, discarding any previous ones.
+     */
+    public static void start(){
+        phases.set(new HashMap<String, Long>());
+    }
+
+    /**
+     * Gets the time to pass to record once the phase is complete.
+     * @return the current System.nanoTime() or zero if nothing is being collected.
+     */
+    public static long begin(){
+        if (phases.get() == null){
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time since begin was called to the phase.
+     * @param phase Name of the phase, normally one of the constants in this class.
+     * @param begin As returned by begin()
+     */
+    public static void record(String phase, long begin){
+        Map<String, Long> current = phases.get();
+        if (current == null || begin == 0){
+            return;
+        }
+        long elapsed = System.nanoTime() - begin;
+        Long previous = current.get(phase);
+        if (previous != null){
+            elapsed+= previous;
+        }
+        current.put(phase, elapsed);
+    }
+
+    /**
+     * Stops collecting for this thread.
+     * @return nanoseconds spent in each phase since start() or an empty map if start() was not called.
+     */
+    public static Map<String, Long> finish(){
+        Map<String, Long> current = phases.get();
+        phases.remove();
+        if (current == null){
+            return new HashMap<String, Long>();
+        }
+        return current;
+    }
+}
@@ -26,7 +26,6 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.bridgedb.IDMapperException;
 import org.bridgedb.webservice.biomart.util.Attribute;
@@ -34,9 +33,9 @@ import org.bridgedb.webservice.biomart.util.BiomartClient;
 import org.bridgedb.webservice.biomart.util.Database;
 import org.bridgedb.webservice.biomart.util.Dataset;
 import org.bridgedb.webservice.biomart.util.Filter;
+import org.bridgedb.webservice.biomart.util.MetadataCache;
 import org.bridgedb.webservice.biomart.util.XMLQueryBuilder;
 
-import org.xml.sax.SAXException;
 
 /**
  * Wrapp-up for BiomartClient.
@@ -47,7 +46,7 @@ public final class BiomartStub
     public static final String defaultBaseURL
             = BiomartClient.DEFAULT_BASE_URL;
 
-    // one instance per url
+    // one instance per url and metadata cache
     private static Map<String, BiomartStub> instances = new HashMap<String, BiomartStub>();
 
     /**
@@ -66,14 +65,28 @@ public final class BiomartStub
      * @throws IOException if failed to connect
      */
     public static BiomartStub getInstance(String baseUrl) throws IOException {
+        return getInstance(baseUrl, null);
+    }
+
+    /**
+     *
+     * @param baseUrl server url
+     * @param metadata cache for the registry and the lists of datasets, filters and attributes,
+     *        or null to download them
+     * @return BiomartStub from the server
+     * @throws IOException if failed to connect
+     */
+    public static synchronized BiomartStub getInstance(String baseUrl, MetadataCache metadata)
+            throws IOException {
         if (baseUrl==null) {
             throw new IllegalArgumentException("base url cannot be null");
         }
 
-        BiomartStub instance = instances.get(baseUrl);
+        String key = metadata==null ? baseUrl : baseUrl + "\n" + metadata.getDirectory();
+        BiomartStub instance = instances.get(key);
         if (instance==null) {
-            instance = new BiomartStub(baseUrl);
-            instances.put(baseUrl, instance);
+            instance = new BiomartStub(baseUrl, metadata);
+            instances.put(key, instance);
         }
 
         return instance;
@@ -84,10 +97,11 @@ public final class BiomartStub
     /**
      *
      * @param baseUrl server url.
+     * @param metadata metadata cache, may be null
      * @throws IOException if failed to connect.
      */
-    private BiomartStub(String baseUrl) throws IOException {
-        client = new BiomartClient(baseUrl);
+    private BiomartStub(String baseUrl, MetadataCache metadata) throws IOException {
+        client = new BiomartClient(baseUrl, metadata);
     }
 
     /**
@@ -101,10 +115,6 @@ public final class BiomartStub
             marts = client.getRegistry();
         } catch (IOException e) {
             throw new IDMapperException(e);
-        } catch (ParserConfigurationException e) {
-            throw new IDMapperException(e);
-        } catch (SAXException e) {
-            throw new IDMapperException(e);
         }
 
         Set<String> visibleMarts = new HashSet<String>();
@@ -328,46 +338,62 @@ public final class BiomartStub
     		// build query string
     		String query = XMLQueryBuilder.getQueryString(dataset, attrs, queryFilter);
 
-    		// query
-    		BufferedReader bfr = null;
-    		bfr = client.sendQuery(query);
-    		if (!bfr.ready())
-    			throw new IDMapperException("Query failed");
-
-    		if (bfr==null) {
-    			return new HashMap<String, Set<String>[]>(0);
-    		}
-
-    		// read id mapping
-    		Map<String,Set<String>[]> result = new HashMap<String,Set<String>[]>();
-    		String header = bfr.readLine();
-    		if (header.indexOf("ERROR") >= 0) throw new IDMapperException(header);
-    		String line;
-    		while ((line = bfr.readLine())!=null) {
-    			String[] strs = line.split("\t");
-    			if (strs.length!=nAttr+1)
-    				continue; // because the last one is the src id
-    			String src = strs[nAttr];
-    			Set<String>[] tgt = result.get(src);
-    			if (tgt==null) {
-    				tgt = new Set[nAttr];
-    				for (int i=0; i<nAttr; i++) {
-    					tgt[i] = new HashSet<String>();
+    		// query, reading the rows as they arrive
+    		BufferedReader bfr = client.sendQuery(query);
+    		try {
+    			// read id mapping
+    			Map<String,Set<String>[]> result = new HashMap<String,Set<String>[]>();
+    			String header = bfr.readLine();
+    			if (header == null) throw new IDMapperException("Query failed");
+    			if (header.indexOf("ERROR") >= 0) throw new IDMapperException(header);
+    			String[] strs = new String[nAttr+1];
+    			String line;
+    			while ((line = bfr.readLine())!=null) {
+    				if (!splitRow(line, strs))
+    					continue; // because the last one is the src id
+    				String src = strs[nAttr];
+    				Set<String>[] tgt = result.get(src);
+    				if (tgt==null) {
+    					tgt = new Set[nAttr];
+    					for (int i=0; i<nAttr; i++) {
+    						tgt[i] = new HashSet<String>();
+    					}
+    					result.put(src, tgt);
     				}
-    				result.put(src, tgt);
-    			}
 
-    			for (int i=0; i<nAttr; i++) {
-    				String str = strs[i];
-    				if (str.length()>0) {
-    					tgt[i].add(str);
+    				for (int i=0; i<nAttr; i++) {
+    					String str = strs[i];
+    					if (str.length()>0) {
+    						tgt[i].add(str);
+    					}
     				}
     			}
-
+    			return result;
+    		} finally {
+    			bfr.close();
     		}
-            return result;
     	} catch (IOException e) {
     		throw new IDMapperException(e);
     	}
     }
+
+    /**
+     * Splits a tab separated result row into fields, without the regular expression
+     * and array allocation of String.split.
+     * @param line result row
+     * @param fields receives the fields; its length is the expected number of fields
+     * @return false if the row does not have the expected number of fields
+     */
+    static boolean splitRow(String line, String[] fields) {
+        int start = 0;
+        for (int i = 0; i < fields.length - 1; i++) {
+            int end = line.indexOf('\t', start);
+            if (end < 0) return false;
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        if (line.indexOf('\t', start) >= 0) return false;
+        fields[fields.length - 1] = line.substring(start);
+        return fields[fields.length - 1].length() > 0;
+    }
 }
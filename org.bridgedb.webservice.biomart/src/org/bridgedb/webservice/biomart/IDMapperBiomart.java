@@ -17,12 +17,15 @@
 
 package org.bridgedb.webservice.biomart;
 
+import java.io.File;
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -35,8 +38,11 @@ import org.bridgedb.IDMapperCapabilities;
 import org.bridgedb.IDMapperException;
 import org.bridgedb.Xref;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
 import org.bridgedb.webservice.IDMapperWebservice;
+import org.bridgedb.webservice.RequestScheduler;
 import org.bridgedb.webservice.biomart.util.BiomartClient;
+import org.bridgedb.webservice.biomart.util.MetadataCache;
 
 /**
  *
@@ -59,7 +65,9 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
             String baseURL = BiomartClient.DEFAULT_BASE_URL;
 
             Map<String, String> args = 
-            	InternalUtils.parseLocation(location, "mart", "dataset");
+            	InternalUtils.parseLocation(location,
+            			CachedIDMapperWebservice.withOptions(RequestScheduler.withOptions(
+            					"mart", "dataset", METADATA_CACHE, METADATA_TTL)));
             
             if (args.containsKey("BASE"))
             {
@@ -72,13 +80,53 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
             // may be null if unspecified.
             String dataset = args.get("dataset");
 
-            return new IDMapperBiomart(mart, dataset, baseURL);
+            RequestScheduler scheduler = RequestScheduler.fromOptions(args, DEFAULT_CHUNK_SIZE);
+            return CachedIDMapperWebservice.wrap(
+            		new IDMapperBiomart(mart, dataset, baseURL, scheduler, metadataCache(args)),
+            		"idmapper-biomart:" + baseURL + "?mart=" + mart + "&dataset=" + dataset, args);
+        }
+    }
+
+    /** Number of ids per query, unless set with the chunk-size option */
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /** Connection string option, directory to keep the mart registry and dataset metadata in */
+    public static final String METADATA_CACHE = "metadata-cache";
+    /** Connection string option, seconds before the kept metadata is checked with the server again */
+    public static final String METADATA_TTL = "metadata-ttl";
+
+    /**
+     * The metadata is kept in the metadata-cache directory, or else in the metadata subdirectory
+     * of the cache directory of the mappings, if either is set.
+     * @param args connection string options
+     * @return the metadata cache, or null if neither directory is set
+     * @throws IDMapperException if an option is not valid or the directory can not be created
+     */
+    static MetadataCache metadataCache(Map<String, String> args) throws IDMapperException {
+        File dir;
+        if (args.containsKey(METADATA_CACHE)) {
+            dir = new File(args.get(METADATA_CACHE));
+        } else if (args.containsKey(CachedIDMapperWebservice.CACHE)
+                && !CachedIDMapperWebservice.MEMORY_ONLY.equals(args.get(CachedIDMapperWebservice.CACHE))) {
+            dir = new File(args.get(CachedIDMapperWebservice.CACHE), "metadata");
+        } else {
+            return null;
+        }
+        try {
+            long ttl = args.containsKey(METADATA_TTL)
+                    ? Long.parseLong(args.get(METADATA_TTL)) : MetadataCache.DEFAULT_TTL;
+            return new MetadataCache(dir, ttl);
+        } catch (NumberFormatException e) {
+            throw new IDMapperException("metadata-ttl must be a number", e);
+        } catch (IOException e) {
+            throw new IDMapperException(e);
         }
     }
 
     private String mart;
     private String dataset;
     private BiomartStub stub;
+    private final RequestScheduler scheduler;
 
     private String baseURL;
 
@@ -106,6 +154,33 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
      */
     public IDMapperBiomart(String mart, String dataset, String baseURL)
             throws IDMapperException {
+        this(mart, dataset, baseURL, 
+        		RequestScheduler.fromOptions(new HashMap<String, String>(), DEFAULT_CHUNK_SIZE));
+    }
+
+    /**
+     * @param mart name of mart
+     * @param dataset name of dataset
+     * @param baseURL base url of BioMart
+     * @param scheduler runs the queries of mapID
+     * @throws IDMapperException if failed to link to the dataset
+     */
+    public IDMapperBiomart(String mart, String dataset, String baseURL, RequestScheduler scheduler)
+            throws IDMapperException {
+        this(mart, dataset, baseURL, scheduler, null);
+    }
+
+    /**
+     * @param mart name of mart
+     * @param dataset name of dataset
+     * @param baseURL base url of BioMart
+     * @param scheduler runs the queries of mapID
+     * @param metadata keeps the registry and the dataset metadata between runs, may be null
+     * @throws IDMapperException if failed to link to the dataset
+     */
+    public IDMapperBiomart(String mart, String dataset, String baseURL, RequestScheduler scheduler,
+            MetadataCache metadata) throws IDMapperException {
+        this.scheduler = scheduler;
         this.mart = mart;
         this.dataset = dataset;
         if (baseURL!=null) {
@@ -115,7 +190,7 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
         }
 
         try {
-            stub = BiomartStub.getInstance(this.baseURL);
+            stub = BiomartStub.getInstance(this.baseURL, metadata);
         } catch (IOException e) {
             throw new IDMapperException(e);
         }
@@ -175,7 +250,7 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
         if (srcXrefs==null)
             throw new NullPointerException("srcXrefs cannot be null.");
 
-        Map<Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
+        final Map<Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
 
         // source datasources
         // first key: full name of src Datasource
@@ -209,37 +284,45 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
         	}
         else
         	throw new UnsupportedOperationException("For idmapper-biomart, you have to specify at least one target DataSource");
-        String[] tgts = tgtTypes.toArray(new String[0]);
+        final String[] tgts = tgtTypes.toArray(new String[0]);
 
+        // a query per chunk of ids of each source type, several at a time
+        List<RequestScheduler.Request> requests = new ArrayList<RequestScheduler.Request>();
         for (Map.Entry<String, Map<String, Xref>> entry :
                 mapSrcTypeIDXrefs.entrySet()) {
-            String src = entry.getKey();
-            Set<String> ids = entry.getValue().keySet();
-            Map<String,Set<String>[]> res =
-                        stub.translate(mart, dataset , src, tgts, ids);
-
-
-            for (Map.Entry<String,Set<String>[]> entryRes : res.entrySet()) {
-                String srcId = entryRes.getKey();
-                Set<String>[] tgtIds = entryRes.getValue();
-                if (tgtIds==null) { // source xref not exist
-                    continue;
-                }
-
-                Xref srcXref = mapSrcTypeIDXrefs.get(src).get(srcId);
-                
-                Set<Xref> tgtXrefs = new HashSet<Xref>();
-                for (int itgt=0; itgt<tgts.length; itgt++) {
-                    for (String tgtId : tgtIds[itgt]) {
-                        Xref tgtXref = new Xref(tgtId,
-                                DataSource.getByFullName(tgts[itgt]));
-                        tgtXrefs.add(tgtXref);
+            final String src = entry.getKey();
+            final Map<String, Xref> xrefs = entry.getValue();
+            requests.addAll(scheduler.split(xrefs.keySet(), new RequestScheduler.Query<String>() {
+                public void run(List<String> ids) throws IDMapperException {
+                    Map<String,Set<String>[]> res =
+                        stub.translate(mart, dataset , src, tgts, new HashSet<String>(ids));
+
+                    for (Map.Entry<String,Set<String>[]> entryRes : res.entrySet()) {
+                        String srcId = entryRes.getKey();
+                        Set<String>[] tgtIds = entryRes.getValue();
+                        if (tgtIds==null) { // source xref not exist
+                            continue;
+                        }
+
+                        Xref srcXref = xrefs.get(srcId);
+
+                        Set<Xref> tgtXrefs = new HashSet<Xref>();
+                        for (int itgt=0; itgt<tgts.length; itgt++) {
+                            for (String tgtId : tgtIds[itgt]) {
+                                Xref tgtXref = new Xref(tgtId,
+                                        DataSource.getByFullName(tgts[itgt]));
+                                tgtXrefs.add(tgtXref);
+                            }
+                        }
+
+                        synchronized (result) {
+                            result.put(srcXref, tgtXrefs);
+                        }
                     }
                 }
-                
-                result.put(srcXref, tgtXrefs);
-            }
-        }        
+            }));
+        }
+        scheduler.run(requests);
 
         return result;
     }
@@ -339,7 +422,10 @@ public class IDMapperBiomart extends IDMapperWebservice implements AttributeMapp
     /**
      * {@inheritDoc}
      */
-    public void close() throws IDMapperException { isConnected = false; }
+    public void close() throws IDMapperException { 
+        isConnected = false; 
+        scheduler.shutdown();
+    }
     /**
      * {@inheritDoc}
      */
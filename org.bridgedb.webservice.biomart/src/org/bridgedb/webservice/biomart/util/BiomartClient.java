@@ -30,17 +30,13 @@ import java.net.URLConnection;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.bridgedb.impl.InternalUtils;
 import org.bridgedb.webservice.biomart.IDMapperBiomart;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
-
-import org.xml.sax.SAXException;
 
 /**
  * BioMart service class, adapted from BioMart client in Cytoscape.
@@ -49,6 +45,7 @@ public final class BiomartClient {
     public static final String DEFAULT_BASE_URL = "http://www.biomart.org/biomart/martservice";
     
     private final String baseURL;
+    private final MetadataCache metadata;
     private static final String RESOURCE = "/org/bridgedb/webservice/biomart/util/filterconversion.txt";
 
     // caches the result of getRegistry()
@@ -58,6 +55,12 @@ public final class BiomartClient {
 
     private static final int BUFFER_SIZE = 81920;
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     /**
      * Creates a new BiomartStub object from given URL.
      *
@@ -65,7 +68,20 @@ public final class BiomartClient {
      * @throws IOException if failed to read local resource
      */
     public BiomartClient(String baseURL) throws IOException {
+        this(baseURL, null);
+    }
+
+    /**
+     * Creates a new BiomartStub object from given URL, keeping the registry and
+     * the lists of datasets, filters and attributes in a metadata cache.
+     *
+     * @param baseURL base url of martservice
+     * @param metadata cache for the metadata, or null to always download it
+     * @throws IOException if failed to read local resource
+     */
+    public BiomartClient(String baseURL, MetadataCache metadata) throws IOException {
         this.baseURL = baseURL + "?";
+        this.metadata = metadata;
         loadConversionFile();
     }
 
@@ -129,59 +145,62 @@ public final class BiomartClient {
     /**
      *  Get the registry information from the base URL.
      *
+     * The registry is read as a stream, creating a Database for each MartURLLocation element
+     * as it is read, without building a document of the whole registry.
      * @return  Map of registry information.  Key value is "name" field.
-     * @throws ParserConfigurationException if failed new document builder
-     * @throws SAXException if failed to parse registry
-     * @throws IOException if failed to read from URL
+     * @throws IOException if failed to read from URL, or to parse the registry
      */
-    public Map<String, Database> getRegistry()
-            throws IOException, ParserConfigurationException, SAXException {
+    public synchronized Map<String, Database> getRegistry() throws IOException {
         // If already loaded, just return it.
         if (marts != null)
             return marts;
 
-        // Initialize database map.
-        marts = new HashMap<String, Database>();
-
         // Prepare URL for the registry status
         final String reg = "type=registry";
         final URL targetURL = new URL(baseURL + reg);
 
-        // Get the result as XML document.
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        final DocumentBuilder builder = factory.newDocumentBuilder();
-
-        InputStream is = InternalUtils.getInputStream(targetURL);
-
-        final Document registry = builder.parse(is);
-
-        // Extract each datasource
-        NodeList locations = registry.getElementsByTagName("MartURLLocation");
-        int locSize = locations.getLength();
-        NamedNodeMap attrList;
-        int attrLen;
-        String dbID;
-
-        for (int i = 0; i < locSize; i++) {
-            attrList = locations.item(i).getAttributes();
-            attrLen = attrList.getLength();
-
-            // First, get the key value
-            dbID = attrList.getNamedItem("name").getNodeValue();
-
-            Map<String, String> entry = new HashMap<String, String>();
+        InputStream is = metadata == null ? InternalUtils.getInputStream(targetURL) : metadata.open(targetURL);
+        try {
+            marts = readRegistry(is, metadata);
+        } finally {
+            is.close();
+        }
+        return marts;
+    }
 
-            for (int j = 0; j < attrLen; j++) {
-                entry.put(attrList.item(j).getNodeName(), attrList.item(j).getNodeValue());
+    /**
+     * @param is registry xml
+     * @param metadata metadata cache for the marts, may be null
+     * @return Map of registry information.  Key value is "name" field.
+     * @throws IOException if the registry could not be parsed
+     */
+    static Map<String, Database> readRegistry(InputStream is, MetadataCache metadata) throws IOException {
+        Map<String, Database> result = new HashMap<String, Database>();
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT
+                            || !"MartURLLocation".equals(reader.getLocalName())) {
+                        continue;
+                    }
+                    Map<String, String> entry = new HashMap<String, String>();
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        entry.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                    String dbID = entry.get("name");
+                    if (dbID == null) {
+                        throw new IOException("MartURLLocation without name in registry");
+                    }
+                    result.put(dbID, new Database(dbID, entry, metadata));
+                }
+            } finally {
+                reader.close();
             }
-
-            marts.put(dbID, new Database(dbID,entry));
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse registry: " + e.getMessage(), e);
         }
-
-        is.close();
-        is = null;
-
-        return marts;
+        return result;
     }
 
     /**
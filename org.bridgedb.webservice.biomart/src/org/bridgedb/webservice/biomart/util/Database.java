@@ -34,6 +34,7 @@ import org.bridgedb.impl.InternalUtils;
 public class Database {
     private String dbname;
     private Map<String, String> param;
+    private final MetadataCache metadata;
 
     // cache for getAvailableDatasets()
     private Map<String,Dataset> datasets = null;
@@ -43,7 +44,7 @@ public class Database {
      * @return {@link Vector} of available datasets
      * @throws IOException if failed to read
      */
-    public Map<String, Dataset> getAvailableDatasets()
+    public synchronized Map<String, Dataset> getAvailableDatasets()
             throws IOException 
     {
     	if (datasets != null) return datasets;
@@ -66,7 +67,7 @@ public class Database {
         //System.out.println("DB name = " + martName + ", Target URL = " + urlStr + "\n");
 
         URL url = new URL(urlStr);
-        InputStream is = InternalUtils.getInputStream(url);
+        InputStream is = openMetadata(url);
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(is));
         String s;
@@ -109,8 +110,29 @@ public class Database {
      * @param param database parameters
      */
     public Database(String dbname, Map<String, String> param) {
+        this(dbname, param, null);
+    }
+
+    /**
+     *
+     * @param dbname database name
+     * @param param database parameters
+     * @param metadata stores the dataset, filter and attribute lists, or null to always download them
+     */
+    public Database(String dbname, Map<String, String> param, MetadataCache metadata) {
         this.dbname = dbname;
         this.param = param;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Opens a dataset, filter or attribute list of this mart.
+     * @param url list url
+     * @return the list, from the metadata cache if there is one
+     * @throws IOException if failed to read
+     */
+    InputStream openMetadata(URL url) throws IOException {
+        return metadata == null ? InternalUtils.getInputStream(url) : metadata.open(url);
     }
 
     /**
@@ -25,8 +25,6 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.bridgedb.impl.InternalUtils;
-
 /**
  * Dataset, corresponding to dataset in BioMart.
  * @author gjj
@@ -73,10 +71,12 @@ public class Dataset
      * @return filters
      * @throws IOException if failed to read
      */
-    public Map<String, Filter> getFilters()
+    public synchronized Map<String, Filter> getFilters()
         throws IOException 
     {
-    	filters = new HashMap<String, Filter>();
+    	if (filters != null) return filters;
+    	// only cached once read completely, so a failed download is tried again next time
+    	Map<String, Filter> result = new HashMap<String, Filter>();
         Database database = getDatabase();
 
         Map<String, String> detail = database.getParam();
@@ -90,21 +90,24 @@ public class Dataset
                         + name;
 
         URL url = new URL(urlStr);
-        InputStream is = InternalUtils.getInputStream(url);
+        InputStream is = database.openMetadata(url);
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        String s;
-        while ((s = reader.readLine()) != null) 
+        try
         {
-        	Filter f = parseFilter (s);
-        	if (f != null) filters.put (f.getName(), f);
+            String s;
+            while ((s = reader.readLine()) != null) 
+            {
+            	Filter f = parseFilter (s);
+            	if (f != null) result.put (f.getName(), f);
+            }
+        }
+        finally
+        {
+            reader.close();
         }
 
-        is.close();
-        reader.close();
-        reader = null;
-        is = null;
-
+        filters = result;
         return filters;
     }
     
@@ -113,10 +116,11 @@ public class Dataset
      * @return Map of attribute name to attributes
      * @throws IOException if failed to read
      */
-    public Map<String, Attribute> getAttributes() throws IOException 
+    public synchronized Map<String, Attribute> getAttributes() throws IOException 
     {
     	if (attributes != null) return attributes;
-        attributes = new HashMap<String, Attribute>();
+    	// only cached once read completely, so a failed download is tried again next time
+        Map<String, Attribute> result = new HashMap<String, Attribute>();
 
         Database database = getDatabase();
 
@@ -128,48 +132,48 @@ public class Dataset
                         + name;
         
         URL url = new URL(urlStr);
-        InputStream is = InternalUtils.getInputStream(url);
+        InputStream is = database.openMetadata(url);
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        String s;
+        try {
+            String s;
 
-        String displayName;
+            String displayName;
 
-        String[] parts;
+            String[] parts;
 
-        while ((s = reader.readLine()) != null) {
+            while ((s = reader.readLine()) != null) {
 
-            String page = "unknown";
-            String description;
-            parts = s.split("\\t");
+                String page = "unknown";
+                String description;
+                parts = s.split("\\t");
 
-            if (parts.length == 0)
-                continue;
+                if (parts.length == 0)
+                    continue;
 
-            if (parts.length == 4) {
-                displayName = parts[3] + ": " + parts[1];
-                description = displayName;
-            } else if (parts.length > 1) {
-                displayName = parts[1];
-                description = parts[2];
-                page = parts[3];
-            } else {
-                displayName = "";
-                description = "";
-            }
+                if (parts.length == 4) {
+                    displayName = parts[3] + ": " + parts[1];
+                    description = displayName;
+                } else if (parts.length > 1) {
+                    displayName = parts[1];
+                    description = parts[2];
+                    page = parts[3];
+                } else {
+                    displayName = "";
+                    description = "";
+                }
             
-            // only add attributes listed as "feature_page"
-            // and "homologs"
-            if ("feature_page".equals(page) || "homologs".equals(page))
-            	attributes.put(parts[0], new Attribute(
-            		parts[0], displayName, description, page));
+                // only add attributes listed as "feature_page"
+                // and "homologs"
+                if ("feature_page".equals(page) || "homologs".equals(page))
+                	result.put(parts[0], new Attribute(
+                		parts[0], displayName, description, page));
+            }
+        } finally {
+            reader.close();
         }
 
-        is.close();
-        reader.close();
-        reader = null;
-        is = null;
-
+        attributes = result;
         return attributes;
     }    
 
@@ -0,0 +1,232 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice.biomart.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+
+import org.bridgedb.webservice.CacheFiles;
+
+/**
+ * Keeps the registry, dataset, filter and attribute lists of a BioMart server on disk,
+ * so that connecting to a mart does not have to download them again on every start.
+ * <p>
+ * Each response is stored with the time it was fetched and its ETag and Last-Modified headers.
+ * Within the time to live the stored copy is used as is. After that the server is asked
+ * with a conditional request, which costs a single round trip if nothing changed.
+ * If the server can not be reached, the stored copy is used even if it is older.
+ * <p>
+ * A response is written to a temporary file as it arrives, and only renamed into place
+ * once it is complete and does not look like an error page.
+ */
+public final class MetadataCache {
+    /** Default time to live, in seconds */
+    public static final long DEFAULT_TTL = 7 * 24 * 60 * 60;
+
+    private static final int MS_CONNECTION_TIMEOUT = 2000;
+
+    private static final String URL = "url";
+    private static final String FETCHED = "fetched";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+
+    private final File dir;
+    private final long ttl;
+
+    /**
+     * @param dir directory for the stored responses, created if needed
+     * @param ttl seconds that a stored response is used without asking the server
+     * @throws IOException if the directory can not be created
+     */
+    public MetadataCache(File dir, long ttl) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create metadata cache directory " + dir);
+        }
+        this.dir = dir;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return directory of the stored responses
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Opens a metadata url, from the stored copy if it is fresh or unchanged.
+     * @param url metadata url
+     * @return the response
+     * @throws IOException if the server could not be read or sent an error, and there is no stored copy
+     */
+    public InputStream open(URL url) throws IOException {
+        String hash = CacheFiles.sha1(url.toString());
+        File body = new File(dir, hash);
+        Properties info = readInfo(new File(dir, hash + ".properties"), body, url);
+        long now = System.currentTimeMillis();
+        if (info != null && now < Long.parseLong(info.getProperty(FETCHED)) + ttl * 1000) {
+            return new FileInputStream(body);
+        }
+
+        try {
+            URLConnection uc = url.openConnection();
+            uc.setUseCaches(false);
+            uc.setConnectTimeout(MS_CONNECTION_TIMEOUT);
+            if (info != null) {
+                if (info.getProperty(ETAG) != null) {
+                    uc.setRequestProperty("If-None-Match", info.getProperty(ETAG));
+                }
+                if (info.getProperty(LAST_MODIFIED) != null) {
+                    uc.setRequestProperty("If-Modified-Since", info.getProperty(LAST_MODIFIED));
+                }
+                if (uc instanceof HttpURLConnection
+                        && ((HttpURLConnection) uc).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    info.setProperty(FETCHED, Long.toString(now));
+                    writeInfo(hash, info);
+                    return new FileInputStream(body);
+                }
+            }
+
+            File tmp = File.createTempFile("metadata", ".tmp", dir);
+            try {
+                copy(uc.getInputStream(), tmp);
+                String error = checkBody(tmp);
+                if (error != null) {
+                    throw new IOException("Error response from " + url + ": " + error);
+                }
+                Properties fetched = new Properties();
+                fetched.setProperty(URL, url.toString());
+                fetched.setProperty(FETCHED, Long.toString(now));
+                if (uc.getHeaderField("ETag") != null) {
+                    fetched.setProperty(ETAG, uc.getHeaderField("ETag"));
+                }
+                if (uc.getHeaderField("Last-Modified") != null) {
+                    fetched.setProperty(LAST_MODIFIED, uc.getHeaderField("Last-Modified"));
+                }
+                if (CacheFiles.replace(tmp, body)) {
+                    writeInfo(hash, fetched);
+                    return new FileInputStream(body);
+                }
+                //Not stored, but the response can still be used
+                InputStream result = new FileInputStream(tmp);
+                tmp.deleteOnExit();
+                tmp = null;
+                return result;
+            } finally {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException e) {
+            if (info != null) {
+                return new FileInputStream(body);
+            }
+            throw e;
+        }
+    }
+
+    private static void copy(InputStream is, File f) throws IOException {
+        try {
+            OutputStream os = new FileOutputStream(f);
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = is.read(buffer)) > 0) {
+                    os.write(buffer, 0, n);
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * BioMart answers some failures with status 200 and a line containing ERROR,
+     * in the same way as a failed query, and proxies may answer with an html page.
+     * @return why the response is not metadata, or null if it looks valid
+     */
+    static String checkBody(File f) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null && line.trim().length() == 0) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                return "empty response";
+            }
+            if (line.indexOf("ERROR") >= 0) {
+                return line;
+            }
+            String start = line.trim().toLowerCase();
+            if (start.startsWith("<html") || start.startsWith("<!doctype html")) {
+                return "html page";
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the stored information on url, or null if there is no complete stored copy of it
+     */
+    private static Properties readInfo(File f, File body, URL url) {
+        if (!f.isFile() || !body.isFile()) {
+            return null;
+        }
+        Properties info = new Properties();
+        try {
+            InputStream is = new FileInputStream(f);
+            try {
+                info.load(is);
+            } finally {
+                is.close();
+            }
+            if (!url.toString().equals(info.getProperty(URL))) return null;
+            Long.parseLong(info.getProperty(FETCHED));
+            return info;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void writeInfo(String hash, Properties info) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            info.store(content, null);
+        } catch (IOException e) {
+            return;
+        }
+        CacheFiles.writeAtomically(new File(dir, hash + ".properties"), content.toByteArray());
+    }
+}
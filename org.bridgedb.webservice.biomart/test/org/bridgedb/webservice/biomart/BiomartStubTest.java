@@ -0,0 +1,53 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.webservice.biomart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BiomartStubTest {
+
+    @Test
+    public void testSplitRow() {
+        String[] fields = new String[3];
+        assertTrue(BiomartStub.splitRow("ENSG01\tP12345\tsymbol", fields));
+        assertArrayEquals(new String[] {"ENSG01", "P12345", "symbol"}, fields);
+
+        //Rows without a mapping have empty fields in the middle, which are kept
+        assertTrue(BiomartStub.splitRow("ENSG01\t\tsymbol", fields));
+        assertEquals("", fields[1]);
+    }
+
+    @Test
+    public void testWrongFieldCount() {
+        String[] fields = new String[2];
+        assertFalse(BiomartStub.splitRow("ENSG01", fields));
+        assertFalse(BiomartStub.splitRow("ENSG01\tP12345\textra", fields));
+        //Tabs inside a value can not be told apart from delimiters, so such rows are rejected
+        assertFalse(BiomartStub.splitRow("ENSG01\tP1\t2345", fields));
+    }
+
+    @Test
+    public void testEmptyLastField() {
+        String[] fields = new String[2];
+        assertFalse(BiomartStub.splitRow("ENSG01\t", fields));
+        assertFalse(BiomartStub.splitRow("", fields));
+        assertTrue(BiomartStub.splitRow("\tP12345", fields));
+        assertEquals("", fields[0]);
+    }
+}
@@ -0,0 +1,75 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.webservice.biomart.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BiomartClientTest {
+
+    private static InputStream stream(String document) throws IOException {
+        return new ByteArrayInputStream(document.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testReadRegistry() throws IOException {
+        String registry = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<MartRegistry>\n"
+                + "  <MartURLLocation database=\"ensembl_mart_65\" default=\"1\" displayName=\"ENSEMBL GENES 65 &amp; more\""
+                + " host=\"www.biomart.org\" name=\"ensembl\" path=\"/biomart/martservice\" port=\"80\" visible=\"1\" />\n"
+                + "  <MartURLLocation displayName=\"Tab&#9;Name &lt;test&gt;\" name=\"other\" visible=\"0\" />\n"
+                + "  <OtherElement name=\"ignored\" />\n"
+                + "</MartRegistry>\n";
+        Map<String, Database> result = BiomartClient.readRegistry(stream(registry), null);
+        assertEquals(2, result.size());
+        Database ensembl = result.get("ensembl");
+        assertEquals("ensembl", ensembl.getName());
+        assertEquals("ENSEMBL GENES 65 & more", ensembl.displayName());
+        assertEquals("www.biomart.org", ensembl.getParam().get("host"));
+        assertTrue(ensembl.visible());
+        //Escaped characters, including the delimiter of the result tables, are decoded
+        assertEquals("Tab\tName <test>", result.get("other").displayName());
+        assertFalse(result.get("other").visible());
+    }
+
+    @Test
+    public void testEmptyRegistry() throws IOException {
+        assertTrue(BiomartClient.readRegistry(stream("<MartRegistry/>"), null).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoName() throws IOException {
+        BiomartClient.readRegistry(stream("<MartRegistry><MartURLLocation host=\"a\"/></MartRegistry>"), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotXml() throws IOException {
+        //Biomart answers errors as plain text
+        BiomartClient.readRegistry(stream("Query ERROR: caught BioMart::Exception"), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptyBody() throws IOException {
+        BiomartClient.readRegistry(stream(""), null);
+    }
+}
@@ -0,0 +1,158 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice.biomart.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static org.junit.Assert.*;
+
+public class MetadataCacheTest {
+    private HttpServer server;
+    private URL url;
+    private File dir;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile String version = "v1";
+    private volatile String error = null;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/martservice", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String etag = "\"" + version + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] bytes = (error != null ? error : "datasets " + version + "\n").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/martservice?type=datasets&mart=test");
+        dir = File.createTempFile("bridgedb-metadata", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        if (dir.isDirectory()) {
+            for (File f : dir.listFiles()) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static String read(InputStream is) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testFresh() throws IOException {
+        assertEquals("datasets v1", read(new MetadataCache(dir, 60).open(url)));
+        // a new run reads the stored copy without asking the server
+        assertEquals("datasets v1", read(new MetadataCache(dir, 60).open(url)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testConditionalRefresh() throws IOException {
+        MetadataCache cache = new MetadataCache(dir, 0);
+        assertEquals("datasets v1", read(cache.open(url)));
+        assertEquals("datasets v1", read(cache.open(url)));
+        assertEquals(1, notModified.get());
+
+        version = "v2";
+        assertEquals("datasets v2", read(cache.open(url)));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testStaleWhenUnreachable() throws IOException {
+        MetadataCache cache = new MetadataCache(dir, 0);
+        assertEquals("datasets v1", read(cache.open(url)));
+        server.stop(0);
+        assertEquals("datasets v1", read(cache.open(url)));
+    }
+
+    private File[] files() {
+        File[] files = dir.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    @Test
+    public void testErrorNotStored() throws IOException {
+        error = "Query ERROR: caught BioMart::Exception::Database: Could not connect to mysql database";
+        try {
+            new MetadataCache(dir, 60).open(url);
+            fail("error response returned");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Query ERROR"));
+        }
+        // neither the body nor a temporary file is left behind
+        assertEquals(0, files().length);
+
+        error = null;
+        assertEquals("datasets v1", read(new MetadataCache(dir, 60).open(url)));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testErrorKeepsStoredCopy() throws IOException {
+        MetadataCache cache = new MetadataCache(dir, 0);
+        assertEquals("datasets v1", read(cache.open(url)));
+        version = "v2";
+        error = "<html><body>502 Bad Gateway</body></html>";
+        assertEquals("datasets v1", read(cache.open(url)));
+        error = "";
+        assertEquals("datasets v1", read(cache.open(url)));
+        assertEquals(2, files().length);
+
+        error = null;
+        assertEquals("datasets v2", read(cache.open(url)));
+        assertEquals(2, files().length);
+    }
+}
@@ -18,14 +18,18 @@ package org.bridgedb.webservice.bridgerest;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +41,7 @@ import org.bridgedb.IDMapperCapabilities;
 import org.bridgedb.IDMapperException;
 import org.bridgedb.Xref;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
 import org.bridgedb.webservice.IDMapperWebservice;
 
 /**
@@ -52,10 +57,21 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 		/** private constructor to prevent outside instantiation. */
 		private Driver() { } 
 
-		/** {@inheritDoc} */
+		/** 
+		 * {@inheritDoc}
+		 * The location is the base url, optionally followed by the options of {@link CachedIDMapperWebservice},
+		 * e.g. http://webservice.bridgedb.org/Human?cache=/tmp/bridgedb
+		 */
 		public IDMapper connect(String location) throws IDMapperException  {
+			Map<String, String> args = new HashMap<String, String>();
+			if (location.indexOf('?') > -1)
+			{
+				args = InternalUtils.parseLocation(location, CachedIDMapperWebservice.OPTIONS);
+				location = args.containsKey("BASE") ? args.get("BASE") : "";
+			}
                 	// replace all spaces by "%20" to access organisms such as "Arabidopsis theliana"
-			return new BridgeRest(location.replaceAll(" ", "%20"));
+			String baseUrl = location.replaceAll(" ", "%20");
+			return CachedIDMapperWebservice.wrap(new BridgeRest(baseUrl), "idmapper-bridgerest:" + baseUrl, args);
 		}
 	}
 
@@ -273,6 +289,48 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 				throw new IOException("HTTP response: " + con.getResponseCode() + " - " + con.getResponseMessage());
 			return new BufferedReader(new InputStreamReader(con.getInputStream()));
 		}
+
+		/**
+		 * Posts a body of text to the Url, on a connection that is kept alive for the next request.
+		 * @param body the text to send
+		 * @return reader for the response, or null if the server does not have this command
+		 * @throws IOException when there is a timeout, or when the http response code is not 200 - OK
+		 */
+		private BufferedReader post(String body) throws IOException
+		{
+			byte[] bytes = body.getBytes("UTF-8");
+			URL url = new URL (builder.toString());
+			HttpURLConnection con = (HttpURLConnection) url.openConnection();
+			con.setInstanceFollowRedirects(false);
+			con.setRequestMethod("POST");
+			con.setDoOutput(true);
+			con.setFixedLengthStreamingMode(bytes.length);
+			con.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+			OutputStream out = con.getOutputStream();
+			try
+			{
+				out.write(bytes);
+			}
+			finally
+			{
+				out.close();
+			}
+			int response = con.getResponseCode();
+			if (response == HttpURLConnection.HTTP_NOT_FOUND || response == HttpURLConnection.HTTP_BAD_METHOD)
+			{
+				// read the error page, or the connection can not be reused
+				InputStream error = con.getErrorStream();
+				if (error != null)
+				{
+					while (error.read() != -1) { }
+					error.close();
+				}
+				return null;
+			}
+			if (response < HttpURLConnection.HTTP_OK || response >= HttpURLConnection.HTTP_MULT_CHOICE ) 
+				throw new IOException("HTTP response: " + con.getResponseCode() + " - " + con.getResponseMessage());
+			return new BufferedReader(new InputStreamReader(con.getInputStream(), "UTF-8"));
+		}
 	}
 	
 	/**
@@ -306,7 +364,7 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 				Xref dest;
 				while ((dest = parseLine(r)) != null) result.add (dest);
 			}
-			
+			r.close();
 			return result;
 		}
 		catch (IOException ex) {
@@ -324,13 +382,179 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 		return isConnected;
 	}
 
-	/** {@inheritDoc} */
+	/** Number of xrefs sent in each request to xrefsBatch */
+	static final int BATCH_SIZE = 1000;
+
+	/** Set to false when the server turns out not to have xrefsBatch */
+	private volatile boolean batchSupported = true;
+
+	/** 
+	 * Maps the xrefs BATCH_SIZE at a time with the xrefsBatch command of the server.
+	 * Falls back to a request per xref for older servers without it.
+	 * {@inheritDoc} 
+	 */
 	public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs,
 			DataSource... tgtDataSources) throws IDMapperException 
 	{
+		if (batchSupported)
+		{
+			Set<DataSource> dsFilter = new HashSet<DataSource>();
+			if(tgtDataSources != null) dsFilter.addAll(Arrays.asList(tgtDataSources));
+
+			Map<Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
+			List<Xref> batch = new ArrayList<Xref>();
+			try
+			{
+				for (Xref src : srcXrefs)
+				{
+					batch.add(src);
+					if (batch.size() == BATCH_SIZE)
+					{
+						batchSupported = mapBatch(batch, tgtDataSources, dsFilter, result);
+						if (!batchSupported) break;
+						batch.clear();
+					}
+				}
+				if (batchSupported && batch.size() > 0)
+				{
+					batchSupported = mapBatch(batch, tgtDataSources, dsFilter, result);
+				}
+			}
+			catch (IOException ex)
+			{
+				throw new IDMapperException(ex);
+			}
+			if (batchSupported) return result;
+		}
 		return InternalUtils.mapMultiFromSingle(this, srcXrefs, tgtDataSources);
 	}
 
+	/**
+	 * Posts a batch of xrefs to xrefsBatch, as lines with the id and system code,
+	 * and reads back a line per xref with the id, the datasource and the mappings.
+	 * Results are matched to the xrefs by the id and datasource the server echoes,
+	 * as the server may leave out lines it could not parse.
+	 * The server trims the ids, so they are sent trimmed, and xrefs that only differ
+	 * in whitespace around the id are sent once and get the same mappings.
+	 * Xrefs without a system code, or with an id that is blank or would break the line format, are not sent
+	 * and so get no mappings.
+	 * @return false if the server does not have xrefsBatch
+	 */
+	private boolean mapBatch(List<Xref> batch, DataSource[] tgtDataSources, 
+			Set<DataSource> dsFilter, Map<Xref, Set<Xref>> result) throws IOException
+	{
+		UrlBuilder builder = new UrlBuilder ("xrefsBatch");
+		if (tgtDataSources != null && tgtDataSources.length == 1) 
+			builder = builder.named("dataSource", tgtDataSources[0].getSystemCode());
+		StringBuilder body = new StringBuilder();
+		Map<String, List<Xref>> sent = new HashMap<String, List<Xref>>();
+		for (Xref src : batch)
+		{
+			if (!canSend(src)) continue;
+			String id = src.getId().trim();
+			List<Xref> sameId = sent.get(id);
+			if (sameId == null)
+			{
+				sameId = new ArrayList<Xref>();
+				sent.put(id, sameId);
+			}
+			if (sameId.contains(src)) continue;
+			boolean dataSourceSent = false;
+			for (Xref other : sameId)
+			{
+				if (other.getDataSource().equals(src.getDataSource())) dataSourceSent = true;
+			}
+			sameId.add(src);
+			if (dataSourceSent) continue;
+			body.append(id).append('\t').append(src.getDataSource().getSystemCode()).append('\n');
+		}
+		if (sent.isEmpty()) return true;
+		BufferedReader r = builder.post(body.toString());
+		if (r == null) return false;
+		try
+		{
+			String line;
+			while ((line = r.readLine()) != null)
+			{
+				int tab = line.indexOf('\t');
+				int pos = tab < 0 ? -1 : line.indexOf('\t', tab + 1);
+				if (pos < 0) throw new IOException("Unexpected xrefsBatch result: " + line);
+				List<Xref> sources = echoed(sent.get(line.substring(0, tab)), line.substring(tab + 1, pos));
+				if (sources.isEmpty()) continue;
+				Set<Xref> refs = parseMappings(line, pos + 1, dsFilter);
+				if (refs.size() == 0) continue;
+				for (Xref src : sources) result.put(src, sources.size() == 1 ? refs : new HashSet<Xref>(refs));
+			}
+		}
+		finally
+		{
+			r.close();
+		}
+		return true;
+	}
+
+	private static boolean canSend(Xref src)
+	{
+		String id = src.getId();
+		if (id == null || id.trim().length() == 0 || id.indexOf('\t') >= 0 || id.indexOf('\n') >= 0 || id.indexOf('\r') >= 0)
+			return false;
+		return src.getDataSource() != null && src.getDataSource().getSystemCode() != null;
+	}
+
+	/**
+	 * @param candidates xrefs sent with the echoed id, or null if there were none
+	 * @param dataSource full name or system code the server echoed
+	 * @return the xrefs the result line is for, or an empty list if it matches none of those sent
+	 */
+	private static List<Xref> echoed(List<Xref> candidates, String dataSource)
+	{
+		List<Xref> result = new ArrayList<Xref>();
+		if (candidates == null) return result;
+		for (Xref candidate : candidates)
+		{
+			DataSource ds = candidate.getDataSource();
+			if (dataSource.equals(ds.getFullName()) || dataSource.equals(ds.getSystemCode())) result.add(candidate);
+		}
+		if (result.size() > 0) return result;
+		// the server may know the datasource by another name
+		DataSource ds = candidates.get(0).getDataSource();
+		for (Xref candidate : candidates)
+		{
+			if (!candidate.getDataSource().equals(ds)) return result;
+		}
+		result.addAll(candidates);
+		return result;
+	}
+
+	/**
+	 * Parses the comma separated system code:id pairs of an xrefsBatch result,
+	 * or "N/A" if there are none.
+	 * @param line result line
+	 * @param start position of the mappings in line
+	 * @param dsFilter DataSources to keep, or an empty set to keep all
+	 */
+	static Set<Xref> parseMappings(String line, int start, Set<DataSource> dsFilter)
+	{
+		Set<Xref> result = new HashSet<Xref>();
+		if (line.startsWith("N/A", start) && line.length() == start + 3) return result;
+		while (start < line.length())
+		{
+			int end = line.indexOf(',', start);
+			if (end < 0) end = line.length();
+			int colon = line.indexOf(':', start);
+			if (colon > start && colon < end)
+			{
+				DataSource ds = DataSource.getBySystemCode(line.substring(start, colon));
+				if (dsFilter.size() == 0 || dsFilter.contains(ds))
+				{
+					result.add(new Xref(line.substring(colon + 1, end), ds));
+				}
+			}
+			start = end + 1;
+		}
+		return result;
+	}
+
 	/** {@inheritDoc} */
 	public Set<Xref> mapID(Xref src,
 			DataSource... tgtDataSources) throws IDMapperException 
@@ -356,6 +580,7 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 					}
 				}		
 			}
+			r.close();
 			return result;
 		}
 		catch (IOException ex)
@@ -371,29 +596,12 @@ public class BridgeRest extends IDMapperWebservice implements AttributeMapper
 	 * @throws IOException if there was an error while reading (not EOF!) */
 	private Xref parseLine(BufferedReader reader) throws IOException
 	{
-		StringBuilder builder = new StringBuilder();
-		String id = null;
-		int c;
-		while (true)
-		{
-			// read char by char and use switch statement
-			// for efficiency
-			c = reader.read();
-			switch (c)
-			{
-			case -1:
-				return null; // end of the stream
-			case '\n': 
-				DataSource ds = DataSource.getByFullName(builder.toString());
-				return new Xref(id, ds);
-			case '\t':
-				id = builder.toString();
-				builder = new StringBuilder();
-				break;
-			default:
-				builder.append((char)c);
-			}
-		}
+		String line = reader.readLine();
+		if (line == null) return null; // end of the stream
+		int tab = line.indexOf('\t');
+		String id = tab < 0 ? null : line.substring(0, tab);
+		DataSource ds = DataSource.getByFullName(line.substring(tab + 1));
+		return new Xref(id, ds);
 	}
 
 	/** {@inheritDoc} */
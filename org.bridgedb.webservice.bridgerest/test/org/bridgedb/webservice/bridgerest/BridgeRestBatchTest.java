@@ -0,0 +1,192 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.webservice.bridgerest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs batch mapping against a local stand-in for the BridgeDb webservice,
+ * which answers out of order and leaves out the lines it can not parse.
+ */
+public class BridgeRestBatchTest
+{
+	private static final DataSource SOURCE = DataSource.register("BrS", "BridgeRestBatchTest source").asDataSource();
+	private static final DataSource OTHER = DataSource.register("BrO", "BridgeRestBatchTest other").asDataSource();
+	private static final DataSource TARGET = DataSource.register("BrT", "BridgeRestBatchTest target").asDataSource();
+
+	private HttpServer server;
+	private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+	private final AtomicInteger batches = new AtomicInteger();
+
+	private static void respond(HttpExchange exchange, String body) throws IOException
+	{
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/properties", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				respond(exchange, "");
+			}
+		});
+		server.createContext("/isFreeSearchSupported", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				respond(exchange, "false");
+			}
+		});
+		server.createContext("/xrefsBatch", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				batches.incrementAndGet();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+				List<String> lines = new ArrayList<String>();
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					received.add(line);
+					String[] cols = line.split("\t");
+					// a server that can not parse a line leaves it out
+					if (cols[0].startsWith("bad")) continue;
+					DataSource ds = DataSource.getExistingBySystemCode(cols[1]);
+					String mappings = cols[0].startsWith("none") ? "N/A"
+							: "BrT:" + cols[0] + "-" + cols[1] + ",BrS:" + cols[0];
+					lines.add(cols[0] + "\t" + ds.getFullName() + "\t" + mappings + "\n");
+				}
+				Collections.reverse(lines);
+				StringBuilder response = new StringBuilder();
+				for (String result : lines) response.append(result);
+				respond(exchange, response.toString());
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown()
+	{
+		server.stop(0);
+	}
+
+	private BridgeRest connect() throws IDMapperException
+	{
+		return new BridgeRest("http://localhost:" + server.getAddress().getPort());
+	}
+
+	@Test
+	public void testResultsKeyedByEchoedXref() throws IDMapperException
+	{
+		Xref a = new Xref("a", SOURCE);
+		Xref sameIdOtherSource = new Xref("a", OTHER);
+		Xref bad = new Xref("bad1", SOURCE);
+		Xref none = new Xref("none1", SOURCE);
+		Xref c = new Xref("c", SOURCE);
+		Map<Xref, Set<Xref>> result = connect().mapID(Arrays.asList(a, sameIdOtherSource, bad, none, c), TARGET);
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("a-BrS", TARGET))), result.get(a));
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("a-BrO", TARGET))), result.get(sameIdOtherSource));
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("c-BrS", TARGET))), result.get(c));
+		Assert.assertFalse(result.containsKey(bad));
+		Assert.assertFalse(result.containsKey(none));
+		Assert.assertEquals(3, result.size());
+		Assert.assertEquals(1, batches.get());
+	}
+
+	@Test
+	public void testXrefsWithoutCodeNotSent() throws IDMapperException
+	{
+		DataSource nameOnly = DataSource.getByFullName("BridgeRestBatchTest name only");
+		Xref unnamed = new Xref("x", nameOnly);
+		Xref a = new Xref("a", SOURCE);
+		Map<Xref, Set<Xref>> result = connect().mapID(Arrays.asList(unnamed, a));
+		Assert.assertEquals(Arrays.asList("a\tBrS"), received);
+		Assert.assertFalse(result.containsKey(unnamed));
+		Assert.assertEquals(2, result.get(a).size());
+
+		// nothing left to send, so no request is made
+		result = connect().mapID(Arrays.asList(unnamed));
+		Assert.assertTrue(result.isEmpty());
+		Assert.assertEquals(1, batches.get());
+	}
+
+	@Test
+	public void testIdsTrimmed() throws IDMapperException
+	{
+		Xref a = new Xref("a", SOURCE);
+		Xref padded = new Xref(" a ", SOURCE);
+		Xref paddedOther = new Xref(" a", OTHER);
+		Xref blank = new Xref("  ", SOURCE);
+		Map<Xref, Set<Xref>> result = connect().mapID(Arrays.asList(a, padded, paddedOther, blank), TARGET);
+		// the server trims ids, so each is sent once and trimmed
+		Assert.assertEquals(Arrays.asList("a\tBrS", "a\tBrO"), received);
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("a-BrS", TARGET))), result.get(a));
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("a-BrS", TARGET))), result.get(padded));
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("a-BrO", TARGET))), result.get(paddedOther));
+		Assert.assertFalse(result.containsKey(blank));
+		Assert.assertEquals(3, result.size());
+	}
+
+	@Test
+	public void testParseMappings()
+	{
+		Set<DataSource> all = new HashSet<DataSource>();
+		String line = "a\tsource\tBrT:1,BrS:2,broken,BrT:3";
+		int start = line.lastIndexOf('\t') + 1;
+		Set<Xref> result = BridgeRest.parseMappings(line, start, all);
+		Assert.assertEquals(3, result.size());
+		Assert.assertTrue(result.contains(new Xref("2", SOURCE)));
+
+		result = BridgeRest.parseMappings(line, start, new HashSet<DataSource>(Arrays.asList(TARGET)));
+		Assert.assertEquals(new HashSet<Xref>(Arrays.asList(new Xref("1", TARGET), new Xref("3", TARGET))), result);
+
+		Assert.assertTrue(BridgeRest.parseMappings("a\tsource\tN/A", 9, all).isEmpty());
+	}
+}
@@ -33,6 +33,7 @@ import org.bridgedb.IDMapper;
 import org.bridgedb.IDMapperCapabilities;
 import org.bridgedb.IDMapperException;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
 import org.bridgedb.webservice.IDMapperWebservice;
 import org.bridgedb.Xref;
 
@@ -92,14 +93,16 @@ public final class IDMapperPicr extends IDMapperWebservice implements AttributeM
 		public IDMapper connect(String location) throws IDMapperException  
 		{
             Map<String, String> args = 
-            	InternalUtils.parseLocation(location, "only-active");
+            	InternalUtils.parseLocation(location,
+            			CachedIDMapperWebservice.withOptions("only-active"));
 
 			boolean isOnlyActive = true;
 			if (args.containsKey("only-active"))
 			{
 				isOnlyActive = Boolean.parseBoolean(args.get("only-active"));
 			}
-			return new IDMapperPicr(isOnlyActive);
+			return CachedIDMapperWebservice.wrap(new IDMapperPicr(isOnlyActive),
+					"idmapper-picr:?only-active=" + isOnlyActive, args);
 		}
 	}
 	
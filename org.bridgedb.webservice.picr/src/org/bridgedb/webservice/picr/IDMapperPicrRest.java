@@ -21,6 +21,7 @@ import java.net.URLConnection;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,9 +30,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.bridgedb.AbstractIDMapperCapabilities;
 import org.bridgedb.BridgeDb;
@@ -40,14 +42,10 @@ import org.bridgedb.IDMapper;
 import org.bridgedb.IDMapperCapabilities;
 import org.bridgedb.IDMapperException;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
 import org.bridgedb.webservice.IDMapperWebservice;
 import org.bridgedb.Xref;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
 //TODO: implements AttributeMapper
 public class IDMapperPicrRest extends IDMapperWebservice
 {
@@ -56,6 +54,13 @@ public class IDMapperPicrRest extends IDMapperWebservice
 		BridgeDb.register ("idmapper-picr-rest", new Driver());
 	}
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static
+    {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     private String baseUrl = "https://www.ebi.ac.uk/Tools/picr/rest/";
     private boolean onlyActive;
     
@@ -103,14 +108,16 @@ public class IDMapperPicrRest extends IDMapperWebservice
 		public IDMapper connect(String location) throws IDMapperException  
 		{
             Map<String, String> args = 
-            	InternalUtils.parseLocation(location, "only-active");
+            	InternalUtils.parseLocation(location,
+            			CachedIDMapperWebservice.withOptions("only-active"));
 
 			boolean isOnlyActive = true;
 			if (args.containsKey("only-active"))
 			{
 				isOnlyActive = Boolean.parseBoolean(args.get("only-active"));
 			}
-			return new IDMapperPicrRest(isOnlyActive);
+			return CachedIDMapperWebservice.wrap(new IDMapperPicrRest(isOnlyActive),
+					"idmapper-picr-rest:?only-active=" + isOnlyActive, args);
 		}
 	}
 	
@@ -128,19 +135,35 @@ public class IDMapperPicrRest extends IDMapperWebservice
 		throw new UnsupportedOperationException();
 	}
 
-        private List<String> getMappedDataBaseNames() throws Exception {
+        private List<String> getMappedDataBaseNames() throws IOException {
             String url = baseUrl + "getMappedDatabaseNames";
             InputStream is = InternalUtils.getInputStream(url);
-            // Get the result as XML document.
-            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            final DocumentBuilder builder = factory.newDocumentBuilder();
-            final Document doc = builder.parse(is);
-            NodeList nodes = doc.getElementsByTagName("ns2:mappedDatabases");
-            int n = nodes.getLength();
-            List<String> dbs = new ArrayList<String>(n);
-            for (int i=0; i<n; i++) {
-                Node node = nodes.item(i);
-                dbs.add(node.getTextContent());
+            try {
+                return readMappedDatabaseNames(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        /**
+         * Reads the mappedDatabases elements of a getMappedDatabaseNames response as a stream.
+         */
+        static List<String> readMappedDatabaseNames(InputStream is) throws IOException {
+            List<String> dbs = new ArrayList<String>();
+            try {
+                XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+                try {
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT
+                                && "mappedDatabases".equals(reader.getLocalName())) {
+                            dbs.add(reader.getElementText());
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Could not parse database names: " + e.getMessage(), e);
             }
             return dbs;
         }
@@ -243,9 +266,8 @@ public class IDMapperPicrRest extends IDMapperWebservice
 	}
 
         private Set<Xref> mappingService(String accession, Set<String> databases) 
-        throws IOException, SAXException, ParserConfigurationException
+        throws IOException
  {
-            Set<Xref> result = new HashSet<Xref>();
 
             StringBuilder url = new StringBuilder(baseUrl);
             url.append("getUPIForAccession?");
@@ -262,49 +284,64 @@ public class IDMapperPicrRest extends IDMapperWebservice
                 url.append(database);
             }
 
-            final Document doc;
             InputStream is = InternalUtils.getInputStream(url.toString());
-            if (is.available()<=0) return result;
-
-            // Get the result as XML document.
-            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            final DocumentBuilder builder = factory.newDocumentBuilder();
-            doc = builder.parse(is);
-
-            String[] tags = new String[] {"identicalCrossReferences"
-                        , "logicalCrossReferences"};
-            List<Node> nodes = new ArrayList<Node>();
-            for (String tag : tags) {
-                NodeList nodeList = doc.getElementsByTagName(tag);
-                int n = nodeList.getLength();
-                for (int i=0; i<n; i++) {
-                    nodes.add(nodeList.item(i));
-                }
+            try {
+                return readCrossReferences(is);
+            } finally {
+                is.close();
             }
+        }
 
-            for (Node node : nodes) {
-                NodeList children = node.getChildNodes();
-                int nc = children.getLength();
-                String tgtAcc = null;
-                String tgtDb = null;
-                for (int j=0; j<nc; j++) {
-                    Node child = children.item(j);
-                    if ("accession".equals(child.getNodeName())) 
-                    {
-                        tgtAcc = child.getTextContent();
-                    } 
-                    else if ("databaseName".equals(child.getNodeName())) 
-                    {
-                        tgtDb = child.getTextContent();
-                    }
-                    if (tgtAcc!=null && tgtDb!=null) {
-                        DataSource tgtDs = DataSource.getByFullName(tgtDb);
-                        result.add(new Xref(tgtAcc, tgtDs));
-                        break;
+        /**
+         * Reads the identical and logical cross references of a getUPIForAccession response
+         * as a stream, taking the accession and databaseName children of each.
+         * An empty response means the accession is unknown.
+         */
+        static Set<Xref> readCrossReferences(InputStream in) throws IOException {
+            Set<Xref> result = new HashSet<Xref>();
+            PushbackInputStream is = new PushbackInputStream(in);
+            int first = is.read();
+            if (first < 0) return result;
+            is.unread(first);
+
+            try {
+                XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+                try {
+                    // depth below the current cross reference element, 0 when outside one
+                    int depth = 0;
+                    String tgtAcc = null;
+                    String tgtDb = null;
+                    while (reader.hasNext()) {
+                        int event = reader.next();
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            String name = reader.getLocalName();
+                            if (depth == 0) {
+                                if ("identicalCrossReferences".equals(name)
+                                        || "logicalCrossReferences".equals(name)) {
+                                    depth = 1;
+                                    tgtAcc = null;
+                                    tgtDb = null;
+                                }
+                            } else if (depth == 1 && "accession".equals(name)) {
+                                tgtAcc = reader.getElementText();
+                            } else if (depth == 1 && "databaseName".equals(name)) {
+                                tgtDb = reader.getElementText();
+                            } else {
+                                depth++;
+                            }
+                        } else if (event == XMLStreamConstants.END_ELEMENT && depth > 0) {
+                            depth--;
+                            if (depth == 0 && tgtAcc != null && tgtDb != null) {
+                                result.add(new Xref(tgtAcc, DataSource.getByFullName(tgtDb)));
+                            }
+                        }
                     }
+                } finally {
+                    reader.close();
                 }
+            } catch (XMLStreamException e) {
+                throw new IOException("Could not parse cross references: " + e.getMessage(), e);
             }
-
             return result;
         }
 }
@@ -0,0 +1,98 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.webservice.picr;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.junit.Assert;
+
+/**
+ * Tests the readers of the PICR REST responses on small documents, without the service.
+ */
+public class IDMapperPicrRestTest {
+
+	private static final String NS = " xmlns:ns2=\"http://model.picr.ebi.ac.uk\"";
+
+	private static InputStream stream(String document) throws IOException
+	{
+		return new ByteArrayInputStream(document.getBytes("UTF-8"));
+	}
+
+	@org.junit.Test public void testMappedDatabaseNames() throws IOException
+	{
+		List<String> names = IDMapperPicrRest.readMappedDatabaseNames(stream(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<ns2:mappedDatabasesList" + NS + ">"
+				+ "<ns2:mappedDatabases>SWISSPROT</ns2:mappedDatabases>"
+				+ "<ns2:mappedDatabases>ENSEMBL_HUMAN</ns2:mappedDatabases>"
+				+ "<ns2:mappedDatabases>A &amp; B</ns2:mappedDatabases>"
+				+ "</ns2:mappedDatabasesList>"));
+		Assert.assertEquals(Arrays.asList("SWISSPROT", "ENSEMBL_HUMAN", "A & B"), names);
+
+		Assert.assertTrue(IDMapperPicrRest.readMappedDatabaseNames(stream(
+				"<ns2:mappedDatabasesList" + NS + "/>")).isEmpty());
+	}
+
+	@org.junit.Test(expected = IOException.class) public void testMappedDatabaseNamesNotXml() throws IOException
+	{
+		IDMapperPicrRest.readMappedDatabaseNames(stream("Service unavailable"));
+	}
+
+	@org.junit.Test public void testCrossReferences() throws IOException
+	{
+		Set<Xref> result = IDMapperPicrRest.readCrossReferences(stream(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<ns2:upEntries" + NS + "><ns2:UPEntry>"
+				+ "<ns2:UPI>UPI0000000001</ns2:UPI>"
+				+ "<ns2:identicalCrossReferences>"
+				+ "<ns2:accession>P12345</ns2:accession>"
+				+ "<ns2:databaseName>PicrRestTest SWISSPROT</ns2:databaseName>"
+				+ "<ns2:extra><ns2:accession>nested</ns2:accession></ns2:extra>"
+				+ "</ns2:identicalCrossReferences>"
+				+ "<ns2:logicalCrossReferences>"
+				+ "<ns2:accession>ENSP&lt;1&gt;</ns2:accession>"
+				+ "<ns2:databaseName>PicrRestTest ENSEMBL</ns2:databaseName>"
+				+ "</ns2:logicalCrossReferences>"
+				+ "<ns2:logicalCrossReferences>"
+				+ "<ns2:accession>no database</ns2:accession>"
+				+ "</ns2:logicalCrossReferences>"
+				+ "</ns2:UPEntry></ns2:upEntries>"));
+		Assert.assertEquals(2, result.size());
+		Assert.assertTrue(result.contains(new Xref("P12345", DataSource.getByFullName("PicrRestTest SWISSPROT"))));
+		// escaped characters are decoded, and accessions nested deeper are ignored
+		Assert.assertTrue(result.contains(new Xref("ENSP<1>", DataSource.getByFullName("PicrRestTest ENSEMBL"))));
+	}
+
+	@org.junit.Test public void testEmptyCrossReferences() throws IOException
+	{
+		// PICR answers an accession it does not know with an empty body
+		Assert.assertTrue(IDMapperPicrRest.readCrossReferences(stream("")).isEmpty());
+		Assert.assertTrue(IDMapperPicrRest.readCrossReferences(stream("<ns2:upEntries" + NS + "/>")).isEmpty());
+	}
+
+	@org.junit.Test(expected = IOException.class) public void testCrossReferencesNotXml() throws IOException
+	{
+		IDMapperPicrRest.readCrossReferences(stream("Service unavailable"));
+	}
+}
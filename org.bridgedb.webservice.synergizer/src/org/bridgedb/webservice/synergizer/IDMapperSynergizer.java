@@ -32,6 +32,7 @@ import org.bridgedb.IDMapper;
 import org.bridgedb.IDMapperCapabilities;
 import org.bridgedb.IDMapperException;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
 import org.bridgedb.webservice.IDMapperWebservice;
 import org.bridgedb.Xref;
 
@@ -129,7 +130,8 @@ public class IDMapperSynergizer extends IDMapperWebservice
             String baseURL = SynergizerStub.defaultBaseURL;
 
             Map<String, String> info = 
-            	InternalUtils.parseLocation(location, "authority", "species");
+            	InternalUtils.parseLocation(location,
+            			CachedIDMapperWebservice.withOptions("authority", "species"));
             
             if (info.containsKey("BASE"))
             {
@@ -139,7 +141,8 @@ public class IDMapperSynergizer extends IDMapperWebservice
             String authority = info.get ("authority");
             // could be null
             String species = info.get ("species");
-            return new IDMapperSynergizer(authority, species, baseURL);
+            return CachedIDMapperWebservice.wrap(new IDMapperSynergizer(authority, species, baseURL),
+            		"idmapper-synergizer:" + baseURL + "?authority=" + authority + "&species=" + species, info);
 
         }
     }
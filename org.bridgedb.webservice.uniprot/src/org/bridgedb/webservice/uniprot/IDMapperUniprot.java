@@ -2,9 +2,11 @@ package org.bridgedb.webservice.uniprot;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,6 +27,8 @@ import org.bridgedb.IDMapperException;
 import org.bridgedb.Xref;
 import org.bridgedb.bio.BioDataSource;
 import org.bridgedb.impl.InternalUtils;
+import org.bridgedb.webservice.CachedIDMapperWebservice;
+import org.bridgedb.webservice.RequestScheduler;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -37,7 +41,10 @@ import com.google.common.collect.HashBiMap;
 public class IDMapperUniprot implements IDMapper
 {
 	private static final URI DEFAULT_BASE_URL = URI.create("http://www.uniprot.org/");
+	/** Number of ids per mapping query, unless set with the chunk-size option */
+	static final int DEFAULT_CHUNK_SIZE = 500;
 	private final URI baseURL;
+	private final RequestScheduler scheduler;
 	
 	static 
 	{
@@ -52,7 +59,8 @@ public class IDMapperUniprot implements IDMapper
 			URI baseURL = DEFAULT_BASE_URL;
 
 			Map<String, String> info = 
-				InternalUtils.parseLocation(location);
+				InternalUtils.parseLocation(location, 
+						CachedIDMapperWebservice.withOptions(RequestScheduler.OPTIONS));
 			
 			if (info.containsKey("BASE"))
 			{
@@ -62,17 +70,20 @@ public class IDMapperUniprot implements IDMapper
 				}					
 				baseURL = URI.create(base);
 			}
-			return new IDMapperUniprot(baseURL);
+			RequestScheduler scheduler = RequestScheduler.fromOptions(info, DEFAULT_CHUNK_SIZE);
+			return CachedIDMapperWebservice.wrap(new IDMapperUniprot(baseURL, scheduler),
+					"idmapper-uniprot:" + baseURL, info);
 		}
 	}
 	
 	
-	private IDMapperUniprot(URI baseURL)
+	private IDMapperUniprot(URI baseURL, RequestScheduler scheduler)
 	{
 		if (! (baseURL.isAbsolute())) {
 			throw new IllegalArgumentException("Base URL must be absolute: " + baseURL);
 		}
 		this.baseURL = baseURL;
+		this.scheduler = scheduler;
 	}
 
 
@@ -82,6 +93,7 @@ public class IDMapperUniprot implements IDMapper
 	public void close() throws IDMapperException
 	{
 		closed = true;
+		scheduler.shutdown();
 	}
 
 
@@ -138,40 +150,54 @@ public class IDMapperUniprot implements IDMapper
 		return response.split("\n");
 	}
 	
+	/**
+	 * Sends a mapping query for each chunk of source ids and target DataSource, 
+	 * several at a time, as set by the scheduler options of the connection string.
+	 */
 	@Override
 	public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources)
 			throws IDMapperException
 	{
 		if (closed) throw new IDMapperException ("Already closed");
 		
-		Map <Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
+		final Map <Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
 		
 		Map <DataSource, Set<Xref>> groupedByDataSource = InternalUtils.groupByDataSource(srcXrefs);
+		List<RequestScheduler.Request> requests = new ArrayList<RequestScheduler.Request>();
 		
-		for (DataSource srcDs : groupedByDataSource.keySet())
+		for (final DataSource srcDs : groupedByDataSource.keySet())
 		{
-			String srcFullName = aliasses.inverse().get(srcDs);
+			final String srcFullName = aliasses.inverse().get(srcDs);
 			if (!FROM_DATABASES.contains(srcFullName)) throw new IDMapperException ("DataSource " + srcFullName + " not supported");
 			
 			if (tgtDataSources.length == 0) throw new IDMapperException("Must specify at least one data source");
-			for (DataSource ds : tgtDataSources)
+			for (final DataSource ds : tgtDataSources)
 			{
-				String destFullName = aliasses.inverse().get(ds);
+				final String destFullName = aliasses.inverse().get(ds);
 				if (!TO_DATABASES.contains(destFullName)) throw new IDMapperException ("DataSource " + destFullName + " not supported");
 				
-				String query = InternalUtils.joinIds (groupedByDataSource.get(srcDs), " ");
-				
-				String[] lines = runMappingQuery(srcFullName, destFullName, query);
-				// skip header row				
-				for (int i = 1; i < lines.length; ++i)
+				requests.addAll(scheduler.split(groupedByDataSource.get(srcDs), new RequestScheduler.Query<Xref>()
 				{
-					String[] fields = lines[i].split("\t");
-					Xref src = new Xref(fields[0], srcDs);
-					Xref dest = new Xref(fields[1], ds);
-					InternalUtils.multiMapPut(result, src, dest);
-				}
+					public void run(List<Xref> chunk) throws IDMapperException
+					{
+						String[] lines = runMappingQuery(srcFullName, destFullName, InternalUtils.joinIds (chunk, " "));
+						synchronized (result)
+						{
+							// skip header row
+							for (int i = 1; i < lines.length; ++i)
+							{
+								String[] fields = lines[i].split("\t");
+								if (fields.length < 2) continue;
+								Xref src = new Xref(fields[0], srcDs);
+								Xref dest = new Xref(fields[1], ds);
+								InternalUtils.multiMapPut(result, src, dest);
+							}
+						}
+					}
+				}));
 			}
 		}
+		scheduler.run(requests);
 		return result;
 	}
 
@@ -354,6 +380,9 @@ public class IDMapperUniprot implements IDMapper
 	
 			if (status == HttpStatus.SC_OK)
 				return method.getResponseBodyAsString();
+			// server errors and 429 Too Many Requests may pass, so the scheduler retries them
+			else if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR || status == 429)
+				throw new IOException("Failed, got " + method.getStatusLine() + " for " + method.getURI());
 			else
 				throw new IDMapperException("Failed, got " + method.getStatusLine() + " for " + method.getURI());
 		}
@@ -0,0 +1,97 @@
+package org.bridgedb.webservice.uniprot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridgedb.BridgeDb;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.bridgedb.bio.BioDataSource;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs mapID against a local stand-in for the Uniprot mapping service,
+ * which fails the first request to check that it is retried.
+ */
+public class SchedulerTest extends TestCase
+{
+	private HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	public void setUp() throws Exception
+	{
+		BioDataSource.init();
+		Class.forName("org.bridgedb.webservice.uniprot.IDMapperUniprot");
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/mapping/", new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				if (requests.incrementAndGet() == 1)
+				{
+					failures.incrementAndGet();
+					exchange.sendResponseHeaders(503, -1);
+					exchange.close();
+					return;
+				}
+				Map<String, String> form = new HashMap<String, String>();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+				for (String pair : reader.readLine().split("&"))
+				{
+					int pos = pair.indexOf('=');
+					form.put(pair.substring(0, pos), URLDecoder.decode(pair.substring(pos + 1), "UTF-8"));
+				}
+				StringBuilder response = new StringBuilder("From\tTo\n");
+				for (String id : form.get("query").split(" "))
+				{
+					if (!id.startsWith("unknown")) response.append(id + "\t" + id.substring(1) + "\n");
+				}
+				byte[] bytes = response.toString().getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.start();
+	}
+
+	public void tearDown()
+	{
+		server.stop(0);
+	}
+
+	public void testMapID() throws IDMapperException
+	{
+		IDMapper mapper = BridgeDb.connect("idmapper-uniprot:http://localhost:" + server.getAddress().getPort()
+				+ "/?threads=3&chunk-size=10&interval=0&retries=2&backoff=1");
+		List<Xref> query = new ArrayList<Xref>();
+		for (int i = 0; i < 95; i++) query.add(new Xref("P" + i, BioDataSource.UNIPROT));
+		query.add(new Xref("unknown", BioDataSource.UNIPROT));
+
+		Map<Xref, Set<Xref>> result = mapper.mapID(query, BioDataSource.ENTREZ_GENE);
+		assertEquals(95, result.size());
+		assertTrue(result.get(new Xref("P42", BioDataSource.UNIPROT)).contains(new Xref("42", BioDataSource.ENTREZ_GENE)));
+		assertEquals(1, failures.get());
+		// ten chunks, and the retry of the one that failed
+		assertEquals(11, requests.get());
+		mapper.close();
+	}
+}
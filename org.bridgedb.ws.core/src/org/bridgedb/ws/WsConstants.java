@@ -40,6 +40,7 @@ public class WsConstants {
     public static final String IS_FREE_SEARCH_SUPPORTED = "isFreeSearchSupported";
     public static final String IS_MAPPING_SUPPORTED = "isMappingSupported";
     public static final String MAP_ID = "mapID";
+    public static final String METRICS = "metrics";
     public static final String PROPERTY = "property";
     public static final String XREF_EXISTS = "xrefExists";
 }
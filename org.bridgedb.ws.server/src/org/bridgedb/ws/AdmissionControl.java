@@ -0,0 +1,323 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.log4j.Logger;
+import org.bridgedb.utils.BridgeDBException;
+import org.bridgedb.utils.ConfigReader;
+
+/**
+ * Protects the web services from being overloaded by a single client.
+ * <p>
+ * Three independent limits are applied, each disabled by a value of zero or less.
+ * <ul>
+ * <li>The number of requests processed at once, with a bounded number waiting for a turn.
+ * <li>A token bucket per client so each client can only make so many requests a second.
+ * <li>A maximum weight for batch requests, being the source count times the expected fan out.
+ * </ul>
+ * The first two are applied by the AdmissionControlFilter and the last by the batch methods themselves.
+ */
+public class AdmissionControl {
+
+    static final String MAX_CONCURRENT = "http.admission.max.concurrent";
+    static final String MAX_QUEUED = "http.admission.max.queued";
+    static final String QUEUE_TIMEOUT = "http.admission.queue.timeout";
+    static final String RATE_LIMIT = "http.rate.limit.per.second";
+    static final String RATE_BURST = "http.rate.limit.burst";
+    static final String CLIENT_HEADER = "http.rate.limit.client.header";
+    static final String TRUSTED_PROXIES = "http.rate.limit.trusted.proxies";
+    static final String MAX_BATCH_WEIGHT = "http.batch.max.weight";
+    static final String BATCH_FAN_OUT = "http.batch.default.fanout";
+
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    //Clients not seen recently are forgotten so the buckets can not grow without limit
+    private static final int MAX_CLIENTS = 10000;
+    private static final long NANOS_PER_SECOND = 1000000000;
+
+    private static AdmissionControl instance = null;
+
+    private final int maxQueued;
+    private final long queueTimeout;
+    private final double rateLimit;
+    private final double burst;
+    private final String clientHeader;
+    private final int trustedProxies;
+    private final long maxBatchWeight;
+    private final int defaultFanOut;
+
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LinkedHashMap<String, TokenBucket> buckets;
+
+    static final Logger logger = Logger.getLogger(AdmissionControl.class);
+
+    /**
+     *
+     * @return AdmissionControl configured from the properties.
+     * @throws BridgeDBException if a property is not a number.
+     */
+    public static synchronized AdmissionControl getInstance() throws BridgeDBException{
+        if (instance == null){
+            try {
+                instance = new AdmissionControl(
+                        (int)readLong(MAX_CONCURRENT, 0),
+                        (int)readLong(MAX_QUEUED, 0),
+                        readLong(QUEUE_TIMEOUT, 10),
+                        readDouble(RATE_LIMIT, 0),
+                        readDouble(RATE_BURST, 1),
+                        ConfigReader.getProperty(CLIENT_HEADER),
+                        (int)readLong(TRUSTED_PROXIES, 1),
+                        readLong(MAX_BATCH_WEIGHT, 0),
+                        (int)readLong(BATCH_FAN_OUT, 1));
+            } catch (NumberFormatException ex){
+                throw new BridgeDBException("Illegal admission control property. ", ex);
+            }
+        }
+        return instance;
+    }
+
+    private static long readLong(String name, long defaultValue) throws BridgeDBException{
+        String property = ConfigReader.getProperty(name);
+        if (property == null || property.trim().isEmpty()){
+            return defaultValue;
+        }
+        return Long.parseLong(property.trim());
+    }
+
+    private static double readDouble(String name, double defaultValue) throws BridgeDBException{
+        String property = ConfigReader.getProperty(name);
+        if (property == null || property.trim().isEmpty()){
+            return defaultValue;
+        }
+        return Double.parseDouble(property.trim());
+    }
+
+    /**
+     *
+     * @param maxConcurrent Requests processed at once. Zero or less for no limit.
+     * @param maxQueued Requests allowed to wait for one of the maxConcurrent places.
+     * @param queueTimeout Seconds a request will wait for a place before being rejected.
+     * @param rateLimit Requests per second allowed per client. Zero or less for no limit.
+     * @param burst Requests a client can make at once after being idle.
+     * @param clientHeader Http header that identifies the client, such as X-Forwarded-For behind a proxy.
+     *     Null or empty to use the remote address.
+     * @param trustedProxies Number of proxies in front of the server that append to the clientHeader.
+     * @param maxBatchWeight Maximum source count times fan out of a batch request. Zero or less for no limit.
+     * @param defaultFanOut Results expected per source when no target patterns are given.
+     */
+    public AdmissionControl(int maxConcurrent, int maxQueued, long queueTimeout, double rateLimit, double burst,
+            String clientHeader, int trustedProxies, long maxBatchWeight, int defaultFanOut){
+        this.trustedProxies = Math.max(trustedProxies, 1);
+        this.maxQueued = Math.max(maxQueued, 0);
+        this.queueTimeout = Math.max(queueTimeout, 0);
+        this.rateLimit = rateLimit;
+        this.burst = Math.max(burst, 1);
+        if (clientHeader == null || clientHeader.trim().isEmpty()){
+            this.clientHeader = null;
+        } else {
+            this.clientHeader = clientHeader.trim();
+        }
+        this.maxBatchWeight = maxBatchWeight;
+        this.defaultFanOut = Math.max(defaultFanOut, 1);
+        if (maxConcurrent > 0){
+            permits = new Semaphore(maxConcurrent, true);
+        } else {
+            permits = null;
+        }
+        buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > MAX_CLIENTS;
+            }
+        };
+    }
+
+    /**
+     * Takes a token from the client's bucket.
+     *
+     * @param client Identifies the client, normally the value of the getClientHeader header or the remote address.
+     * @return Zero if the request may go ahead, otherwise the seconds until it could.
+     */
+    public long checkRate(String client){
+        if (rateLimit <= 0){
+            return 0;
+        }
+        long now = System.nanoTime();
+        synchronized (buckets){
+            TokenBucket bucket = buckets.get(client);
+            if (bucket == null){
+                bucket = new TokenBucket(now);
+                buckets.put(client, bucket);
+            }
+            return bucket.take(now);
+        }
+    }
+
+    /**
+     * Waits for a place to process a request.
+     * <p>
+     * Every successful call must be matched by a call to release.
+     * @return true if the request may go ahead, false if too many are already running or waiting.
+     */
+    public boolean acquire(){
+        if (permits == null){
+            return true;
+        }
+        if (permits.tryAcquire()){
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued){
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeout, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release(){
+        if (permits != null){
+            permits.release();
+        }
+    }
+
+    /**
+     * @return Seconds a rejected client should wait before trying again.
+     */
+    public long getRetryAfter(){
+        return Math.max(queueTimeout, 1);
+    }
+
+    /**
+     * @return Name of the header identifying the client or null to use the remote address.
+     */
+    public String getClientHeader(){
+        return clientHeader;
+    }
+
+    /**
+     * Finds the key for the client's token bucket.
+     * <p>
+     * Each proxy appends the address it received the request from to the header,
+     * so only the entries added by the trusted proxies can be believed.
+     * Anything to their left was sent by the client and could be made up to get a fresh bucket.
+     *
+     * @param headerValue Value of the getClientHeader header, may be null.
+     * @param remoteAddr Address the request came from.
+     * @return The address the first trusted proxy saw the request come from,
+     *     or the remote address if there is no header or it has fewer entries than trusted proxies.
+     */
+    public String client(String headerValue, String remoteAddr){
+        if (clientHeader == null || headerValue == null || headerValue.trim().isEmpty()){
+            return remoteAddr;
+        }
+        String[] hops = headerValue.split(",");
+        if (hops.length < trustedProxies){
+            return remoteAddr;
+        }
+        String client = hops[hops.length - trustedProxies].trim();
+        if (client.isEmpty()){
+            return remoteAddr;
+        }
+        return client;
+    }
+
+    public int getQueued(){
+        return queued.get();
+    }
+
+    public int getAvailable(){
+        if (permits == null){
+            return Integer.MAX_VALUE;
+        }
+        return permits.availablePermits();
+    }
+
+    /**
+     * Rejects batch requests that are expected to produce too many results.
+     *
+     * @param sources The source URIs or ids of the batch.
+     * @param targets The target patterns or codes. If null or empty the default fan out is used.
+     * @throws WebApplicationException with status 413 if the batch is too heavy.
+     */
+    public void checkBatch(Collection<?> sources, Collection<?> targets){
+        if (maxBatchWeight <= 0 || sources == null){
+            return;
+        }
+        long weight = weight(sources, targets);
+        if (weight > maxBatchWeight){
+            String message = "Batch of " + sources.size() + " sources has an expected weight of " + weight
+                    + " which is over the maximum of " + maxBatchWeight
+                    + ". Please split the request into smaller batches.";
+            logger.warn(message);
+            throw new WebApplicationException(Response.status(REQUEST_ENTITY_TOO_LARGE)
+                    .entity(message).type(MediaType.TEXT_PLAIN_TYPE).build());
+        }
+    }
+
+    /**
+     * @param sources The source URIs or ids of the batch.
+     * @param targets The target patterns or codes. If null or empty the default fan out is used.
+     * @return The number of sources times the expected results for each.
+     */
+    public long weight(Collection<?> sources, Collection<?> targets){
+        int fanOut = defaultFanOut;
+        if (targets != null && !targets.isEmpty()){
+            fanOut = targets.size();
+        }
+        return (long)sources.size() * fanOut;
+    }
+
+    private class TokenBucket {
+        private double tokens;
+        private long last;
+
+        private TokenBucket(long now){
+            tokens = burst;
+            last = now;
+        }
+
+        private long take(long now){
+            tokens = Math.min(burst, tokens + (now - last) * rateLimit / NANOS_PER_SECOND);
+            last = now;
+            if (tokens >= 1){
+                tokens-= 1;
+                return 0;
+            }
+            return (long)Math.ceil((1 - tokens) / rateLimit);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.log4j.Logger;
+import org.bridgedb.utils.BridgeDBException;
+
+/**
+ * Servlet filter that applies the AdmissionControl rate and concurrency limits.
+ * <p>
+ * Clients over their rate get a 429 (Too Many Requests) and requests that can not get a place in time
+ * get a 503 (Service Unavailable), both with a Retry-After header.
+ * The metrics endpoint is never limited so the overload can still be watched.
+ */
+public class AdmissionControlFilter implements Filter {
+
+    private AdmissionControl admissionControl;
+
+    static final Logger logger = Logger.getLogger(AdmissionControlFilter.class);
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        try {
+            admissionControl = AdmissionControl.getInstance();
+        } catch (BridgeDBException ex) {
+            throw new ServletException(ex);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)){
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest)request;
+        HttpServletResponse httpResponse = (HttpServletResponse)response;
+        if (WsConstants.METRICS.equals(RequestMetricsFilter.endpoint(httpRequest))){
+            chain.doFilter(request, response);
+            return;
+        }
+        String client = client(httpRequest);
+        long wait = admissionControl.checkRate(client);
+        if (wait > 0){
+            if (logger.isDebugEnabled()){
+                logger.debug("Rate limit reached for " + client);
+            }
+            reject(httpResponse, AdmissionControl.TOO_MANY_REQUESTS, wait,
+                    "Too many requests. Please slow down and try again in " + wait + " seconds.");
+            return;
+        }
+        if (!admissionControl.acquire()){
+            logger.warn("Server busy so rejecting request from " + client);
+            reject(httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, admissionControl.getRetryAfter(),
+                    "Server is busy. Please try again in " + admissionControl.getRetryAfter() + " seconds.");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admissionControl.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private String client(HttpServletRequest request){
+        String header = admissionControl.getClientHeader();
+        if (header == null){
+            return request.getRemoteAddr();
+        }
+        return admissionControl.client(request.getHeader(header), request.getRemoteAddr());
+    }
+
+    private void reject(HttpServletResponse response, int status, long retryAfter, String message)
+            throws IOException {
+        response.setStatus(status);
+        response.setHeader("Retry-After", Long.toString(retryAfter));
+        response.setContentType("text/plain");
+        response.getWriter().write(message);
+    }
+}
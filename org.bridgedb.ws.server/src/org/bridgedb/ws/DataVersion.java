@@ -0,0 +1,138 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.apache.log4j.Logger;
+import org.bridgedb.IDMapper;
+import org.bridgedb.sql.SQLListener;
+
+/**
+ * Tracks the version of the data behind an IDMapper so responses can carry HTTP cache validators.
+ * <p>
+ * The version is the LastUpdates property which the SQLListener sets each time a load completes.
+ * Mappers without that property are treated as unchanging from the moment this object was created.
+ * <p>
+ * Reading the property costs a query so it is only rechecked once the refresh interval has passed.
+ */
+public class DataVersion {
+
+    //Format used by Date.toString() which is how SQLListener saves the LastUpdates property
+    private static final String LAST_UPDATES_FORMAT = "EEE MMM dd HH:mm:ss zzz yyyy";
+
+    private final IDMapper idMapper;
+    private final long refreshInterval;
+    private final Date created;
+
+    private String version;
+    private Date lastModified;
+    private long lastChecked;
+
+    static final Logger logger = Logger.getLogger(DataVersion.class);
+
+    /**
+     *
+     * @param idMapper Mapper whose LastUpdates property identifies the data version.
+     * @param refreshInterval Milliseconds a version read from the idMapper is trusted for.
+     */
+    public DataVersion(IDMapper idMapper, long refreshInterval){
+        this.idMapper = idMapper;
+        this.refreshInterval = refreshInterval;
+        //Http dates are only to the second
+        created = new Date((System.currentTimeMillis() / 1000) * 1000);
+        lastChecked = 0;
+    }
+
+    private synchronized void check(){
+        long now = System.currentTimeMillis();
+        if (version != null && now - lastChecked < refreshInterval){
+            return;
+        }
+        lastChecked = now;
+        String lastUpdates = null;
+        try {
+            lastUpdates = idMapper.getCapabilities().getProperty(SQLListener.LAST_UDPATES);
+        } catch (RuntimeException ex){
+            logger.warn("Unable to read " + SQLListener.LAST_UDPATES + " property ", ex);
+        }
+        if (lastUpdates == null || lastUpdates.isEmpty()){
+            if (version == null){
+                version = Long.toString(created.getTime());
+                lastModified = created;
+            }
+            return;
+        }
+        if (lastUpdates.equals(version)){
+            return;
+        }
+        if (version != null){
+            logger.info("Data version changed from " + version + " to " + lastUpdates);
+        }
+        version = lastUpdates;
+        lastModified = parseLastUpdates(lastUpdates);
+    }
+
+    private Date parseLastUpdates(String lastUpdates){
+        SimpleDateFormat format = new SimpleDateFormat(LAST_UPDATES_FORMAT, Locale.US);
+        try {
+            return format.parse(lastUpdates);
+        } catch (ParseException ex) {
+            logger.warn("Unable to parse " + SQLListener.LAST_UDPATES + " " + lastUpdates
+                    + " so using time change was detected.");
+            return new Date((System.currentTimeMillis() / 1000) * 1000);
+        }
+    }
+
+    /**
+     *
+     * @return String that changes every time the underlying data is reloaded.
+     */
+    public synchronized String getVersion(){
+        check();
+        return version;
+    }
+
+    /**
+     *
+     * @return Time the underlying data was last reloaded, or when this object was created if unknown.
+     */
+    public synchronized Date getLastModified(){
+        check();
+        return lastModified;
+    }
+
+    /**
+     * Builds a weak entity tag for a response based on the current data version.
+     *
+     * @param lensUri Lens the response was built with. May be null.
+     * @param mediaType Media type of the response as the same URI may return several representations.
+     * @return tag which changes whenever the data, lens or media type does.
+     */
+    public EntityTag getEntityTag(String lensUri, MediaType mediaType){
+        String key = lensUri + "|" + mediaType;
+        String tag = Integer.toHexString(getVersion().hashCode()) + "-" + Integer.toHexString(key.hashCode());
+        return new EntityTag(tag, true);
+    }
+}
@@ -0,0 +1,223 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per endpoint request counts, latency histograms and phase times for the web services.
+ * <p>
+ * Filled by RequestMetricsFilter and written out in the Prometheus text format by the metrics method.
+ * <p>
+ * The number of endpoints tracked is bounded so odd request paths can not grow the metrics without limit.
+ */
+public class RequestMetrics {
+
+    /**
+     * Upper bounds in seconds of the latency histogram buckets. An implicit +Inf bucket follows.
+     */
+    static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    static final int MAX_ENDPOINTS = 200;
+    static final String OTHER_ENDPOINT = "other";
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private static final RequestMetrics instance = new RequestMetrics();
+
+    private final Map<String, EndpointMetrics> endpoints = new HashMap<String, EndpointMetrics>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     *
+     * @return The metrics shared by the filter and the metrics endpoint.
+     */
+    public static RequestMetrics getInstance(){
+        return instance;
+    }
+
+    public RequestMetrics(){
+    }
+
+    /**
+     * Call as a request starts. Must be matched by a call to finished.
+     */
+    public void started(){
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param endpoint Name of the endpoint, normally the first part of the path.
+     * @param status Http status code returned.
+     * @param nanos Total time taken by the request.
+     * @param phases Nanoseconds spent in each phase as collected by RequestPhases.
+     */
+    public void finished(String endpoint, int status, long nanos, Map<String, Long> phases){
+        inFlight.decrementAndGet();
+        getEndpoint(endpoint).record(status, nanos, phases);
+    }
+
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    private synchronized EndpointMetrics getEndpoint(String endpoint){
+        EndpointMetrics result = endpoints.get(endpoint);
+        if (result == null){
+            if (endpoints.size() >= MAX_ENDPOINTS){
+                endpoint = OTHER_ENDPOINT;
+                result = endpoints.get(endpoint);
+            }
+            if (result == null){
+                result = new EndpointMetrics();
+                endpoints.put(endpoint, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param endpoint Name as passed to finished.
+     * @return Number of requests recorded for the endpoint.
+     */
+    public synchronized long getCount(String endpoint){
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null){
+            return 0;
+        }
+        return metrics.getCount();
+    }
+
+    public synchronized void clear(){
+        endpoints.clear();
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return metrics ready to be returned as text/plain.
+     */
+    public String toPrometheus(){
+        TreeMap<String, EndpointMetrics> sorted;
+        synchronized (this){
+            sorted = new TreeMap<String, EndpointMetrics>(endpoints);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP bridgedb_requests_in_flight Requests currently being processed.\n");
+        sb.append("# TYPE bridgedb_requests_in_flight gauge\n");
+        sb.append("bridgedb_requests_in_flight ").append(inFlight.get()).append("\n");
+
+        sb.append("# HELP bridgedb_requests_total Requests completed by endpoint and status.\n");
+        sb.append("# TYPE bridgedb_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry:sorted.entrySet()){
+            entry.getValue().appendCounts(sb, entry.getKey());
+        }
+
+        sb.append("# HELP bridgedb_request_duration_seconds Time taken to complete requests by endpoint.\n");
+        sb.append("# TYPE bridgedb_request_duration_seconds histogram\n");
+        for (Map.Entry<String, EndpointMetrics> entry:sorted.entrySet()){
+            entry.getValue().appendHistogram(sb, entry.getKey());
+        }
+
+        sb.append("# HELP bridgedb_request_phase_seconds_total Time spent in each phase of requests by endpoint. "
+                + "Phases may overlap.\n");
+        sb.append("# TYPE bridgedb_request_phase_seconds_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> entry:sorted.entrySet()){
+            entry.getValue().appendPhases(sb, entry.getKey());
+        }
+        return sb.toString();
+    }
+
+    static String escape(String value){
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos){
+        return Double.toString(nanos / NANOS_PER_SECOND);
+    }
+
+    private static class EndpointMetrics {
+        private final long[] buckets = new long[BUCKETS.length + 1];
+        private final Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+        private final Map<String, Long> phases = new TreeMap<String, Long>();
+        private long count = 0;
+        private long sumNanos = 0;
+
+        private synchronized void record(int status, long nanos, Map<String, Long> requestPhases){
+            count++;
+            sumNanos+= nanos;
+            double seconds = nanos / NANOS_PER_SECOND;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]){
+                bucket++;
+            }
+            buckets[bucket]++;
+            Long previous = statuses.get(status);
+            statuses.put(status, previous == null ? 1 : previous + 1);
+            for (Map.Entry<String, Long> entry:requestPhases.entrySet()){
+                previous = phases.get(entry.getKey());
+                phases.put(entry.getKey(), previous == null ? entry.getValue() : previous + entry.getValue());
+            }
+        }
+
+        private synchronized long getCount(){
+            return count;
+        }
+
+        private synchronized void appendCounts(StringBuilder sb, String endpoint){
+            for (Map.Entry<Integer, Long> entry:statuses.entrySet()){
+                sb.append("bridgedb_requests_total{endpoint=\"").append(escape(endpoint));
+                sb.append("\",status=\"").append(entry.getKey()).append("\"} ");
+                sb.append(entry.getValue()).append("\n");
+            }
+        }
+
+        private synchronized void appendHistogram(StringBuilder sb, String endpoint){
+            String label = "endpoint=\"" + escape(endpoint) + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++){
+                cumulative+= buckets[i];
+                sb.append("bridgedb_request_duration_seconds_bucket{").append(label);
+                sb.append(",le=\"").append(BUCKETS[i]).append("\"} ").append(cumulative).append("\n");
+            }
+            cumulative+= buckets[BUCKETS.length];
+            sb.append("bridgedb_request_duration_seconds_bucket{").append(label);
+            sb.append(",le=\"+Inf\"} ").append(cumulative).append("\n");
+            sb.append("bridgedb_request_duration_seconds_sum{").append(label).append("} ");
+            sb.append(seconds(sumNanos)).append("\n");
+            sb.append("bridgedb_request_duration_seconds_count{").append(label).append("} ");
+            sb.append(count).append("\n");
+        }
+
+        private synchronized void appendPhases(StringBuilder sb, String endpoint){
+            for (Map.Entry<String, Long> entry:phases.entrySet()){
+                sb.append("bridgedb_request_phase_seconds_total{endpoint=\"").append(escape(endpoint));
+                sb.append("\",phase=\"").append(escape(entry.getKey())).append("\"} ");
+                sb.append(seconds(entry.getValue())).append("\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.bridgedb.utils.RequestPhases;
+
+/**
+ * Servlet filter that times every request and records it in RequestMetrics.
+ * <p>
+ * The endpoint is the first part of the path after the context, so "map" for ".../map?uri=...".
+ * Serialization is measured from the first byte or character of the response body being written,
+ * through either getOutputStream or getWriter, until the request completes.
+ * As the body is written straight to the connection this includes the time taken to send it,
+ * so a slow client shows up as slow serialization.
+ * The other phases are collected from the mappers through RequestPhases.
+ */
+public class RequestMetricsFilter implements Filter {
+
+    static final String ROOT_ENDPOINT = "/";
+
+    private RequestMetrics metrics;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        metrics = RequestMetrics.getInstance();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)){
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest)request;
+        TimedResponse timedResponse = new TimedResponse((HttpServletResponse)response);
+        long start = System.nanoTime();
+        metrics.started();
+        RequestPhases.start();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, timedResponse);
+            failed = false;
+        } finally {
+            long end = System.nanoTime();
+            Map<String, Long> phases = RequestPhases.finish();
+            if (timedResponse.firstWrite != 0){
+                phases.put(RequestPhases.SERIALIZATION, end - timedResponse.firstWrite);
+            }
+            int status = timedResponse.status;
+            if (failed && status < HttpServletResponse.SC_BAD_REQUEST){
+                status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            }
+            metrics.finished(endpoint(httpRequest), status, end - start, phases);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    static String endpoint(HttpServletRequest request){
+        String path = request.getRequestURI();
+        String context = request.getContextPath();
+        if (path == null){
+            return ROOT_ENDPOINT;
+        }
+        if (context != null && path.startsWith(context)){
+            path = path.substring(context.length());
+        }
+        while (path.startsWith("/")){
+            path = path.substring(1);
+        }
+        int end = path.indexOf('/');
+        if (end >= 0){
+            path = path.substring(0, end);
+        }
+        end = path.indexOf(';');
+        if (end >= 0){
+            path = path.substring(0, end);
+        }
+        if (path.isEmpty()){
+            return ROOT_ENDPOINT;
+        }
+        return path;
+    }
+
+    /**
+     * Remembers the status set and when the body was first written.
+     */
+    private static class TimedResponse extends HttpServletResponseWrapper {
+
+        private int status = HttpServletResponse.SC_OK;
+        private long firstWrite = 0;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private TimedResponse(HttpServletResponse response){
+            super(response);
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            status = sc;
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            status = sc;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            status = sc;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            status = HttpServletResponse.SC_MOVED_TEMPORARILY;
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null){
+                final ServletOutputStream wrapped = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        written();
+                        wrapped.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (len > 0){
+                            written();
+                        }
+                        wrapped.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        wrapped.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        wrapped.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null){
+                final PrintWriter wrapped = super.getWriter();
+                writer = new PrintWriter(new Writer() {
+                    @Override
+                    public void write(char[] cbuf, int off, int len) throws IOException {
+                        if (len > 0){
+                            written();
+                        }
+                        wrapped.write(cbuf, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        wrapped.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        wrapped.close();
+                    }
+                });
+            }
+            return writer;
+        }
+
+        private void written(){
+            if (firstWrite == 0){
+                firstWrite = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded least recently used cache of the results built for web service requests.
+ * <p>
+ * Values are the beans or html pages a method builds, keyed by the method, media type and normalised parameters.
+ * All entries are dropped as soon as the DataVersion changes so a new load is seen straight away.
+ * <p>
+ * A cache with a maximum size of zero or less is disabled and never holds anything.
+ */
+public class ResponseCache {
+
+    //Values are written as their length, a colon and the text, so these never start a value
+    private static final char NULL_MARKER = '-';
+    private static final char LIST_MARKER = '*';
+
+    private final int maxSize;
+    private final DataVersion dataVersion;
+    private final LinkedHashMap<String, Object> cache;
+    private String version;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    static final Logger logger = Logger.getLogger(ResponseCache.class);
+
+    /**
+     *
+     * @param maxSize Maximum number of responses held. Zero or less disables the cache.
+     * @param dataVersion Version of the data the cached responses were built from.
+     */
+    public ResponseCache(int maxSize, DataVersion dataVersion){
+        this.maxSize = maxSize;
+        this.dataVersion = dataVersion;
+        //Access order so the eldest entry is the least recently used one
+        cache = new LinkedHashMap<String, Object>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > ResponseCache.this.maxSize){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Builds a key which is the same no matter the order of any list parameters.
+     * <p>
+     * Each value is written with its length, and nulls and lists with their own marker,
+     * so parameters that contain separators, or are null or empty, can not give the key of other parameters.
+     *
+     * @param method Name of the method (and possibly format) that built the response.
+     * @param parameters Parameters the response depends on. May include nulls and Collections.
+     * @return key to use with get and put
+     */
+    public static String key(String method, Object... parameters){
+        StringBuilder sb = new StringBuilder();
+        appendValue(sb, method);
+        for (Object parameter:parameters){
+            if (parameter instanceof Collection){
+                Collection<?> collection = (Collection<?>)parameter;
+                List<String> values = new ArrayList<String>(collection.size());
+                for (Object value:collection){
+                    StringBuilder part = new StringBuilder();
+                    appendValue(part, value);
+                    values.add(part.toString());
+                }
+                Collections.sort(values);
+                sb.append(LIST_MARKER).append(values.size()).append(':');
+                for (String value:values){
+                    sb.append(value);
+                }
+            } else {
+                appendValue(sb, parameter);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder sb, Object value){
+        if (value == null){
+            sb.append(NULL_MARKER);
+        } else {
+            String text = value.toString();
+            sb.append(text.length()).append(':').append(text);
+        }
+    }
+
+    public boolean isEnabled(){
+        return maxSize > 0;
+    }
+
+    /**
+     * Gets the version to pass to put, which must be obtained before the response is built.
+     * @return current data version
+     */
+    public synchronized String getVersion(){
+        checkVersion();
+        return version;
+    }
+
+    /**
+     *
+     * @param key As returned by key(..)
+     * @return The cached response or null if not cached.
+     */
+    public synchronized Object get(String key){
+        if (!isEnabled()){
+            return null;
+        }
+        checkVersion();
+        Object result = cache.get(key);
+        if (result == null){
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches a response unless the data changed while it was being built.
+     *
+     * @param key As returned by key(..)
+     * @param version As returned by getVersion() before the response was built.
+     * @param response bean or page to cache
+     */
+    public synchronized void put(String key, String version, Object response){
+        if (!isEnabled() || response == null){
+            return;
+        }
+        checkVersion();
+        if (this.version.equals(version)){
+            cache.put(key, response);
+        }
+    }
+
+    private void checkVersion(){
+        String current = dataVersion.getVersion();
+        if (!current.equals(version)){
+            if (version != null){
+                invalidations++;
+                logger.info("Clearing " + cache.size() + " cached responses as data version changed.");
+                cache.clear();
+            }
+            version = current;
+        }
+    }
+
+    public synchronized void clear(){
+        cache.clear();
+    }
+
+    public synchronized int size(){
+        return cache.size();
+    }
+
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+
+    public synchronized long getEvictions(){
+        return evictions;
+    }
+
+    public synchronized long getInvalidations(){
+        return invalidations;
+    }
+}
@@ -31,7 +31,9 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import org.apache.log4j.Logger;
 import org.bridgedb.DataSource;
 import org.bridgedb.IDMapper;
@@ -63,11 +65,26 @@ public class WSCoreService implements WSCoreInterface {
 
     static final String NO_CONTENT_ON_EMPTY = "no.content.on.empty";
     protected final boolean noContentOnEmpty;
+    
+    static final String CACHE_CONTROL = "http.cache.control";
+    static final String DEFAULT_CACHE_CONTROL = "no-cache";
+    static final String DATA_VERSION_REFRESH = "http.cache.version.refresh";
+    static final long DEFAULT_DATA_VERSION_REFRESH = 60000;
+    protected final String cacheControl;
+    protected final DataVersion dataVersion;
+
+    static final String METRICS_MEDIA_TYPE = "text/plain; version=0.0.4";
             
     static final Logger logger = Logger.getLogger(WSCoreService.class);
     
     protected IDMapper idMapper;
 
+    /**
+     * Injected per request by the container. Null when the service is called directly.
+     */
+    @Context
+    private Request request;
+
     /**
      * Default constructor for super classes.
      * 
@@ -81,6 +98,18 @@ public class WSCoreService implements WSCoreInterface {
         this.idMapper = idMapper;
         String property = ConfigReader.getProperty(NO_CONTENT_ON_EMPTY);
         noContentOnEmpty = Boolean.valueOf(property);
+        property = ConfigReader.getProperty(CACHE_CONTROL);
+        if (property == null){
+            cacheControl = DEFAULT_CACHE_CONTROL;
+        } else {
+            cacheControl = property.trim();
+        }
+        property = ConfigReader.getProperty(DATA_VERSION_REFRESH);
+        if (property == null || property.trim().isEmpty()){
+            dataVersion = new DataVersion(idMapper, DEFAULT_DATA_VERSION_REFRESH);
+        } else {
+            dataVersion = new DataVersion(idMapper, Long.parseLong(property.trim()) * 1000);
+        }
         logger.info("WS Service running using supplied idMapper");
     }
         
@@ -153,11 +182,15 @@ public class WSCoreService implements WSCoreInterface {
     public Response freeSearch(
             @QueryParam(WsConstants.TEXT) String text,
             @QueryParam(WsConstants.LIMIT) String limitString) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefsBean bean = freeSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_XML_TYPE);
         }
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     } 
     
     @GET
@@ -166,11 +199,15 @@ public class WSCoreService implements WSCoreInterface {
     public Response freeSearchJson(
             @QueryParam(WsConstants.TEXT) String text,
             @QueryParam(WsConstants.LIMIT) String limitString) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefsBean bean = freeSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_JSON_TYPE);
         }
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     } 
 
     @GET
@@ -180,11 +217,15 @@ public class WSCoreService implements WSCoreInterface {
             @QueryParam(WsConstants.TEXT) String text,
             @QueryParam(WsConstants.LIMIT) String limitString,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefsBean bean = freeSearchInner(text, limitString);
         if (noContentOnEmpty & bean.isEmpty()){
             return noContentWrapper(httpServletRequest);
         }
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.TEXT_HTML_TYPE);
     } 
 
     private XrefMapsBean mapIDInner(List<String> id, List<String> scrCode, List<String> targetCodes) throws BridgeDBException {
@@ -235,11 +276,15 @@ public class WSCoreService implements WSCoreInterface {
             @QueryParam(WsConstants.ID) List<String> id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) List<String> scrCode,
             @QueryParam(WsConstants.TARGET_DATASOURCE_SYSTEM_CODE) List<String> targetCodes) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefMapsBean bean = mapIDInner(id, scrCode, targetCodes);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_XML_TYPE);
         }
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);
     } 
 
     @GET
@@ -249,11 +294,15 @@ public class WSCoreService implements WSCoreInterface {
             @QueryParam(WsConstants.ID) List<String> id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) List<String> scrCode,
             @QueryParam(WsConstants.TARGET_DATASOURCE_SYSTEM_CODE) List<String> targetCodes) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefMapsBean bean = mapIDInner(id, scrCode, targetCodes);
         if (noContentOnEmpty & bean.isEmpty()){
-            return Response.noContent().build();
+            return cacheable(Response.noContent(), null, MediaType.APPLICATION_JSON_TYPE);
         }
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);
     } 
 
     @GET
@@ -264,11 +313,15 @@ public class WSCoreService implements WSCoreInterface {
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) List<String> scrCode,
             @QueryParam(WsConstants.TARGET_DATASOURCE_SYSTEM_CODE) List<String> targetCodes,
             @Context HttpServletRequest httpServletRequest) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.TEXT_HTML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefMapsBean bean = mapIDInner(id, scrCode, targetCodes);
         if (noContentOnEmpty & bean.isEmpty()){
             return noContentWrapper(httpServletRequest);
         }
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.TEXT_HTML_TYPE);
     } 
 
     private XrefExistsBean xrefExistsInner(String id, String scrCode) throws BridgeDBException {
@@ -300,8 +353,12 @@ public class WSCoreService implements WSCoreInterface {
     public Response xrefExists( 
             @QueryParam(WsConstants.ID) String id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) String scrCode) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_XML_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefExistsBean bean = xrefExistsInner(id, scrCode);
-        return Response.ok(bean, MediaType.APPLICATION_XML_TYPE).build();            
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_XML_TYPE), null, MediaType.APPLICATION_XML_TYPE);            
     }
     
     @GET
@@ -310,8 +367,12 @@ public class WSCoreService implements WSCoreInterface {
     public Response xrefExistsJson( 
             @QueryParam(WsConstants.ID) String id,
             @QueryParam(WsConstants.DATASOURCE_SYSTEM_CODE) String scrCode) throws BridgeDBException {
+        Response notModified = notModified(null, MediaType.APPLICATION_JSON_TYPE);
+        if (notModified != null){
+            return notModified;
+        }
         XrefExistsBean bean = xrefExistsInner(id, scrCode);
-        return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();            
+        return cacheable(Response.ok(bean, MediaType.APPLICATION_JSON_TYPE), null, MediaType.APPLICATION_JSON_TYPE);            
     }
 
    private DataSourcesBean getSupportedTgtDataSourcesInner() throws BridgeDBException {
@@ -516,6 +577,59 @@ public class WSCoreService implements WSCoreInterface {
         return Response.ok(bean, MediaType.APPLICATION_JSON_TYPE).build();
     }
 
+    /**
+     * Request counts, latencies and phase times recorded by the RequestMetricsFilter.
+     * @return metrics in the Prometheus text format
+     */
+    @GET
+    @Produces({METRICS_MEDIA_TYPE})
+    @Path("/" + WsConstants.METRICS)
+    public Response metrics() {
+        return Response.ok(RequestMetrics.getInstance().toPrometheus(), METRICS_MEDIA_TYPE)
+                .header("Cache-Control", "no-cache").build();
+    }
+
+    /**
+     * Checks the conditional headers of the current request against the data version.
+     * <p>
+     * Call before doing any work so that a client with a valid copy costs nothing.
+     * @param lensUri Lens the response would be built with. May be null.
+     * @param mediaType Media type the calling method produces.
+     * @return A 304 (Not Modified) response if the client's copy is still valid, otherwise null.
+     */
+    protected final Response notModified(String lensUri, MediaType mediaType){
+        if (request == null){
+            return null;
+        }
+        ResponseBuilder builder = request.evaluatePreconditions(dataVersion.getLastModified(), 
+                dataVersion.getEntityTag(lensUri, mediaType));
+        if (builder == null){
+            return null;
+        }
+        return addCacheHeaders(builder, lensUri, mediaType).build();
+    }
+    
+    /**
+     * Adds the ETag, Last-Modified and Cache-Control headers to a response that depends only on the data version.
+     * @param builder Response so far
+     * @param lensUri Lens the response was built with. May be null.
+     * @param mediaType Media type the calling method produces.
+     * @return The response with the cache headers added.
+     */
+    protected final Response cacheable(ResponseBuilder builder, String lensUri, MediaType mediaType){
+        return addCacheHeaders(builder, lensUri, mediaType).build();
+    }
+
+    private ResponseBuilder addCacheHeaders(ResponseBuilder builder, String lensUri, MediaType mediaType){
+        builder.tag(dataVersion.getEntityTag(lensUri, mediaType));
+        builder.lastModified(dataVersion.getLastModified());
+        builder.header("Vary", "Accept");
+        if (!cacheControl.isEmpty()){
+            builder.header("Cache-Control", cacheControl);
+        }
+        return builder;
+    }
+
     /**
      * Simple warning that no Context was found.
      * 
@@ -0,0 +1,99 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.ws.rs.WebApplicationException;
+import org.bridgedb.ws.AdmissionControl;
+import org.junit.Test;
+
+/**
+ * Tests the rate, concurrency and batch limits.
+ */
+public class AdmissionControlTest {
+
+    @Test
+    public void testRateLimit() {
+        AdmissionControl control = new AdmissionControl(0, 0, 0, 0.001, 2, null, 1, 0, 1);
+        assertEquals(0, control.checkRate("a"));
+        assertEquals(0, control.checkRate("a"));
+        assertTrue(control.checkRate("a") > 0);
+        //Each client has its own bucket
+        assertEquals(0, control.checkRate("b"));
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        AdmissionControl control = new AdmissionControl(1, 0, 0, 0, 1, null, 1, 0, 1);
+        assertTrue(control.acquire());
+        assertFalse(control.acquire());
+        control.release();
+        assertTrue(control.acquire());
+        control.release();
+    }
+
+    @Test
+    public void testBatchWeight() {
+        AdmissionControl control = new AdmissionControl(0, 0, 0, 0, 1, null, 1, 10, 5);
+        List<String> sources = Arrays.asList("1", "2");
+        assertEquals(10, control.weight(sources, null));
+        control.checkBatch(sources, null);
+        List<String> targets = Arrays.asList("x", "y", "z");
+        assertEquals(6, control.weight(sources, targets));
+        control.checkBatch(sources, targets);
+        try {
+            control.checkBatch(Arrays.asList("1", "2", "3"), null);
+            fail("Batch over the maximum weight accepted");
+        } catch (WebApplicationException ex){
+            assertEquals(AdmissionControl.REQUEST_ENTITY_TOO_LARGE, ex.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testClient() {
+        AdmissionControl control = new AdmissionControl(0, 0, 0, 0, 1, null, 1, 0, 1);
+        //Header ignored if not configured
+        assertEquals("10.0.0.1", control.client("1.1.1.1", "10.0.0.1"));
+        control = new AdmissionControl(0, 0, 0, 0, 1, "X-Forwarded-For", 1, 0, 1);
+        //The proxy appends the real client so a made up first entry is ignored
+        assertEquals("2.2.2.2", control.client("1.1.1.1, 2.2.2.2", "10.0.0.1"));
+        assertEquals("2.2.2.2", control.client("2.2.2.2", "10.0.0.1"));
+        assertEquals("10.0.0.1", control.client(null, "10.0.0.1"));
+        control = new AdmissionControl(0, 0, 0, 0, 1, "X-Forwarded-For", 2, 0, 1);
+        assertEquals("2.2.2.2", control.client("1.1.1.1, 2.2.2.2, 10.0.0.2", "10.0.0.1"));
+        assertEquals("10.0.0.1", control.client("10.0.0.2", "10.0.0.1"));
+    }
+
+    @Test
+    public void testDisabled() {
+        AdmissionControl control = new AdmissionControl(0, 0, 0, 0, 1, null, 1, 0, 1);
+        for (int i = 0; i < 100; i++){
+            assertEquals(0, control.checkRate("a"));
+            assertTrue(control.acquire());
+        }
+        control.checkBatch(Arrays.asList(new String[1000]), null);
+    }
+}
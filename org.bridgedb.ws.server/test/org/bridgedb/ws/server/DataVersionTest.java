@@ -0,0 +1,67 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.ws.DataVersion;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the data version used for the http cache headers.
+ */
+public class DataVersionTest {
+
+    private static IDMapper idMapper;
+
+    @BeforeClass
+    public static void setupIDMapper() {
+        //Has no LastUpdates property
+        idMapper = new IDMapperStack();
+    }
+
+    @Test
+    public void testStableWithoutLastUpdates() {
+        DataVersion dataVersion = new DataVersion(idMapper, 0);
+        String version = dataVersion.getVersion();
+        assertNotNull(version);
+        assertNotNull(dataVersion.getLastModified());
+        assertEquals(version, dataVersion.getVersion());
+        assertEquals(dataVersion.getEntityTag("lens", MediaType.APPLICATION_XML_TYPE),
+                dataVersion.getEntityTag("lens", MediaType.APPLICATION_XML_TYPE));
+    }
+
+    @Test
+    public void testEntityTagVaries() {
+        DataVersion dataVersion = new DataVersion(idMapper, 60000);
+        EntityTag xml = dataVersion.getEntityTag(null, MediaType.APPLICATION_XML_TYPE);
+        EntityTag json = dataVersion.getEntityTag(null, MediaType.APPLICATION_JSON_TYPE);
+        EntityTag lens = dataVersion.getEntityTag("lens", MediaType.APPLICATION_XML_TYPE);
+        assertFalse(xml.equals(json));
+        assertFalse(xml.equals(lens));
+    }
+}
@@ -0,0 +1,109 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+package org.bridgedb.ws.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.bridgedb.utils.RequestPhases;
+import org.bridgedb.ws.RequestMetrics;
+import org.bridgedb.ws.RequestMetricsFilter;
+import org.junit.Test;
+
+/**
+ * Tests that the filter times the response body whichever way it is written.
+ */
+public class RequestMetricsFilterTest {
+
+    /**
+     * Stubs an interface, answering the listed methods and returning defaults for the rest.
+     */
+    private static <T> T stub(Class<T> type, final Object... answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                for (int i = 0; i < answers.length; i += 2) {
+                    if (method.getName().equals(answers[i])) {
+                        return answers[i + 1];
+                    }
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) {
+                    return false;
+                }
+                if (returnType == int.class) {
+                    return 0;
+                }
+                if (returnType == long.class) {
+                    return 0L;
+                }
+                return null;
+            }
+        }));
+    }
+
+    private static void filter(String endpoint, final String body, StringWriter out) throws Exception {
+        HttpServletRequest request = stub(HttpServletRequest.class,
+                "getRequestURI", "/bridgedb/" + endpoint, "getContextPath", "/bridgedb");
+        HttpServletResponse response = stub(HttpServletResponse.class, "getWriter", new PrintWriter(out));
+        FilterChain chain = new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                try {
+                    PrintWriter writer = response.getWriter();
+                    writer.print(body);
+                    writer.flush();
+                } catch (java.io.IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+        RequestMetricsFilter filter = new RequestMetricsFilter();
+        filter.init(null);
+        filter.doFilter(request, response, chain);
+    }
+
+    @Test
+    public void testWriterTimed() throws Exception {
+        StringWriter out = new StringWriter();
+        filter("filterWriterTest", "mapped", out);
+        assertEquals("mapped", out.toString());
+        RequestMetrics metrics = RequestMetrics.getInstance();
+        assertEquals(1, metrics.getCount("filterWriterTest"));
+        assertTrue(metrics.toPrometheus().contains("bridgedb_request_phase_seconds_total{endpoint=\"filterWriterTest\",phase=\""
+                + RequestPhases.SERIALIZATION + "\"}"));
+    }
+
+    @Test
+    public void testNothingWritten() throws Exception {
+        StringWriter out = new StringWriter();
+        filter("filterEmptyTest", "", out);
+        assertEquals(1, RequestMetrics.getInstance().getCount("filterEmptyTest"));
+        assertTrue(!RequestMetrics.getInstance().toPrometheus().contains("endpoint=\"filterEmptyTest\",phase=\""
+                + RequestPhases.SERIALIZATION + "\""));
+    }
+}
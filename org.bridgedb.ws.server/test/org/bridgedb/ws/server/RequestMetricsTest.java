@@ -0,0 +1,77 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.bridgedb.utils.RequestPhases;
+import org.bridgedb.ws.RequestMetrics;
+import org.junit.Test;
+
+/**
+ * Tests the request metrics and their Prometheus output.
+ */
+public class RequestMetricsTest {
+
+    private static final long MILLISECOND = 1000000;
+
+    @Test
+    public void testCountsAndHistogram() {
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.started();
+        metrics.started();
+        assertEquals(2, metrics.getInFlight());
+        Map<String, Long> phases = new HashMap<String, Long>();
+        phases.put(RequestPhases.DB_QUERY, 2 * MILLISECOND);
+        metrics.finished("map", 200, 3 * MILLISECOND, phases);
+        metrics.finished("map", 500, 300 * MILLISECOND, new HashMap<String, Long>());
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(2, metrics.getCount("map"));
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("bridgedb_requests_in_flight 0\n"));
+        assertTrue(text.contains("bridgedb_requests_total{endpoint=\"map\",status=\"200\"} 1\n"));
+        assertTrue(text.contains("bridgedb_requests_total{endpoint=\"map\",status=\"500\"} 1\n"));
+        assertTrue(text.contains("bridgedb_request_duration_seconds_bucket{endpoint=\"map\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("bridgedb_request_duration_seconds_bucket{endpoint=\"map\",le=\"0.25\"} 1\n"));
+        assertTrue(text.contains("bridgedb_request_duration_seconds_bucket{endpoint=\"map\",le=\"0.5\"} 2\n"));
+        assertTrue(text.contains("bridgedb_request_duration_seconds_bucket{endpoint=\"map\",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("bridgedb_request_duration_seconds_count{endpoint=\"map\"} 2\n"));
+        assertTrue(text.contains("bridgedb_request_phase_seconds_total{endpoint=\"map\",phase=\"db_query\"} 0.002\n"));
+    }
+
+    @Test
+    public void testPhasesOnlyRecordedOnceStarted() {
+        RequestPhases.record(RequestPhases.URI_RESOLUTION, RequestPhases.begin());
+        assertTrue(RequestPhases.finish().isEmpty());
+
+        RequestPhases.start();
+        long begin = RequestPhases.begin();
+        RequestPhases.record(RequestPhases.URI_RESOLUTION, begin);
+        RequestPhases.record(RequestPhases.URI_RESOLUTION, begin);
+        Map<String, Long> phases = RequestPhases.finish();
+        assertEquals(1, phases.size());
+        assertTrue(phases.get(RequestPhases.URI_RESOLUTION) >= 0);
+        assertTrue(RequestPhases.finish().isEmpty());
+    }
+}
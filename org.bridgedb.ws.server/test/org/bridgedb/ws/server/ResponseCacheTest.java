@@ -0,0 +1,102 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+//
+// Copyright 2006-2009  BridgeDb developers
+// Copyright 2012-2013  Christian Y. A. Brenninkmeijer
+// Copyright 2012-2013  OpenPhacts
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.ws.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import org.bridgedb.IDMapperStack;
+import org.bridgedb.ws.DataVersion;
+import org.bridgedb.ws.ResponseCache;
+import org.junit.Test;
+
+/**
+ * Tests the bounded response cache used by the web services.
+ */
+public class ResponseCacheTest {
+
+    private ResponseCache createCache(int size){
+        return new ResponseCache(size, new DataVersion(new IDMapperStack(), 60000));
+    }
+
+    @Test
+    public void testKeyIgnoresListOrder() {
+        String key1 = ResponseCache.key("map", "a", Arrays.asList("x", "y"), null);
+        String key2 = ResponseCache.key("map", "a", Arrays.asList("y", "x"), null);
+        assertEquals(key1, key2);
+        assertFalse(key1.equals(ResponseCache.key("map", "a", Arrays.asList("x", "y"), "lens")));
+        assertFalse(key1.equals(ResponseCache.key("mapUri", "a", Arrays.asList("x", "y"), null)));
+    }
+
+    @Test
+    public void testKeyKeepsParametersApart() {
+        assertFalse(ResponseCache.key("map", "a\nb").equals(ResponseCache.key("map", "a", "b")));
+        assertFalse(ResponseCache.key("map", "a", "").equals(ResponseCache.key("map", "a", (Object)null)));
+        assertFalse(ResponseCache.key("map", "null").equals(ResponseCache.key("map", (Object)null)));
+        assertFalse(ResponseCache.key("map", Arrays.asList("a\tb")).equals(ResponseCache.key("map", Arrays.asList("a", "b"))));
+        assertFalse(ResponseCache.key("map", Arrays.asList("null")).equals(ResponseCache.key("map", Arrays.asList((String)null))));
+        assertFalse(ResponseCache.key("map", Arrays.asList()).equals(ResponseCache.key("map", (Object)null)));
+        assertFalse(ResponseCache.key("map", Arrays.asList("a")).equals(ResponseCache.key("map", "a")));
+        assertFalse(ResponseCache.key("map", Arrays.asList("a", "b"), "c").equals(ResponseCache.key("map", Arrays.asList("a"), "b", "c")));
+        assertEquals(ResponseCache.key("map", Arrays.asList("b", null)), ResponseCache.key("map", Arrays.asList(null, "b")));
+    }
+
+    @Test
+    public void testGetAndPut() {
+        ResponseCache cache = createCache(10);
+        String key = ResponseCache.key("map", "a");
+        assertNull(cache.get(key));
+        cache.put(key, cache.getVersion(), "result");
+        assertEquals("result", cache.get(key));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ResponseCache cache = createCache(2);
+        String version = cache.getVersion();
+        cache.put("one", version, "1");
+        cache.put("two", version, "2");
+        cache.get("one");
+        cache.put("three", version, "3");
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("one"));
+        assertNull(cache.get("two"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testStaleVersionNotCached() {
+        ResponseCache cache = createCache(10);
+        cache.put("one", "someOlderVersion", "1");
+        assertNull(cache.get("one"));
+    }
+
+    @Test
+    public void testDisabled() {
+        ResponseCache cache = createCache(0);
+        cache.put("one", cache.getVersion(), "1");
+        assertNull(cache.get("one"));
+        assertEquals(0, cache.size());
+    }
+}
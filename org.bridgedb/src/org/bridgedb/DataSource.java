@@ -19,11 +19,14 @@ package org.bridgedb;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
 Contains information about a certain DataSource. This includes:
@@ -52,6 +55,9 @@ handle unknown data sources in the same
 way as predefined ones.
 <p>
 Definitions for common DataSources can be found in {@link org.bridgedb.bio.BioDataSource}.
+<p>
+The lookup methods are safe to call from several threads, also while other threads register
+DataSources. Registration itself is serialized.
 */
 public final class DataSource
 {
@@ -59,11 +65,71 @@ public final class DataSource
     private static final String IDENTIFIERS_ORG_PREFIX = "http://identifiers.org/";
     public static final String UNKOWN = "unknown";
 
-    private static Map<String, DataSource> bySysCode = new HashMap<String, DataSource>();
-	private static Map<String, DataSource> byFullName = new HashMap<String, DataSource>();
-	private static Set<DataSource> registry = new HashSet<DataSource>();
-	private static Map<String, DataSource> byAlias = new HashMap<String, DataSource>();
-	private static Map<String, DataSource> byMiriamBase = new HashMap<String, DataSource>();
+    private static Map<String, DataSource> bySysCode = new ConcurrentHashMap<String, DataSource>();
+	private static Map<String, DataSource> byFullName = new ConcurrentHashMap<String, DataSource>();
+	private static Set<DataSource> registry = Collections.newSetFromMap(new ConcurrentHashMap<DataSource, Boolean>());
+	private static Map<String, DataSource> byAlias = new ConcurrentHashMap<String, DataSource>();
+	private static Map<String, DataSource> byMiriamBase = new ConcurrentHashMap<String, DataSource>();
+
+	/** incremented when a DataSource is registered or its primary-ness, type or organism changes */
+	private static final AtomicInteger version = new AtomicInteger();
+	private static volatile Snapshot snapshot = null;
+
+	/**
+	 * The DataSources at one version of the registry, indexed by organism for getFilteredSet.
+	 * Rebuilt on the first call after a change, which in practice only happens while starting up.
+	 */
+	private static final class Snapshot
+	{
+		private final int version;
+		private final List<DataSource> all = new ArrayList<DataSource>();
+		private final List<DataSource> anyOrganism = new ArrayList<DataSource>();
+		// getFilteredSet compares organisms by identity
+		private final Map<Object, List<DataSource>> byOrganism = new IdentityHashMap<Object, List<DataSource>>();
+
+		private Snapshot(int version)
+		{
+			this.version = version;
+			for (DataSource ds : registry)
+			{
+				all.add(ds);
+				if (ds.organism == null)
+				{
+					anyOrganism.add(ds);
+				}
+				else
+				{
+					List<DataSource> list = byOrganism.get(ds.organism);
+					if (list == null)
+					{
+						list = new ArrayList<DataSource>();
+						byOrganism.put(ds.organism, list);
+					}
+					list.add(ds);
+				}
+			}
+		}
+	}
+
+	private static Snapshot getSnapshot()
+	{
+		Snapshot current = snapshot;
+		int now = version.get();
+		if (current == null || current.version != now)
+		{
+			current = new Snapshot(now);
+			snapshot = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Null safe lookup, as the concurrent maps do not accept null keys.
+	 */
+	private static DataSource lookup(Map<String, DataSource> map, String key)
+	{
+		return key == null ? null : map.get(key);
+	}
 	
 	private String sysCode = null;
 	private String fullName = null;
@@ -402,6 +468,7 @@ public final class DataSource
 		{
             //To change this method to check if previously set the type would have to be changed to Boolean and default to null
 			current.isPrimary = isPrimary;
+			version.incrementAndGet();
 			return this;
 		}
 		
@@ -444,6 +511,7 @@ public final class DataSource
             }
             if (current.type.equals(UNKOWN)){
                 current.type = type;
+                version.incrementAndGet();
                 return this;
             }
             if (current.type.equals(type)){
@@ -466,6 +534,7 @@ public final class DataSource
             }
             if (current.organism == null){
                 current.organism = organism;
+                version.incrementAndGet();
                 return this;
             }
             if (current.organism.equals(organism)){
@@ -620,12 +689,12 @@ public final class DataSource
         return findOrRegister(sysCode, fullName);
     }
             
-    private static Builder findOrRegister(String sysCode, String fullName)
+    private static synchronized Builder findOrRegister(String sysCode, String fullName)
 	{
  		DataSource current = null;
 		if (fullName == null && sysCode == null) throw new NullPointerException();
 		
-		if (byFullName.containsKey(fullName))
+		if (lookup(byFullName, fullName) != null)
 		{
 			current = byFullName.get(fullName);
 			if (strictDataSourceChecking) {
@@ -643,7 +712,7 @@ public final class DataSource
 				}
 			}
 		}
-		else if (bySysCode.containsKey(sysCode))
+		else if (lookup(bySysCode, sysCode) != null)
 		{
             current = bySysCode.get(sysCode);
             if (strictDataSourceChecking) {
@@ -664,6 +733,7 @@ public final class DataSource
 		{
 			current = new DataSource (sysCode, fullName);
 			registry.add (current);
+			version.incrementAndGet();
 		}
 		
 		return new Builder(current);
@@ -671,6 +741,7 @@ public final class DataSource
     
 	public void registerAlias(String alias)
 	{
+		if (alias == null) return;
 		byAlias.put (alias, this);
 	}
 	
@@ -694,13 +765,22 @@ public final class DataSource
 	 */
 	public static DataSource getBySystemCode(String systemCode)
 	{
-		if (!bySysCode.containsKey(systemCode) && isSuitableKey(systemCode))
+		DataSource result = lookup(bySysCode, systemCode);
+		if (result == null && isSuitableKey(systemCode))
 		{
-            System.err.println("Warning creating a new DataSource with systemCode " + systemCode 
-                    + " and null fullName!");
-			findOrRegister (systemCode, null);
+			synchronized (DataSource.class)
+			{
+				// another thread may have registered it in the meantime
+				result = lookup(bySysCode, systemCode);
+				if (result == null)
+				{
+		            System.err.println("Warning creating a new DataSource with systemCode " + systemCode 
+		                    + " and null fullName!");
+					result = findOrRegister (systemCode, null).asDataSource();
+				}
+			}
 		}
-		return bySysCode.get(systemCode);
+		return result;
 	}
 	
 	/** 
@@ -710,8 +790,9 @@ public final class DataSource
 	 */
 	public static DataSource getExistingBySystemCode(String systemCode)
 	{
-		if (bySysCode.containsKey(systemCode)){
-    		return bySysCode.get(systemCode);
+		DataSource result = lookup(bySysCode, systemCode);
+		if (result != null){
+    		return result;
 		}
         throw new IllegalArgumentException("No DataSource known for " + systemCode);
 	}
@@ -724,7 +805,7 @@ public final class DataSource
      * @Since Version 2.0.0
      */
     public static boolean systemCodeExists(String systemCode){
-        return bySysCode.containsKey(systemCode);
+        return lookup(bySysCode, systemCode) != null;
     }
     
     /** 
@@ -737,13 +818,22 @@ public final class DataSource
 	 */
 	public static DataSource getByFullName(String fullName)
 	{
-		if (!byFullName.containsKey(fullName) && isSuitableKey(fullName))
+		DataSource result = lookup(byFullName, fullName);
+		if (result == null && isSuitableKey(fullName))
 		{
-            System.err.println("Warning creating a new DataSource with fullName " + fullName 
-                    + " and null systemCode!");
-			findOrRegister (null, fullName);
+			synchronized (DataSource.class)
+			{
+				// another thread may have registered it in the meantime
+				result = lookup(byFullName, fullName);
+				if (result == null)
+				{
+		            System.err.println("Warning creating a new DataSource with fullName " + fullName 
+		                    + " and null systemCode!");
+					result = findOrRegister (null, fullName).asDataSource();
+				}
+			}
 		}
-		return byFullName.get(fullName);
+		return result;
 	}
 	
 	/** 
@@ -754,8 +844,9 @@ public final class DataSource
 	 */
 	public static DataSource getExistingByFullName(String fullName)
 	{
-		if (byFullName.containsKey(fullName)){
-    		return byFullName.get(fullName);
+		DataSource result = lookup(byFullName, fullName);
+		if (result != null){
+    		return result;
         }
         throw new IllegalArgumentException ("No DataSource known for " + fullName);
 	}
@@ -768,12 +859,12 @@ public final class DataSource
      * @Since Version 2.0.0
      */
     public static boolean fullNameExists(String fullName){
-        return byFullName.containsKey(fullName);
+        return lookup(byFullName, fullName) != null;
     }
     
 	public static DataSource getByAlias(String alias)
 	{
-		return byAlias.get(alias);
+		return lookup(byAlias, alias);
 	}
 
 	/**
@@ -795,17 +886,31 @@ public final class DataSource
 	static public Set<DataSource> getFilteredSet (Boolean primary, Boolean metabolite, Object o)
 	{
 		final Set<DataSource> result = new HashSet<DataSource>();
-		for (DataSource ds : registry)
+		Snapshot current = getSnapshot();
+		if (o == null)
+		{
+			addFiltered(result, current.all, primary, metabolite);
+		}
+		else
+		{
+			addFiltered(result, current.anyOrganism, primary, metabolite);
+			List<DataSource> forOrganism = current.byOrganism.get(o);
+			if (forOrganism != null) addFiltered(result, forOrganism, primary, metabolite);
+		}
+		return result;
+	}
+
+	private static void addFiltered (Set<DataSource> result, List<DataSource> candidates, Boolean primary, Boolean metabolite)
+	{
+		for (DataSource ds : candidates)
 		{
 			if (
 					(primary == null || ds.isPrimary() == primary) &&
-					(metabolite == null || ds.isMetabolite() == metabolite) &&
-					(o == null || ds.organism == null || o == ds.organism))
+					(metabolite == null || ds.isMetabolite() == metabolite))
 			{
 				result.add (ds);
 			}
 		}
-		return result;
 	}
 	
 	/**
@@ -898,17 +1003,21 @@ public final class DataSource
 	 * @returns the DataSource for a given urn base, or null if the base is invalid or unknown.
      * @deprecated 
 	 */
-	public static DataSource getByUrnBase(String base)
+	public static synchronized DataSource getByUrnBase(String base)
 	{
 		if (base == null || !base.startsWith (URN_PREFIX))
 		{
 			return null;
 		}
         String key = base.substring(URN_PREFIX.length());      
-        if (byMiriamBase.containsKey(key)){
-            return byMiriamBase.get(key);
+        DataSource known = byMiriamBase.get(key);
+        if (known != null){
+            return known;
         }
         DataSource current = getByFullName(key);
+        if (current == null){
+            return null;
+        }
         current.miriamBase = key;
         byMiriamBase.put (key, current);
         return current;
@@ -939,8 +1048,6 @@ public final class DataSource
 		{
 			return null;
 		}
-		DataSource current = null;
-		
         String key = base.substring(IDENTIFIERS_ORG_PREFIX.length());
         if (key.endsWith("/")){
             key = key.substring(0, key.length()-1);
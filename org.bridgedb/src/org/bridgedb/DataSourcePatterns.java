@@ -16,24 +16,76 @@
 //
 package org.bridgedb;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
  * Contains regular expression patterns for identifiers
  * Can be used to guess the BioDataSource of an identifier
  * of unknown origin.
+ * <p>
+ * To guess a DataSource, only the patterns that can match the first character of the identifier
+ * are tried, so that the time does not grow with the number of registered patterns.
+ * Patterns are safe to register and match from several threads.
  */
 public final class DataSourcePatterns 
 {
 	/** private constructor, to prevent instantiation of utility class. */
 	private DataSourcePatterns() {}
 	
-	private static Map<DataSource, Pattern> patterns = new HashMap<DataSource, Pattern>();
+	private static final Map<DataSource, Pattern> patterns = new ConcurrentHashMap<DataSource, Pattern>();
+
+	/** 
+	 * Read only view of the patterns. Looking up null finds nothing, 
+	 * as it did when patterns was a HashMap, where the ConcurrentHashMap would throw.
+	 */
+	private static final Map<DataSource, Pattern> view = new AbstractMap<DataSource, Pattern>()
+	{
+		private final Map<DataSource, Pattern> unmodifiable = Collections.unmodifiableMap(patterns);
+
+		@Override
+		public Set<Map.Entry<DataSource, Pattern>> entrySet()
+		{
+			return unmodifiable.entrySet();
+		}
+
+		@Override
+		public Pattern get(Object key)
+		{
+			return key == null ? null : patterns.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return key != null && patterns.containsKey(key);
+		}
+
+		@Override
+		public Pattern remove(Object key)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int size()
+		{
+			return patterns.size();
+		}
+	};
+
+	/** incremented on every registration, so that the index is rebuilt */
+	private static final AtomicInteger version = new AtomicInteger();
+	private static volatile PatternIndex index = null;
 	
 	/**
 	 * Register a regex Pattern for recognizing a DataSource.
@@ -43,6 +95,7 @@ public final class DataSourcePatterns
 	public static void registerPattern (DataSource key, Pattern value)
 	{
 		patterns.put (key, value);
+		version.incrementAndGet();
 	}
 	
 	/**
@@ -52,13 +105,14 @@ public final class DataSourcePatterns
 	 */
 	public static Set<DataSource> getDataSourceMatches (String id)
 	{
-		Set<DataSource> result = new HashSet<DataSource>();
-		for (DataSource ds : patterns.keySet())
+		PatternIndex current = index;
+		int now = version.get();
+		if (current == null || current.version != now)
 		{
-			Matcher m = patterns.get(ds).matcher(id);					
-			if (m.matches()) result.add (ds);			
+			current = new PatternIndex(now, patterns);
+			index = current;
 		}
-		return result;
+		return current.matches(id);
 	}
 	
 	/**
@@ -70,10 +124,206 @@ public final class DataSourcePatterns
 	 * </pre>
 	 * <p>
 	 * There is not guaranteed to be a Pattern for every
-	 * BioDataSource constant.
+	 * BioDataSource constant. 
+	 * <p>
+	 * The map is a live view that can be read while patterns are registered.
+	 * It can not be modified: put and remove throw UnsupportedOperationException,
+	 * use {@link #registerPattern} instead. Looking up a null DataSource returns null.
 	 */
 	public static Map<DataSource, Pattern> getPatterns()
 	{
-		return patterns;
+		return view;
+	}
+
+	/**
+	 * The patterns at one version of the registry, grouped by the characters an identifier
+	 * that they match can start with.
+	 */
+	private static final class PatternIndex
+	{
+		private static final int ASCII = 128;
+
+		private final int version;
+		/** patterns per first character of the identifier, for ASCII characters */
+		private final List<List<Map.Entry<DataSource, Pattern>>> byFirst =
+			new ArrayList<List<Map.Entry<DataSource, Pattern>>>(ASCII);
+		/** patterns whose first character could not be worked out, tried for every identifier */
+		private final List<Map.Entry<DataSource, Pattern>> always = new ArrayList<Map.Entry<DataSource, Pattern>>();
+
+		private PatternIndex(int version, Map<DataSource, Pattern> patterns)
+		{
+			this.version = version;
+			for (int c = 0; c < ASCII; c++)
+			{
+				byFirst.add(new ArrayList<Map.Entry<DataSource, Pattern>>());
+			}
+			for (Map.Entry<DataSource, Pattern> entry : patterns.entrySet())
+			{
+				BitSet first = firstChars(entry.getValue());
+				if (first == null)
+				{
+					always.add(entry);
+				}
+				else
+				{
+					for (int c = first.nextSetBit(0); c >= 0; c = first.nextSetBit(c + 1))
+					{
+						byFirst.get(c).add(entry);
+					}
+				}
+			}
+		}
+
+		private Set<DataSource> matches(String id)
+		{
+			Set<DataSource> result = new HashSet<DataSource>();
+			if (id.length() > 0 && id.charAt(0) < ASCII)
+			{
+				for (Map.Entry<DataSource, Pattern> entry : byFirst.get(id.charAt(0)))
+				{
+					if (entry.getValue().matcher(id).matches()) result.add(entry.getKey());
+				}
+			}
+			for (Map.Entry<DataSource, Pattern> entry : always)
+			{
+				if (entry.getValue().matcher(id).matches()) result.add(entry.getKey());
+			}
+			return result;
+		}
+	}
+
+	private static final String META = "\\.[]{}()|*+?^$";
+
+	/**
+	 * Works out which characters an identifier matching the pattern can start with,
+	 * for patterns that start with a literal, \d, \w or a simple character class.
+	 * @param pattern pattern to analyse
+	 * @return the possible first characters, all ASCII, or null if they could not be worked out
+	 */
+	static BitSet firstChars(Pattern pattern)
+	{
+		String regex = pattern.pattern();
+		if ((pattern.flags() & (Pattern.CASE_INSENSITIVE | Pattern.LITERAL | Pattern.COMMENTS)) != 0) return null;
+		// Pattern.UNICODE_CHARACTER_CLASS, which makes \d and \w match beyond ASCII
+		if ((pattern.flags() & 0x100) != 0) return null;
+		if (hasTopLevelAlternative(regex)) return null;
+		int pos = regex.startsWith("^") ? 1 : 0;
+		if (pos >= regex.length()) return null;
+
+		BitSet result = new BitSet();
+		char c = regex.charAt(pos);
+		if (c == '\\')
+		{
+			if (pos + 1 >= regex.length() || !addEscape(result, regex.charAt(pos + 1))) return null;
+			pos += 2;
+		}
+		else if (c == '[')
+		{
+			int end = addClass(result, regex, pos + 1);
+			if (end < 0) return null;
+			pos = end + 1;
+		}
+		else if (c < 128 && META.indexOf(c) < 0)
+		{
+			result.set(c);
+			pos++;
+		}
+		else
+		{
+			return null;
+		}
+
+		// the first atom may be optional
+		if (pos < regex.length())
+		{
+			char q = regex.charAt(pos);
+			if (q == '?' || q == '*') return null;
+			if (q == '{' && (regex.startsWith("{0", pos) || regex.startsWith("{,", pos))) return null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the regex has a | outside of groups and character classes
+	 */
+	private static boolean hasTopLevelAlternative(String regex)
+	{
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < regex.length(); i++)
+		{
+			char c = regex.charAt(i);
+			if (c == '\\') i++;
+			else if (inClass) inClass = c != ']';
+			else if (c == '[') inClass = true;
+			else if (c == '(') depth++;
+			else if (c == ')') depth--;
+			else if (c == '|' && depth == 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return false if the escape is not a literal, \d or \w
+	 */
+	private static boolean addEscape(BitSet result, char c)
+	{
+		if (c == 'd')
+		{
+			result.set('0', '9' + 1);
+		}
+		else if (c == 'w')
+		{
+			result.set('0', '9' + 1);
+			result.set('A', 'Z' + 1);
+			result.set('a', 'z' + 1);
+			result.set('_');
+		}
+		else if (c < 128 && !Character.isLetterOrDigit(c))
+		{
+			result.set(c);
+		}
+		else
+		{
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the characters of a class of literals, ranges, \d and \w.
+	 * @param start position after the [
+	 * @return position of the closing ], or -1 if the class is negated or otherwise not simple
+	 */
+	private static int addClass(BitSet result, String regex, int start)
+	{
+		int pos = start;
+		if (pos < regex.length() && regex.charAt(pos) == '^') return -1;
+		while (pos < regex.length())
+		{
+			char c = regex.charAt(pos);
+			if (c == ']' && pos > start) return pos;
+			if (c == '[' || c == '&') return -1;
+			if (c == '\\')
+			{
+				if (pos + 1 >= regex.length() || !addEscape(result, regex.charAt(pos + 1))) return -1;
+				pos += 2;
+				continue;
+			}
+			if (c >= 128) return -1;
+			if (pos + 2 < regex.length() && regex.charAt(pos + 1) == '-' && regex.charAt(pos + 2) != ']')
+			{
+				char to = regex.charAt(pos + 2);
+				if (to == '\\' || to >= 128 || to < c) return -1;
+				result.set(c, to + 1);
+				pos += 3;
+			}
+			else
+			{
+				result.set(c);
+				pos++;
+			}
+		}
+		return -1;
 	}
 }
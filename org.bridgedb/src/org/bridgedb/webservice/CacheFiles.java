@@ -0,0 +1,110 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * File helpers shared by the on-disk caches of the web service drivers.
+ */
+public final class CacheFiles
+{
+	private CacheFiles() {}
+
+	/**
+	 * @return the SHA-1 of the UTF-8 bytes of text as 40 lower case hex digits,
+	 * 	used to name cache files after a url or key.
+	 */
+	public static String sha1(String text)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+			StringBuilder result = new StringBuilder();
+			for (byte b : digest) result.append(String.format("%02x", b & 0xff));
+			return result.toString();
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file in the same directory that is then renamed,
+	 * so that other processes sharing the directory never read half a file.
+	 * The directory is created if needed.
+	 * Failures only mean a cached value is fetched again, so they are reported but not thrown.
+	 * @param f file to write
+	 * @param content the new content of the file
+	 * @return true if the file was written
+	 */
+	public static boolean writeAtomically(File f, byte[] content)
+	{
+		File tmp = null;
+		try
+		{
+			File parent = f.getAbsoluteFile().getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs()) return false;
+			tmp = File.createTempFile("cache", ".tmp", parent);
+			OutputStream os = new FileOutputStream(tmp);
+			try
+			{
+				os.write(content);
+			}
+			finally
+			{
+				os.close();
+			}
+			if (!replace(tmp, f))
+			{
+				tmp.delete();
+				return false;
+			}
+			return true;
+		}
+		catch (IOException ex)
+		{
+			if (tmp != null) tmp.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Renames a completely written file over f.
+	 * @param tmp file in the same directory as f
+	 * @param f file to replace
+	 * @return true if tmp now is f, false if tmp is left where it was
+	 */
+	public static boolean replace(File tmp, File f)
+	{
+		if (tmp.renameTo(f)) return true;
+		//Windows does not rename over an existing file
+		f.delete();
+		return tmp.renameTo(f);
+	}
+}
@@ -0,0 +1,651 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.AttributeMapper;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperCapabilities;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+
+/**
+ * Caching decorator for IDMappers that call a web service, whose answers rarely change.
+ * <p>
+ * Results of mapID, xrefExists and getAttributes are kept in a bounded in-memory tier,
+ * and, if a cache directory is given, in an on-disk store that later runs read back.
+ * Each entry expires after a time to live.
+ * Empty results are cached too, with a shorter time to live,
+ * so ids unknown to the service are not looked up again on every call.
+ * Expired disk entries are deleted when they are read,
+ * and the whole directory is pruned the first time it is used in a run, see {@link #prune(File)}.
+ * All other calls go straight to the wrapped IDMapper.
+ * <p>
+ * Drivers enable the cache with the connection string options in {@link #OPTIONS}, for example
+ * <code>idmapper-uniprot:?cache=/tmp/bridgedb&amp;cache-ttl=86400</code>.
+ * The cache option is a directory, or "memory" to use the in-memory tier only.
+ * The times to live are in seconds.
+ */
+public class CachedIDMapperWebservice extends IDMapperWebservice
+{
+	public static final String CACHE = "cache";
+	public static final String CACHE_TTL = "cache-ttl";
+	public static final String CACHE_NEGATIVE_TTL = "cache-negative-ttl";
+	public static final String CACHE_SIZE = "cache-size";
+	/** Connection string options read by {@link #wrap} */
+	public static final String[] OPTIONS = { CACHE, CACHE_TTL, CACHE_NEGATIVE_TTL, CACHE_SIZE };
+
+	/** Value of the cache option for a cache without disk store */
+	public static final String MEMORY_ONLY = "memory";
+	public static final long DEFAULT_TTL = 24 * 60 * 60;
+	public static final long DEFAULT_NEGATIVE_TTL = 60 * 60;
+	public static final int DEFAULT_SIZE = 10000;
+	/** Age in milliseconds after which temporary files left by interrupted writes are deleted */
+	static final long TEMP_FILE_AGE = 60 * 60 * 1000;
+
+	/** Cache directories pruned in this run */
+	private static final Set<File> pruned = new HashSet<File>();
+
+	/**
+	 * Adds the cache options to the options of a driver, for use with InternalUtils.parseLocation.
+	 * @param driverParams options the driver reads itself
+	 * @return driverParams followed by {@link #OPTIONS}
+	 */
+	public static String[] withOptions(String... driverParams)
+	{
+		String[] result = Arrays.copyOf(driverParams, driverParams.length + OPTIONS.length);
+		System.arraycopy(OPTIONS, 0, result, driverParams.length, OPTIONS.length);
+		return result;
+	}
+
+	/**
+	 * Wraps an IDMapper in a cache if the connection string asked for one.
+	 * @param mapper the IDMapper to wrap
+	 * @param name identifies the service and its settings, so that mappers for different services
+	 * 	or species can share a cache directory. Usually the protocol and location without the cache options.
+	 * @param args connection string options as parsed by InternalUtils.parseLocation
+	 * @return mapper itself if the cache option is absent, otherwise the cached mapper,
+	 * 	which is also an AttributeMapper if mapper is.
+	 * @throws IDMapperException if an option is not valid or the cache directory can not be created
+	 */
+	public static IDMapper wrap(IDMapper mapper, String name, Map<String, String> args) throws IDMapperException
+	{
+		String cache = args.get(CACHE);
+		if (cache == null) return mapper;
+		File dir = null;
+		if (!MEMORY_ONLY.equals(cache))
+		{
+			dir = new File(cache);
+			if (!dir.isDirectory() && !dir.mkdirs())
+			{
+				throw new IDMapperException("Could not create cache directory " + dir);
+			}
+			boolean first;
+			synchronized (pruned)
+			{
+				first = pruned.add(dir.getAbsoluteFile());
+			}
+			if (first) prune(dir);
+		}
+		long ttl = DEFAULT_TTL;
+		long negativeTtl = DEFAULT_NEGATIVE_TTL;
+		int size = DEFAULT_SIZE;
+		try
+		{
+			if (args.containsKey(CACHE_TTL)) ttl = Long.parseLong(args.get(CACHE_TTL));
+			if (args.containsKey(CACHE_NEGATIVE_TTL)) negativeTtl = Long.parseLong(args.get(CACHE_NEGATIVE_TTL));
+			if (args.containsKey(CACHE_SIZE)) size = Integer.parseInt(args.get(CACHE_SIZE));
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new IDMapperException("Cache options must be numbers", ex);
+		}
+		if (mapper instanceof AttributeMapper)
+		{
+			return new Attributes(mapper, name, dir, ttl, negativeTtl, size);
+		}
+		return new CachedIDMapperWebservice(mapper, name, dir, ttl, negativeTtl, size);
+	}
+
+	private final IDMapper mapper;
+	private final String name;
+	private final File dir;
+	private final long ttl;
+	private final long negativeTtl;
+	private final Map<String, Entry> memory;
+
+	/**
+	 * @param mapper the IDMapper to wrap
+	 * @param name identifies the service and its settings in the disk store
+	 * @param dir directory of the disk store, or null to only cache in memory
+	 * @param ttl time to live of results in seconds
+	 * @param negativeTtl time to live of empty results in seconds
+	 * @param size maximum number of results kept in memory
+	 */
+	public CachedIDMapperWebservice(IDMapper mapper, String name, File dir, long ttl, long negativeTtl, final int size)
+	{
+		this.mapper = mapper;
+		this.name = name;
+		this.dir = dir;
+		this.ttl = ttl * 1000;
+		this.negativeTtl = negativeTtl * 1000;
+		memory = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+			{
+				return size() > size;
+			}
+		};
+	}
+
+	/** @return the wrapped IDMapper */
+	public IDMapper getMapper()
+	{
+		return mapper;
+	}
+
+	/**
+	 * Looks up each xref in the cache, and maps the rest in a single call to the wrapped IDMapper.
+	 * {@inheritDoc}
+	 */
+	public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources) throws IDMapperException
+	{
+		String targets = targetKey(tgtDataSources);
+		Map<Xref, Set<Xref>> result = new HashMap<Xref, Set<Xref>>();
+		Map<Xref, String> missing = new LinkedHashMap<Xref, String>();
+		for (Xref ref : srcXrefs)
+		{
+			String key = targets == null ? null : key("mapID", ref, targets);
+			Set<Xref> cached = key == null ? null : get(key, XREFS);
+			if (cached == null) missing.put(ref, key);
+			else if (!cached.isEmpty()) result.put(ref, new HashSet<Xref>(cached));
+		}
+		if (missing.isEmpty()) return result;
+
+		Map<Xref, Set<Xref>> mapped = mapper.mapID(missing.keySet(), tgtDataSources);
+		for (Map.Entry<Xref, String> e : missing.entrySet())
+		{
+			Set<Xref> refs = mapped.get(e.getKey());
+			if (refs == null) refs = new HashSet<Xref>();
+			if (e.getValue() != null) put(e.getValue(), new HashSet<Xref>(refs), refs.isEmpty(), XREFS);
+			if (!refs.isEmpty()) result.put(e.getKey(), refs);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	public boolean xrefExists(Xref xref) throws IDMapperException
+	{
+		String key = key("xrefExists", xref, "");
+		Boolean cached = key == null ? null : get(key, BOOLEAN);
+		if (cached != null) return cached;
+		boolean result = mapper.xrefExists(xref);
+		if (key != null) put(key, result, !result, BOOLEAN);
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	public Set<Xref> freeSearch(String text, int limit) throws IDMapperException
+	{
+		return mapper.freeSearch(text, limit);
+	}
+
+	/** {@inheritDoc} */
+	public IDMapperCapabilities getCapabilities()
+	{
+		return mapper.getCapabilities();
+	}
+
+	/** {@inheritDoc} */
+	public void close() throws IDMapperException
+	{
+		synchronized (memory)
+		{
+			memory.clear();
+		}
+		mapper.close();
+	}
+
+	/** {@inheritDoc} */
+	public boolean isConnected()
+	{
+		return mapper.isConnected();
+	}
+
+	/** The cached IDMapper for wrapped IDMappers that are also AttributeMappers */
+	private static final class Attributes extends CachedIDMapperWebservice implements AttributeMapper
+	{
+		private final AttributeMapper attributeMapper;
+
+		private Attributes(IDMapper mapper, String name, File dir, long ttl, long negativeTtl, int size)
+		{
+			super(mapper, name, dir, ttl, negativeTtl, size);
+			attributeMapper = (AttributeMapper)mapper;
+		}
+
+		public Set<String> getAttributes(Xref ref, String attrType) throws IDMapperException
+		{
+			String key = attrType.indexOf('\n') < 0 ? key("getAttributes", ref, attrType) : null;
+			Set<String> cached = key == null ? null : get(key, STRINGS);
+			if (cached != null) return new HashSet<String>(cached);
+			Set<String> result = attributeMapper.getAttributes(ref, attrType);
+			if (key != null && result != null) put(key, new HashSet<String>(result), result.isEmpty(), STRINGS);
+			return result;
+		}
+
+		public Map<String, Set<String>> getAttributes(Xref ref) throws IDMapperException
+		{
+			String key = key("getAllAttributes", ref, "");
+			Map<String, Set<String>> cached = key == null ? null : get(key, ATTRIBUTES);
+			if (cached != null) return copy(cached);
+			Map<String, Set<String>> result = attributeMapper.getAttributes(ref);
+			if (key != null && result != null) put(key, copy(result), result.isEmpty(), ATTRIBUTES);
+			return result;
+		}
+
+		public boolean isFreeAttributeSearchSupported()
+		{
+			return attributeMapper.isFreeAttributeSearchSupported();
+		}
+
+		public Map<Xref, String> freeAttributeSearch(String query, String attrType, int limit) throws IDMapperException
+		{
+			return attributeMapper.freeAttributeSearch(query, attrType, limit);
+		}
+
+		public Map<Xref, Set<String>> freeAttributeSearchEx(String query, String attrType, int limit) throws IDMapperException
+		{
+			return attributeMapper.freeAttributeSearchEx(query, attrType, limit);
+		}
+
+		public Set<String> getAttributeSet() throws IDMapperException
+		{
+			return attributeMapper.getAttributeSet();
+		}
+
+		private static Map<String, Set<String>> copy(Map<String, Set<String>> attributes)
+		{
+			Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+			for (Map.Entry<String, Set<String>> e : attributes.entrySet())
+			{
+				result.put(e.getKey(), new HashSet<String>(e.getValue()));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return the cache key of a call for an xref, or null if the xref can not be cached.
+	 */
+	String key(String method, Xref ref, String args)
+	{
+		String xref = encodeXref(ref);
+		return xref == null ? null : method + "\t" + xref + "\t" + args;
+	}
+
+	/** @return the target DataSources in a fixed order, or null if one of them can not be written. */
+	private static String targetKey(DataSource... tgtDataSources)
+	{
+		if (tgtDataSources == null || tgtDataSources.length == 0) return "*";
+		List<String> codes = new ArrayList<String>();
+		for (DataSource ds : tgtDataSources)
+		{
+			String code = encodeDataSource(ds);
+			if (code == null) return null;
+			codes.add(code);
+		}
+		Collections.sort(codes);
+		StringBuilder result = new StringBuilder();
+		for (String code : codes)
+		{
+			if (result.length() > 0) result.append(',');
+			result.append(code);
+		}
+		return result.toString();
+	}
+
+	private static final class Entry
+	{
+		private final Object value;
+		private final long expires;
+
+		private Entry(Object value, long expires)
+		{
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> T get(String key, Codec<T> codec)
+	{
+		long now = System.currentTimeMillis();
+		synchronized (memory)
+		{
+			Entry entry = memory.get(key);
+			if (entry != null)
+			{
+				if (entry.expires > now) return (T)entry.value;
+				memory.remove(key);
+			}
+		}
+		if (dir == null) return null;
+		Entry entry = read(key, codec, now);
+		if (entry == null) return null;
+		synchronized (memory)
+		{
+			memory.put(key, entry);
+		}
+		return (T)entry.value;
+	}
+
+	<T> void put(String key, T value, boolean empty, Codec<T> codec)
+	{
+		Entry entry = new Entry(value, System.currentTimeMillis() + (empty ? negativeTtl : ttl));
+		synchronized (memory)
+		{
+			memory.put(key, entry);
+		}
+		if (dir == null) return;
+		List<String> lines = codec.encode(value);
+		if (lines != null) write(key, entry.expires, lines);
+	}
+
+	/**
+	 * Each disk entry is a file named after a hash of the name and key,
+	 * holding the name, the key, the expiry time and then the encoded value, one item per line.
+	 * Expired entries are deleted.
+	 * @return the entry, or null if it is absent, expired or unreadable.
+	 */
+	private Entry read(String key, Codec<?> codec, long now)
+	{
+		File f = file(key);
+		if (!f.exists()) return null;
+		try
+		{
+			Entry result = null;
+			boolean expired = false;
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+			try
+			{
+				if (!name.equals(reader.readLine()) || !key.equals(reader.readLine())) return null;
+				long expires = Long.parseLong(reader.readLine());
+				if (expires <= now)
+				{
+					expired = true;
+				}
+				else
+				{
+					List<String> lines = new ArrayList<String>();
+					String line;
+					while ((line = reader.readLine()) != null) lines.add(line);
+					result = new Entry(codec.decode(lines), expires);
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+			//Deleted after closing, as Windows can not delete open files
+			if (expired) f.delete();
+			return result;
+		}
+		catch (IOException ex)
+		{
+			return null;
+		}
+		//Truncated files, or DataSources that are not registered in this run
+		catch (RuntimeException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file that is then renamed,
+	 * so that other processes sharing the directory never read half an entry.
+	 * Failures only mean the result is fetched again next time, so they are ignored.
+	 */
+	private void write(String key, long expires, List<String> lines)
+	{
+		StringBuilder content = new StringBuilder();
+		content.append(name).append('\n').append(key).append('\n').append(expires).append('\n');
+		for (String line : lines) content.append(line).append('\n');
+		try
+		{
+			CacheFiles.writeAtomically(file(key), content.toString().getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private File file(String key)
+	{
+		String hash = CacheFiles.sha1(name + "\n" + key);
+		return new File(new File(dir, hash.substring(0, 2)), hash.substring(2));
+	}
+
+	/**
+	 * Deletes the expired entries of a disk store, whichever service wrote them,
+	 * and the temporary files that interrupted writes left behind.
+	 * Entries that are not read again are otherwise never deleted.
+	 * {@link #wrap} calls this the first time each directory is used in a run.
+	 * @param dir directory of the disk store
+	 * @return the number of files deleted
+	 */
+	public static int prune(File dir)
+	{
+		File[] subdirs = dir.listFiles();
+		if (subdirs == null) return 0;
+		long now = System.currentTimeMillis();
+		int deleted = 0;
+		for (File subdir : subdirs)
+		{
+			File[] files = subdir.listFiles();
+			if (files == null) continue;
+			for (File f : files)
+			{
+				boolean expired = f.getName().endsWith(".tmp") ?
+						f.lastModified() + TEMP_FILE_AGE < now : readExpiry(f) <= now;
+				if (expired && f.delete()) deleted++;
+			}
+			//Only succeeds once the directory is empty
+			subdir.delete();
+		}
+		return deleted;
+	}
+
+	/** @return the expiry time of a disk entry, or Long.MAX_VALUE if it can not be read */
+	private static long readExpiry(File f)
+	{
+		try
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+			try
+			{
+				reader.readLine();
+				reader.readLine();
+				String expires = reader.readLine();
+				return expires == null ? Long.MAX_VALUE : Long.parseLong(expires);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			return Long.MAX_VALUE;
+		}
+		catch (NumberFormatException ex)
+		{
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/** Converts cached values to and from lines of the disk store */
+	abstract static class Codec<T>
+	{
+		/** @return the lines, or null if the value can not be written */
+		abstract List<String> encode(T value);
+
+		/** @throws IllegalArgumentException if the lines can not be read */
+		abstract T decode(List<String> lines);
+	}
+
+	/** @return "S" and the system code, or "F" and the full name, or null if the DataSource can not be written */
+	private static String encodeDataSource(DataSource ds)
+	{
+		if (ds == null) return null;
+		String result = ds.getSystemCode() != null ? "S" + ds.getSystemCode()
+				: ds.getFullName() != null ? "F" + ds.getFullName() : null;
+		return result == null || !writable(result) ? null : result;
+	}
+
+	private static DataSource decodeDataSource(String code)
+	{
+		if (code.startsWith("S")) return DataSource.getExistingBySystemCode(code.substring(1));
+		if (code.startsWith("F")) return DataSource.getExistingByFullName(code.substring(1));
+		throw new IllegalArgumentException("Unexpected DataSource " + code);
+	}
+
+	/** @return the xref as DataSource and id separated by a tab, or null if it can not be written */
+	private static String encodeXref(Xref ref)
+	{
+		if (ref == null || ref.getId() == null || !writable(ref.getId())) return null;
+		String ds = encodeDataSource(ref.getDataSource());
+		return ds == null ? null : ds + "\t" + ref.getId();
+	}
+
+	private static boolean writable(String text)
+	{
+		return text.indexOf('\t') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0;
+	}
+
+	static final Codec<Set<Xref>> XREFS = new Codec<Set<Xref>>()
+	{
+		List<String> encode(Set<Xref> value)
+		{
+			List<String> result = new ArrayList<String>();
+			for (Xref ref : value)
+			{
+				String line = encodeXref(ref);
+				if (line == null) return null;
+				result.add(line);
+			}
+			return result;
+		}
+
+		Set<Xref> decode(List<String> lines)
+		{
+			Set<Xref> result = new HashSet<Xref>();
+			for (String line : lines)
+			{
+				int pos = line.indexOf('\t');
+				result.add(new Xref(line.substring(pos + 1), decodeDataSource(line.substring(0, pos))));
+			}
+			return result;
+		}
+	};
+
+	static final Codec<Boolean> BOOLEAN = new Codec<Boolean>()
+	{
+		List<String> encode(Boolean value)
+		{
+			return Arrays.asList(value.toString());
+		}
+
+		Boolean decode(List<String> lines)
+		{
+			return Boolean.valueOf(lines.get(0));
+		}
+	};
+
+	static final Codec<Set<String>> STRINGS = new Codec<Set<String>>()
+	{
+		List<String> encode(Set<String> value)
+		{
+			for (String s : value)
+			{
+				if (s == null || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) return null;
+			}
+			return new ArrayList<String>(value);
+		}
+
+		Set<String> decode(List<String> lines)
+		{
+			return new HashSet<String>(lines);
+		}
+	};
+
+	/** Attributes of all types, one line per value, with the type and the value separated by a tab. */
+	static final Codec<Map<String, Set<String>>> ATTRIBUTES = new Codec<Map<String, Set<String>>>()
+	{
+		List<String> encode(Map<String, Set<String>> value)
+		{
+			List<String> result = new ArrayList<String>();
+			for (Map.Entry<String, Set<String>> e : value.entrySet())
+			{
+				if (!writable(e.getKey())) return null;
+				for (String s : e.getValue())
+				{
+					if (s == null || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) return null;
+					result.add(e.getKey() + "\t" + s);
+				}
+			}
+			return result;
+		}
+
+		Map<String, Set<String>> decode(List<String> lines)
+		{
+			Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+			for (String line : lines)
+			{
+				int pos = line.indexOf('\t');
+				String type = line.substring(0, pos);
+				Set<String> values = result.get(type);
+				if (values == null)
+				{
+					values = new HashSet<String>();
+					result.put(type, values);
+				}
+				values.add(line.substring(pos + 1));
+			}
+			return result;
+		}
+	};
+}
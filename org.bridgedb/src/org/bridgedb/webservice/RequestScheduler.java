@@ -0,0 +1,312 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.bridgedb.IDMapperException;
+
+/**
+ * Runs the queries of a web service IDMapper in chunks of ids, a limited number at a time.
+ * <p>
+ * Each chunk is sent as a separate request. At most threads requests run at once,
+ * and request starts are at least interval milliseconds apart, to be polite to the service.
+ * A request that fails with an IOException, or with an IDMapperException caused by one,
+ * is retried after a backoff that doubles with each attempt.
+ * Other failures, and the last failed attempt, stop the remaining requests and are thrown.
+ * <p>
+ * Queries add their rows to the result as they parse them, so a retried query must tolerate
+ * adding rows that an earlier attempt already added, for example by collecting them in sets.
+ * <p>
+ * Drivers read the settings from the connection string options in {@link #OPTIONS}, for example
+ * <code>idmapper-uniprot:?threads=2&amp;interval=500</code>.
+ */
+public class RequestScheduler
+{
+	public static final String THREADS = "threads";
+	public static final String INTERVAL = "interval";
+	public static final String CHUNK_SIZE = "chunk-size";
+	public static final String RETRIES = "retries";
+	public static final String BACKOFF = "backoff";
+	/** Connection string options read by {@link #fromOptions} */
+	public static final String[] OPTIONS = { THREADS, INTERVAL, CHUNK_SIZE, RETRIES, BACKOFF };
+
+	public static final int DEFAULT_THREADS = 4;
+	public static final long DEFAULT_INTERVAL = 100;
+	public static final int DEFAULT_RETRIES = 3;
+	public static final long DEFAULT_BACKOFF = 1000;
+
+	/**
+	 * Adds the scheduler options to the options of a driver, for use with InternalUtils.parseLocation.
+	 * @param driverParams options the driver reads itself
+	 * @return driverParams followed by {@link #OPTIONS}
+	 */
+	public static String[] withOptions(String... driverParams)
+	{
+		String[] result = Arrays.copyOf(driverParams, driverParams.length + OPTIONS.length);
+		System.arraycopy(OPTIONS, 0, result, driverParams.length, OPTIONS.length);
+		return result;
+	}
+
+	/**
+	 * @param args connection string options as parsed by InternalUtils.parseLocation
+	 * @param defaultChunkSize number of ids per request suited to the service, unless the options say otherwise
+	 * @return a scheduler with the settings in args, and defaults for the others
+	 * @throws IDMapperException if an option is not a valid number
+	 */
+	public static RequestScheduler fromOptions(Map<String, String> args, int defaultChunkSize) throws IDMapperException
+	{
+		try
+		{
+			return new RequestScheduler(
+					args.containsKey(THREADS) ? Integer.parseInt(args.get(THREADS)) : DEFAULT_THREADS,
+					args.containsKey(INTERVAL) ? Long.parseLong(args.get(INTERVAL)) : DEFAULT_INTERVAL,
+					args.containsKey(CHUNK_SIZE) ? Integer.parseInt(args.get(CHUNK_SIZE)) : defaultChunkSize,
+					args.containsKey(RETRIES) ? Integer.parseInt(args.get(RETRIES)) : DEFAULT_RETRIES,
+					args.containsKey(BACKOFF) ? Long.parseLong(args.get(BACKOFF)) : DEFAULT_BACKOFF);
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new IDMapperException("Scheduler options must be numbers", ex);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new IDMapperException(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * A query for a chunk of items, usually ids.
+	 */
+	public interface Query<T>
+	{
+		/**
+		 * Sends the request for the chunk and adds the parsed rows to the result.
+		 * @param chunk at most chunk size items
+		 * @throws IOException if the request failed in a way that may go away when retried
+		 * @throws IDMapperException if the request failed otherwise
+		 */
+		void run(List<T> chunk) throws IOException, IDMapperException;
+	}
+
+	/** A chunk and the query to run for it */
+	public static final class Request
+	{
+		private final Query<Object> query;
+		private final List<Object> chunk;
+
+		@SuppressWarnings("unchecked")
+		private <T> Request(Query<T> query, List<T> chunk)
+		{
+			this.query = (Query<Object>)query;
+			this.chunk = (List<Object>)chunk;
+		}
+	}
+
+	private final int threads;
+	private final long interval;
+	private final int chunkSize;
+	private final int retries;
+	private final long backoff;
+
+	private ExecutorService executor = null;
+	private long nextStart = 0;
+
+	/**
+	 * @param threads maximum number of requests running at once
+	 * @param interval minimum number of milliseconds between the starts of two requests
+	 * @param chunkSize maximum number of items per request
+	 * @param retries number of times a failed request is retried
+	 * @param backoff milliseconds to wait before the first retry, doubled for each next one
+	 */
+	public RequestScheduler(int threads, long interval, int chunkSize, int retries, long backoff)
+	{
+		if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+		if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be at least 1");
+		if (interval < 0 || retries < 0 || backoff < 0) throw new IllegalArgumentException("Scheduler options can not be negative");
+		this.threads = threads;
+		this.interval = interval;
+		this.chunkSize = chunkSize;
+		this.retries = retries;
+		this.backoff = backoff;
+	}
+
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/**
+	 * Splits the items into chunks with a request each.
+	 * @param items items to query for
+	 * @param query runs a chunk of the items
+	 * @return the requests, to be passed to {@link #run}
+	 */
+	public <T> List<Request> split(Collection<T> items, Query<T> query)
+	{
+		List<Request> result = new ArrayList<Request>();
+		List<T> list = new ArrayList<T>(items);
+		for (int start = 0; start < list.size(); start += chunkSize)
+		{
+			result.add(new Request(query, list.subList(start, Math.min(start + chunkSize, list.size()))));
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the requests and waits for them to finish.
+	 * @throws IDMapperException with the first failure that could not be retried
+	 */
+	public void run(List<Request> requests) throws IDMapperException
+	{
+		if (requests.size() == 1 || threads == 1)
+		{
+			for (Request request : requests) attempt(request);
+			return;
+		}
+		CompletionService<Void> completion = new ExecutorCompletionService<Void>(getExecutor());
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (final Request request : requests)
+		{
+			futures.add(completion.submit(new Callable<Void>()
+			{
+				public Void call() throws IDMapperException
+				{
+					attempt(request);
+					return null;
+				}
+			}));
+		}
+		try
+		{
+			for (int i = 0; i < futures.size(); i++)
+			{
+				completion.take().get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IDMapperException("Interrupted while waiting for the web service", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IDMapperException) throw (IDMapperException)ex.getCause();
+			throw new IDMapperException(ex.getCause());
+		}
+		finally
+		{
+			for (Future<Void> future : futures) future.cancel(true);
+		}
+	}
+
+	private void attempt(Request request) throws IDMapperException
+	{
+		for (int attempt = 0; ; attempt++)
+		{
+			Exception failure;
+			try
+			{
+				pace();
+				request.query.run(request.chunk);
+				return;
+			}
+			catch (IOException ex)
+			{
+				failure = ex;
+			}
+			catch (IDMapperException ex)
+			{
+				if (!(ex.getCause() instanceof IOException)) throw ex;
+				failure = ex;
+			}
+			if (attempt >= retries)
+			{
+				throw new IDMapperException("Request failed after " + (attempt + 1) + " attempts", failure);
+			}
+			sleep(backoff << Math.min(attempt, 20));
+		}
+	}
+
+	/** Waits until the start of the next request is at least interval after the previous one */
+	private void pace() throws IDMapperException
+	{
+		long wait;
+		synchronized (this)
+		{
+			long now = System.currentTimeMillis();
+			long start = Math.max(now, nextStart);
+			nextStart = start + interval;
+			wait = start - now;
+		}
+		sleep(wait);
+	}
+
+	private static void sleep(long millis) throws IDMapperException
+	{
+		if (millis <= 0) return;
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IDMapperException("Interrupted while waiting for the web service", ex);
+		}
+	}
+
+	private synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "bridgedb-webservice");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/** Stops the threads. Later calls to run start new ones. */
+	public synchronized void shutdown()
+	{
+		if (executor != null)
+		{
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DataSourcePatternsTest
+{
+	private static String first(String regex)
+	{
+		BitSet chars = DataSourcePatterns.firstChars(Pattern.compile(regex));
+		if (chars == null) return null;
+		StringBuilder result = new StringBuilder();
+		for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) result.append((char)c);
+		return result.toString();
+	}
+
+	@Test
+	public void testFirstChars()
+	{
+		assertEquals("E", first("ENSG\\d{11}"));
+		assertEquals("C", first("^CHEMBL\\d+$"));
+		assertEquals("0123456789", first("^\\d+$"));
+		assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ", first("^[A-Z]+[0-9]+$"));
+		assertEquals("0123456789CM", first("[\\dCM]G\\d{5}"));
+		assertEquals(":", first("\\:\\d+"));
+	}
+
+	@Test
+	public void testFirstCharsUnknown()
+	{
+		assertNull(first("^(CHEBI:)?\\d+$"));
+		assertNull(first("^\\d+\\.-|\\d+\\.\\d+$"));
+		assertNull(first("A?B"));
+		assertNull(first("A{0,1}B"));
+		assertNull(first("[^A]B"));
+		assertNull(first(".*"));
+		assertNull(DataSourcePatterns.firstChars(Pattern.compile("abc", Pattern.CASE_INSENSITIVE)));
+	}
+
+	@Test
+	public void testRegisterAfterMatching()
+	{
+		DataSource ds = DataSource.register("TpAt", "DataSourcePatternsTest").asDataSource();
+		assertFalse(DataSourcePatterns.getDataSourceMatches("XYZ123").contains(ds));
+		DataSourcePatterns.registerPattern(ds, Pattern.compile("XYZ\\d+"));
+		assertTrue(DataSourcePatterns.getDataSourceMatches("XYZ123").contains(ds));
+	}
+
+	@Test
+	public void testGetPatterns()
+	{
+		DataSource ds = DataSource.register("TpGp", "DataSourcePatternsTest getPatterns").asDataSource();
+		Map<DataSource, Pattern> patterns = DataSourcePatterns.getPatterns();
+		assertNull(patterns.get(null));
+		assertFalse(patterns.containsKey(null));
+		assertFalse(patterns.containsKey(ds));
+
+		DataSourcePatterns.registerPattern(ds, Pattern.compile("GP\\d+"));
+		// a live view
+		assertEquals("GP\\d+", patterns.get(ds).pattern());
+		assertTrue(patterns.entrySet().size() == patterns.size());
+		try
+		{
+			patterns.remove(ds);
+			fail("view can be modified");
+		}
+		catch (UnsupportedOperationException expected)
+		{
+		}
+		try
+		{
+			patterns.put(ds, Pattern.compile("x"));
+			fail("view can be modified");
+		}
+		catch (UnsupportedOperationException expected)
+		{
+		}
+	}
+}
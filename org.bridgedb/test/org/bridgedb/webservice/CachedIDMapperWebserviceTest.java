@@ -0,0 +1,249 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.AbstractIDMapper;
+import org.bridgedb.BridgeDb;
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapper;
+import org.bridgedb.IDMapperCapabilities;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.Xref;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachedIDMapperWebserviceTest
+{
+	/** Stands in for a web service, counting the calls that reach it */
+	private static class CountingMapper extends AbstractIDMapper
+	{
+		private final IDMapper mapper;
+		private int calls = 0;
+
+		private CountingMapper(IDMapper mapper)
+		{
+			this.mapper = mapper;
+		}
+
+		public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources) throws IDMapperException
+		{
+			calls++;
+			return mapper.mapID(srcXrefs, tgtDataSources);
+		}
+
+		public boolean xrefExists(Xref xref) throws IDMapperException
+		{
+			calls++;
+			return mapper.xrefExists(xref);
+		}
+
+		public Set<Xref> freeSearch(String text, int limit) throws IDMapperException
+		{
+			return mapper.freeSearch(text, limit);
+		}
+
+		public IDMapperCapabilities getCapabilities()
+		{
+			return mapper.getCapabilities();
+		}
+
+		public void close() throws IDMapperException {}
+
+		public boolean isConnected()
+		{
+			return true;
+		}
+	}
+
+	private IDMapper text;
+	private DataSource dsA;
+	private DataSource dsB;
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Class.forName("org.bridgedb.file.IDMapperText");
+		text = BridgeDb.connect("idmapper-text:" + getClass().getClassLoader().getResource("AB.csv"));
+		dsA = DataSource.getExistingByFullName("A");
+		dsB = DataSource.getExistingByFullName("B");
+		dir = File.createTempFile("bridgedb-cache", "");
+		dir.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		if (f.isDirectory())
+		{
+			for (File child : f.listFiles()) delete(child);
+		}
+		f.delete();
+	}
+
+	private IDMapper cached(CountingMapper mapper, String cache) throws IDMapperException
+	{
+		Map<String, String> args = new HashMap<String, String>();
+		args.put(CachedIDMapperWebservice.CACHE, cache);
+		return CachedIDMapperWebservice.wrap(mapper, "test", args);
+	}
+
+	@Test
+	public void testNoCacheOption() throws IDMapperException
+	{
+		CountingMapper counting = new CountingMapper(text);
+		Assert.assertSame(counting, CachedIDMapperWebservice.wrap(counting, "test", new HashMap<String, String>()));
+	}
+
+	@Test
+	public void testMemory() throws IDMapperException
+	{
+		CountingMapper counting = new CountingMapper(text);
+		IDMapper mapper = cached(counting, CachedIDMapperWebservice.MEMORY_ONLY);
+		Xref a1 = new Xref("a1", dsA);
+		Set<Xref> expected = text.mapID(a1, dsB);
+		Assert.assertEquals(expected, mapper.mapID(a1, dsB));
+		Assert.assertEquals(expected, mapper.mapID(a1, dsB));
+		Assert.assertEquals(1, counting.calls);
+
+		//Only the xref that is not cached yet reaches the service
+		Xref a2 = new Xref("a2", dsA);
+		Map<Xref, Set<Xref>> result = mapper.mapID(Arrays.asList(a1, a2), dsB);
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(2, counting.calls);
+	}
+
+	@Test
+	public void testNegative() throws IDMapperException
+	{
+		CountingMapper counting = new CountingMapper(text);
+		IDMapper mapper = cached(counting, CachedIDMapperWebservice.MEMORY_ONLY);
+		Xref unknown = new Xref("unknown", dsA);
+		Assert.assertTrue(mapper.mapID(unknown, dsB).isEmpty());
+		Assert.assertTrue(mapper.mapID(unknown, dsB).isEmpty());
+		Assert.assertFalse(mapper.xrefExists(unknown));
+		Assert.assertFalse(mapper.xrefExists(unknown));
+		Assert.assertEquals(2, counting.calls);
+	}
+
+	@Test
+	public void testDisk() throws IDMapperException
+	{
+		Xref a1 = new Xref("a1", dsA);
+		CountingMapper first = new CountingMapper(text);
+		Set<Xref> expected = cached(first, dir.getPath()).mapID(a1, dsB);
+		Assert.assertEquals(1, first.calls);
+
+		//A new run reads the result back from disk
+		CountingMapper second = new CountingMapper(text);
+		Assert.assertEquals(expected, cached(second, dir.getPath()).mapID(a1, dsB));
+		Assert.assertEquals(0, second.calls);
+	}
+
+	@Test
+	public void testExpiry() throws IDMapperException
+	{
+		CountingMapper counting = new CountingMapper(text);
+		IDMapper mapper = new CachedIDMapperWebservice(counting, "test", dir, 0, 0, 10);
+		Xref a1 = new Xref("a1", dsA);
+		mapper.mapID(a1, dsB);
+		mapper.mapID(a1, dsB);
+		Assert.assertEquals(2, counting.calls);
+	}
+
+	private static int countFiles(File f)
+	{
+		if (!f.isDirectory()) return 1;
+		int result = 0;
+		for (File child : f.listFiles()) result += countFiles(child);
+		return result;
+	}
+
+	@Test
+	public void testExpiredDeletedOnRead() throws IDMapperException
+	{
+		Xref a1 = new Xref("a1", dsA);
+		new CachedIDMapperWebservice(new CountingMapper(text), "test", dir, 0, 0, 10).mapID(a1, dsB);
+		Assert.assertEquals(1, countFiles(dir));
+
+		//The service fails, so nothing is written back after the expired entry is read
+		CountingMapper failing = new CountingMapper(text)
+		{
+			@Override
+			public Map<Xref, Set<Xref>> mapID(Collection<Xref> srcXrefs, DataSource... tgtDataSources) throws IDMapperException
+			{
+				throw new IDMapperException("Service down");
+			}
+		};
+		try
+		{
+			new CachedIDMapperWebservice(failing, "test", dir, 3600, 3600, 10).mapID(a1, dsB);
+			Assert.fail("Expected the failure of the service");
+		}
+		catch (IDMapperException ex)
+		{
+			//expected
+		}
+		Assert.assertEquals(0, countFiles(dir));
+	}
+
+	@Test
+	public void testPrune() throws Exception
+	{
+		Xref a1 = new Xref("a1", dsA);
+		new CachedIDMapperWebservice(new CountingMapper(text), "expired", dir, 0, 0, 10).mapID(a1, dsB);
+		new CachedIDMapperWebservice(new CountingMapper(text), "current", dir, 3600, 3600, 10).mapID(a1, dsB);
+		File subdir = dir.listFiles()[0];
+		File oldTemp = File.createTempFile("cache", ".tmp", subdir);
+		oldTemp.setLastModified(System.currentTimeMillis() - 2 * CachedIDMapperWebservice.TEMP_FILE_AGE);
+		File newTemp = File.createTempFile("cache", ".tmp", subdir);
+		Assert.assertEquals(4, countFiles(dir));
+
+		Assert.assertEquals(2, CachedIDMapperWebservice.prune(dir));
+		Assert.assertEquals(2, countFiles(dir));
+		Assert.assertTrue(newTemp.exists());
+		Assert.assertFalse(oldTemp.exists());
+
+		//The current entry is still read back
+		CountingMapper counting = new CountingMapper(text);
+		new CachedIDMapperWebservice(counting, "current", dir, 3600, 3600, 10).mapID(a1, dsB);
+		Assert.assertEquals(0, counting.calls);
+	}
+
+	@Test
+	public void testWrapPrunes() throws IDMapperException
+	{
+		new CachedIDMapperWebservice(new CountingMapper(text), "test", dir, 0, 0, 10).mapID(new Xref("a1", dsA), dsB);
+		Assert.assertEquals(1, countFiles(dir));
+		cached(new CountingMapper(text), dir.getPath());
+		Assert.assertEquals(0, countFiles(dir));
+	}
+}
@@ -0,0 +1,159 @@
+// BridgeDb,
+// An abstraction layer for identifier mapping services, both local and online.
+// Copyright 2006-2009 BridgeDb developers
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.bridgedb.webservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridgedb.IDMapperException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestSchedulerTest
+{
+	private RequestScheduler scheduler;
+
+	@After
+	public void tearDown()
+	{
+		if (scheduler != null) scheduler.shutdown();
+	}
+
+	private static List<Integer> items(int n)
+	{
+		List<Integer> result = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) result.add(i);
+		return result;
+	}
+
+	@Test
+	public void testChunksInParallel() throws IDMapperException
+	{
+		scheduler = new RequestScheduler(3, 0, 10, 0, 0);
+		final Set<Integer> seen = Collections.synchronizedSet(new HashSet<Integer>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger chunks = new AtomicInteger();
+		scheduler.run(scheduler.split(items(95), new RequestScheduler.Query<Integer>()
+		{
+			public void run(List<Integer> chunk) throws IOException
+			{
+				int now = running.incrementAndGet();
+				synchronized (maxRunning)
+				{
+					if (now > maxRunning.get()) maxRunning.set(now);
+				}
+				Assert.assertTrue(chunk.size() <= 10);
+				chunks.incrementAndGet();
+				seen.addAll(chunk);
+				try
+				{
+					Thread.sleep(20);
+				}
+				catch (InterruptedException ex)
+				{
+					throw new IOException(ex);
+				}
+				running.decrementAndGet();
+			}
+		}));
+		Assert.assertEquals(95, seen.size());
+		Assert.assertEquals(10, chunks.get());
+		Assert.assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void testRetry() throws IDMapperException
+	{
+		scheduler = new RequestScheduler(2, 0, 5, 2, 1);
+		final AtomicInteger attempts = new AtomicInteger();
+		scheduler.run(scheduler.split(items(5), new RequestScheduler.Query<Integer>()
+		{
+			public void run(List<Integer> chunk) throws IOException
+			{
+				if (attempts.incrementAndGet() < 3) throw new IOException("Service unavailable");
+			}
+		}));
+		Assert.assertEquals(3, attempts.get());
+	}
+
+	@Test
+	public void testRetriesExhausted()
+	{
+		scheduler = new RequestScheduler(2, 0, 5, 1, 1);
+		final AtomicInteger attempts = new AtomicInteger();
+		try
+		{
+			scheduler.run(scheduler.split(items(5), new RequestScheduler.Query<Integer>()
+			{
+				public void run(List<Integer> chunk) throws IDMapperException
+				{
+					attempts.incrementAndGet();
+					throw new IDMapperException("IO Error", new IOException("Connection reset"));
+				}
+			}));
+			Assert.fail("Expected IDMapperException");
+		}
+		catch (IDMapperException ex)
+		{
+			Assert.assertEquals(2, attempts.get());
+		}
+	}
+
+	@Test
+	public void testNoRetryForOtherFailures()
+	{
+		scheduler = new RequestScheduler(1, 0, 5, 3, 1);
+		final AtomicInteger attempts = new AtomicInteger();
+		try
+		{
+			scheduler.run(scheduler.split(items(5), new RequestScheduler.Query<Integer>()
+			{
+				public void run(List<Integer> chunk) throws IDMapperException
+				{
+					attempts.incrementAndGet();
+					throw new IDMapperException("DataSource not supported");
+				}
+			}));
+			Assert.fail("Expected IDMapperException");
+		}
+		catch (IDMapperException ex)
+		{
+			Assert.assertEquals("DataSource not supported", ex.getMessage());
+			Assert.assertEquals(1, attempts.get());
+		}
+	}
+
+	@Test
+	public void testInterval() throws IDMapperException
+	{
+		scheduler = new RequestScheduler(4, 50, 1, 0, 0);
+		long start = System.currentTimeMillis();
+		scheduler.run(scheduler.split(items(4), new RequestScheduler.Query<Integer>()
+		{
+			public void run(List<Integer> chunk) {}
+		}));
+		//The last of four requests starts at least three intervals after the first
+		Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+	}
+}